@@ -0,0 +1,653 @@
+package eu.isas.searchgui;
+
+import com.compomics.util.Util;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.preferences.SearchGuiOutputOption;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs the SearchGUI output in zip files while the search is running. The
+ * identification files are appended to their archive as soon as the search
+ * engine producing them has finished, and when grouping per run, the archive
+ * of a spectrum file is completed as soon as the last search engine is done
+ * with this file. The content of the archives is planned in a manifest, and
+ * the archives are written in a background thread in the order the files are
+ * provided. The manifest is stored as an index in every archive. When the
+ * output is split in several archives, the data shared by the archives is
+ * stored once in a separate data archive referenced by the other archives.
+ *
+ * @author Harald Barsnes
+ */
+public class SearchGUIOutputArchiver {
+
+    /**
+     * The size of the buffer used to copy the files to the archives.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    /**
+     * The key used for the archive when all files are grouped.
+     */
+    private static final String GROUPED_ARCHIVE_KEY = "";
+    /**
+     * The way the output is organized.
+     */
+    private final SearchGuiOutputOption outputOption;
+    /**
+     * The folder where the archives are written.
+     */
+    private final File outputFolder;
+    /**
+     * The folder where the raw SearchGUI output is stored.
+     */
+    private final File tempOutputFolder;
+    /**
+     * If true the date is included in the archive names.
+     */
+    private final boolean includeDate;
+    /**
+     * The identification parameters file.
+     */
+    private final File parametersFile;
+    /**
+     * If true, the OMSSA modification files are included.
+     */
+    private final boolean omssaEnabled;
+    /**
+     * If true, the FASTA and spectrum files are included.
+     */
+    private final boolean outputData;
+    /**
+     * The FASTA file.
+     */
+    private final File fastaFile;
+    /**
+     * The spectrum files searched.
+     */
+    private final ArrayList<File> spectrumFiles;
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The executor writing the archives.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * The manifest of the archives.
+     */
+    private final SearchGUIOutputManifest manifest = new SearchGUIOutputManifest();
+    /**
+     * The archives planned and not completed yet indexed by key: the
+     * algorithm name, the run name, or an empty string when all files are
+     * grouped.
+     */
+    private final HashMap<String, File> plannedArchives = new HashMap<String, File>();
+    /**
+     * The archive where the data shared by the result archives is stored,
+     * null if not used.
+     */
+    private File dataArchive = null;
+    /**
+     * The entries of the data archive indexed by file path.
+     */
+    private final HashMap<String, SearchGUIOutputManifest.ManifestEntry> dataArchiveEntries = new HashMap<String, SearchGUIOutputManifest.ManifestEntry>();
+    /**
+     * The archives currently open indexed by path.
+     */
+    private final HashMap<String, Archive> openArchives = new HashMap<String, Archive>();
+    /**
+     * The archives completed.
+     */
+    private final ArrayList<File> completedArchives = new ArrayList<File>();
+    /**
+     * The first exception encountered while writing the archives.
+     */
+    private IOException exception = null;
+    /**
+     * Indicates whether the progress is reported to the waiting handler.
+     */
+    private boolean reportProgress = false;
+    /**
+     * The number of bytes written to the archives.
+     */
+    private long bytesWritten = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param outputOption the way the output is organized
+     * @param outputFolder the folder where the archives are written
+     * @param tempOutputFolder the folder where the raw SearchGUI output is
+     * stored
+     * @param includeDate if true the date is included in the archive names
+     * @param parametersFile the identification parameters file
+     * @param omssaEnabled if true the OMSSA modification files are included
+     * @param outputData if true the FASTA and spectrum files are included
+     * @param fastaFile the FASTA file
+     * @param spectrumFiles the spectrum files searched
+     * @param waitingHandler the waiting handler
+     */
+    public SearchGUIOutputArchiver(SearchGuiOutputOption outputOption, File outputFolder, File tempOutputFolder, boolean includeDate,
+            File parametersFile, boolean omssaEnabled, boolean outputData, File fastaFile, ArrayList<File> spectrumFiles, WaitingHandler waitingHandler) {
+
+        if (outputOption == SearchGuiOutputOption.no_zip) {
+            throw new IllegalArgumentException("No archive is written for output option " + outputOption + ".");
+        }
+
+        this.outputOption = outputOption;
+        this.outputFolder = outputFolder;
+        this.tempOutputFolder = tempOutputFolder;
+        this.includeDate = includeDate;
+        this.parametersFile = parametersFile;
+        this.omssaEnabled = omssaEnabled;
+        this.outputData = outputData;
+        this.fastaFile = fastaFile;
+        this.spectrumFiles = new ArrayList<File>(spectrumFiles);
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Returns the manifest of the archives.
+     *
+     * @return the manifest of the archives
+     */
+    public SearchGUIOutputManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Queues the given identification file for its archive.
+     *
+     * @param spectrumFile the spectrum file searched
+     * @param algorithm the index of the algorithm which produced the file
+     * @param identificationFile the identification file
+     */
+    public void addIdentificationFile(File spectrumFile, int algorithm, File identificationFile) {
+        File archiveFile = planArchive(getArchiveKey(spectrumFile, algorithm), algorithm);
+        manifest.addEntry(archiveFile, null, identificationFile);
+        submitPendingEntries(archiveFile, false);
+    }
+
+    /**
+     * Indicates that all search engines are done with the given spectrum
+     * file. The MS Amanda settings file of this spectrum file is added to its
+     * archive and, when grouping per run, the archive of this spectrum file is
+     * completed.
+     *
+     * @param spectrumFile the spectrum file
+     */
+    public void spectrumFileCompleted(File spectrumFile) {
+
+        File settingsFile = new File(tempOutputFolder, Util.removeExtension(spectrumFile.getName()) + "_settings.xml");
+        if (settingsFile.exists()) {
+            File archiveFile = plannedArchives.get(getArchiveKey(spectrumFile, Advocate.msAmanda.getIndex()));
+            if (archiveFile != null) {
+                manifest.addEntry(archiveFile, null, settingsFile);
+                submitPendingEntries(archiveFile, false);
+            }
+        }
+
+        if (outputOption == SearchGuiOutputOption.run) {
+            String key = getArchiveKey(spectrumFile, Advocate.msAmanda.getIndex());
+            File archiveFile = plannedArchives.remove(key);
+            if (archiveFile != null) {
+                planData(archiveFile, spectrumFile);
+                submitPendingEntries(archiveFile, true);
+            }
+        }
+    }
+
+    /**
+     * Completes the archives still open, waits for all archives to be written,
+     * and returns the archives written.
+     *
+     * @return the archives written
+     *
+     * @throws IOException thrown if an error occurred while writing an
+     * archive
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the archives to be written
+     */
+    public ArrayList<File> finish() throws IOException, InterruptedException {
+
+        // a single archive is always written when grouping all files
+        if (outputOption == SearchGuiOutputOption.grouped && !plannedArchives.containsKey(GROUPED_ARCHIVE_KEY)) {
+            planArchive(GROUPED_ARCHIVE_KEY, null);
+        }
+
+        final ArrayList<File> remainingArchives = new ArrayList<File>(plannedArchives.values());
+        plannedArchives.clear();
+        for (File archiveFile : remainingArchives) {
+            planData(archiveFile, null);
+        }
+
+        // the shared data archive is written last
+        if (dataArchive != null) {
+            remainingArchives.add(dataArchive);
+        }
+
+        submit(new ArchiveTask() {
+            @Override
+            public void write() throws IOException {
+
+                // report progress on the whole output, the manifest is complete at this point
+                if (waitingHandler != null) {
+                    reportProgress = true;
+                    waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+                    waitingHandler.setMaxSecondaryProgressCounter(100);
+                    waitingHandler.setSecondaryProgressCounter(getProgress());
+                }
+
+                for (File archiveFile : remainingArchives) {
+                    writePendingEntries(archiveFile, true);
+                }
+
+                reportProgress = false;
+            }
+        });
+
+        executor.shutdown();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            // wait for the archives to be written
+        }
+
+        if (exception != null) {
+            throw exception;
+        }
+
+        return completedArchives;
+    }
+
+    /**
+     * Cancels the archiving. The archives completed are kept and the
+     * incomplete archives are deleted.
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the archiving to stop
+     */
+    public void cancel() throws InterruptedException {
+
+        executor.shutdownNow();
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            // wait for the current file to be written
+        }
+
+        for (Archive archive : openArchives.values()) {
+            try {
+                archive.out.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (archive.file.exists()) {
+                archive.file.delete();
+            }
+        }
+
+        openArchives.clear();
+    }
+
+    /**
+     * Submits a task to the executor.
+     *
+     * @param archiveTask the task
+     */
+    private void submit(final ArchiveTask archiveTask) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (exception == null && (waitingHandler == null || !waitingHandler.isRunCanceled())) {
+                    try {
+                        archiveTask.write();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        exception = e;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Submits the writing of the entries of the given archive which are in the
+     * manifest but not written yet.
+     *
+     * @param archiveFile the archive
+     * @param close if true the archive is closed after writing
+     */
+    private void submitPendingEntries(final File archiveFile, final boolean close) {
+        submit(new ArchiveTask() {
+            @Override
+            public void write() throws IOException {
+                writePendingEntries(archiveFile, close);
+            }
+        });
+    }
+
+    /**
+     * Returns the key of the archive where to store the files of the given
+     * spectrum file and algorithm.
+     *
+     * @param spectrumFile the spectrum file
+     * @param algorithm the index of the algorithm
+     *
+     * @return the key of the archive
+     */
+    private String getArchiveKey(File spectrumFile, int algorithm) {
+        switch (outputOption) {
+            case algorithm:
+                return Advocate.getAdvocate(algorithm).getName();
+            case run:
+                return Util.removeExtension(spectrumFile.getName());
+            default:
+                return GROUPED_ARCHIVE_KEY;
+        }
+    }
+
+    /**
+     * Returns the archive corresponding to the given key, adds it to the
+     * manifest with the files common to all archives if needed.
+     *
+     * @param key the key of the archive
+     * @param algorithm the index of the algorithm if grouping by algorithm
+     *
+     * @return the archive
+     */
+    private File planArchive(String key, Integer algorithm) {
+
+        File archiveFile = plannedArchives.get(key);
+
+        if (archiveFile == null) {
+
+            if (key.equals(GROUPED_ARCHIVE_KEY)) {
+                archiveFile = SearchHandler.getDefaultOutputFile(outputFolder, includeDate);
+            } else {
+                archiveFile = SearchHandler.getDefaultOutputFile(outputFolder, key, includeDate);
+            }
+
+            plannedArchives.put(key, archiveFile);
+            manifest.addArchive(archiveFile);
+
+            // add input file
+            manifest.addEntry(archiveFile, null, SearchHandler.getInputFile(tempOutputFolder));
+
+            // add search parameters files
+            manifest.addEntry(archiveFile, null, parametersFile);
+
+            // add OMSSA modification files
+            if (outputOption == SearchGuiOutputOption.algorithm && algorithm != null && algorithm == Advocate.omssa.getIndex()
+                    || outputOption != SearchGuiOutputOption.algorithm && omssaEnabled) {
+                manifest.addEntry(archiveFile, null, new File(tempOutputFolder, "omssa_mods.xml"));
+                manifest.addEntry(archiveFile, null, new File(tempOutputFolder, "omssa_usermods.xml"));
+            }
+        }
+
+        return archiveFile;
+    }
+
+    /**
+     * Adds the FASTA and spectrum files to the given archive in the manifest
+     * if the data is included in the output. When all files are grouped, the
+     * data is stored in the archive. Otherwise, the data shared between
+     * archives is stored in the data archive and referenced from the given
+     * archive, and the spectrum file of a run is stored in the archive of the
+     * run.
+     *
+     * @param archiveFile the archive
+     * @param spectrumFile the only spectrum file to include, null for all
+     */
+    private void planData(File archiveFile, File spectrumFile) {
+
+        if (outputData) {
+
+            if (outputOption == SearchGuiOutputOption.grouped) {
+
+                manifest.addEntry(archiveFile, SearchHandler.DEFAULT_DATA_FOLDER, fastaFile);
+
+                for (File file : spectrumFiles) {
+                    manifest.addEntry(archiveFile, SearchHandler.DEFAULT_DATA_FOLDER, file);
+                }
+
+            } else {
+
+                manifest.addReference(archiveFile, getDataArchiveEntry(fastaFile), dataArchive);
+
+                if (spectrumFile != null) {
+                    manifest.addEntry(archiveFile, SearchHandler.DEFAULT_DATA_FOLDER, spectrumFile);
+                } else {
+                    for (File file : spectrumFiles) {
+                        manifest.addReference(archiveFile, getDataArchiveEntry(file), dataArchive);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entry of the given file in the data archive, adds it to the
+     * manifest and queues its writing if needed.
+     *
+     * @param file the data file
+     *
+     * @return the entry of the given file in the data archive
+     */
+    private SearchGUIOutputManifest.ManifestEntry getDataArchiveEntry(File file) {
+
+        if (dataArchive == null) {
+            dataArchive = SearchHandler.getDefaultOutputFile(outputFolder, SearchHandler.DEFAULT_DATA_FOLDER, includeDate);
+            manifest.addArchive(dataArchive);
+        }
+
+        String path = file.getAbsolutePath();
+        SearchGUIOutputManifest.ManifestEntry entry = dataArchiveEntries.get(path);
+
+        if (entry == null) {
+            entry = manifest.addEntry(dataArchive, SearchHandler.DEFAULT_DATA_FOLDER, file);
+            dataArchiveEntries.put(path, entry);
+
+            // write the file before the archives referencing it so that its checksum is in their index
+            submitPendingEntries(dataArchive, false);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Writes the entries of the given archive which are in the manifest but
+     * not written yet. The archive is created if needed, existing archives
+     * are overwritten.
+     *
+     * @param archiveFile the archive
+     * @param close if true the index is added and the archive closed after
+     * writing
+     *
+     * @throws IOException thrown if an error occurred while writing the
+     * archive
+     */
+    private void writePendingEntries(File archiveFile, boolean close) throws IOException {
+
+        String path = archiveFile.getAbsolutePath();
+        Archive archive = openArchives.get(path);
+
+        if (archive == null) {
+            if (archiveFile.exists()) {
+                archiveFile.delete();
+            }
+            archive = new Archive(archiveFile);
+            openArchives.put(path, archive);
+        }
+
+        ArrayList<SearchGUIOutputManifest.ManifestEntry> entries = manifest.getEntries(archiveFile);
+
+        while (archive.nEntriesWritten < entries.size()) {
+
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                return;
+            }
+
+            SearchGUIOutputManifest.ManifestEntry entry = entries.get(archive.nEntriesWritten);
+            if (!entry.isReference()) {
+                addEntry(archive, entry);
+            }
+            archive.nEntriesWritten++;
+        }
+
+        if (close) {
+
+            // add the index of the archive
+            archive.out.putNextEntry(new ZipEntry(SearchGUIOutputManifest.MANIFEST_FILE_NAME));
+            manifest.writeIndex(archiveFile, archive.out);
+            archive.out.closeEntry();
+
+            archive.out.close();
+            openArchives.remove(path);
+            completedArchives.add(archiveFile);
+        }
+    }
+
+    /**
+     * Returns the archiving progress in percent.
+     *
+     * @return the archiving progress in percent
+     */
+    private int getProgress() {
+        long total = manifest.getTotalSize();
+        if (total == 0) {
+            return 100;
+        }
+        return (int) ((100 * bytesWritten) / total);
+    }
+
+    /**
+     * Writes a manifest entry to an archive, and computes the checksum of its
+     * file if not done already.
+     *
+     * @param archive the archive
+     * @param entry the entry
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     * or writing the archive
+     */
+    private void addEntry(Archive archive, SearchGUIOutputManifest.ManifestEntry entry) throws IOException {
+
+        // create the folder in the zip file
+        String folder = entry.getFolder();
+        if (folder != null && !archive.folders.contains(folder)) {
+            archive.out.putNextEntry(new ZipEntry(folder + "/"));
+            archive.out.closeEntry();
+            archive.folders.add(folder);
+        }
+
+        File file = entry.getFile();
+        MessageDigest digest = null;
+        if (manifest.getChecksum(file) == null) {
+            try {
+                digest = MessageDigest.getInstance(SearchGUIOutputManifest.CHECKSUM_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                e.printStackTrace();
+            }
+        }
+
+        archive.out.putNextEntry(new ZipEntry(entry.getEntryName()));
+
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    return;
+                }
+
+                archive.out.write(buffer, 0, count);
+
+                if (digest != null) {
+                    digest.update(buffer, 0, count);
+                }
+
+                int previousProgress = getProgress();
+                bytesWritten += count;
+
+                if (reportProgress) {
+                    int progress = getProgress();
+                    if (progress > previousProgress) {
+                        waitingHandler.setSecondaryProgressCounter(progress);
+                    }
+                }
+            }
+        } finally {
+            in.close();
+            archive.out.closeEntry();
+        }
+
+        if (digest != null) {
+            manifest.setChecksum(file, String.format("%032x", new BigInteger(1, digest.digest())));
+        }
+    }
+
+    /**
+     * A task writing to the archives.
+     */
+    private interface ArchiveTask {
+
+        /**
+         * Writes to the archives.
+         *
+         * @throws IOException thrown if an error occurred while writing
+         */
+        public void write() throws IOException;
+    }
+
+    /**
+     * An archive being written.
+     */
+    private static class Archive {
+
+        /**
+         * The zip file.
+         */
+        private final File file;
+        /**
+         * The zip stream.
+         */
+        private final ZipOutputStream out;
+        /**
+         * The number of manifest entries written.
+         */
+        private int nEntriesWritten = 0;
+        /**
+         * The folders created in the archive.
+         */
+        private final HashSet<String> folders = new HashSet<String>();
+
+        /**
+         * Constructor, opens the zip stream.
+         *
+         * @param file the zip file
+         *
+         * @throws IOException thrown if the file cannot be opened
+         */
+        private Archive(File file) throws IOException {
+            this.file = file;
+            out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        }
+    }
+}
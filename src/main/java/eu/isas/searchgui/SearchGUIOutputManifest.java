@@ -0,0 +1,333 @@
+package eu.isas.searchgui;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * The manifest of the SearchGUI output archives: the files to store in every
+ * archive, their size and their checksum. The size of every file is read
+ * once when the file is added to the manifest and the checksum is computed
+ * once when the file is first written. The manifest is used to report the
+ * progress of the archiving and is stored as an index in every archive for
+ * downstream verification. An archive can reference files stored in another
+ * archive, for instance data shared by several archives, in which case the
+ * index provides the name of the archive where the file is stored.
+ *
+ * @author Harald Barsnes
+ */
+public class SearchGUIOutputManifest {
+
+    /**
+     * The name of the manifest in the archives.
+     */
+    public static final String MANIFEST_FILE_NAME = "searchgui_manifest.txt";
+    /**
+     * The name of the algorithm used for the checksums.
+     */
+    public static final String CHECKSUM_ALGORITHM = "MD5";
+    /**
+     * The size of the files indexed by path.
+     */
+    private final HashMap<String, Long> fileSizes = new HashMap<String, Long>();
+    /**
+     * The checksum of the files indexed by path.
+     */
+    private final HashMap<String, String> checksums = new HashMap<String, String>();
+    /**
+     * The entries of every archive indexed by archive path.
+     */
+    private final LinkedHashMap<String, ArrayList<ManifestEntry>> archiveEntries = new LinkedHashMap<String, ArrayList<ManifestEntry>>();
+    /**
+     * The total size of the entries of all archives.
+     */
+    private long totalSize = 0;
+
+    /**
+     * Adds an archive to the manifest. Adding an archive twice has no effect.
+     *
+     * @param archive the archive
+     */
+    public synchronized void addArchive(File archive) {
+        String path = archive.getAbsolutePath();
+        if (!archiveEntries.containsKey(path)) {
+            archiveEntries.put(path, new ArrayList<ManifestEntry>());
+        }
+    }
+
+    /**
+     * Indicates whether the given archive is in the manifest.
+     *
+     * @param archive the archive
+     *
+     * @return true if the archive is in the manifest
+     */
+    public synchronized boolean containsArchive(File archive) {
+        return archiveEntries.containsKey(archive.getAbsolutePath());
+    }
+
+    /**
+     * Adds a file to the given archive.
+     *
+     * @param archive the archive
+     * @param folder the folder in the archive, null for the root
+     * @param file the file
+     *
+     * @return the entry of the file in the archive
+     */
+    public synchronized ManifestEntry addEntry(File archive, String folder, File file) {
+
+        String entryName = file.getName();
+        if (folder != null) {
+            entryName = folder + "/" + entryName;
+        }
+
+        ManifestEntry entry = new ManifestEntry(entryName, folder, file, getSize(file), null);
+
+        addArchive(archive);
+        archiveEntries.get(archive.getAbsolutePath()).add(entry);
+        totalSize += entry.getSize();
+
+        return entry;
+    }
+
+    /**
+     * Adds to the given archive a reference to an entry stored in another
+     * archive. The size of referenced entries is not included in the total
+     * size.
+     *
+     * @param archive the archive
+     * @param storedEntry the entry in the archive where the file is stored
+     * @param storageArchive the archive where the file is stored
+     *
+     * @return the reference entry
+     */
+    public synchronized ManifestEntry addReference(File archive, ManifestEntry storedEntry, File storageArchive) {
+
+        ManifestEntry entry = new ManifestEntry(storedEntry.getEntryName(), storedEntry.getFolder(),
+                storedEntry.getFile(), storedEntry.getSize(), storageArchive);
+
+        addArchive(archive);
+        archiveEntries.get(archive.getAbsolutePath()).add(entry);
+
+        return entry;
+    }
+
+    /**
+     * Returns the entries of the given archive in the order they were added.
+     *
+     * @param archive the archive
+     *
+     * @return the entries of the given archive, an empty list if none
+     */
+    public synchronized ArrayList<ManifestEntry> getEntries(File archive) {
+        ArrayList<ManifestEntry> entries = archiveEntries.get(archive.getAbsolutePath());
+        if (entries == null) {
+            return new ArrayList<ManifestEntry>();
+        }
+        return new ArrayList<ManifestEntry>(entries);
+    }
+
+    /**
+     * Returns the archives of the manifest in the order they were added.
+     *
+     * @return the archives of the manifest
+     */
+    public synchronized ArrayList<File> getArchives() {
+        ArrayList<File> archives = new ArrayList<File>(archiveEntries.size());
+        for (String path : archiveEntries.keySet()) {
+            archives.add(new File(path));
+        }
+        return archives;
+    }
+
+    /**
+     * Returns the size of the given file. The size is read from the file
+     * system the first time only.
+     *
+     * @param file the file
+     *
+     * @return the size of the file
+     */
+    public synchronized long getSize(File file) {
+        String path = file.getAbsolutePath();
+        Long size = fileSizes.get(path);
+        if (size == null) {
+            size = file.length();
+            fileSizes.put(path, size);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the total size of the entries of all archives.
+     *
+     * @return the total size of the entries of all archives
+     */
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Returns the checksum of the given file, null if not computed yet.
+     *
+     * @param file the file
+     *
+     * @return the checksum of the given file
+     */
+    public synchronized String getChecksum(File file) {
+        return checksums.get(file.getAbsolutePath());
+    }
+
+    /**
+     * Sets the checksum of the given file.
+     *
+     * @param file the file
+     * @param checksum the checksum as hexadecimal string
+     */
+    public synchronized void setChecksum(File file, String checksum) {
+        checksums.put(file.getAbsolutePath(), checksum);
+    }
+
+    /**
+     * Writes the index of the given archive to the given stream as a tab
+     * separated table with the name, size and checksum of every entry, and
+     * the name of the archive where the file is stored for references. The
+     * stream is not closed.
+     *
+     * @param archive the archive
+     * @param out the stream to write to
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    public synchronized void writeIndex(File archive, OutputStream out) throws IOException {
+
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        String lineSeparator = System.getProperty("line.separator");
+
+        bw.write("Entry\tSize\t" + CHECKSUM_ALGORITHM + "\tArchive" + lineSeparator);
+
+        for (ManifestEntry entry : getEntries(archive)) {
+            String checksum = getChecksum(entry.getFile());
+            if (checksum == null) {
+                checksum = "";
+            }
+            String storageArchive = "";
+            if (entry.isReference()) {
+                storageArchive = entry.getStorageArchive().getName();
+            }
+            bw.write(entry.getEntryName() + "\t" + entry.getSize() + "\t" + checksum + "\t" + storageArchive + lineSeparator);
+        }
+
+        bw.flush();
+    }
+
+    /**
+     * A file stored in an archive.
+     */
+    public static class ManifestEntry {
+
+        /**
+         * The name of the entry in the archive.
+         */
+        private final String entryName;
+        /**
+         * The folder of the entry in the archive, null for the root.
+         */
+        private final String folder;
+        /**
+         * The file.
+         */
+        private final File file;
+        /**
+         * The size of the file.
+         */
+        private final long size;
+        /**
+         * The archive where the file is stored if not in the archive of this
+         * entry, null otherwise.
+         */
+        private final File storageArchive;
+
+        /**
+         * Constructor.
+         *
+         * @param entryName the name of the entry in the archive
+         * @param folder the folder of the entry in the archive, null for the
+         * root
+         * @param file the file
+         * @param size the size of the file
+         * @param storageArchive the archive where the file is stored if not
+         * in the archive of this entry, null otherwise
+         */
+        private ManifestEntry(String entryName, String folder, File file, long size, File storageArchive) {
+            this.entryName = entryName;
+            this.folder = folder;
+            this.file = file;
+            this.size = size;
+            this.storageArchive = storageArchive;
+        }
+
+        /**
+         * Returns the name of the entry in the archive.
+         *
+         * @return the name of the entry in the archive
+         */
+        public String getEntryName() {
+            return entryName;
+        }
+
+        /**
+         * Returns the folder of the entry in the archive, null for the root.
+         *
+         * @return the folder of the entry in the archive
+         */
+        public String getFolder() {
+            return folder;
+        }
+
+        /**
+         * Returns the file.
+         *
+         * @return the file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Returns the size of the file.
+         *
+         * @return the size of the file
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the archive where the file is stored if not in the archive
+         * of this entry, null otherwise.
+         *
+         * @return the archive where the file is stored
+         */
+        public File getStorageArchive() {
+            return storageArchive;
+        }
+
+        /**
+         * Indicates whether this entry references a file stored in another
+         * archive.
+         *
+         * @return true if this entry references a file stored in another
+         * archive
+         */
+        public boolean isReference() {
+            return storageArchive != null;
+        }
+    }
+}
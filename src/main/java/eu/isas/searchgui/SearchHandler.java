@@ -18,32 +18,47 @@ import com.compomics.util.experiment.io.massspectrometry.export.AplExporter;
 import com.compomics.util.experiment.io.massspectrometry.export.Ms2Exporter;
 import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
 import com.compomics.util.experiment.massspectrometry.proteowizard.MsConvertParameters;
+import com.compomics.util.experiment.massspectrometry.proteowizard.MsFormat;
 import com.compomics.util.gui.filehandling.TempFilesManager;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingDialog;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
 import com.compomics.util.io.ConfigurationFile;
-import com.compomics.util.io.compression.ZipUtils;
 import com.compomics.util.preferences.IdentificationParameters;
 import com.compomics.util.preferences.ProcessingPreferences;
 import com.compomics.util.preferences.UtilitiesUserPreferences;
 import com.compomics.util.waiting.Duration;
 import com.compomics.util.preferences.SearchGuiOutputOption;
 import eu.isas.searchgui.processbuilders.*;
+import eu.isas.searchgui.utilities.CometMemoryEstimate;
+import eu.isas.searchgui.utilities.DataExportMode;
+import eu.isas.searchgui.utilities.DataExporter;
+import eu.isas.searchgui.utilities.DatabaseLock;
+import eu.isas.searchgui.utilities.EngineConfigurationCache;
+import eu.isas.searchgui.utilities.EngineThroughput;
+import eu.isas.searchgui.utilities.ExitTrap;
+import eu.isas.searchgui.utilities.MgfSharder;
+import eu.isas.searchgui.utilities.MzmlFiles;
+import eu.isas.searchgui.utilities.ProcessCgroup;
+import eu.isas.searchgui.utilities.SpectrumConversionPlan;
+import eu.isas.searchgui.utilities.SpectrumFormat;
+import eu.isas.searchgui.utilities.SpectrumPipe;
 import javax.swing.*;
 import java.awt.*;
 import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipOutputStream;
 import org.apache.commons.io.FileUtils;
 
 /**
@@ -71,6 +86,11 @@ public class SearchHandler {
      * Folder where the output is stored before packaging.
      */
     public final static String OUTPUT_TEMP_FOLDER_NAME = ".SearchGUI_temp";
+    /**
+     * The sub folder of the output temp folder where the search engine
+     * configuration files are cached during a run.
+     */
+    private final static String ENGINE_CONFIGURATION_SUBFOLDER = "engine_configuration";
     /**
      * The sub folder to use to store peak lists.
      */
@@ -153,9 +173,21 @@ public class SearchHandler {
      */
     private ArrayList<File> rawFiles;
     /**
-     * The mgf files.
+     * The spectrum files written by msconvert next to the raw files during
+     * the last search.
+     */
+    private final ArrayList<File> msConvertFiles = new ArrayList<File>();
+    /**
+     * The spectrum files to search: mgf files, and the files representing
+     * the raw files in the results as given by the spectrum conversion plan,
+     * see getConversionPlan().
      */
     private ArrayList<File> mgfFiles;
+    /**
+     * The identification files of the last search: spectrum file name &gt;
+     * algorithm index &gt; identification file.
+     */
+    private HashMap<String, HashMap<Integer, File>> identificationFiles = new HashMap<String, HashMap<Integer, File>>();
     /**
      * The OMSSA location.
      */
@@ -240,6 +272,10 @@ public class SearchHandler {
      * The MS-GF+ process.
      */
     private MsgfProcessBuilder msgfProcessBuilder = null;
+    /**
+     * The MS-GF+ database indexing process.
+     */
+    private MsgfIndexProcessBuilder msgfIndexProcessBuilder = null;
     /**
      * The MS Amanda process.
      */
@@ -252,6 +288,10 @@ public class SearchHandler {
      * The Comet process.
      */
     private CometProcessBuilder cometProcessBuilder = null;
+    /**
+     * The Comet index process.
+     */
+    private CometIndexProcessBuilder cometIndexProcessBuilder = null;
     /**
      * The Tide index process.
      */
@@ -268,6 +308,15 @@ public class SearchHandler {
      * The Novor process.
      */
     private NovorProcessBuilder novorProcessBuilder = null;
+    /**
+     * The Novor processes run in parallel on shards of the spectrum files.
+     */
+    private ArrayList<NovorProcessBuilder> novorWorkerProcessBuilders = null;
+    /**
+     * True if the Novor workers could not trap the calls to System.exit, the
+     * shards being then processed by one Novor process each.
+     */
+    private boolean novorExitTrapUnavailable = false;
     /**
      * The DirecTag process.
      */
@@ -312,10 +361,115 @@ public class SearchHandler {
      * The duration of the search.
      */
     private Duration searchDuration;
+    /**
+     * Indicates whether the last search crashed or was canceled.
+     */
+    private boolean searchFailed = false;
+    /**
+     * Indicates whether the virtual machine is stopped when a command line
+     * search crashes.
+     */
+    private boolean exitOnCrash = true;
     /**
      * The folder where to save the logs.
      */
     private File logFolder = null;
+    /**
+     * The way the data files are exported when the output is not zipped.
+     */
+    private DataExportMode dataExportMode = DataExportMode.reflink;
+    /**
+     * The factor of the expected duration after which a search engine
+     * process is reported as straggling.
+     */
+    private static final double STRAGGLER_FACTOR = 3;
+    /**
+     * The minimal duration before a search engine process is stopped in
+     * milliseconds.
+     */
+    private static final long MIN_PROCESS_TIMEOUT = 10 * 60 * 1000;
+    /**
+     * The minimal number of spectra of a spectrum file shard processed by a
+     * Novor worker.
+     */
+    private static final int MIN_NOVOR_SHARD_SIZE = 100;
+    /**
+     * The factor of the expected duration after which a search engine
+     * process is considered hung and stopped, 0 to never stop processes.
+     */
+    private int processTimeoutFactor = 10;
+    /**
+     * The throughput history of the search engines, loaded when needed.
+     */
+    private EngineThroughput engineThroughput = null;
+    /**
+     * The duration without output and CPU usage after which a process is
+     * considered hung in minutes, 0 to disable the hang detection.
+     */
+    private int processSilenceTimeout = 30;
+    /**
+     * The number of times a hung process is started again.
+     */
+    private int processRetries = 1;
+    /**
+     * The time to wait before starting a hung process again in seconds,
+     * doubled at every retry.
+     */
+    private int processRetryBackoff = 60;
+    /**
+     * The process watchdog metrics when the search started: stragglers,
+     * timeouts, hung processes and retries.
+     */
+    private int[] watchdogMetricsAtStart = getWatchdogMetrics();
+    /**
+     * Indicates whether the processes are confined in cgroups where
+     * available.
+     */
+    private boolean cgroupConfinement = false;
+    /**
+     * The CPUs the confined processes may use, null for all.
+     */
+    private String cgroupCpus = null;
+    /**
+     * The maximal memory of a confined process in MB, 0 for no limit.
+     */
+    private int cgroupMemory = 0;
+    /**
+     * The resources used by the confined processes of the search.
+     */
+    private ProcessCgroup.Usage cgroupUsage = new ProcessCgroup.Usage();
+    /**
+     * The maximal number of spectrum files searched in a single process by
+     * MyriMatch, Comet, MS-GF+, Tide and DirecTag, 0 for all files. Searching
+     * several files in one process loads and indexes the database only once.
+     */
+    private int engineBatchSize = 1;
+    /**
+     * The number of Novor processes run in parallel on shards of the spectrum
+     * files, 0 for one per thread.
+     */
+    private int novorWorkers = 1;
+    /**
+     * Indicates whether the spectra converted for the engines reading their
+     * input sequentially, i.e., Tide and Andromeda, are streamed through named
+     * pipes instead of being written to temporary files.
+     */
+    private boolean streamSpectra = false;
+    /**
+     * The engines which could not read the spectra from a named pipe, they
+     * then read files for the rest of the session.
+     */
+    private static final HashSet<Advocate> seekingEngines = new HashSet<Advocate>();
+    /**
+     * Indicates whether Comet searches the peptide index of the database,
+     * created when missing or outdated.
+     */
+    private boolean cometIndex = false;
+    /**
+     * Indicates whether the Comet spectrum batch size is set from the number
+     * of spectra, the database size and the memory budget.
+     */
+    private boolean cometAutoBatchSize = false;
     /**
      * The output time stamp.
      */
@@ -529,7 +683,16 @@ public class SearchHandler {
     public synchronized void startSearch(WaitingHandler waitingHandler) throws InterruptedException {
 
         this.waitingHandler = waitingHandler;
+        searchFailed = false;
+        synchronized (msConvertFiles) {
+            msConvertFiles.clear();
+        }
         searchDuration.start();
+        watchdogMetricsAtStart = getWatchdogMetrics();
+        cgroupUsage = new ProcessCgroup.Usage();
+        if (cgroupConfinement) {
+            waitingHandler.appendReport(ProcessCgroup.getStatus(), true, true);
+        }
 
         searchWorker = new SearchWorker(waitingHandler);
         searchWorker.execute();
@@ -549,8 +712,14 @@ public class SearchHandler {
             useCommandLine = true;
         }
 
-        if (useCommandLine && !searchWorker.isFinished()) {
-            wait();
+        // wait for the search, stopping the processes if the search is canceled from another thread
+        boolean canceled = false;
+        while (useCommandLine && !searchWorker.isFinished()) {
+            wait(1000);
+            if (!canceled && waitingHandler.isRunCanceled() && !searchWorker.isFinished()) {
+                canceled = true;
+                searchWorker.cancelRun();
+            }
         }
     }
 
@@ -561,6 +730,28 @@ public class SearchHandler {
         notify();
     }
 
+    /**
+     * Indicates whether the last search crashed or was canceled, i.e., did
+     * not complete. Set when startSearch returns.
+     *
+     * @return true if the last search did not complete
+     */
+    public boolean isSearchFailed() {
+        return searchFailed;
+    }
+
+    /**
+     * Sets whether the virtual machine is stopped when a command line search
+     * crashes. Processes running several searches, e.g., a batch or a worker,
+     * continue with the next search instead.
+     *
+     * @param exitOnCrash true if the virtual machine is stopped when a
+     * command line search crashes
+     */
+    public void setExitOnCrash(boolean exitOnCrash) {
+        this.exitOnCrash = exitOnCrash;
+    }
+
     /**
      * Cancel the search.
      */
@@ -598,6 +789,8 @@ public class SearchHandler {
                     // change the icon back to the default version
                     ((JFrame) ((WaitingDialog) waitingHandler).getParent()).setIconImage(Toolkit.getDefaultToolkit().getImage(getClass().getResource("/icons/searchgui.gif")));
                 }
+                reportWatchdogMetrics();
+                reportCgroupUsage();
                 searchDuration.end();
                 waitingHandler.appendReport("Search Completed (" + searchDuration.toString() + ").", true, true);
                 waitingHandler.appendReportEndLine();
@@ -721,6 +914,7 @@ public class SearchHandler {
      * Called if the search does not finish properly.
      */
     private void searchCrashed() {
+        searchFailed = true;
         if (waitingHandler != null) {
             if (waitingHandler instanceof WaitingDialog) {
                 // change the icon back to the default version
@@ -731,7 +925,7 @@ public class SearchHandler {
 
             saveReport();
 
-            if (waitingHandler instanceof WaitingHandlerCLIImpl) {
+            if (waitingHandler instanceof WaitingHandlerCLIImpl && exitOnCrash) {
                 System.exit(0);
             }
         } else {
@@ -1579,6 +1773,55 @@ public class SearchHandler {
         this.mgfFiles = mgfFiles;
     }
 
+    /**
+     * Returns the plan of the conversions of the spectrum files to the
+     * formats read by the enabled search engines. When PeptideShaker is used,
+     * the spectra are identified by their mgf title, all the engines then
+     * read the mgf file or a file converted from it.
+     *
+     * @return the plan of the conversions of the spectrum files
+     */
+    public SpectrumConversionPlan getConversionPlan() {
+
+        SpectrumConversionPlan conversionPlan = new SpectrumConversionPlan();
+
+        if (enableOmssa) {
+            conversionPlan.addConsumer(Advocate.omssa, OmssaclProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableXtandem) {
+            conversionPlan.addConsumer(Advocate.xtandem, TandemProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableMsgf) {
+            conversionPlan.addConsumer(Advocate.msgf, MsgfProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableMsAmanda) {
+            conversionPlan.addConsumer(Advocate.msAmanda, MsAmandaProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableMyriMatch) {
+            conversionPlan.addConsumer(Advocate.myriMatch, MyriMatchProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableComet) {
+            conversionPlan.addConsumer(Advocate.comet, CometProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableTide) {
+            conversionPlan.addConsumer(Advocate.tide, TideSearchProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableAndromeda) {
+            conversionPlan.addConsumer(Advocate.andromeda, AndromedaProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableNovor) {
+            conversionPlan.addConsumer(Advocate.novor, NovorProcessBuilder.INPUT_FORMATS);
+        }
+        if (enableDirecTag) {
+            conversionPlan.addConsumer(Advocate.direcTag, DirecTagProcessBuilder.INPUT_FORMATS);
+        }
+        if (enablePeptideShaker) {
+            conversionPlan.setReferenceFormat(SpectrumFormat.mgf);
+        }
+
+        return conversionPlan;
+    }
+
     /**
      * Returns the list of raw files.
      *
@@ -1597,6 +1840,19 @@ public class SearchHandler {
         this.rawFiles = rawFiles;
     }
 
+    /**
+     * Returns the spectrum files written by msconvert next to the raw files
+     * during the last search, e.g., the mgf file of a raw file, so that a
+     * folder watched for new spectrum files can ignore them.
+     *
+     * @return the spectrum files written by msconvert
+     */
+    public ArrayList<File> getMsConvertFiles() {
+        synchronized (msConvertFiles) {
+            return new ArrayList<File>(msConvertFiles);
+        }
+    }
+
     /**
      * Returns the experiment label.
      *
@@ -1683,6 +1939,50 @@ public class SearchHandler {
          * True if the process has finished.
          */
         private boolean finished = false;
+        /**
+         * Shared lock on the Tide index held while searching with Tide.
+         */
+        private DatabaseLock tideIndexLock = null;
+        /**
+         * Shared lock on the Comet peptide index held while searching with
+         * Comet, null when searching the FASTA file.
+         */
+        private DatabaseLock cometIndexLock = null;
+        /**
+         * Shared lock on the MS-GF+ database files held while searching with
+         * MS-GF+, null if MS-GF+ creates them itself.
+         */
+        private DatabaseLock msgfIndexLock = null;
+        /**
+         * The cache of the search engine configuration files, written once
+         * per run and search parameters instead of once per spectrum file.
+         */
+        private EngineConfigurationCache configurationCache = null;
+        /**
+         * The plan of the conversions of the spectrum files to the formats
+         * read by the search engines.
+         */
+        private SpectrumConversionPlan conversionPlan = null;
+        /**
+         * The format of the input file of every spectrum file searched,
+         * spectrum file name -&gt; format.
+         */
+        private HashMap<String, SpectrumFormat> sourceFormats = new HashMap<String, SpectrumFormat>();
+        /**
+         * The files available in every format for every spectrum file
+         * searched, spectrum file name -&gt; format -&gt; file.
+         */
+        private HashMap<String, EnumMap<SpectrumFormat, File>> formatFiles = new HashMap<String, EnumMap<SpectrumFormat, File>>();
+        /**
+         * The named pipes the converted spectra are streamed through, pipe
+         * file -&gt; pipe.
+         */
+        private HashMap<File, SpectrumPipe> spectrumPipes = new HashMap<File, SpectrumPipe>();
+        /**
+         * The archiver packing the identification files as they are created,
+         * null when the output is not zipped.
+         */
+        private SearchGUIOutputArchiver outputArchiver = null;
 
         /**
          * Creates a new SearchWorker object.
@@ -1725,6 +2025,9 @@ public class SearchHandler {
             if (xTandemProcessBuilder != null) {
                 xTandemProcessBuilder.endProcess();
             }
+            if (msgfIndexProcessBuilder != null) {
+                msgfIndexProcessBuilder.endProcess();
+            }
             if (msgfProcessBuilder != null) {
                 msgfProcessBuilder.endProcess();
             }
@@ -1734,6 +2037,9 @@ public class SearchHandler {
             if (myriMatchProcessBuilder != null) {
                 myriMatchProcessBuilder.endProcess();
             }
+            if (cometIndexProcessBuilder != null) {
+                cometIndexProcessBuilder.endProcess();
+            }
             if (cometProcessBuilder != null) {
                 cometProcessBuilder.endProcess();
             }
@@ -1749,6 +2055,11 @@ public class SearchHandler {
             if (novorProcessBuilder != null) {
                 novorProcessBuilder.endProcess();
             }
+            if (novorWorkerProcessBuilders != null) {
+                for (NovorProcessBuilder novorWorkerProcessBuilder : novorWorkerProcessBuilders) {
+                    novorWorkerProcessBuilder.endProcess();
+                }
+            }
             if (direcTagProcessBuilder != null) {
                 direcTagProcessBuilder.endProcess();
             }
@@ -1782,6 +2093,9 @@ public class SearchHandler {
                     }
                 }
 
+                configurationCache = new EngineConfigurationCache(new File(outputTempFolder, ENGINE_CONFIGURATION_SUBFOLDER));
+                conversionPlan = getConversionPlan();
+
                 SearchParameters searchParameters = identificationParameters.getSearchParameters();
 
                 File fastaFile = searchParameters.getFastaFile();
@@ -1790,22 +2104,28 @@ public class SearchHandler {
                     // call Makeblastdb class, check if run before and then start process
                     makeblastdbProcessBuilder = new MakeblastdbProcessBuilder(getJarFilePath(), fastaFile, makeblastdbLocation, waitingHandler, exceptionHandler);
 
-                    if (makeblastdbProcessBuilder.needsFormatting()) {
+                    // lock the database so that concurrent SearchGUI processes do not format it at the same time
+                    DatabaseLock makeblastdbLock = lockDatabase(DatabaseLock.getLockFile(fastaFile), false, fastaFile.getName());
+
+                    try {
+                        if (makeblastdbProcessBuilder.needsFormatting()) {
 
-                        // @TODO: should the MS-GF+ database formatting be done here as well..?
-                        if (waitingHandler != null) {
-                            if (!useCommandLine) {
-                                waitingHandler.setWaitingText("Formatting " + makeblastdbProcessBuilder.getCurrentlyProcessedFileName() + " for OMSSA.");
+                            if (waitingHandler != null) {
+                                if (!useCommandLine) {
+                                    waitingHandler.setWaitingText("Formatting " + makeblastdbProcessBuilder.getCurrentlyProcessedFileName() + " for OMSSA.");
+                                }
+                                waitingHandler.appendReport("Formatting " + makeblastdbProcessBuilder.getCurrentlyProcessedFileName() + " for OMSSA.", true, true);
+                                waitingHandler.appendReportEndLine();
                             }
-                            waitingHandler.appendReport("Formatting " + makeblastdbProcessBuilder.getCurrentlyProcessedFileName() + " for OMSSA.", true, true);
-                            waitingHandler.appendReportEndLine();
-                        }
-                        makeblastdbProcessBuilder.startProcess();
+                            makeblastdbProcessBuilder.startProcess();
 
-                        if (waitingHandler != null) {
-                            waitingHandler.appendReport(makeblastdbProcessBuilder.getCurrentlyProcessedFileName() + " formatted for OMSSA.", true, true);
-                            waitingHandler.appendReportEndLine();
+                            if (waitingHandler != null) {
+                                waitingHandler.appendReport(makeblastdbProcessBuilder.getCurrentlyProcessedFileName() + " formatted for OMSSA.", true, true);
+                                waitingHandler.appendReportEndLine();
+                            }
                         }
+                    } finally {
+                        makeblastdbLock.release();
                     }
 
                     // Write modification files to the OMSSA directory and save PTM indexes in the search parameters
@@ -1882,11 +2202,22 @@ public class SearchHandler {
                 waitingHandler.increasePrimaryProgressCounter(); // just to not be stuck at 0% for the whole first search
 
                 if (enableTide && !waitingHandler.isRunCanceled()) {
-                    // create the tide index
+                    // create the tide index, or reuse the index created by another process with the same settings
                     tideIndexProcessBuilder = new TideIndexProcessBuilder(tideLocation, searchParameters, waitingHandler, exceptionHandler);
-                    waitingHandler.appendReport("Indexing " + fastaFile.getName() + " for Tide.", true, true);
-                    waitingHandler.appendReportEndLine();
-                    tideIndexProcessBuilder.startProcess();
+                    tideIndexLock = lockTideIndex(tideIndexProcessBuilder);
+                }
+
+                if (enableComet && cometIndex && !waitingHandler.isRunCanceled()) {
+                    // create the comet peptide index, or reuse the index created by a previous search with the same database settings
+                    cometIndexProcessBuilder = new CometIndexProcessBuilder(cometLocation, searchParameters, waitingHandler, exceptionHandler,
+                            processingPreferences.getnThreads(), utilitiesUserPreferences.getRefMass());
+                    cometIndexLock = lockCometIndex(cometIndexProcessBuilder);
+                }
+
+                if (enableMsgf && !waitingHandler.isRunCanceled()) {
+                    // create the ms-gf+ database files once, instead of letting concurrent ms-gf+ searches create them
+                    msgfIndexProcessBuilder = new MsgfIndexProcessBuilder(msgfLocation, searchParameters, waitingHandler, exceptionHandler, useCommandLine);
+                    msgfIndexLock = lockMsgfIndex(msgfIndexProcessBuilder);
                 }
 
                 // convert raw files
@@ -1912,18 +2243,47 @@ public class SearchHandler {
                         File rawFile = rawFiles.get(i);
                         String rawFileName = rawFile.getName();
                         File folder = rawFile.getParentFile();
-                        String mgfFileName = Util.removeExtension(rawFileName) + ".mgf";
-                        File mgfFile = new File(folder, mgfFileName);
-                        if (!mgfFile.exists()) {
-                            MsConvertProcessBuilder msConvertProcessBuilder = new MsConvertProcessBuilder(waitingHandler, exceptionHandler, rawFile, folder, getMsConvertParameters());
-                            msConvertProcessBuilders.add(msConvertProcessBuilder);
-                            pool.submit(msConvertProcessBuilder);
-                            // @TODO: validate the mgf file!
-                        } else {
-                            waitingHandler.appendReport(mgfFileName + " already exists. Conversion canceled.", true, true);
+
+                        SpectrumFormat sourceFormat = SpectrumFormat.getSpectrumFormat(rawFile);
+                        EnumMap<SpectrumFormat, File> rawFormatFiles = new EnumMap<SpectrumFormat, File>(SpectrumFormat.class);
+                        rawFormatFiles.put(sourceFormat, rawFile);
+
+                        // run msconvert only for the formats needed by the search engines, the other conversions are done when needed
+                        boolean converted = false;
+                        for (SpectrumFormat format : conversionPlan.getConversions(sourceFormat)) {
+                            if (SpectrumConversionPlan.isMsConvertConversion(format)) {
+                                converted = true;
+                                String convertedFileName = Util.removeExtension(rawFileName) + format.fileNameEnding;
+                                File convertedFile = new File(folder, convertedFileName);
+                                if (!convertedFile.exists()) {
+                                    File fromFile = rawFormatFiles.get(conversionPlan.getConversionSource(sourceFormat, format));
+                                    MsConvertProcessBuilder msConvertProcessBuilder = new MsConvertProcessBuilder(waitingHandler, exceptionHandler, fromFile, folder, getMsConvertParameters(),
+                                            format == SpectrumFormat.mzML ? MsFormat.mzML : MsFormat.mgf);
+                                    configureHangDetection(msConvertProcessBuilder);
+                                    configureConfinement(msConvertProcessBuilder, 1);
+                                    msConvertProcessBuilders.add(msConvertProcessBuilder);
+                                    synchronized (msConvertFiles) {
+                                        msConvertFiles.add(convertedFile);
+                                    }
+                                    pool.submit(msConvertProcessBuilder);
+                                    // @TODO: validate the mgf file!
+                                } else {
+                                    waitingHandler.appendReport(convertedFileName + " already exists. Conversion canceled.", true, true);
+                                    waitingHandler.appendReportEndLine();
+                                }
+                                rawFormatFiles.put(format, convertedFile);
+                            }
+                        }
+
+                        if (!converted) {
+                            waitingHandler.appendReport(rawFileName + " searched without conversion.", true, true);
                             waitingHandler.appendReportEndLine();
                         }
-                        mgfFiles.add(mgfFile);
+
+                        File spectrumFile = rawFormatFiles.get(conversionPlan.getRunFormat(sourceFormat));
+                        sourceFormats.put(spectrumFile.getName(), sourceFormat);
+                        formatFiles.put(spectrumFile.getName(), rawFormatFiles);
+                        mgfFiles.add(spectrumFile);
                     }
 
                     if (waitingHandler.isRunCanceled()) {
@@ -1948,8 +2308,16 @@ public class SearchHandler {
                     waitingHandler.appendReportEndLine();
                     waitingHandler.appendReport("Indexing spectrum files.", true, true);
                     SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
-                    for (File mgfFile : mgfFiles) {
-                        spectrumFactory.addSpectra(mgfFile);
+                    for (File spectrumFile : mgfFiles) {
+                        // the mgf file can be converted for some engines only
+                        File mgfFile = spectrumFile;
+                        EnumMap<SpectrumFormat, File> spectrumFormatFiles = formatFiles.get(spectrumFile.getName());
+                        if (spectrumFormatFiles != null) {
+                            mgfFile = spectrumFormatFiles.get(SpectrumFormat.mgf);
+                        }
+                        if (mgfFile != null && !MzmlFiles.isMzml(mgfFile)) {
+                            spectrumFactory.addSpectra(mgfFile);
+                        }
                     }
 
                     // indexing the spectrum files
@@ -1960,14 +2328,33 @@ public class SearchHandler {
                 if (!waitingHandler.isRunCanceled()) {
                     saveInputFile(outputTempFolder);
                     waitingHandler.increasePrimaryProgressCounter();
+
+                    // pack the identification files as soon as they are created
+                    outputTimeStamp = getOutputDate();
+                    if (utilitiesUserPreferences.getOutputOption() != SearchGuiOutputOption.no_zip) {
+                        outputArchiver = new SearchGUIOutputArchiver(utilitiesUserPreferences.getOutputOption(), outputFolder, outputTempFolder,
+                                utilitiesUserPreferences.isIncludeDateInOutputName(), identificationParametersFile, enableOmssa,
+                                utilitiesUserPreferences.outputData(), fastaFile, mgfFiles, waitingHandler);
+                    }
                 }
 
                 // keep track of the identification files created in a map: spectrum file name -> algorithm index -> identification file
                 HashMap<String, HashMap<Integer, File>> identificationFiles = new HashMap<String, HashMap<Integer, File>>(mgfFiles.size());
+                SearchHandler.this.identificationFiles = identificationFiles;
 
                 // keep track of the spectrum files used to generate the id files
                 idFileToSpectrumFileMap = new HashMap<String, File>();
 
+                // search several spectrum files in one process with the engines supporting it, Tide only with text output as the results are combined
+                boolean engineBatches = engineBatchSize != 1 && getMgfFiles().size() > 1;
+                int batchSize = engineBatchSize == 0 ? getMgfFiles().size() : engineBatchSize;
+                boolean tideBatches = enableTide && engineBatches
+                        && ((TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex())).getTextOutput();
+
+                // run novor in parallel processes on shards of all spectrum files
+                int nNovorWorkers = novorWorkers == 0 ? processingPreferences.getnThreads() : novorWorkers;
+                boolean novorPool = enableNovor && nNovorWorkers > 1;
+
                 for (int i = 0; i < getMgfFiles().size() && !waitingHandler.isRunCanceled(); i++) {
 
                     File spectrumFile = getMgfFiles().get(i);
@@ -1980,15 +2367,25 @@ public class SearchHandler {
                         waitingHandler.setWaitingText("Processing: " + spectrumFileName + " (" + (i + 1) + "/" + getMgfFiles().size() + ")");
                     }
 
+                    // search the spectrum files of the batch starting with this file
+                    if (engineBatches && i % batchSize == 0) {
+                        ArrayList<File> batch = new ArrayList<File>(getMgfFiles().subList(i, Math.min(i + batchSize, getMgfFiles().size())));
+                        searchBatch(batch, searchParameters, outputTempFolder, identificationFiles, tideBatches);
+                    }
+
+                    if (novorPool && i == 0 && !waitingHandler.isRunCanceled()) {
+                        searchNovorPool(getMgfFiles(), nNovorWorkers, searchParameters, outputTempFolder, identificationFiles);
+                    }
+
                     if (enableXtandem && !waitingHandler.isRunCanceled()) {
                         File xTandemOutputFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + ".t.xml");
                         xTandemProcessBuilder = new TandemProcessBuilder(xtandemLocation,
-                                spectrumFile.getAbsolutePath(), xTandemOutputFile.getAbsolutePath(),
-                                searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                                getEngineSpectrumFile(spectrumFile, Advocate.xtandem, searchParameters).getAbsolutePath(), xTandemOutputFile.getAbsolutePath(),
+                                searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads(), configurationCache);
 
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.xtandem.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        xTandemProcessBuilder.startProcess();
+                        runSearchProcess(xTandemProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             if (utilitiesUserPreferences.renameXTandemFile()) {
@@ -2014,6 +2411,7 @@ public class SearchHandler {
                             if (xTandemOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.xtandem.getIndex(), xTandemOutputFile);
                                 idFileToSpectrumFileMap.put(xTandemOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.xtandem.getIndex(), xTandemOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.xtandem.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2021,13 +2419,13 @@ public class SearchHandler {
                         }
                     }
 
-                    if (enableMyriMatch && !waitingHandler.isRunCanceled()) {
+                    if (enableMyriMatch && !engineBatches && !waitingHandler.isRunCanceled()) {
                         File myriMatchOutputFile = new File(outputTempFolder, getMyriMatchFileName(spectrumFileName));
                         myriMatchProcessBuilder = new MyriMatchProcessBuilder(myriMatchLocation,
-                                spectrumFile.getAbsolutePath(), outputTempFolder, searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                                getEngineSpectrumFile(spectrumFile, Advocate.myriMatch, searchParameters).getAbsolutePath(), outputTempFolder, searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.myriMatch.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        myriMatchProcessBuilder.startProcess();
+                        runSearchProcess(myriMatchProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2038,6 +2436,7 @@ public class SearchHandler {
                             if (myriMatchOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.myriMatch.getIndex(), myriMatchOutputFile);
                                 idFileToSpectrumFileMap.put(myriMatchOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.myriMatch.getIndex(), myriMatchOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.myriMatch.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2049,10 +2448,11 @@ public class SearchHandler {
                         File msAmandaOutputFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + ".ms-amanda.csv");
                         String filePath = msAmandaOutputFile.getAbsolutePath();
                         msAmandaProcessBuilder = new MsAmandaProcessBuilder(msAmandaLocation,
-                                spectrumFile.getAbsolutePath(), filePath, searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                                getEngineSpectrumFile(spectrumFile, Advocate.msAmanda, searchParameters).getAbsolutePath(), filePath, searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads(),
+                                configurationCache);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.msAmanda.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        msAmandaProcessBuilder.startProcess();
+                        runSearchProcess(msAmandaProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2063,6 +2463,7 @@ public class SearchHandler {
                             if (msAmandaOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.msAmanda.getIndex(), msAmandaOutputFile);
                                 idFileToSpectrumFileMap.put(msAmandaOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.msAmanda.getIndex(), msAmandaOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.msAmanda.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2070,13 +2471,14 @@ public class SearchHandler {
                         }
                     }
 
-                    if (enableMsgf && !waitingHandler.isRunCanceled()) {
+                    if (enableMsgf && !engineBatches && !waitingHandler.isRunCanceled()) {
                         File msgfOutputFile = new File(outputTempFolder, Util.removeExtension(spectrumFileName) + ".msgf.mzid");
                         msgfProcessBuilder = new MsgfProcessBuilder(msgfLocation,
-                                spectrumFile.getAbsolutePath(), msgfOutputFile, searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads(), useCommandLine);
+                                new ArrayList<File>(Arrays.asList(getEngineSpectrumFile(spectrumFile, Advocate.msgf, searchParameters))), new ArrayList<File>(Arrays.asList(msgfOutputFile)),
+                                searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads(), useCommandLine, configurationCache);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.msgf.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        msgfProcessBuilder.startProcess();
+                        runSearchProcess(msgfProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2087,6 +2489,7 @@ public class SearchHandler {
                             if (msgfOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.msgf.getIndex(), msgfOutputFile);
                                 idFileToSpectrumFileMap.put(msgfOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.msgf.getIndex(), msgfOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.msgf.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2097,11 +2500,11 @@ public class SearchHandler {
                     if (enableOmssa && !waitingHandler.isRunCanceled()) {
                         File omssaOutputFile = new File(outputTempFolder, getOMSSAFileName(spectrumFileName));
                         omssaProcessBuilder = new OmssaclProcessBuilder(omssaLocation,
-                                spectrumFile.getAbsolutePath(), omssaOutputFile, searchParameters, waitingHandler, exceptionHandler,
+                                getEngineSpectrumFile(spectrumFile, Advocate.omssa, searchParameters).getAbsolutePath(), omssaOutputFile, searchParameters, waitingHandler, exceptionHandler,
                                 utilitiesUserPreferences.getRefMass(), processingPreferences.getnThreads());
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.omssa.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        omssaProcessBuilder.startProcess();
+                        runSearchProcess(omssaProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2112,6 +2515,7 @@ public class SearchHandler {
                             if (omssaOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.omssa.getIndex(), omssaOutputFile);
                                 idFileToSpectrumFileMap.put(omssaOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.omssa.getIndex(), omssaOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.omssa.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2119,23 +2523,25 @@ public class SearchHandler {
                         }
                     }
 
-                    if (enableComet && !waitingHandler.isRunCanceled()) {
+                    if (enableComet && !engineBatches && !waitingHandler.isRunCanceled()) {
 
                         File cometOutputFile = new File(outputTempFolder, getCometFileName(spectrumFileName));
                         // Comet does not overwrite files but crashes
                         if (cometOutputFile.exists()) {
                             cometOutputFile.delete();
                         }
-                        cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, spectrumFile, waitingHandler, exceptionHandler,
-                                processingPreferences.getnThreads(), utilitiesUserPreferences.getRefMass());
+                        File cometSpectrumFile = getEngineSpectrumFile(spectrumFile, Advocate.comet, searchParameters);
+                        cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, new ArrayList<File>(Arrays.asList(cometSpectrumFile)),
+                                getCometDatabaseFile(searchParameters), waitingHandler, exceptionHandler, processingPreferences.getnThreads(), utilitiesUserPreferences.getRefMass());
+                        configureCometBatchSize(cometProcessBuilder, new ArrayList<File>(Arrays.asList(spectrumFile)), searchParameters);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.comet.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        cometProcessBuilder.startProcess();
+                        runSearchProcess(cometProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
 
                             // move the comet result file to the results folder
-                            File tempCometOutputFile = new File(spectrumFile.getParent(), getCometFileName(spectrumFileName));
+                            File tempCometOutputFile = new File(cometSpectrumFile.getParent(), getCometFileName(spectrumFileName));
                             FileUtils.moveFile(tempCometOutputFile, cometOutputFile);
 
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2146,6 +2552,7 @@ public class SearchHandler {
                             if (cometOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.comet.getIndex(), cometOutputFile);
                                 idFileToSpectrumFileMap.put(cometOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.comet.getIndex(), cometOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.comet.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2153,23 +2560,19 @@ public class SearchHandler {
                         }
                     }
 
-                    File ms2File = null;
+                    if (enableTide && !tideBatches && !waitingHandler.isRunCanceled()) {
 
-                    if (enableTide && !waitingHandler.isRunCanceled()) {
-
-                        waitingHandler.appendReport("Converting spectrum file " + spectrumFileName + " for Tide.", true, true);
-                        ms2File = new File(getPeakListFolder(getJarFilePath()), Util.removeExtension(spectrumFileName) + ".ms2");
-                        Ms2Exporter.mgfToMs2(spectrumFile, ms2File, true);
+                        File tideSpectrumFile = getEngineSpectrumFile(spectrumFile, Advocate.tide, searchParameters);
 
                         File tideOutputFile = new File(outputTempFolder, getTideFileName(spectrumFileName));
 
                         // perform the tide search
                         if (!waitingHandler.isRunCanceled()) {
                             tideSearchProcessBuilder = new TideSearchProcessBuilder(tideLocation, searchParameters, 
-                                    ms2File, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                                    tideSpectrumFile, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
                             waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.tide.getName() + ".", true, true);
                             waitingHandler.appendReportEndLine();
-                            tideSearchProcessBuilder.startProcess();
+                            runStreamedSearchProcess(tideSearchProcessBuilder, new ArrayList<File>(Arrays.asList(spectrumFile)), Advocate.tide, searchParameters);
                         }
 
                         if (!waitingHandler.isRunCanceled()) {
@@ -2188,6 +2591,7 @@ public class SearchHandler {
                             if (tideOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.tide.getIndex(), tideOutputFile);
                                 idFileToSpectrumFileMap.put(tideOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.tide.getIndex(), tideOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.tide.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2195,21 +2599,15 @@ public class SearchHandler {
                         }
                     }
 
-                    File aplFile = null;
-                    if (enableAndromeda && !waitingHandler.isRunCanceled()) {
-                        waitingHandler.appendReport("Converting spectrum file " + spectrumFileName + " for Andromeda.", true, true);
-                        aplFile = new File(getPeakListFolder(getJarFilePath()), Util.removeExtension(spectrumFileName) + ".apl");
-                        AndromedaParameters andromedaParameters = (AndromedaParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.andromeda.getIndex());
-                        AplExporter.mgfToApl(spectrumFile, aplFile, andromedaParameters.getFragmentationMethod(), searchParameters.getMinChargeSearched().value, searchParameters.getMaxChargeSearched().value);
-                    }
-
                     if (enableAndromeda && !waitingHandler.isRunCanceled()) {
 
+                        File aplFile = getEngineSpectrumFile(spectrumFile, Advocate.andromeda, searchParameters);
                         File andromedaOutputFile = new File(outputTempFolder, getAndromedaFileName(spectrumFileName));
-                        andromedaProcessBuilder = new AndromedaProcessBuilder(andromedaLocation, searchParameters, identificationParametersFile, aplFile, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                        andromedaProcessBuilder = new AndromedaProcessBuilder(andromedaLocation, searchParameters, identificationParametersFile, aplFile, waitingHandler, exceptionHandler, processingPreferences.getnThreads(),
+                                configurationCache);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.andromeda.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        andromedaProcessBuilder.startProcess();
+                        runStreamedSearchProcess(andromedaProcessBuilder, new ArrayList<File>(Arrays.asList(spectrumFile)), Advocate.andromeda, searchParameters);
 
                         if (!waitingHandler.isRunCanceled()) {
 
@@ -2229,6 +2627,7 @@ public class SearchHandler {
                                 if (andromedaOutputFile.exists()) {
                                     runIdentificationFiles.put(Advocate.andromeda.getIndex(), andromedaOutputFile);
                                     idFileToSpectrumFileMap.put(andromedaOutputFile.getName(), spectrumFile);
+                                    archiveIdentificationFile(spectrumFile, Advocate.andromeda.getIndex(), andromedaOutputFile);
                                 } else {
                                     waitingHandler.appendReport("Could not find " + Advocate.andromeda.getName() + " result file for " + spectrumFileName + ".", true, true);
                                 }
@@ -2239,21 +2638,13 @@ public class SearchHandler {
                         }
                     }
 
-                    // delete the temp apl and ms2 files
-                    if (aplFile != null) {
-                        aplFile.delete();
-                    }
-                    if (ms2File != null) {
-                        ms2File.delete();
-                    }
-
-                    if (enableNovor && !waitingHandler.isRunCanceled()) {
+                    if (enableNovor && !novorPool && !waitingHandler.isRunCanceled()) {
                         File novorOutputFile = new File(outputTempFolder, getNovorFileName(spectrumFileName));
                         novorProcessBuilder = new NovorProcessBuilder(novorLocation,
-                                spectrumFile, novorOutputFile, searchParameters, useCommandLine, waitingHandler, exceptionHandler);
+                                getEngineSpectrumFile(spectrumFile, Advocate.novor, searchParameters), novorOutputFile, searchParameters, useCommandLine, waitingHandler, exceptionHandler, configurationCache);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.novor.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        novorProcessBuilder.startProcess();
+                        runSearchProcess(novorProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2264,6 +2655,7 @@ public class SearchHandler {
                             if (novorOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.novor.getIndex(), novorOutputFile);
                                 idFileToSpectrumFileMap.put(novorOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.novor.getIndex(), novorOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.novor.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
@@ -2271,13 +2663,13 @@ public class SearchHandler {
                         }
                     }
 
-                    if (enableDirecTag && !waitingHandler.isRunCanceled()) {
+                    if (enableDirecTag && !engineBatches && !waitingHandler.isRunCanceled()) {
                         File direcTagOutputFile = new File(outputTempFolder, getDirecTagFileName(spectrumFileName));
                         direcTagProcessBuilder = new DirecTagProcessBuilder(direcTagLocation,
-                                spectrumFile, processingPreferences.getnThreads(), outputTempFolder, searchParameters, waitingHandler, exceptionHandler);
+                                getEngineSpectrumFile(spectrumFile, Advocate.direcTag, searchParameters), processingPreferences.getnThreads(), outputTempFolder, searchParameters, waitingHandler, exceptionHandler);
                         waitingHandler.appendReport("Processing " + spectrumFileName + " with " + Advocate.direcTag.getName() + ".", true, true);
                         waitingHandler.appendReportEndLine();
-                        direcTagProcessBuilder.startProcess();
+                        runSearchProcess(direcTagProcessBuilder, spectrumFile);
 
                         if (!waitingHandler.isRunCanceled()) {
                             HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
@@ -2288,29 +2680,74 @@ public class SearchHandler {
                             if (direcTagOutputFile.exists()) {
                                 runIdentificationFiles.put(Advocate.direcTag.getIndex(), direcTagOutputFile);
                                 idFileToSpectrumFileMap.put(direcTagOutputFile.getName(), spectrumFile);
+                                archiveIdentificationFile(spectrumFile, Advocate.direcTag.getIndex(), direcTagOutputFile);
                             } else {
                                 waitingHandler.appendReport("Could not find " + Advocate.direcTag.getName() + " result file for " + spectrumFileName + ".", true, true);
                             }
                             waitingHandler.increasePrimaryProgressCounter();
                         }
                     }
+
+                    // all search engines are done with this spectrum file
+                    deleteConvertedFiles(spectrumFile);
+                    if (outputArchiver != null && !waitingHandler.isRunCanceled()) {
+                        outputArchiver.spectrumFileCompleted(spectrumFile);
+                    }
+                }
+
+                // delete the converted files left by a canceled search
+                for (File spectrumFile : getMgfFiles()) {
+                    deleteConvertedFiles(spectrumFile);
+                }
+
+                // release the tide index
+                if (tideIndexLock != null) {
+                    tideIndexLock.release();
+                    tideIndexLock = null;
+                }
+
+                // release the comet index, kept for the next searches
+                if (cometIndexLock != null) {
+                    cometIndexLock.release();
+                    cometIndexLock = null;
+                }
+
+                // release the ms-gf+ database files, kept for the next searches
+                if (msgfIndexLock != null) {
+                    msgfIndexLock.release();
+                    msgfIndexLock = null;
                 }
 
+                // delete the cached configuration files
+                configurationCache.clear();
+
                 // delete the tide index and the crux-output folder?
-                if (enableTide) {
+                if (enableTide && tideIndexProcessBuilder != null) {
 
                     TideParameters tideParameters = ((TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex()));
 
                     if (tideParameters.getRemoveTempFolders()) {
-                        String tideResultsFolderName = tideParameters.getOutputFolderName();
-                        File tideResultsFolder = new File(tideLocation, tideResultsFolderName);
-                        if (tideResultsFolder.exists()) {
-                            FileUtils.deleteDirectory(tideResultsFolder);
-                        }
 
-                        File tideIndexFolder = new File(tideLocation, "fasta-index");
-                        if (tideIndexFolder.exists()) {
-                            FileUtils.deleteDirectory(tideIndexFolder);
+                        // only delete the folders if no other process is using them
+                        DatabaseLock exclusiveTideIndexLock = DatabaseLock.tryLock(tideIndexProcessBuilder.getIndexLockFile(), false);
+
+                        if (exclusiveTideIndexLock != null) {
+                            try {
+                                String tideResultsFolderName = tideParameters.getOutputFolderName();
+                                File tideResultsFolder = new File(tideLocation, tideResultsFolderName);
+                                if (tideResultsFolder.exists()) {
+                                    FileUtils.deleteDirectory(tideResultsFolder);
+                                }
+
+                                File tideIndexFolder = tideIndexProcessBuilder.getIndexFolder();
+                                if (tideIndexFolder.exists()) {
+                                    FileUtils.deleteDirectory(tideIndexFolder);
+                                }
+                            } finally {
+                                exclusiveTideIndexLock.release();
+                            }
+                        } else {
+                            waitingHandler.appendReport("The " + Advocate.tide.getName() + " index is used by another process and will not be deleted.", true, true);
                         }
                     }
                 }
@@ -2318,20 +2755,27 @@ public class SearchHandler {
                 // save the ptm mappings for novor and directag
                 identificationParametersFactory.addIdentificationParameters(identificationParameters);
 
-                outputTimeStamp = getOutputDate();
-
                 if (!waitingHandler.isRunCanceled()) {
                     // organize the output files
-                    if (utilitiesUserPreferences.getOutputOption() != SearchGuiOutputOption.no_zip) {
+                    if (outputArchiver != null) {
                         waitingHandler.appendReport("Zipping output files.", true, true);
+                        waitingHandler.appendReportEndLine();
+                        outputArchiver.finish();
+                        outputArchiver = null;
                     } else {
                         waitingHandler.appendReport("Preparing output files.", true, true);
+                        waitingHandler.appendReportEndLine();
+                        organizeOutput(outputFolder, outputTempFolder, identificationFiles, identificationParametersFile, utilitiesUserPreferences.isIncludeDateInOutputName());
                     }
-                    waitingHandler.appendReportEndLine();
-                    organizeOutput(outputFolder, outputTempFolder, identificationFiles, identificationParametersFile, utilitiesUserPreferences.isIncludeDateInOutputName());
                     waitingHandler.increasePrimaryProgressCounter();
                 }
 
+                // remove the incomplete archives
+                if (outputArchiver != null) {
+                    outputArchiver.cancel();
+                    outputArchiver = null;
+                }
+
                 if (enablePeptideShaker && !waitingHandler.isRunCanceled()) { // @TODO: the output file checks below don't work when the date is added to the file name... 
 
                     ArrayList<File> identificationFilesList = new ArrayList<File>();
@@ -2503,63 +2947,960 @@ public class SearchHandler {
                 waitingHandler.appendReport("Error: " + e.getMessage(), true, true);
                 waitingHandler.appendReport("An error occurred while running SearchGUI. Please contact the developers.", true, true);
                 e.printStackTrace();
+                searchFailed = true;
+                if (tideIndexLock != null) {
+                    try {
+                        tideIndexLock.release();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                }
+                if (cometIndexLock != null) {
+                    try {
+                        cometIndexLock.release();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                }
+                if (msgfIndexLock != null) {
+                    try {
+                        msgfIndexLock.release();
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                }
+                if (configurationCache != null) {
+                    configurationCache.clear();
+                }
+                for (SpectrumPipe spectrumPipe : spectrumPipes.values()) {
+                    spectrumPipe.close();
+                }
+                spectrumPipes.clear();
+                if (outputArchiver != null) {
+                    try {
+                        outputArchiver.cancel();
+                    } catch (InterruptedException ie) {
+                        ie.printStackTrace();
+                    }
+                }
                 searchCrashed();
                 return 1;
             }
         }
 
         /**
-         * Returns a boolean indicating whether the searches have finished.
+         * Returns the file to give to the given search engine for the given
+         * spectrum file, in the format planned for the engine. The file is
+         * converted if not done already, and shared with the other engines
+         * reading the same format. When streaming is enabled, the file is a
+         * named pipe for the engines reading their input sequentially, see
+         * runStreamedSearchProcess.
          *
-         * @return a boolean indicating whether the searches have finished
+         * @param spectrumFile the spectrum file
+         * @param engine the search engine
+         * @param searchParameters the search parameters
+         *
+         * @return the file to give to the search engine
+         *
+         * @throws IOException thrown if an error occurred while converting the
+         * file
          */
-        public boolean isFinished() {
-            return finished;
+        private File getEngineSpectrumFile(File spectrumFile, Advocate engine, SearchParameters searchParameters) throws IOException {
+            SpectrumFormat inputFormat = conversionPlan.getInputFormat(getSourceFormat(spectrumFile), engine);
+            boolean stream = streamSpectra && isStreamable(engine) && SpectrumPipe.isAvailable();
+            return getSpectrumFile(spectrumFile, inputFormat, searchParameters, stream);
         }
-    }
-
-    /**
-     * Save the input file.
-     *
-     * @param folder the folder where to save the input file
-     */
-    public void saveInputFile(File folder) {
 
-        File outputFile = getInputFile(folder);
-        ArrayList<File> tempMgfFiles = new ArrayList<File>(this.mgfFiles);
-        ArrayList<String> names = new ArrayList<String>();
-        for (File file : tempMgfFiles) {
-            names.add(file.getName());
-        }
-        if (outputFile.exists()) {
-            try {
-                BufferedReader br = new BufferedReader(new FileReader(outputFile));
-                String line;
-                while ((line = br.readLine()) != null) {
-                    // Skip empty lines.
-                    line = line.trim();
-                    if (!line.equals("")) {
-                        try {
-                            File newFile = new File(line);
-                            if (!names.contains(newFile.getName())) {
-                                names.add(newFile.getName());
-                                tempMgfFiles.add(newFile);
-                            }
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-                br.close();
-            } catch (IOException ioe) {
-                ioe.printStackTrace();
-                // ignore error
-                tempMgfFiles = new ArrayList<File>(this.mgfFiles);
+        /**
+         * Returns the files to give to the given search engine for the given
+         * spectrum files, see getEngineSpectrumFile.
+         *
+         * @param spectrumFiles the spectrum files
+         * @param engine the search engine
+         * @param searchParameters the search parameters
+         *
+         * @return the files to give to the search engine
+         *
+         * @throws IOException thrown if an error occurred while converting the
+         * files
+         */
+        private ArrayList<File> getEngineSpectrumFiles(ArrayList<File> spectrumFiles, Advocate engine, SearchParameters searchParameters) throws IOException {
+            ArrayList<File> engineSpectrumFiles = new ArrayList<File>(spectrumFiles.size());
+            for (File spectrumFile : spectrumFiles) {
+                engineSpectrumFiles.add(getEngineSpectrumFile(spectrumFile, engine, searchParameters));
             }
+            return engineSpectrumFiles;
         }
-        try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile));
-            for (File mgfFile : tempMgfFiles) {
+
+        /**
+         * Returns the format of the input file of the given spectrum file. The
+         * spectrum files not converted from a raw file are their own input
+         * file.
+         *
+         * @param spectrumFile the spectrum file
+         *
+         * @return the format of the input file
+         */
+        private SpectrumFormat getSourceFormat(File spectrumFile) {
+            String spectrumFileName = spectrumFile.getName();
+            SpectrumFormat sourceFormat = sourceFormats.get(spectrumFileName);
+            if (sourceFormat == null) {
+                sourceFormat = SpectrumFormat.getSpectrumFormat(spectrumFile);
+                sourceFormats.put(spectrumFileName, sourceFormat);
+                EnumMap<SpectrumFormat, File> spectrumFormatFiles = new EnumMap<SpectrumFormat, File>(SpectrumFormat.class);
+                spectrumFormatFiles.put(sourceFormat, spectrumFile);
+                formatFiles.put(spectrumFileName, spectrumFormatFiles);
+            }
+            return sourceFormat;
+        }
+
+        /**
+         * Returns the given spectrum file in the given format, converted from
+         * the mgf file if needed. The conversions with msconvert are done
+         * beforehand together with the raw files.
+         *
+         * @param spectrumFile the spectrum file
+         * @param format the format
+         * @param searchParameters the search parameters
+         * @param stream if true, the converted spectra are streamed through a
+         * named pipe where possible instead of being written to a file
+         *
+         * @return the spectrum file in the given format
+         *
+         * @throws IOException thrown if an error occurred while converting the
+         * file
+         */
+        private File getSpectrumFile(File spectrumFile, SpectrumFormat format, final SearchParameters searchParameters, boolean stream) throws IOException {
+
+            SpectrumFormat sourceFormat = getSourceFormat(spectrumFile);
+            EnumMap<SpectrumFormat, File> spectrumFormatFiles = formatFiles.get(spectrumFile.getName());
+            File file = spectrumFormatFiles.get(format);
+
+            if (file == null) {
+
+                SpectrumFormat fromFormat = conversionPlan.getConversionSource(sourceFormat, format);
+                if (fromFormat == null || SpectrumConversionPlan.isMsConvertConversion(format)) {
+                    throw new IllegalArgumentException("No conversion of " + spectrumFile.getName() + " to " + format + " planned.");
+                }
+                final File fromFile = getSpectrumFile(spectrumFile, fromFormat, searchParameters, false);
+                final SpectrumFormat toFormat = format;
+
+                file = new File(getPeakListFolder(getJarFilePath()), Util.removeExtension(spectrumFile.getName()) + format.fileNameEnding);
+                SpectrumPipe spectrumPipe = stream ? SpectrumPipe.create(file) : null;
+
+                if (spectrumPipe != null) {
+                    waitingHandler.appendReport("Streaming spectrum file " + spectrumFile.getName() + " as " + format + ".", true, true);
+                    spectrumPipe.start(new SpectrumPipe.Writer() {
+                        @Override
+                        public void write(File pipeFile) throws IOException {
+                            convertSpectrumFile(fromFile, pipeFile, toFormat, searchParameters);
+                        }
+                    });
+                    spectrumPipes.put(file, spectrumPipe);
+                } else {
+                    waitingHandler.appendReport("Converting spectrum file " + spectrumFile.getName() + " to " + format + ".", true, true);
+                    convertSpectrumFile(fromFile, file, format, searchParameters);
+                }
+
+                spectrumFormatFiles.put(format, file);
+            }
+
+            return file;
+        }
+
+        /**
+         * Converts the given mgf file to the given format.
+         *
+         * @param mgfFile the mgf file
+         * @param file the file to write to
+         * @param format the format, ms2 or apl
+         * @param searchParameters the search parameters
+         *
+         * @throws IOException thrown if an error occurred while converting the
+         * file
+         */
+        private void convertSpectrumFile(File mgfFile, File file, SpectrumFormat format, SearchParameters searchParameters) throws IOException {
+            try {
+                if (format == SpectrumFormat.ms2) {
+                    Ms2Exporter.mgfToMs2(mgfFile, file, true);
+                } else {
+                    AndromedaParameters andromedaParameters = (AndromedaParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.andromeda.getIndex());
+                    AplExporter.mgfToApl(mgfFile, file, andromedaParameters.getFragmentationMethod(), searchParameters.getMinChargeSearched().value, searchParameters.getMaxChargeSearched().value);
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("An error occurred while converting " + mgfFile.getName() + " to " + format + ".", e);
+            }
+        }
+
+        /**
+         * Runs the given search engine process as runSearchProcess and closes
+         * the named pipes the engine read the spectra from. If the engine did
+         * not read all the spectra, e.g., because it seeks in its input, the
+         * spectra are converted to files and the process is run again. The
+         * engine then reads files for the rest of the session. A process
+         * stopped by the watchdog is not run again.
+         *
+         * @param processBuilder the process builder
+         * @param spectrumFiles the spectrum files searched
+         * @param engine the search engine
+         * @param searchParameters the search parameters
+         *
+         * @throws IOException thrown if an error occurred while running the
+         * process or converting the files
+         */
+        private void runStreamedSearchProcess(SearchGUIProcessBuilder processBuilder, ArrayList<File> spectrumFiles, Advocate engine,
+                SearchParameters searchParameters) throws IOException {
+
+            runSearchProcess(processBuilder, spectrumFiles);
+
+            // close the pipes, the spectra are gone with them
+            boolean streamed = false;
+            boolean complete = true;
+            for (File spectrumFile : spectrumFiles) {
+                SpectrumFormat inputFormat = conversionPlan.getInputFormat(getSourceFormat(spectrumFile), engine);
+                EnumMap<SpectrumFormat, File> spectrumFormatFiles = formatFiles.get(spectrumFile.getName());
+                SpectrumPipe spectrumPipe = spectrumPipes.remove(spectrumFormatFiles.get(inputFormat));
+                if (spectrumPipe != null) {
+                    streamed = true;
+                    complete &= spectrumPipe.close();
+                    spectrumFormatFiles.remove(inputFormat);
+                }
+            }
+
+            if (streamed && !complete && !waitingHandler.isRunCanceled()
+                    && !processBuilder.isTimedOut() && !processBuilder.isHung()) {
+
+                synchronized (seekingEngines) {
+                    seekingEngines.add(engine);
+                }
+
+                waitingHandler.appendReport(engine.getName() + " could not read the spectra from a pipe, searching again with files.", true, true);
+                getEngineSpectrumFiles(spectrumFiles, engine, searchParameters);
+                runSearchProcess(processBuilder, spectrumFiles);
+            }
+        }
+
+        /**
+         * Deletes the temporary files converted from the mgf file of the given
+         * spectrum file for the search engines, and closes the named pipes not
+         * read. The files converted with msconvert are kept next to the raw
+         * files.
+         *
+         * @param spectrumFile the spectrum file
+         */
+        private void deleteConvertedFiles(File spectrumFile) {
+            EnumMap<SpectrumFormat, File> spectrumFormatFiles = formatFiles.get(spectrumFile.getName());
+            if (spectrumFormatFiles != null) {
+                SpectrumFormat sourceFormat = sourceFormats.get(spectrumFile.getName());
+                for (SpectrumFormat format : new ArrayList<SpectrumFormat>(spectrumFormatFiles.keySet())) {
+                    if (format != sourceFormat && !SpectrumConversionPlan.isMsConvertConversion(format)) {
+                        File file = spectrumFormatFiles.remove(format);
+                        SpectrumPipe spectrumPipe = spectrumPipes.remove(file);
+                        if (spectrumPipe != null) {
+                            spectrumPipe.close();
+                        } else {
+                            file.delete();
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Searches the given spectrum files in one process per search engine
+         * with the engines supporting several spectrum files, i.e., MyriMatch,
+         * Comet, MS-GF+, DirecTag and, if batchTide is true, Tide. The
+         * database is thus loaded and indexed once for all files, and MS-GF+
+         * is started once. The result files are mapped back to the spectrum
+         * files.
+         *
+         * @param spectrumFiles the spectrum files to search
+         * @param searchParameters the search parameters
+         * @param outputTempFolder the folder where to write the result files
+         * @param identificationFiles the identification files created, spectrum
+         * file name -&gt; algorithm index -&gt; identification file
+         * @param batchTide indicates whether Tide searches the spectrum files in
+         * one process
+         *
+         * @throws IOException thrown if an error occurred while searching or
+         * while moving the result files
+         */
+        private void searchBatch(ArrayList<File> spectrumFiles, SearchParameters searchParameters, File outputTempFolder,
+                HashMap<String, HashMap<Integer, File>> identificationFiles, boolean batchTide) throws IOException {
+
+            String batchFileNames = spectrumFiles.size() + " spectrum files";
+            if (spectrumFiles.size() == 1) {
+                batchFileNames = spectrumFiles.get(0).getName();
+            }
+
+            if (enableMyriMatch && !waitingHandler.isRunCanceled()) {
+                myriMatchProcessBuilder = new MyriMatchProcessBuilder(myriMatchLocation,
+                        getEngineSpectrumFiles(spectrumFiles, Advocate.myriMatch, searchParameters), outputTempFolder, searchParameters, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                waitingHandler.appendReport("Processing " + batchFileNames + " with " + Advocate.myriMatch.getName() + ".", true, true);
+                waitingHandler.appendReportEndLine();
+                runSearchProcess(myriMatchProcessBuilder, spectrumFiles);
+
+                if (!waitingHandler.isRunCanceled()) {
+                    for (File spectrumFile : spectrumFiles) {
+                        File myriMatchOutputFile = new File(outputTempFolder, getMyriMatchFileName(spectrumFile.getName()));
+                        addIdentificationFile(identificationFiles, spectrumFile, Advocate.myriMatch, myriMatchOutputFile);
+                    }
+                }
+            }
+
+            if (enableMsgf && !waitingHandler.isRunCanceled()) {
+
+                ArrayList<File> msgfOutputFiles = new ArrayList<File>(spectrumFiles.size());
+                for (File spectrumFile : spectrumFiles) {
+                    msgfOutputFiles.add(new File(outputTempFolder, Util.removeExtension(spectrumFile.getName()) + ".msgf.mzid"));
+                }
+
+                msgfProcessBuilder = new MsgfProcessBuilder(msgfLocation, getEngineSpectrumFiles(spectrumFiles, Advocate.msgf, searchParameters), msgfOutputFiles, searchParameters,
+                        waitingHandler, exceptionHandler, processingPreferences.getnThreads(), useCommandLine, configurationCache);
+                waitingHandler.appendReport("Processing " + batchFileNames + " with " + Advocate.msgf.getName() + ".", true, true);
+                waitingHandler.appendReportEndLine();
+                runSearchProcess(msgfProcessBuilder, spectrumFiles);
+
+                if (!waitingHandler.isRunCanceled()) {
+                    for (int i = 0; i < spectrumFiles.size(); i++) {
+                        addIdentificationFile(identificationFiles, spectrumFiles.get(i), Advocate.msgf, msgfOutputFiles.get(i));
+                    }
+                }
+            }
+
+            if (enableComet && !waitingHandler.isRunCanceled()) {
+
+                // Comet does not overwrite files but crashes
+                for (File spectrumFile : spectrumFiles) {
+                    File cometOutputFile = new File(outputTempFolder, getCometFileName(spectrumFile.getName()));
+                    if (cometOutputFile.exists()) {
+                        cometOutputFile.delete();
+                    }
+                }
+
+                ArrayList<File> cometSpectrumFiles = getEngineSpectrumFiles(spectrumFiles, Advocate.comet, searchParameters);
+                cometProcessBuilder = new CometProcessBuilder(cometLocation, searchParameters, cometSpectrumFiles, getCometDatabaseFile(searchParameters),
+                        waitingHandler, exceptionHandler, processingPreferences.getnThreads(), utilitiesUserPreferences.getRefMass());
+                configureCometBatchSize(cometProcessBuilder, spectrumFiles, searchParameters);
+                waitingHandler.appendReport("Processing " + batchFileNames + " with " + Advocate.comet.getName() + ".", true, true);
+                waitingHandler.appendReportEndLine();
+                runSearchProcess(cometProcessBuilder, spectrumFiles);
+
+                if (!waitingHandler.isRunCanceled()) {
+                    for (int i = 0; i < spectrumFiles.size(); i++) {
+
+                        File spectrumFile = spectrumFiles.get(i);
+
+                        // move the comet result file to the results folder
+                        File cometOutputFile = new File(outputTempFolder, getCometFileName(spectrumFile.getName()));
+                        File tempCometOutputFile = new File(cometSpectrumFiles.get(i).getParent(), getCometFileName(spectrumFile.getName()));
+                        if (tempCometOutputFile.exists()) {
+                            FileUtils.moveFile(tempCometOutputFile, cometOutputFile);
+                        }
+
+                        addIdentificationFile(identificationFiles, spectrumFile, Advocate.comet, cometOutputFile);
+                    }
+                }
+            }
+
+            if (enableTide && batchTide && !waitingHandler.isRunCanceled()) {
+
+                ArrayList<File> tideSpectrumFiles = getEngineSpectrumFiles(spectrumFiles, Advocate.tide, searchParameters);
+
+                try {
+                    // perform the tide search
+                    if (!waitingHandler.isRunCanceled()) {
+                        tideSearchProcessBuilder = new TideSearchProcessBuilder(tideLocation, searchParameters,
+                                tideSpectrumFiles, waitingHandler, exceptionHandler, processingPreferences.getnThreads());
+                        waitingHandler.appendReport("Processing " + batchFileNames + " with " + Advocate.tide.getName() + ".", true, true);
+                        waitingHandler.appendReportEndLine();
+                        runStreamedSearchProcess(tideSearchProcessBuilder, spectrumFiles, Advocate.tide, searchParameters);
+                    }
+
+                    if (!waitingHandler.isRunCanceled()) {
+
+                        String tideResultsFolderName = ((TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex())).getOutputFolderName();
+                        File tideResultsFolder = new File(tideLocation, tideResultsFolderName);
+
+                        // move the tide result file to the results folder, split per spectrum file
+                        File tempTideOutputFile = new File(tideResultsFolder, getTideFileName(tideSearchProcessBuilder.getFileRoot() + ".ms2"));
+                        if (spectrumFiles.size() == 1) {
+                            FileUtils.moveFile(tempTideOutputFile, new File(outputTempFolder, getTideFileName(spectrumFiles.get(0).getName())));
+                        } else if (tempTideOutputFile.exists()) {
+                            splitTideResults(tempTideOutputFile, spectrumFiles, outputTempFolder);
+                            tempTideOutputFile.delete();
+                        }
+
+                        for (File spectrumFile : spectrumFiles) {
+                            File tideOutputFile = new File(outputTempFolder, getTideFileName(spectrumFile.getName()));
+                            addIdentificationFile(identificationFiles, spectrumFile, Advocate.tide, tideOutputFile);
+                        }
+                    }
+                } finally {
+                    // delete the temp ms2 files
+                    for (File spectrumFile : spectrumFiles) {
+                        deleteConvertedFiles(spectrumFile);
+                    }
+                }
+            }
+
+            if (enableDirecTag && !waitingHandler.isRunCanceled()) {
+                direcTagProcessBuilder = new DirecTagProcessBuilder(direcTagLocation,
+                        getEngineSpectrumFiles(spectrumFiles, Advocate.direcTag, searchParameters), processingPreferences.getnThreads(), outputTempFolder, searchParameters, waitingHandler, exceptionHandler);
+                waitingHandler.appendReport("Processing " + batchFileNames + " with " + Advocate.direcTag.getName() + ".", true, true);
+                waitingHandler.appendReportEndLine();
+                runSearchProcess(direcTagProcessBuilder, spectrumFiles);
+
+                if (!waitingHandler.isRunCanceled()) {
+                    for (File spectrumFile : spectrumFiles) {
+                        File direcTagOutputFile = new File(outputTempFolder, getDirecTagFileName(spectrumFile.getName()));
+                        addIdentificationFile(identificationFiles, spectrumFile, Advocate.direcTag, direcTagOutputFile);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Runs Novor on the given spectrum files with the given number of
+         * worker processes in parallel. Every spectrum file is split in up to
+         * one shard per worker, and every worker processes its shards of all
+         * spectrum files one after the other in the same Java virtual
+         * machine. The results of the shards are then merged per spectrum
+         * file. The parameters files are written once for all workers. If the
+         * workers cannot trap the calls to System.exit, e.g., from Java 24,
+         * every shard is processed by its own Novor process instead, with up
+         * to the given number of processes in parallel.
+         *
+         * @param spectrumFiles the spectrum files to process
+         * @param nWorkers the number of worker processes
+         * @param searchParameters the search parameters
+         * @param outputTempFolder the folder where to write the result files
+         * @param identificationFiles the identification files created, spectrum
+         * file name -&gt; algorithm index -&gt; identification file
+         *
+         * @throws IOException thrown if an error occurred while splitting the
+         * spectrum files, running Novor or merging the result files
+         * @throws InterruptedException thrown if interrupted while waiting for
+         * the workers
+         * @throws ClassNotFoundException thrown if an error occurred while
+         * getting the SearchGUI path
+         */
+        private void searchNovorPool(ArrayList<File> spectrumFiles, int nWorkers, SearchParameters searchParameters, File outputTempFolder,
+                HashMap<String, HashMap<Integer, File>> identificationFiles) throws IOException, InterruptedException, ClassNotFoundException {
+
+            File shardFolder = new File(outputTempFolder, "novor_shards");
+            shardFolder.mkdirs();
+
+            ArrayList<MgfSharder> sharders = new ArrayList<MgfSharder>(spectrumFiles.size());
+            ArrayList<ArrayList<File>> shardResultFiles = new ArrayList<ArrayList<File>>(spectrumFiles.size());
+
+            try {
+                // split the spectrum files and distribute the shards to the workers
+                ArrayList<ArrayList<File>> workerSpectrumFiles = new ArrayList<ArrayList<File>>(nWorkers);
+                ArrayList<ArrayList<File>> workerOutputFiles = new ArrayList<ArrayList<File>>(nWorkers);
+                for (int worker = 0; worker < nWorkers; worker++) {
+                    workerSpectrumFiles.add(new ArrayList<File>());
+                    workerOutputFiles.add(new ArrayList<File>());
+                }
+
+                for (int i = 0; i < spectrumFiles.size() && !waitingHandler.isRunCanceled(); i++) {
+
+                    MgfSharder sharder = new MgfSharder(getEngineSpectrumFile(spectrumFiles.get(i), Advocate.novor, searchParameters), nWorkers, MIN_NOVOR_SHARD_SIZE, shardFolder);
+                    sharders.add(sharder);
+                    ArrayList<File> resultFiles = new ArrayList<File>(sharder.getShardFiles().size());
+                    shardResultFiles.add(resultFiles);
+
+                    for (int shard = 0; shard < sharder.getShardFiles().size(); shard++) {
+                        File shardFile = sharder.getShardFiles().get(shard);
+                        File resultFile = new File(shardFolder, getNovorFileName(shardFile.getName()));
+                        resultFiles.add(resultFile);
+                        int worker = (i + shard) % nWorkers; // spread the small files over the workers
+                        workerSpectrumFiles.get(worker).add(shardFile);
+                        workerOutputFiles.get(worker).add(resultFile);
+                    }
+                }
+
+                // start the workers, unless they could not trap the calls to System.exit in a previous run
+                if (!novorExitTrapUnavailable) {
+
+                    ArrayList<NovorProcessBuilder> workers = new ArrayList<NovorProcessBuilder>(nWorkers);
+                    for (int worker = 0; worker < nWorkers && !waitingHandler.isRunCanceled(); worker++) {
+                        if (!workerSpectrumFiles.get(worker).isEmpty()) {
+                            NovorProcessBuilder novorWorker = new NovorProcessBuilder(novorLocation, workerSpectrumFiles.get(worker), workerOutputFiles.get(worker),
+                                    shardFolder, workers.isEmpty(), searchParameters, useCommandLine, waitingHandler, exceptionHandler);
+                            configureHangDetection(novorWorker);
+                            configureConfinement(novorWorker, 1);
+                            workers.add(novorWorker);
+                        }
+                    }
+
+                    if (!waitingHandler.isRunCanceled()) {
+
+                        waitingHandler.appendReport("Processing " + spectrumFiles.size() + " spectrum file(s) with " + Advocate.novor.getName()
+                                + " (" + workers.size() + " parallel processes).", true, true);
+                        waitingHandler.appendReportEndLine();
+
+                        runNovorProcesses(workers, nWorkers);
+                    }
+
+                    for (NovorProcessBuilder novorWorker : workers) {
+                        if (novorWorker.getExitValue() == ExitTrap.UNAVAILABLE_EXIT_CODE) {
+                            novorExitTrapUnavailable = true;
+                        }
+                    }
+                }
+
+                // process the shards not processed by a worker with one Novor process per shard
+                if (novorExitTrapUnavailable && !waitingHandler.isRunCanceled()) {
+
+                    ArrayList<NovorProcessBuilder> shardProcesses = new ArrayList<NovorProcessBuilder>();
+                    for (int i = 0; i < sharders.size() && !waitingHandler.isRunCanceled(); i++) {
+                        for (int shard = 0; shard < shardResultFiles.get(i).size(); shard++) {
+                            File resultFile = shardResultFiles.get(i).get(shard);
+                            if (!resultFile.exists()) {
+                                NovorProcessBuilder shardProcess = new NovorProcessBuilder(novorLocation,
+                                        new ArrayList<File>(Arrays.asList(sharders.get(i).getShardFiles().get(shard))), new ArrayList<File>(Arrays.asList(resultFile)),
+                                        shardFolder, shardProcesses.isEmpty(), searchParameters, useCommandLine, waitingHandler, exceptionHandler);
+                                configureHangDetection(shardProcess);
+                                configureConfinement(shardProcess, 1);
+                                shardProcesses.add(shardProcess);
+                            }
+                        }
+                    }
+
+                    if (!shardProcesses.isEmpty() && !waitingHandler.isRunCanceled()) {
+
+                        waitingHandler.appendReport("Processing " + shardProcesses.size() + " spectrum file shard(s) with " + Advocate.novor.getName()
+                                + " (one process per shard, " + Math.min(nWorkers, shardProcesses.size()) + " parallel processes).", true, true);
+                        waitingHandler.appendReportEndLine();
+
+                        runNovorProcesses(shardProcesses, nWorkers);
+                    }
+                }
+
+                // merge the results per spectrum file
+                for (int i = 0; i < sharders.size() && !waitingHandler.isRunCanceled(); i++) {
+
+                    File spectrumFile = spectrumFiles.get(i);
+                    File novorOutputFile = new File(outputTempFolder, getNovorFileName(spectrumFile.getName()));
+                    boolean shardsCompleted = true;
+                    for (File resultFile : shardResultFiles.get(i)) {
+                        if (!resultFile.exists()) {
+                            waitingHandler.appendReport(Advocate.novor.getName() + " result missing for " + resultFile.getName() + ".", true, true);
+                            shardsCompleted = false;
+                        }
+                    }
+                    if (shardsCompleted && !shardResultFiles.get(i).isEmpty()) {
+                        NovorProcessBuilder.mergeShardResults(sharders.get(i), shardResultFiles.get(i), novorOutputFile);
+                    }
+
+                    addIdentificationFile(identificationFiles, spectrumFile, Advocate.novor, novorOutputFile);
+                }
+            } finally {
+                novorWorkerProcessBuilders = null;
+                for (int i = 0; i < sharders.size(); i++) {
+                    sharders.get(i).deleteShards();
+                    if (i < shardResultFiles.size()) {
+                        for (File resultFile : shardResultFiles.get(i)) {
+                            resultFile.delete();
+                        }
+                    }
+                }
+                FileUtils.deleteQuietly(shardFolder);
+            }
+        }
+
+        /**
+         * Runs the given Novor processes, with up to the given number of
+         * processes in parallel.
+         *
+         * @param processes the Novor processes
+         * @param nParallel the maximal number of processes run in parallel
+         *
+         * @throws InterruptedException thrown if interrupted while waiting for
+         * the processes
+         */
+        private void runNovorProcesses(ArrayList<NovorProcessBuilder> processes, int nParallel) throws InterruptedException {
+
+            if (processes.isEmpty()) {
+                return;
+            }
+
+            novorWorkerProcessBuilders = processes;
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(nParallel, processes.size()));
+            for (NovorProcessBuilder process : processes) {
+                pool.submit(process);
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (waitingHandler.isRunCanceled()) {
+                    pool.shutdownNow();
+                }
+            }
+        }
+
+        /**
+         * Splits the text result file of a Tide search of several spectrum
+         * files into one result file per spectrum file in the given folder,
+         * using the file column of the results.
+         *
+         * @param tideResultFile the result file of the Tide search
+         * @param spectrumFiles the spectrum files searched
+         * @param outputFolder the folder where to write the result files
+         *
+         * @throws IOException thrown if an error occurred while reading or
+         * writing the files, or if the result file has no file column
+         */
+        private void splitTideResults(File tideResultFile, ArrayList<File> spectrumFiles, File outputFolder) throws IOException {
+
+            BufferedReader br = new BufferedReader(new FileReader(tideResultFile));
+            HashMap<String, BufferedWriter> writers = new HashMap<String, BufferedWriter>(spectrumFiles.size());
+
+            try {
+                String header = br.readLine();
+                if (header == null) {
+                    throw new IOException("Empty " + Advocate.tide.getName() + " result file " + tideResultFile.getName() + ".");
+                }
+
+                int fileColumn = Arrays.asList(header.split("\t")).indexOf("file");
+                if (fileColumn == -1) {
+                    throw new IOException("No file column found in " + Advocate.tide.getName() + " result file " + tideResultFile.getName() + ".");
+                }
+
+                // the header is written also for spectrum files without match
+                for (File spectrumFile : spectrumFiles) {
+                    BufferedWriter bw = new BufferedWriter(new FileWriter(new File(outputFolder, getTideFileName(spectrumFile.getName()))));
+                    writers.put(Util.removeExtension(spectrumFile.getName()), bw);
+                    bw.write(header);
+                    bw.newLine();
+                }
+
+                String line;
+                while ((line = br.readLine()) != null) {
+                    String[] elements = line.split("\t");
+                    if (elements.length > fileColumn) {
+                        BufferedWriter bw = writers.get(Util.removeExtension(new File(elements[fileColumn]).getName()));
+                        if (bw != null) {
+                            bw.write(line);
+                            bw.newLine();
+                        }
+                    }
+                }
+            } finally {
+                br.close();
+                for (BufferedWriter bw : writers.values()) {
+                    bw.close();
+                }
+            }
+        }
+
+        /**
+         * Adds the given identification file of the given spectrum file to the
+         * identification files and queues it for archiving. An error is
+         * reported if the file does not exist.
+         *
+         * @param identificationFiles the identification files, spectrum file
+         * name -&gt; algorithm index -&gt; identification file
+         * @param spectrumFile the spectrum file searched
+         * @param advocate the algorithm which produced the file
+         * @param identificationFile the identification file
+         */
+        private void addIdentificationFile(HashMap<String, HashMap<Integer, File>> identificationFiles, File spectrumFile, Advocate advocate, File identificationFile) {
+
+            String spectrumFileName = spectrumFile.getName();
+            HashMap<Integer, File> runIdentificationFiles = identificationFiles.get(spectrumFileName);
+            if (runIdentificationFiles == null) {
+                runIdentificationFiles = new HashMap<Integer, File>();
+                identificationFiles.put(spectrumFileName, runIdentificationFiles);
+            }
+            if (identificationFile.exists()) {
+                runIdentificationFiles.put(advocate.getIndex(), identificationFile);
+                idFileToSpectrumFileMap.put(identificationFile.getName(), spectrumFile);
+                archiveIdentificationFile(spectrumFile, advocate.getIndex(), identificationFile);
+            } else {
+                waitingHandler.appendReport("Could not find " + advocate.getName() + " result file for " + spectrumFileName + ".", true, true);
+            }
+            waitingHandler.increasePrimaryProgressCounter();
+        }
+
+        /**
+         * Queues the given identification file for archiving if the output is
+         * zipped.
+         *
+         * @param spectrumFile the spectrum file searched
+         * @param algorithm the index of the algorithm which produced the file
+         * @param identificationFile the identification file
+         */
+        private void archiveIdentificationFile(File spectrumFile, int algorithm, File identificationFile) {
+            if (outputArchiver != null) {
+                outputArchiver.addIdentificationFile(spectrumFile, algorithm, identificationFile);
+            }
+        }
+
+        /**
+         * Makes sure that the Tide index is up to date and returns a shared
+         * lock on it. If the index is missing or was created with other
+         * settings, it is (re)created under an exclusive lock, so that
+         * concurrent SearchGUI processes never build or overwrite the index
+         * while it is in use. The index is built once: if it is still not
+         * up to date afterwards, the search fails instead of indexing again
+         * under the exclusive lock.
+         *
+         * @param tideIndexProcessBuilder the Tide index process builder
+         *
+         * @return a shared lock on the Tide index, null if the run was
+         * canceled
+         *
+         * @throws IOException thrown if an error occurred while locking or
+         * indexing the database, or if the index could not be created
+         */
+        private DatabaseLock lockTideIndex(TideIndexProcessBuilder tideIndexProcessBuilder) throws IOException {
+
+            File lockFile = tideIndexProcessBuilder.getIndexLockFile();
+            String fastaFileName = tideIndexProcessBuilder.getCurrentlyProcessedFileName();
+            boolean indexed = false;
+
+            while (!waitingHandler.isRunCanceled()) {
+
+                DatabaseLock sharedLock = lockDatabase(lockFile, true, fastaFileName);
+
+                if (tideIndexProcessBuilder.isIndexUpToDate()) {
+                    waitingHandler.appendReport("Using existing " + Advocate.tide.getName() + " index for " + fastaFileName + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    return sharedLock;
+                }
+
+                sharedLock.release();
+
+                if (indexed) {
+                    waitingHandler.appendReport("Could not create the " + Advocate.tide.getName() + " index for " + fastaFileName + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    throw new IOException("Could not create the " + Advocate.tide.getName() + " index for " + fastaFileName + ".");
+                }
+
+                DatabaseLock exclusiveLock = lockDatabase(lockFile, false, fastaFileName);
+
+                try {
+                    // the index might have been created while waiting
+                    if (!tideIndexProcessBuilder.isIndexUpToDate() && !waitingHandler.isRunCanceled()) {
+                        tideIndexProcessBuilder.deleteIndexSignature();
+                        waitingHandler.appendReport("Indexing " + fastaFileName + " for Tide.", true, true);
+                        waitingHandler.appendReportEndLine();
+                        tideIndexProcessBuilder.startProcess();
+
+                        if (!waitingHandler.isRunCanceled() && tideIndexProcessBuilder.getIndexFolder().exists()) {
+                            tideIndexProcessBuilder.saveIndexSignature();
+                        }
+                    }
+                } finally {
+                    exclusiveLock.release();
+                }
+
+                indexed = true;
+            }
+
+            return null;
+        }
+
+        /**
+         * Makes sure that the Comet peptide index is up to date and returns a
+         * shared lock on it. If the index is missing or was created with
+         * other database settings, it is (re)created under an exclusive lock.
+         * If the index cannot be created, e.g., with a Comet version not
+         * supporting indexes, the FASTA file is searched instead.
+         *
+         * @param cometIndexProcessBuilder the Comet index process builder
+         *
+         * @return a shared lock on the Comet index, null if the run was
+         * canceled or if the index could not be created
+         *
+         * @throws IOException thrown if an error occurred while locking or
+         * indexing the database
+         */
+        private DatabaseLock lockCometIndex(CometIndexProcessBuilder cometIndexProcessBuilder) throws IOException {
+
+            File lockFile = cometIndexProcessBuilder.getIndexLockFile();
+            String fastaFileName = cometIndexProcessBuilder.getCurrentlyProcessedFileName();
+            boolean indexed = false;
+
+            while (!waitingHandler.isRunCanceled()) {
+
+                DatabaseLock sharedLock = lockDatabase(lockFile, true, fastaFileName);
+
+                if (cometIndexProcessBuilder.isIndexUpToDate()) {
+                    waitingHandler.appendReport("Using existing " + Advocate.comet.getName() + " index for " + fastaFileName + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    return sharedLock;
+                }
+
+                sharedLock.release();
+
+                if (indexed) {
+                    waitingHandler.appendReport("Could not create the " + Advocate.comet.getName() + " index for " + fastaFileName + ". Searching the FASTA file.", true, true);
+                    waitingHandler.appendReportEndLine();
+                    return null;
+                }
+
+                DatabaseLock exclusiveLock = lockDatabase(lockFile, false, fastaFileName);
+
+                try {
+                    // the index might have been created while waiting
+                    if (!cometIndexProcessBuilder.isIndexUpToDate() && !waitingHandler.isRunCanceled()) {
+                        cometIndexProcessBuilder.deleteIndexManifest();
+                        waitingHandler.appendReport("Indexing " + fastaFileName + " for Comet.", true, true);
+                        waitingHandler.appendReportEndLine();
+                        cometIndexProcessBuilder.startProcess();
+
+                        if (!waitingHandler.isRunCanceled() && cometIndexProcessBuilder.getExitValue() == 0
+                                && cometIndexProcessBuilder.getIndexFile().exists()) {
+                            cometIndexProcessBuilder.saveIndexManifest();
+                        }
+                    }
+                } finally {
+                    exclusiveLock.release();
+                }
+
+                indexed = true;
+            }
+
+            return null;
+        }
+
+        /**
+         * Makes sure that the MS-GF+ database files are up to date and
+         * returns a shared lock on them. If the files are missing or were
+         * created from another FASTA file or decoy setting, they are
+         * (re)created under an exclusive lock, so that concurrent MS-GF+
+         * searches never create them at the same time. If the files cannot be
+         * created, MS-GF+ creates them when searching as before.
+         *
+         * @param msgfIndexProcessBuilder the MS-GF+ index process builder
+         *
+         * @return a shared lock on the MS-GF+ database files, null if the run
+         * was canceled or if the files could not be created
+         *
+         * @throws IOException thrown if an error occurred while locking or
+         * indexing the database
+         */
+        private DatabaseLock lockMsgfIndex(MsgfIndexProcessBuilder msgfIndexProcessBuilder) throws IOException {
+
+            File lockFile = msgfIndexProcessBuilder.getIndexLockFile();
+            String fastaFileName = msgfIndexProcessBuilder.getCurrentlyProcessedFileName();
+            boolean indexed = false;
+
+            while (!waitingHandler.isRunCanceled()) {
+
+                DatabaseLock sharedLock = lockDatabase(lockFile, true, fastaFileName);
+
+                if (msgfIndexProcessBuilder.isIndexUpToDate()) {
+                    waitingHandler.appendReport("Using existing " + Advocate.msgf.getName() + " database files for " + fastaFileName + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    return sharedLock;
+                }
+
+                sharedLock.release();
+
+                if (indexed) {
+                    waitingHandler.appendReport("Could not create the " + Advocate.msgf.getName() + " database files for " + fastaFileName + ".", true, true);
+                    waitingHandler.appendReportEndLine();
+                    return null;
+                }
+
+                DatabaseLock exclusiveLock = lockDatabase(lockFile, false, fastaFileName);
+
+                try {
+                    // the files might have been created while waiting
+                    if (!msgfIndexProcessBuilder.isIndexUpToDate() && !waitingHandler.isRunCanceled()) {
+                        msgfIndexProcessBuilder.deleteIndex();
+                        waitingHandler.appendReport("Indexing " + fastaFileName + " for " + Advocate.msgf.getName() + ".", true, true);
+                        waitingHandler.appendReportEndLine();
+                        msgfIndexProcessBuilder.startProcess();
+
+                        if (!waitingHandler.isRunCanceled() && msgfIndexProcessBuilder.getExitValue() == 0
+                                && msgfIndexProcessBuilder.indexFilesExist()) {
+                            msgfIndexProcessBuilder.saveIndexManifest();
+                        }
+                    }
+                } finally {
+                    exclusiveLock.release();
+                }
+
+                indexed = true;
+            }
+
+            return null;
+        }
+
+        /**
+         * Returns the database to give to Comet: the peptide index when
+         * available, the FASTA file otherwise.
+         *
+         * @param searchParameters the search parameters
+         *
+         * @return the database to give to Comet
+         */
+        private File getCometDatabaseFile(SearchParameters searchParameters) {
+            if (cometIndexLock != null) {
+                return cometIndexProcessBuilder.getIndexFile();
+            }
+            return searchParameters.getFastaFile();
+        }
+
+        /**
+         * Returns a boolean indicating whether the searches have finished.
+         *
+         * @return a boolean indicating whether the searches have finished
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+    }
+
+    /**
+     * Save the input file.
+     *
+     * @param folder the folder where to save the input file
+     */
+    public void saveInputFile(File folder) {
+
+        File outputFile = getInputFile(folder);
+        ArrayList<File> tempMgfFiles = new ArrayList<File>(this.mgfFiles);
+        ArrayList<String> names = new ArrayList<String>();
+        for (File file : tempMgfFiles) {
+            names.add(file.getName());
+        }
+        if (outputFile.exists()) {
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(outputFile));
+                String line;
+                while ((line = br.readLine()) != null) {
+                    // Skip empty lines.
+                    line = line.trim();
+                    if (!line.equals("")) {
+                        try {
+                            File newFile = new File(line);
+                            if (!names.contains(newFile.getName())) {
+                                names.add(newFile.getName());
+                                tempMgfFiles.add(newFile);
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                br.close();
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+                // ignore error
+                tempMgfFiles = new ArrayList<File>(this.mgfFiles);
+            }
+        }
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(outputFile));
+            for (File mgfFile : tempMgfFiles) {
                 bw.write(mgfFile.getAbsolutePath() + System.getProperty("line.separator"));
             }
             bw.flush();
@@ -2788,6 +4129,96 @@ public class SearchHandler {
         return new File(outputFolder, SEARCHGUI_INPUT);
     }
 
+    /**
+     * Returns the identification files of the last search indexed by spectrum
+     * file name and algorithm index.
+     *
+     * @return the identification files of the last search
+     */
+    public HashMap<String, HashMap<Integer, File>> getIdentificationFiles() {
+        return identificationFiles;
+    }
+
+    /**
+     * Organizes the output of a search distributed over several SearchGUI
+     * instances. The identification files and the files needed for the output
+     * of the search engines are moved from the folders of the jobs to the
+     * output folder before being organized according to the output option.
+     *
+     * @param identificationFiles the identification files indexed by spectrum
+     * file name and algorithm index
+     * @param jobFolders the output folders of the jobs
+     * @param waitingHandler the waiting handler
+     *
+     * @throws IOException thrown if there is a problem with the files
+     */
+    public void organizeDistributedOutput(HashMap<String, HashMap<Integer, File>> identificationFiles, ArrayList<File> jobFolders,
+            WaitingHandler waitingHandler) throws IOException {
+
+        this.waitingHandler = waitingHandler;
+
+        UtilitiesUserPreferences utilitiesUserPreferences = UtilitiesUserPreferences.loadUserPreferences();
+        File outputFolder = getResultsFolder();
+        File outputTempFolder = outputFolder;
+
+        if (utilitiesUserPreferences.getOutputOption() != SearchGuiOutputOption.no_zip) {
+            outputTempFolder = new File(outputFolder, OUTPUT_TEMP_FOLDER_NAME);
+            if (outputTempFolder.exists()) {
+                Util.deleteDir(outputTempFolder);
+            }
+            outputTempFolder.mkdirs();
+        }
+
+        outputTimeStamp = getOutputDate();
+        saveInputFile(outputTempFolder);
+
+        // move the identification files
+        HashMap<String, HashMap<Integer, File>> movedFiles = new HashMap<String, HashMap<Integer, File>>(identificationFiles.size());
+        for (String spectrumFileName : identificationFiles.keySet()) {
+            HashMap<Integer, File> fileMap = identificationFiles.get(spectrumFileName);
+            HashMap<Integer, File> movedFileMap = new HashMap<Integer, File>(fileMap.size());
+            for (Integer algorithm : fileMap.keySet()) {
+                movedFileMap.put(algorithm, moveFile(fileMap.get(algorithm), outputTempFolder));
+            }
+            movedFiles.put(spectrumFileName, movedFileMap);
+        }
+
+        // move the OMSSA modification files and the MS Amanda settings files
+        for (File jobFolder : jobFolders) {
+            File[] jobFiles = jobFolder.listFiles();
+            if (jobFiles != null) {
+                for (File jobFile : jobFiles) {
+                    String fileName = jobFile.getName();
+                    if (fileName.equals("omssa_mods.xml") || fileName.equals("omssa_usermods.xml") || fileName.endsWith("_settings.xml")) {
+                        if (!new File(outputTempFolder, fileName).exists()) {
+                            moveFile(jobFile, outputTempFolder);
+                        }
+                    }
+                }
+            }
+        }
+
+        organizeOutput(outputFolder, outputTempFolder, movedFiles, identificationParametersFile, utilitiesUserPreferences.isIncludeDateInOutputName());
+    }
+
+    /**
+     * Moves a file to the given folder, copies it if it cannot be moved.
+     *
+     * @param file the file to move
+     * @param folder the destination folder
+     *
+     * @return the moved file
+     *
+     * @throws IOException thrown if the file could not be copied
+     */
+    private File moveFile(File file, File folder) throws IOException {
+        File destination = new File(folder, file.getName());
+        if (!file.getAbsoluteFile().equals(destination.getAbsoluteFile()) && !file.renameTo(destination)) {
+            DataExporter.copyFile(file, destination);
+        }
+        return destination;
+    }
+
     /**
      * Organizes the identification files in zip files according to the output
      * option of the search handler. Existing zip files will be overwritten and
@@ -2810,238 +4241,45 @@ public class SearchHandler {
         switch (utilitiesUserPreferences.getOutputOption()) {
 
             case grouped:
+            case algorithm:
+            case run:
 
-                // put everything in a single zip file and delete old zip files
-                File zipFile = getDefaultOutputFile(outputFolder, includeDate);
-
-                if (zipFile.exists()) {
-                    zipFile.delete();
-                }
-
-                FileOutputStream fos = new FileOutputStream(zipFile);
+                // the archives are planned in a single manifest and written in one pass
+                SearchGUIOutputArchiver outputArchiver = new SearchGUIOutputArchiver(utilitiesUserPreferences.getOutputOption(), outputFolder, tempOutputFolder,
+                        includeDate, parametersFile, enableOmssa, utilitiesUserPreferences.outputData(),
+                        identificationParameters.getSearchParameters().getFastaFile(), getMgfFiles(), waitingHandler);
 
                 try {
-                    BufferedOutputStream bos = new BufferedOutputStream(fos);
-
-                    try {
-                        ZipOutputStream out = new ZipOutputStream(bos);
-
-                        // find the uncompressed size of all the files to add to the zip
-                        long totalUncompressedSize = getTotalUncompressedSize(tempOutputFolder, parametersFile, identificationFiles);
-                        waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                        waitingHandler.setSecondaryProgressCounter(0);
-                        waitingHandler.setMaxSecondaryProgressCounter(100);
-
-                        try {
-                            // add input file
-                            File inputFile = getInputFile(tempOutputFolder);
-                            ZipUtils.addFileToZip(inputFile, out, waitingHandler, totalUncompressedSize);
-
-                            // add search parameters files
-                            ZipUtils.addFileToZip(parametersFile, out, waitingHandler, totalUncompressedSize);
-
-                            if (enableOmssa) {
-                                // add OMSSA modification files
-                                File modificationsFile = new File(tempOutputFolder, "omssa_mods.xml");
-                                ZipUtils.addFileToZip(modificationsFile, out, waitingHandler, totalUncompressedSize);
-
-                                File userModificationsFile = new File(tempOutputFolder, "omssa_usermods.xml");
-                                ZipUtils.addFileToZip(userModificationsFile, out, waitingHandler, totalUncompressedSize);
-                            }
-
-                            if (enableMsAmanda) {
-                                // add MS Amanda settings file
-                                for (File spectrumFile : mgfFiles) {
-                                    String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                                    File settingsFile = new File(tempOutputFolder, newName);
-                                    if (settingsFile.exists()) {
-                                        ZipUtils.addFileToZip(settingsFile, out, waitingHandler, totalUncompressedSize);
-                                    }
-                                }
-                            }
-
-                            for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
-                                for (File identificationFile : fileMap.values()) {
-                                    ZipUtils.addFileToZip(identificationFile, out, waitingHandler, totalUncompressedSize);
-                                }
-                            }
+                    for (String spectrumFileName : identificationFiles.keySet()) {
 
-                            if (utilitiesUserPreferences.outputData()) {
-                                addDataToZip(out, totalUncompressedSize);
+                        File spectrumFile = null;
+                        for (File tempFile : getMgfFiles()) {
+                            if (tempFile.getName().equals(spectrumFileName)) {
+                                spectrumFile = tempFile;
+                                break;
                             }
-                        } finally {
-                            out.close();
                         }
-                    } finally {
-                        bos.close();
-                    }
-                } finally {
-                    fos.close();
-                }
-
-                break;
-
-            case algorithm:
-
-                // group files according to the search engine used
-                HashMap<Integer, ArrayList<File>> algorithmToFileMap = new HashMap<Integer, ArrayList<File>>();
-                for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
-                    for (Integer algorithm : fileMap.keySet()) {
-                        ArrayList<File> files = algorithmToFileMap.get(algorithm);
-                        if (files == null) {
-                            files = new ArrayList<File>();
-                            algorithmToFileMap.put(algorithm, files);
+                        if (spectrumFile == null) {
+                            spectrumFile = new File(spectrumFileName);
                         }
-                        files.add(fileMap.get(algorithm));
-                    }
-                }
-
-                File inputFile = getInputFile(tempOutputFolder);
-
-                // find the uncompressed size of all the files to add to the zip
-                long totalUncompressedSize = 0;
-                for (Integer algorithm : algorithmToFileMap.keySet()) {
-                    totalUncompressedSize += getTotalUncompressedSizeAlgorithm(inputFile, tempOutputFolder, algorithm, parametersFile, algorithmToFileMap.get(algorithm));
-                }
-                waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                waitingHandler.setSecondaryProgressCounter(0);
-                waitingHandler.setMaxSecondaryProgressCounter(100);
-
-                for (Integer algorithm : algorithmToFileMap.keySet()) {
-
-                    String advocateName = Advocate.getAdvocate(algorithm).getName();
-                    zipFile = getDefaultOutputFile(outputFolder, advocateName, includeDate);
-
-                    if (zipFile.exists()) {
-                        zipFile.delete();
-                    }
-                    fos = new FileOutputStream(zipFile);
-                    try {
-                        BufferedOutputStream bos = new BufferedOutputStream(fos);
-                        try {
-                            ZipOutputStream out = new ZipOutputStream(bos);
-                            try {
-                                // add input file
-                                ZipUtils.addFileToZip(inputFile, out, waitingHandler, totalUncompressedSize);
-
-                                // add search parameters files
-                                ZipUtils.addFileToZip(parametersFile, out, waitingHandler, totalUncompressedSize);
-
-                                if (algorithm == Advocate.omssa.getIndex()) {
-                                    File modificationsFile = new File(tempOutputFolder, "omssa_mods.xml");
-                                    ZipUtils.addFileToZip(modificationsFile, out, waitingHandler, totalUncompressedSize);
-
-                                    File userModificationsFile = new File(tempOutputFolder, "omssa_usermods.xml");
-                                    ZipUtils.addFileToZip(userModificationsFile, out, waitingHandler, totalUncompressedSize);
-                                }
-                                if (algorithm == Advocate.msAmanda.getIndex()) {
-                                    // add MS Amanda settings file
-                                    for (File spectrumFile : mgfFiles) {
-                                        String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                                        File settingsFile = new File(tempOutputFolder, newName);
-                                        if (settingsFile.exists()) {
-                                            ZipUtils.addFileToZip(settingsFile, out, waitingHandler, totalUncompressedSize);
-                                        }
-                                    }
-                                }
-
-                                for (File identificationFile : algorithmToFileMap.get(algorithm)) {
-                                    ZipUtils.addFileToZip(identificationFile, out, waitingHandler, totalUncompressedSize);
-                                }
-
-                                if (utilitiesUserPreferences.outputData()) {
-                                    addDataToZip(out, totalUncompressedSize);
-                                }
 
-                            } finally {
-                                out.close();
-                            }
-                        } finally {
-                            bos.close();
+                        HashMap<Integer, File> fileMap = identificationFiles.get(spectrumFileName);
+                        for (Integer algorithm : fileMap.keySet()) {
+                            outputArchiver.addIdentificationFile(spectrumFile, algorithm, fileMap.get(algorithm));
                         }
-                    } finally {
-                        fos.close();
-                    }
-                }
-
-                break;
-
-            case run:
-
-                // group files according to the mgf files
-                inputFile = getInputFile(tempOutputFolder);
-
-                // find the uncompressed size of all the files to add to the zip
-                totalUncompressedSize = 0;
-                for (String mgfFileName : identificationFiles.keySet()) {
-                    String mgfFileNameWithoutExtension = Util.removeExtension(mgfFileName);
-                    File mgfFile = idFileToSpectrumFileMap.get(mgfFileName);
-                    totalUncompressedSize += getTotalUncompressedSizeRun(inputFile, tempOutputFolder, mgfFileNameWithoutExtension, mgfFileName, parametersFile, identificationFiles, mgfFile);
-                }
-                waitingHandler.setSecondaryProgressCounterIndeterminate(false);
-                waitingHandler.setSecondaryProgressCounter(0);
-                waitingHandler.setMaxSecondaryProgressCounter(100);
 
-                for (String mgfFileName : identificationFiles.keySet()) {
-
-                    String mgfFileNameWithoutExtension = Util.removeExtension(mgfFileName);
-                    zipFile = getDefaultOutputFile(outputFolder, mgfFileNameWithoutExtension, includeDate);
-
-                    if (zipFile.exists()) {
-                        zipFile.delete();
+                        outputArchiver.spectrumFileCompleted(spectrumFile);
                     }
 
-                    fos = new FileOutputStream(zipFile);
+                    outputArchiver.finish();
 
+                } catch (InterruptedException e) {
                     try {
-                        BufferedOutputStream bos = new BufferedOutputStream(fos);
-
-                        try {
-                            ZipOutputStream out = new ZipOutputStream(bos);
-
-                            try {
-                                // add input file
-                                ZipUtils.addFileToZip(inputFile, out, waitingHandler, totalUncompressedSize);
-
-                                // add search parameters files
-                                ZipUtils.addFileToZip(parametersFile, out, waitingHandler, totalUncompressedSize);
-
-                                if (enableOmssa) {
-                                    // add omssa modification files
-                                    File modificationsFile = new File(tempOutputFolder, "omssa_mods.xml");
-                                    ZipUtils.addFileToZip(modificationsFile, out, waitingHandler, totalUncompressedSize);
-
-                                    File userModificationsFile = new File(tempOutputFolder, "omssa_usermods.xml");
-                                    ZipUtils.addFileToZip(userModificationsFile, out, waitingHandler, totalUncompressedSize);
-                                }
-
-                                if (enableMsAmanda) {
-                                    // add ms amanda settings file
-                                    String newName = mgfFileNameWithoutExtension + "_settings.xml";
-                                    File settingsFile = new File(tempOutputFolder, newName);
-                                    if (settingsFile.exists()) {
-                                        ZipUtils.addFileToZip(settingsFile, out, waitingHandler, totalUncompressedSize);
-                                    }
-                                }
-
-                                HashMap<Integer, File> fileMap = identificationFiles.get(mgfFileName);
-                                for (File identificationFile : fileMap.values()) {
-                                    ZipUtils.addFileToZip(identificationFile, out, waitingHandler, totalUncompressedSize);
-                                }
-
-                                if (utilitiesUserPreferences.outputData()) {
-                                    addDataToZip(out, totalUncompressedSize, mgfFileName);
-                                }
-
-                            } finally {
-                                out.close();
-                            }
-                        } finally {
-                            bos.close();
-                        }
-                    } finally {
-                        fos.close();
+                        outputArchiver.cancel();
+                    } catch (InterruptedException e2) {
+                        e2.printStackTrace();
                     }
+                    throw new IOException("Interrupted while writing the output archives.", e);
                 }
 
                 break;
@@ -3054,336 +4292,624 @@ public class SearchHandler {
                     File dataFolder = new File(outputFolder, DEFAULT_DATA_FOLDER);
                     dataFolder.mkdir();
 
-                    File dbFile = identificationParameters.getSearchParameters().getFastaFile();
-                    Util.copyFile(dbFile, new File(dataFolder, dbFile.getName()));
+                    ArrayList<File> dataFiles = new ArrayList<File>();
+                    dataFiles.add(identificationParameters.getSearchParameters().getFastaFile());
+                    dataFiles.addAll(getMgfFiles());
+
+                    boolean fallback = false;
+                    for (File dataFile : dataFiles) {
+                        DataExportMode modeUsed = DataExporter.exportFile(dataFile, new File(dataFolder, dataFile.getName()), dataExportMode);
+                        fallback = fallback || modeUsed != dataExportMode;
+                    }
 
-                    for (File spectrumFile : getMgfFiles()) {
-                        Util.copyFile(spectrumFile, new File(dataFolder, spectrumFile.getName()));
+                    if (fallback) {
+                        waitingHandler.appendReport("Data files could not be exported using " + dataExportMode.name.toLowerCase() + "s, files copied instead.", true, true);
                     }
                 }
         }
 
-        if (!outputFolder.getAbsolutePath().equals(tempOutputFolder.getAbsolutePath())) {
-            Util.deleteDir(tempOutputFolder);
+        if (!outputFolder.getAbsolutePath().equals(tempOutputFolder.getAbsolutePath())) {
+            Util.deleteDir(tempOutputFolder);
+        }
+    }
+
+    /**
+     * Locks the given database lock file. If the lock is held by another
+     * thread or process, the user is notified and the method waits for the
+     * lock to be released.
+     *
+     * @param lockFile the lock file
+     * @param shared if true a shared lock is acquired, an exclusive lock
+     * otherwise
+     * @param databaseName the name of the database to display in the report
+     *
+     * @return the lock
+     *
+     * @throws IOException thrown if an error occurred while locking the file
+     */
+    private DatabaseLock lockDatabase(File lockFile, boolean shared, String databaseName) throws IOException {
+        DatabaseLock lock = DatabaseLock.tryLock(lockFile, shared);
+        if (lock == null) {
+            if (waitingHandler != null) {
+                waitingHandler.appendReport("Waiting for another process using " + databaseName + ".", true, true);
+            }
+            lock = DatabaseLock.lock(lockFile, shared);
+        }
+        return lock;
+    }
+
+    /**
+     * Returns the configuration file.
+     *
+     * @return the configuration file
+     */
+    public ConfigurationFile getConfigurationFile() {
+        File folder = new File(getJarFilePath() + File.separator + "resources" + File.separator + "conf" + File.separator); // @TODO: make this more generic?
+        File file = new File(folder, SEARCHGUI_CONFIGURATION_FILE);
+        return new ConfigurationFile(file);
+    }
+
+    /**
+     * Returns the folder to use to store peak lists.
+     *
+     * @param jarFilePath the path to the jar file
+     * @return the folder to use to store peak lists
+     */
+    public static File getPeakListFolder(String jarFilePath) {
+        File peakListFolder = new File(getTempFolderPath(jarFilePath), PEAK_LIST_SUBFOLDER);
+        if (!peakListFolder.exists()) {
+            peakListFolder.mkdirs();
+        }
+        return peakListFolder;
+    }
+
+    /**
+     * Returns the path to the jar file.
+     *
+     * @return the path to the jar file
+     */
+    public String getJarFilePath() {
+        return CompomicsWrapper.getJarFilePath(this.getClass().getResource("SearchHandler.class").getPath(), "SearchGUI");
+    }
+
+    /**
+     * Returns the folder to use for temporary files. By default the resources
+     * folder is used.
+     *
+     * @param jarFilePath the path to the jar file
+     * @return the folder to use for temporary files
+     */
+    public static String getTempFolderPath(String jarFilePath) {
+        if (tempFolderPath == null) {
+            if (jarFilePath.equals(".")) {
+                tempFolderPath = "resources" + File.separator + "temp";
+            } else {
+                tempFolderPath = jarFilePath + File.separator + "resources" + File.separator + "temp";
+            }
+            File tempFolder = new File(tempFolderPath);
+            if (!tempFolder.exists()) {
+                tempFolder.mkdirs();
+            }
         }
+        return tempFolderPath;
     }
 
     /**
-     * Adds the mgf and FASTA files to the zip file.
+     * Sets the folder to use for temporary files.
      *
-     * @param out the zip stream
+     * @param aTempFolderPath the folder to use for temporary files
+     */
+    public static void setTempFolderPath(String aTempFolderPath) {
+        tempFolderPath = aTempFolderPath;
+    }
+
+    /**
+     * Sets the log folder.
      *
-     * @throws IOException
+     * @param logFolder the log folder
      */
-    private void addDataToZip(ZipOutputStream out, long totalUncompressedSize) throws IOException {
-        addDataToZip(out, totalUncompressedSize, null);
+    public void setLogFolder(File logFolder) {
+        this.logFolder = logFolder;
     }
 
     /**
-     * Adds the mgf and FASTA files to the zip file.
+     * Returns the way the data files are exported when the output is not
+     * zipped.
      *
-     * @param out the zip stream
-     * @param mgfFileName only add the given mgf file, null means add all mgfs
+     * @return the way the data files are exported
+     */
+    public DataExportMode getDataExportMode() {
+        return dataExportMode;
+    }
+
+    /**
+     * Sets the way the data files are exported when the output is not zipped.
      *
-     * @throws IOException
+     * @param dataExportMode the way the data files are exported
      */
-    private void addDataToZip(ZipOutputStream out, long totalUncompressedSize, String mgfFileName) throws IOException {
+    public void setDataExportMode(DataExportMode dataExportMode) {
+        this.dataExportMode = dataExportMode;
+    }
 
-        // create the data folder in the zip file
-        ZipUtils.addFolderToZip(DEFAULT_DATA_FOLDER, out);
+    /**
+     * Returns the factor of the expected duration after which a search
+     * engine process is considered hung and stopped, 0 if processes are never
+     * stopped.
+     *
+     * @return the process timeout factor
+     */
+    public int getProcessTimeoutFactor() {
+        return processTimeoutFactor;
+    }
 
-        File dbFile = identificationParameters.getSearchParameters().getFastaFile();
-        ZipUtils.addFileToZip(DEFAULT_DATA_FOLDER, dbFile, out, waitingHandler, totalUncompressedSize);
+    /**
+     * Sets the factor of the expected duration after which a search engine
+     * process is considered hung and stopped, 0 to never stop processes.
+     *
+     * @param processTimeoutFactor the process timeout factor
+     */
+    public void setProcessTimeoutFactor(int processTimeoutFactor) {
+        this.processTimeoutFactor = processTimeoutFactor;
+    }
 
-        for (File spectrumFile : getMgfFiles()) {
+    /**
+     * Returns the duration without output and CPU usage after which a
+     * process is considered hung in minutes, 0 if the hang detection is
+     * disabled.
+     *
+     * @return the process silence timeout in minutes
+     */
+    public int getProcessSilenceTimeout() {
+        return processSilenceTimeout;
+    }
 
-            boolean addFile = true;
+    /**
+     * Sets the duration without output and CPU usage after which a process is
+     * considered hung in minutes, 0 to disable the hang detection.
+     *
+     * @param processSilenceTimeout the process silence timeout in minutes
+     */
+    public void setProcessSilenceTimeout(int processSilenceTimeout) {
+        this.processSilenceTimeout = processSilenceTimeout;
+    }
 
-            if (mgfFileName != null) {
-                addFile = spectrumFile.getName().equals(mgfFileName);
-            }
+    /**
+     * Returns the number of times a hung process is started again.
+     *
+     * @return the number of times a hung process is started again
+     */
+    public int getProcessRetries() {
+        return processRetries;
+    }
 
-            if (addFile) {
-                ZipUtils.addFileToZip(DEFAULT_DATA_FOLDER, spectrumFile, out, waitingHandler, totalUncompressedSize);
-            }
-        }
+    /**
+     * Sets the number of times a hung process is started again.
+     *
+     * @param processRetries the number of times a hung process is started
+     * again
+     */
+    public void setProcessRetries(int processRetries) {
+        this.processRetries = processRetries;
     }
 
     /**
-     * Get the total uncompressed size of the files to compress.
+     * Returns the time to wait before starting a hung process again in
+     * seconds, doubled at every retry.
      *
-     * @param outputFolder the output folder
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
+     * @return the retry backoff in seconds
+     */
+    public int getProcessRetryBackoff() {
+        return processRetryBackoff;
+    }
+
+    /**
+     * Sets the time to wait before starting a hung process again in seconds,
+     * doubled at every retry.
      *
-     * @return the total uncompressed size
+     * @param processRetryBackoff the retry backoff in seconds
      */
-    private long getTotalUncompressedSize(File outputFolder, File parametersFile, HashMap<String, HashMap<Integer, File>> identificationFiles) {
+    public void setProcessRetryBackoff(int processRetryBackoff) {
+        this.processRetryBackoff = processRetryBackoff;
+    }
 
-        long totalUncompressedSize = 0;
+    /**
+     * Indicates whether the search engine processes are confined in cgroups
+     * where available.
+     *
+     * @return true if the processes are confined in cgroups
+     */
+    public boolean isCgroupConfinement() {
+        return cgroupConfinement;
+    }
 
-        totalUncompressedSize += getInputFile(outputFolder).length(); // input file
-        totalUncompressedSize += parametersFile.length(); // parameters file
+    /**
+     * Sets whether the search engine processes are confined in cgroups where
+     * available. A confined process may not use more CPU than its number of
+     * threads.
+     *
+     * @param cgroupConfinement true to confine the processes in cgroups
+     */
+    public void setCgroupConfinement(boolean cgroupConfinement) {
+        this.cgroupConfinement = cgroupConfinement;
+    }
 
-        if (enableOmssa) {
-            // omssa modification files
-            File modificationsFile = new File(outputFolder, "omssa_mods.xml");
-            totalUncompressedSize += modificationsFile.length();
-            File userModificationsFile = new File(outputFolder, "omssa_usermods.xml");
-            totalUncompressedSize += userModificationsFile.length();
-        }
+    /**
+     * Returns the CPUs the confined processes may use, null for all.
+     *
+     * @return the CPUs the confined processes may use
+     */
+    public String getCgroupCpus() {
+        return cgroupCpus;
+    }
 
-        if (enableMsAmanda) {
-            // ms amanda settings file
-            for (File spectrumFile : mgfFiles) {
-                String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                File settingsFile = new File(outputFolder, newName);
-                if (settingsFile.exists()) {
-                    totalUncompressedSize += settingsFile.length();
-                }
-            }
-        }
+    /**
+     * Sets the CPUs the confined processes may use, e.g., "0-3,8", null for
+     * all.
+     *
+     * @param cgroupCpus the CPUs the confined processes may use
+     */
+    public void setCgroupCpus(String cgroupCpus) {
+        this.cgroupCpus = cgroupCpus;
+    }
 
-        // identification files
-        for (HashMap<Integer, File> fileMap : identificationFiles.values()) {
-            for (File identificationFile : fileMap.values()) {
-                totalUncompressedSize += identificationFile.length();
-            }
-        }
+    /**
+     * Returns the maximal memory of a confined process in MB, 0 for no limit.
+     *
+     * @return the maximal memory of a confined process in MB
+     */
+    public int getCgroupMemory() {
+        return cgroupMemory;
+    }
 
-        UtilitiesUserPreferences utilitiesUserPreferences = UtilitiesUserPreferences.loadUserPreferences();
+    /**
+     * Sets the maximal memory of a confined process in MB, 0 for no limit.
+     *
+     * @param cgroupMemory the maximal memory of a confined process in MB
+     */
+    public void setCgroupMemory(int cgroupMemory) {
+        this.cgroupMemory = cgroupMemory;
+    }
 
-        // output data
-        if (utilitiesUserPreferences.outputData()) {
-            totalUncompressedSize += getTotalUncompressedSizeOfData();
-        }
+    /**
+     * Returns the maximal number of spectrum files searched in a single
+     * process by MyriMatch, Comet, MS-GF+, Tide and DirecTag, 0 for all
+     * files.
+     *
+     * @return the maximal number of spectrum files per search engine process
+     */
+    public int getEngineBatchSize() {
+        return engineBatchSize;
+    }
 
-        return totalUncompressedSize;
+    /**
+     * Sets the maximal number of spectrum files searched in a single process
+     * by MyriMatch, Comet, MS-GF+, Tide and DirecTag, 0 for all files.
+     *
+     * @param engineBatchSize the maximal number of spectrum files per search
+     * engine process
+     */
+    public void setEngineBatchSize(int engineBatchSize) {
+        this.engineBatchSize = engineBatchSize;
     }
 
     /**
-     * Get the total uncompressed size of the files to compress when grouping
-     * per algorithm.
+     * Returns the number of Novor processes run in parallel on shards of the
+     * spectrum files, 0 for one per thread.
      *
-     * @param inputFile the input file
-     * @param outputFolder the output folder
-     * @param algorithm the algorithm of interest
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
+     * @return the number of Novor processes run in parallel
+     */
+    public int getNovorWorkers() {
+        return novorWorkers;
+    }
+
+    /**
+     * Sets the number of Novor processes run in parallel on shards of the
+     * spectrum files, 0 for one per thread. Novor being mostly single
+     * threaded, this is needed to use several CPUs.
      *
-     * @return the total uncompressed size per algorithm
+     * @param novorWorkers the number of Novor processes run in parallel
      */
-    private long getTotalUncompressedSizeAlgorithm(File inputFile, File outputFolder, Integer algorithm, File parametersFile, ArrayList<File> identificationFiles) {
+    public void setNovorWorkers(int novorWorkers) {
+        this.novorWorkers = novorWorkers;
+    }
 
-        long totalUncompressedSize = 0;
+    /**
+     * Indicates whether the spectra converted for Tide and Andromeda are
+     * streamed through named pipes.
+     *
+     * @return true if the spectra are streamed through named pipes
+     */
+    public boolean isStreamSpectra() {
+        return streamSpectra;
+    }
 
-        totalUncompressedSize += inputFile.length();
-        totalUncompressedSize += parametersFile.length();
+    /**
+     * Sets whether the spectra converted for Tide and Andromeda are streamed
+     * through named pipes instead of being written to temporary files. The
+     * conversion then overlaps with the search. Files are used where named
+     * pipes are not available, and for the engines which did not read the
+     * whole pipe.
+     *
+     * @param streamSpectra true if the spectra are streamed through named
+     * pipes
+     */
+    public void setStreamSpectra(boolean streamSpectra) {
+        this.streamSpectra = streamSpectra;
+    }
 
-        if (algorithm == Advocate.omssa.getIndex()) {
-            // OMSSA modification files
-            File modificationsFile = new File(outputFolder, "omssa_mods.xml");
-            totalUncompressedSize += modificationsFile.length();
-            File userModificationsFile = new File(outputFolder, "omssa_usermods.xml");
-            totalUncompressedSize += userModificationsFile.length();
-        }
+    /**
+     * Indicates whether the spectrum files converted for the given search
+     * engine can be streamed through a named pipe, i.e., whether the engine
+     * reads its input sequentially and did not fail to do so before.
+     *
+     * @param engine the search engine
+     *
+     * @return true if the spectrum files can be streamed to the engine
+     */
+    private static boolean isStreamable(Advocate engine) {
 
-        if (algorithm == Advocate.msAmanda.getIndex()) {
-            for (File spectrumFile : mgfFiles) {
-                String newName = Util.removeExtension(spectrumFile.getName()) + "_settings.xml";
-                File settingsFile = new File(outputFolder, newName);
-                if (settingsFile.exists()) {
-                    totalUncompressedSize += settingsFile.length();
-                }
-            }
+        boolean sequentialInput = false;
+        if (engine == Advocate.tide) {
+            sequentialInput = TideSearchProcessBuilder.SEQUENTIAL_INPUT;
+        } else if (engine == Advocate.andromeda) {
+            sequentialInput = AndromedaProcessBuilder.SEQUENTIAL_INPUT;
         }
 
-        for (File identificationFile : identificationFiles) {
-            totalUncompressedSize += identificationFile.length();
+        synchronized (seekingEngines) {
+            return sequentialInput && !seekingEngines.contains(engine);
         }
+    }
 
-        UtilitiesUserPreferences utilitiesUserPreferences = UtilitiesUserPreferences.loadUserPreferences();
-
-        // output data
-        if (utilitiesUserPreferences.outputData()) {
-            totalUncompressedSize += getTotalUncompressedSizeOfData();
-        }
+    /**
+     * Indicates whether Comet searches the peptide index of the database.
+     *
+     * @return true if Comet searches the peptide index of the database
+     */
+    public boolean isCometIndex() {
+        return cometIndex;
+    }
 
-        return totalUncompressedSize;
+    /**
+     * Sets whether Comet searches the peptide index of the database, created
+     * when missing or outdated. Requires Comet 2020.01 or newer.
+     *
+     * @param cometIndex true if Comet searches the peptide index of the
+     * database
+     */
+    public void setCometIndex(boolean cometIndex) {
+        this.cometIndex = cometIndex;
     }
 
     /**
-     * Get the total uncompressed size of the files to compress for the given
-     * run.
+     * Indicates whether the Comet spectrum batch size is set from the number
+     * of spectra, the database size and the memory budget.
      *
-     * @param inputFile the input file
-     * @param outputFolder the output folder
-     * @param runName the name of the run of interest
-     * @param run the mgf file of interest
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
+     * @return true if the Comet spectrum batch size is set automatically
+     */
+    public boolean isCometAutoBatchSize() {
+        return cometAutoBatchSize;
+    }
+
+    /**
+     * Sets whether the Comet spectrum batch size is set from the number of
+     * spectra, the database size and the memory budget, i.e., the cgroup
+     * memory limit if set, the available memory otherwise.
      *
-     * @return the total uncompressed size of the files for the given run
+     * @param cometAutoBatchSize true if the Comet spectrum batch size is set
+     * automatically
      */
-    private long getTotalUncompressedSizeRun(File inputFile, File outputFolder, String runName, String run,
-            File parametersFile, HashMap<String, HashMap<Integer, File>> identificationFiles) {
-        return getTotalUncompressedSizeRun(inputFile, outputFolder, runName, run, parametersFile, identificationFiles, null);
+    public void setCometAutoBatchSize(boolean cometAutoBatchSize) {
+        this.cometAutoBatchSize = cometAutoBatchSize;
     }
 
     /**
-     * Get the total uncompressed size of the files to compress for the given
-     * run.
+     * Sets the spectrum batch size of the given Comet process from the
+     * number of spectra, the database size and the memory budget, if the
+     * automatic batch size is enabled. The memory budget is the cgroup memory
+     * limit if set, the available memory otherwise. The batch size and its
+     * rationale are reported.
      *
-     * @param inputFile the input file
-     * @param outputFolder the output folder
-     * @param runName the name of the run of interest
-     * @param run the mgf file of interest
-     * @param parametersFile the parameters file
-     * @param identificationFiles the identification files
-     * @param mgfFile only add given mgfFile, null means add all
+     * @param cometProcessBuilder the Comet process builder
+     * @param spectrumFiles the spectrum files searched
+     * @param searchParameters the search parameters
      *
-     * @return the total uncompressed size of the files for the given run
+     * @throws IOException thrown if there are problems creating the Comet
+     * parameter file
      */
-    private long getTotalUncompressedSizeRun(File inputFile, File outputFolder, String runName, String run,
-            File parametersFile, HashMap<String, HashMap<Integer, File>> identificationFiles, File mgfFile) {
+    private void configureCometBatchSize(CometProcessBuilder cometProcessBuilder, ArrayList<File> spectrumFiles, SearchParameters searchParameters) throws IOException {
 
-        long totalUncompressedSize = 0;
+        if (!cometAutoBatchSize) {
+            return;
+        }
 
-        totalUncompressedSize += inputFile.length();
-        totalUncompressedSize += parametersFile.length();
-        if (enableOmssa) {
-            // OMSSA modification files
-            File modificationsFile = new File(outputFolder, "omssa_mods.xml");
-            totalUncompressedSize += modificationsFile.length();
-            File userModificationsFile = new File(outputFolder, "omssa_usermods.xml");
-            totalUncompressedSize += userModificationsFile.length();
+        String budgetSource;
+        long memoryBudget;
+        if (cgroupMemory > 0) {
+            memoryBudget = cgroupMemory * 1048576L;
+            budgetSource = "cgroup memory limit";
+        } else {
+            memoryBudget = CometMemoryEstimate.getAvailableMemory();
+            budgetSource = "available memory";
         }
-        if (enableMsAmanda) {
-            String newName = runName + "_settings.xml";
-            File settingsFile = new File(outputFolder, newName);
-            if (settingsFile.exists()) {
-                totalUncompressedSize += settingsFile.length();
-            }
+
+        if (memoryBudget <= 0) {
+            waitingHandler.appendReport("Memory budget not available, using the " + Advocate.comet.getName() + " batch size of the search parameters.", true, true);
+            return;
         }
 
-        HashMap<Integer, File> fileMap = identificationFiles.get(run);
-        for (File identificationFile : fileMap.values()) {
-            totalUncompressedSize += identificationFile.length();
+        int nSpectra = 0;
+        for (File spectrumFile : spectrumFiles) {
+            nSpectra += getNSpectra(spectrumFile);
         }
 
-        UtilitiesUserPreferences utilitiesUserPreferences = UtilitiesUserPreferences.loadUserPreferences();
+        CometParameters cometParameters = (CometParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.comet.getIndex());
+        File databaseFile = cometProcessBuilder.getDatabaseFile();
+        boolean indexed = databaseFile.getName().endsWith(CometIndexProcessBuilder.INDEX_EXTENSION);
+        CometMemoryEstimate memoryEstimate = new CometMemoryEstimate(nSpectra, databaseFile, indexed,
+                searchParameters.getFragmentIonAccuracyInDaltons(utilitiesUserPreferences.getRefMass()), cometParameters.getMaxPrecursorMass(), memoryBudget);
 
-        // output data
-        if (utilitiesUserPreferences.outputData()) {
-            totalUncompressedSize += getTotalUncompressedSizeOfData(mgfFile);
-        }
+        int batchSize = memoryEstimate.getBatchSize();
+        cometProcessBuilder.setSpectrumBatchSize(batchSize);
 
-        return totalUncompressedSize;
+        String batchSizeAsString = batchSize == 0 ? "all spectra" : batchSize + " spectra";
+        waitingHandler.appendReport(Advocate.comet.getName() + " spectrum batch size: " + batchSizeAsString + " ("
+                + memoryEstimate.getRationale() + " from the " + budgetSource + ").", true, true);
+        if (memoryEstimate.isOverBudget()) {
+            waitingHandler.appendReport("The estimated memory use of " + Advocate.comet.getName() + " exceeds the memory budget even with the minimal batch size.", true, true);
+        }
     }
 
     /**
-     * Get the total uncompressed size of the FASTA and spectrum files.
+     * Sets the cgroup confinement settings of this handler to the given
+     * process builder, if the confinement is enabled.
      *
-     * @return the total uncompressed size of the FASTA and spectrum files
+     * @param processBuilder the process builder
+     * @param nCpus the number of CPUs allocated to the process
      */
-    private long getTotalUncompressedSizeOfData() {
-        return getTotalUncompressedSizeOfData(null);
+    private void configureConfinement(SearchGUIProcessBuilder processBuilder, int nCpus) {
+        if (cgroupConfinement) {
+            processBuilder.setConfinement(nCpus, cgroupCpus, cgroupMemory * 1048576L, cgroupUsage);
+        }
     }
 
     /**
-     * Get the total uncompressed size of the FASTA and spectrum files.
-     *
-     * @param only add given mgfFile, null means add all
-     *
-     * @return the total uncompressed size of the FASTA and spectrum files
+     * Reports the resources used by the confined processes of this search,
+     * if any.
      */
-    private long getTotalUncompressedSizeOfData(File mgfFile) {
+    private void reportCgroupUsage() {
 
-        long totalUncompressedSize = identificationParameters.getSearchParameters().getFastaFile().length();
+        if (cgroupUsage.getNProcesses() > 0) {
 
-        if (mgfFile != null) {
-            totalUncompressedSize += mgfFile.length();
-        } else {
-            for (File spectrumFile : getMgfFiles()) {
-                totalUncompressedSize += spectrumFile.length();
+            String peakMemory = "n/a";
+            if (cgroupUsage.getPeakMemory() >= 0) {
+                peakMemory = cgroupUsage.getPeakMemory() / 1048576 + " MB";
             }
-        }
 
-        return totalUncompressedSize;
+            waitingHandler.appendReport("Resource usage: " + cgroupUsage.getNProcesses() + " process(es), CPU time " + cgroupUsage.getCpuTime() / 1000
+                    + " s, peak memory " + peakMemory + (cgroupUsage.getNOutOfMemory() > 0 ? ", " + cgroupUsage.getNOutOfMemory() + " process(es) out of memory" : "") + ".", true, true);
+        }
     }
 
     /**
-     * Returns the configuration file.
+     * Sets the hang detection settings of this handler to the given process
+     * builder.
      *
-     * @return the configuration file
+     * @param processBuilder the process builder
      */
-    public ConfigurationFile getConfigurationFile() {
-        File folder = new File(getJarFilePath() + File.separator + "resources" + File.separator + "conf" + File.separator); // @TODO: make this more generic?
-        File file = new File(folder, SEARCHGUI_CONFIGURATION_FILE);
-        return new ConfigurationFile(file);
+    private void configureHangDetection(SearchGUIProcessBuilder processBuilder) {
+        processBuilder.setHangDetection(processSilenceTimeout * 60000L, processRetries, processRetryBackoff * 1000L);
     }
 
     /**
-     * Returns the folder to use to store peak lists.
+     * Returns the current process watchdog metrics: stragglers, timeouts,
+     * hung processes and retries.
      *
-     * @param jarFilePath the path to the jar file
-     * @return the folder to use to store peak lists
+     * @return the current process watchdog metrics
      */
-    public static File getPeakListFolder(String jarFilePath) {
-        File peakListFolder = new File(getTempFolderPath(jarFilePath), PEAK_LIST_SUBFOLDER);
-        if (!peakListFolder.exists()) {
-            peakListFolder.mkdirs();
-        }
-        return peakListFolder;
+    private static int[] getWatchdogMetrics() {
+        return new int[]{ProcessWatchdog.getNStragglers(), ProcessWatchdog.getNTimeouts(), ProcessWatchdog.getNHangs(), ProcessWatchdog.getNRetries()};
     }
 
     /**
-     * Returns the path to the jar file.
-     *
-     * @return the path to the jar file
+     * Reports the process watchdog events of this search, if any.
      */
-    public String getJarFilePath() {
-        return CompomicsWrapper.getJarFilePath(this.getClass().getResource("SearchHandler.class").getPath(), "SearchGUI");
+    private void reportWatchdogMetrics() {
+
+        int[] metrics = getWatchdogMetrics();
+        int nEvents = 0;
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] -= watchdogMetricsAtStart[i];
+            nEvents += metrics[i];
+        }
+
+        if (nEvents > 0) {
+            waitingHandler.appendReport("Process watchdog: " + metrics[0] + " straggler(s), " + metrics[1] + " timeout(s), "
+                    + metrics[2] + " hung process(es), " + metrics[3] + " retry(ies).", true, true);
+        }
     }
 
     /**
-     * Returns the folder to use for temporary files. By default the resources
-     * folder is used.
+     * Returns the number of spectra of the given spectrum file: from the
+     * spectrum factory for mgf files, from the file for mzML files searched
+     * directly.
      *
-     * @param jarFilePath the path to the jar file
-     * @return the folder to use for temporary files
+     * @param spectrumFile the spectrum file
+     *
+     * @return the number of spectra
+     *
+     * @throws IOException thrown if an error occurred while reading an mzML
+     * file
      */
-    public static String getTempFolderPath(String jarFilePath) {
-        if (tempFolderPath == null) {
-            if (jarFilePath.equals(".")) {
-                tempFolderPath = "resources" + File.separator + "temp";
-            } else {
-                tempFolderPath = jarFilePath + File.separator + "resources" + File.separator + "temp";
-            }
-            File tempFolder = new File(tempFolderPath);
-            if (!tempFolder.exists()) {
-                tempFolder.mkdirs();
-            }
+    private static int getNSpectra(File spectrumFile) throws IOException {
+        if (MzmlFiles.isMzml(spectrumFile)) {
+            return MzmlFiles.getNSpectra(spectrumFile);
         }
-        return tempFolderPath;
+        return SpectrumFactory.getInstance().getNSpectra(spectrumFile.getName());
     }
 
     /**
-     * Sets the folder to use for temporary files.
+     * Runs the given search engine process on the given spectrum file. The
+     * duration of the search is estimated from the throughput history of the
+     * engine with the same number of threads and a FASTA file of similar
+     * size: the process is reported when it becomes a straggler and stopped
+     * when it exceeds the process timeout. The throughput of successful runs
+     * is added to the history.
      *
-     * @param aTempFolderPath the folder to use for temporary files
+     * @param processBuilder the process builder of the search engine
+     * @param spectrumFile the spectrum file searched
+     *
+     * @throws IOException thrown if an error occurred while running the
+     * process
      */
-    public static void setTempFolderPath(String aTempFolderPath) {
-        tempFolderPath = aTempFolderPath;
+    private void runSearchProcess(SearchGUIProcessBuilder processBuilder, File spectrumFile) throws IOException {
+        runSearchProcess(processBuilder, new ArrayList<File>(Arrays.asList(spectrumFile)));
     }
 
     /**
-     * Sets the log folder.
+     * Runs the given search engine process on the given spectrum files, the
+     * expected duration being estimated from the total number of spectra. See
+     * runSearchProcess(SearchGUIProcessBuilder, File).
      *
-     * @param logFolder the log folder
+     * @param processBuilder the process builder of the search engine
+     * @param spectrumFiles the spectrum files searched
+     *
+     * @throws IOException thrown if an error occurred while running the
+     * process
      */
-    public void setLogFolder(File logFolder) {
-        this.logFolder = logFolder;
+    private void runSearchProcess(SearchGUIProcessBuilder processBuilder, ArrayList<File> spectrumFiles) throws IOException {
+
+        if (engineThroughput == null) {
+            engineThroughput = new EngineThroughput(new File(getJarFilePath() + File.separator + "resources" + File.separator + "conf"));
+        }
+
+        String engine = processBuilder.getType();
+        int nThreads = processingPreferences.getnThreads();
+        File fastaFile = identificationParameters.getSearchParameters().getFastaFile();
+        long fastaSize = fastaFile == null ? 0 : fastaFile.length();
+        int nSpectra = 0;
+        for (File spectrumFile : spectrumFiles) {
+            nSpectra += getNSpectra(spectrumFile);
+        }
+        long expectedDuration = engineThroughput.getExpectedDuration(engine, nThreads, fastaSize, nSpectra);
+
+        configureHangDetection(processBuilder);
+        configureConfinement(processBuilder, nThreads);
+
+        if (expectedDuration > 0) {
+            long stragglerTime = (long) (STRAGGLER_FACTOR * expectedDuration);
+            long timeout = 0;
+            if (processTimeoutFactor > 0) {
+                timeout = Math.max(MIN_PROCESS_TIMEOUT, processTimeoutFactor * expectedDuration);
+            }
+            processBuilder.setTimeouts(stragglerTime, timeout);
+        }
+
+        long start = System.currentTimeMillis();
+        processBuilder.startProcess();
+
+        if (!waitingHandler.isRunCanceled() && !processBuilder.isTimedOut() && processBuilder.getExitValue() == 0) {
+            engineThroughput.addRun(engine, nThreads, fastaSize, nSpectra, System.currentTimeMillis() - start);
+        }
     }
 
     /**
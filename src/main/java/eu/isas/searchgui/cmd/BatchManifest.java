@@ -0,0 +1,394 @@
+package eu.isas.searchgui.cmd;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * A manifest describing several SearchCLI runs. Every run is given as a set
+ * of SearchCLI options, e.g., spectrum_files, id_params and output_folder.
+ *
+ * The manifest is either a tab separated file with the option names as
+ * header and one run per line, or a JSON array with one object per run
+ * mapping option names to values. In JSON, a list of values is joined by
+ * commas, e.g., a list of spectrum files. Lines starting with '#' and empty
+ * cells of a tab separated file are ignored. Option names may be given with
+ * or without the leading dash.
+ *
+ * @author Harald Barsnes
+ */
+public class BatchManifest {
+
+    /**
+     * The runs in the order of the manifest, every run given as option values
+     * indexed by option name.
+     */
+    private final ArrayList<LinkedHashMap<String, String>> runs = new ArrayList<LinkedHashMap<String, String>>();
+    /**
+     * The content of a JSON manifest.
+     */
+    private String json;
+    /**
+     * The current position in the JSON manifest.
+     */
+    private int position;
+
+    /**
+     * Constructor, parses the given manifest.
+     *
+     * @param manifestFile the manifest file
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     * or if the file is not a valid manifest
+     */
+    public BatchManifest(File manifestFile) throws IOException {
+
+        StringBuilder content = new StringBuilder();
+        BufferedReader br = new BufferedReader(new FileReader(manifestFile));
+
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                content.append(line).append("\n");
+            }
+        } finally {
+            br.close();
+        }
+
+        String trimmedContent = content.toString().trim();
+
+        if (trimmedContent.startsWith("[")) {
+            parseJson(trimmedContent);
+        } else {
+            parseTsv(content.toString());
+        }
+
+        if (runs.isEmpty()) {
+            throw new IOException("No run found in " + manifestFile.getAbsolutePath() + ".");
+        }
+    }
+
+    /**
+     * Returns the runs in the order of the manifest, every run given as
+     * option values indexed by option name without leading dash.
+     *
+     * @return the runs
+     */
+    public ArrayList<LinkedHashMap<String, String>> getRuns() {
+        return runs;
+    }
+
+    /**
+     * Returns the command line arguments of the given run: the options of the
+     * run followed by the given common arguments which are not overridden by
+     * the run.
+     *
+     * @param run the run
+     * @param commonArguments the arguments common to all runs, options
+     * followed by their value
+     *
+     * @return the command line arguments of the run
+     */
+    public static String[] getArguments(LinkedHashMap<String, String> run, String[] commonArguments) {
+
+        ArrayList<String> arguments = new ArrayList<String>();
+
+        for (String option : run.keySet()) {
+            arguments.add("-" + option);
+            arguments.add(run.get(option));
+        }
+
+        for (int i = 0; i < commonArguments.length; i++) {
+            String argument = commonArguments[i];
+            if (argument.startsWith("-") && run.containsKey(argument.substring(1))) {
+                i++; // skip the value
+            } else {
+                arguments.add(argument);
+            }
+        }
+
+        return arguments.toArray(new String[arguments.size()]);
+    }
+
+    /**
+     * Parses a tab separated manifest.
+     *
+     * @param content the content of the manifest
+     *
+     * @throws IOException thrown if the manifest is not valid
+     */
+    private void parseTsv(String content) throws IOException {
+
+        String[] header = null;
+        int lineNumber = 0;
+
+        for (String line : content.split("\n")) {
+
+            lineNumber++;
+
+            if (line.trim().length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\t");
+
+            if (header == null) {
+                header = fields;
+                for (int i = 0; i < header.length; i++) {
+                    header[i] = getOptionName(header[i]);
+                }
+                continue;
+            }
+
+            if (fields.length > header.length) {
+                throw new IOException("Line " + lineNumber + " of the manifest has more columns than the header.");
+            }
+
+            LinkedHashMap<String, String> run = new LinkedHashMap<String, String>();
+            for (int i = 0; i < fields.length; i++) {
+                String value = fields[i].trim();
+                if (value.length() > 0 && header[i].length() > 0) {
+                    run.put(header[i], value);
+                }
+            }
+            runs.add(run);
+        }
+    }
+
+    /**
+     * Parses a JSON manifest.
+     *
+     * @param content the content of the manifest
+     *
+     * @throws IOException thrown if the manifest is not valid
+     */
+    private void parseJson(String content) throws IOException {
+
+        json = content;
+        position = 0;
+
+        expect('[');
+        if (!next(']')) {
+            do {
+                runs.add(parseRun());
+            } while (next(','));
+            expect(']');
+        }
+
+        skipWhiteSpace();
+        if (position < json.length()) {
+            throw getJsonException("end of the manifest expected");
+        }
+    }
+
+    /**
+     * Parses a run of a JSON manifest.
+     *
+     * @return the run
+     *
+     * @throws IOException thrown if the run is not valid
+     */
+    private LinkedHashMap<String, String> parseRun() throws IOException {
+
+        LinkedHashMap<String, String> run = new LinkedHashMap<String, String>();
+
+        expect('{');
+        if (!next('}')) {
+            do {
+                String option = getOptionName(parseString());
+                expect(':');
+                String value;
+                if (next('[')) {
+                    StringBuilder values = new StringBuilder();
+                    if (!next(']')) {
+                        do {
+                            if (values.length() > 0) {
+                                values.append(",");
+                            }
+                            values.append(parseValue());
+                        } while (next(','));
+                        expect(']');
+                    }
+                    value = values.toString();
+                } else {
+                    value = parseValue();
+                }
+                if (value != null) {
+                    run.put(option, value);
+                }
+            } while (next(','));
+            expect('}');
+        }
+
+        return run;
+    }
+
+    /**
+     * Parses a string, number, boolean or null value of a JSON manifest.
+     * Booleans are returned as 1 or 0 like in the command line.
+     *
+     * @return the value, null for null
+     *
+     * @throws IOException thrown if the value is not valid
+     */
+    private String parseValue() throws IOException {
+
+        skipWhiteSpace();
+
+        if (position < json.length() && json.charAt(position) == '"') {
+            return parseString();
+        }
+
+        int start = position;
+        while (position < json.length() && ",:]} \t\r\n".indexOf(json.charAt(position)) == -1) {
+            position++;
+        }
+        String value = json.substring(start, position);
+
+        if (value.equals("true")) {
+            return "1";
+        } else if (value.equals("false")) {
+            return "0";
+        } else if (value.equals("null")) {
+            return null;
+        } else if (value.matches("-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?")) {
+            return value;
+        }
+
+        throw getJsonException("value expected");
+    }
+
+    /**
+     * Parses a string of a JSON manifest.
+     *
+     * @return the string
+     *
+     * @throws IOException thrown if the string is not valid
+     */
+    private String parseString() throws IOException {
+
+        expect('"');
+        StringBuilder value = new StringBuilder();
+
+        while (position < json.length()) {
+
+            char c = json.charAt(position++);
+
+            if (c == '"') {
+                return value.toString();
+            } else if (c == '\\' && position < json.length()) {
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw getJsonException("unicode escape expected");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw getJsonException("unicode escape expected");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+
+        throw getJsonException("end of string expected");
+    }
+
+    /**
+     * Skips the white space and consumes the given character if next.
+     *
+     * @param c the character
+     *
+     * @return true if the character was next
+     */
+    private boolean next(char c) {
+        skipWhiteSpace();
+        if (position < json.length() && json.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips the white space and consumes the given character.
+     *
+     * @param c the character
+     *
+     * @throws IOException thrown if the character is not next
+     */
+    private void expect(char c) throws IOException {
+        if (!next(c)) {
+            throw getJsonException("'" + c + "' expected");
+        }
+    }
+
+    /**
+     * Skips the white space.
+     */
+    private void skipWhiteSpace() {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Returns an exception indicating an error at the current position of the
+     * JSON manifest.
+     *
+     * @param message the error message
+     *
+     * @return the exception
+     */
+    private IOException getJsonException(String message) {
+
+        int line = 1;
+        for (int i = 0; i < position && i < json.length(); i++) {
+            if (json.charAt(i) == '\n') {
+                line++;
+            }
+        }
+
+        return new IOException("Invalid manifest at line " + line + ": " + message + ".");
+    }
+
+    /**
+     * Returns the option name without leading dash.
+     *
+     * @param name the name as given in the manifest
+     *
+     * @return the option name
+     */
+    private static String getOptionName(String name) {
+        name = name.trim();
+        while (name.startsWith("-")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,113 @@
+package eu.isas.searchgui.cmd;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.Options;
+
+/**
+ * Training run used at build time to create the class data sharing archive
+ * of the command lines (see the appcds profile of the pom). Loads the classes
+ * used when starting SearchCLI, FastaCLI, PathSettingsCLI and
+ * IdentificationParametersCLI without reading or writing any settings, so
+ * that a Java virtual machine started with the archive does not need to
+ * load and verify them again.
+ *
+ * @author Harald Barsnes
+ */
+public class ClassDataSharingTraining {
+
+    /**
+     * The packages of the classes loaded from the SearchGUI jar file.
+     */
+    private static final String[] PACKAGES = {"eu/isas/searchgui/cmd/", "eu/isas/searchgui/processbuilders/",
+        "eu/isas/searchgui/utilities/", "eu/isas/searchgui/preferences/"};
+
+    /**
+     * Empty default constructor.
+     */
+    public ClassDataSharingTraining() {
+    }
+
+    /**
+     * Runs the training.
+     *
+     * @param args the command line arguments, ignored
+     *
+     * @throws Exception thrown if an error occurred while parsing the
+     * command lines
+     */
+    public static void main(String[] args) throws Exception {
+
+        // the options and usage of the command lines
+        Options searchOptions = new Options();
+        SearchCLIParams.createOptionsCLI(searchOptions);
+        SearchCLIParams.getOptionsAsString();
+
+        Options fastaOptions = new Options();
+        FastaCLIParams.createOptionsCLI(fastaOptions);
+        FastaCLIParams.getOptionsAsString();
+
+        Options pathOptions = new Options();
+        PathSettingsCLIParams.createOptionsCLI(pathOptions);
+        PathSettingsCLIParams.getOptionsAsString();
+
+        Options parametersOptions = new Options();
+        SearchCLIdentificationParametersCLIParams.createOptionsCLI(parametersOptions);
+        SearchCLIdentificationParametersCLIParams.getOptionsAsString();
+
+        // a typical search command line
+        new BasicParser().parse(searchOptions, new String[]{
+            "-" + SearchCLIParams.SPECTRUM_FILES.id, "sample.mgf",
+            "-" + SearchCLIParams.OUTPUT_FOLDER.id, "output",
+            "-" + SearchCLIParams.XTANDEM.id, "1",
+            "-" + SearchCLIParams.THREADS.id, "4"});
+
+        // the SearchGUI classes used by the command lines
+        URL location = ClassDataSharingTraining.class.getProtectionDomain().getCodeSource().getLocation();
+        File jarFile = new File(location.toURI());
+
+        if (jarFile.isFile()) {
+
+            ClassLoader classLoader = ClassDataSharingTraining.class.getClassLoader();
+            JarFile jar = new JarFile(jarFile);
+
+            try {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.endsWith(".class") && isCommandLinePackage(name)) {
+                        try {
+                            Class.forName(name.substring(0, name.length() - ".class".length()).replace('/', '.'), false, classLoader);
+                        } catch (Throwable e) {
+                            // class with a missing optional dependency, not archived
+                        }
+                    }
+                }
+            } finally {
+                jar.close();
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the given jar entry belongs to a package used by the
+     * command lines.
+     *
+     * @param name the name of the jar entry
+     *
+     * @return true if the entry belongs to a package used by the command
+     * lines
+     */
+    private static boolean isCommandLinePackage(String name) {
+        for (String commandLinePackage : PACKAGES) {
+            if (name.startsWith(commandLinePackage)) {
+                return true;
+            }
+        }
+        return name.equals("eu/isas/searchgui/SearchHandler.class") || name.startsWith("eu/isas/searchgui/SearchHandler$");
+    }
+}
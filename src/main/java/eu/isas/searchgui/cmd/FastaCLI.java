@@ -42,6 +42,11 @@ public class FastaCLI {
             
             // check if there are updates to the paths
             String[] nonPathSettingArgsAsList = PathSettingsCLI.extractAndUpdatePathOptions(args);
+
+            // the path settings are not needed to print the usage
+            if (nonPathSettingArgsAsList.length > 0) {
+                PathSettingsCLI.loadPathSettings();
+            }
             
             // parse the rest of the cptions   
             Options nonPathOptions = new Options();
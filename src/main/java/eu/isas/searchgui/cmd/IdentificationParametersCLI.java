@@ -33,6 +33,10 @@ public class IdentificationParametersCLI extends AbstractIdentificationParameter
             waitingHandler = new WaitingHandlerCLIImpl();
             // check if there are updates to the paths
             String[] nonPathSettingArgsAsList = PathSettingsCLI.extractAndUpdatePathOptions(args);
+            // the path settings are not needed to print the usage
+            if (nonPathSettingArgsAsList.length > 0) {
+                PathSettingsCLI.loadPathSettings();
+            }
             initiate(nonPathSettingArgsAsList);
         } catch (ParseException ex) {
             waitingHandler.appendReport("An error occurred while running the command line.", true, true);
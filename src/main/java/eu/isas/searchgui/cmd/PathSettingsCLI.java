@@ -30,6 +30,11 @@ public class PathSettingsCLI {
      * Waiting handler used to keep track of the progress.
      */
     private WaitingHandler waitingHandler;
+    /**
+     * Indicates whether the path settings were loaded in this virtual
+     * machine.
+     */
+    private static boolean pathSettingsLoaded = false;
 
     /**
      * Constructor.
@@ -229,7 +234,9 @@ public class PathSettingsCLI {
     /**
      * If the arguments contains changes to the paths these arguments will be
      * extracted and the paths updated, before the remaining non-path options
-     * are returned for further processing.
+     * are returned for further processing. When no path is changed, the path
+     * settings are not loaded here but by loadPathSettings, once the command
+     * line is known to need them.
      *
      * @param args the command line arguments
      * @return a list of all non-path related arguments
@@ -271,14 +278,46 @@ public class PathSettingsCLI {
         String[] nonPathSettingArgsAsList = nonPathSettingArgs.toArray(new String[nonPathSettingArgs.size()]);
 
         // update the paths if needed
+        if (!pathSettingArgs.isEmpty()) {
+            setPathSettings(pathSettingArgsAsList);
+        }
+
+        return nonPathSettingArgsAsList;
+    }
+
+    /**
+     * Loads the path settings and sets up the log, if not already done in
+     * this virtual machine.
+     *
+     * @throws ParseException if a ParseException occurs
+     */
+    public static void loadPathSettings() throws ParseException {
+        setPathSettings(new String[0]);
+    }
+
+    /**
+     * Sets the path settings given as command line arguments, none to only
+     * load the path settings. Without arguments, nothing is done if the path
+     * settings were already loaded in this virtual machine.
+     *
+     * @param pathSettingArgs the path settings command line arguments
+     *
+     * @throws ParseException if a ParseException occurs
+     */
+    private static synchronized void setPathSettings(String[] pathSettingArgs) throws ParseException {
+
+        if (pathSettingArgs.length == 0 && pathSettingsLoaded) {
+            return;
+        }
+
         Options pathOptions = new Options();
         PathSettingsCLIParams.createOptionsCLI(pathOptions);
         BasicParser parser = new BasicParser();
-        CommandLine line = parser.parse(pathOptions, pathSettingArgsAsList);
+        CommandLine line = parser.parse(pathOptions, pathSettingArgs);
         PathSettingsCLIInputBean pathSettingsCLIInputBean = new PathSettingsCLIInputBean(line);
         PathSettingsCLI pathSettingsCLI = new PathSettingsCLI(pathSettingsCLIInputBean);
         pathSettingsCLI.setPathSettings();
 
-        return nonPathSettingArgsAsList;
+        pathSettingsLoaded = true;
     }
 }
@@ -1,5 +1,6 @@
 package eu.isas.searchgui.cmd;
 
+import com.compomics.cli.identification_parameters.IdentificationParametersCLIParams;
 import com.compomics.software.CompomicsWrapper;
 import com.compomics.util.Util;
 import com.compomics.util.experiment.biology.*;
@@ -9,6 +10,8 @@ import com.compomics.util.experiment.identification.protein_sequences.SequenceFa
 import com.compomics.util.experiment.io.massspectrometry.MgfIndex;
 import com.compomics.util.experiment.io.massspectrometry.MgfReader;
 import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
+import com.compomics.util.experiment.massspectrometry.proteowizard.MsConvertParameters;
+import com.compomics.util.experiment.massspectrometry.proteowizard.MsFormat;
 import com.compomics.util.gui.filehandling.TempFilesManager;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
@@ -16,15 +19,20 @@ import com.compomics.util.preferences.IdentificationParameters;
 import com.compomics.util.preferences.ProcessingPreferences;
 import eu.isas.searchgui.SearchHandler;
 import com.compomics.util.preferences.UtilitiesUserPreferences;
+import eu.isas.searchgui.utilities.MzmlFiles;
 import eu.isas.searchgui.utilities.Properties;
+import eu.isas.searchgui.utilities.SpectrumFileDecompressor;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.concurrent.Callable;
 import org.apache.commons.cli.*;
 
@@ -56,6 +64,66 @@ public class SearchCLI implements Callable {
      * The waiting handler.
      */
     private WaitingHandler waitingHandler;
+    /**
+     * The command line arguments without the path settings.
+     */
+    private String[] arguments;
+    /**
+     * The search handler of the last search, null if none.
+     */
+    private SearchHandler searchHandler = null;
+    /**
+     * The SearchCLI options which are not passed to the workers of a
+     * distributed search.
+     */
+    private static final SearchCLIParams[] COORDINATOR_OPTIONS = {SearchCLIParams.SPECTRUM_FILES, SearchCLIParams.OUTPUT_FOLDER,
+        SearchCLIParams.OUTPUT_DEFAULT_NAME, SearchCLIParams.OUTPUT_OPTION, SearchCLIParams.OUTPUT_DATA, SearchCLIParams.OUTPUT_DATA_EXPORT,
+        SearchCLIParams.OUTPUT_DATE, SearchCLIParams.WATCH_FOLDER, SearchCLIParams.WATCH_INTERVAL, SearchCLIParams.WORKERS,
+        SearchCLIParams.WORKER_RETRIES, SearchCLIParams.WORKER_PORT, SearchCLIParams.BATCH, SearchCLIParams.WORKER_ADDRESS,
+        SearchCLIParams.WORKER_TOKEN};
+    /**
+     * The identification parameters options which need the species.
+     */
+    private static final IdentificationParametersCLIParams[] SPECIES_OPTIONS = {IdentificationParametersCLIParams.USE_GENE_MAPPING,
+        IdentificationParametersCLIParams.UPDATE_GENE_MAPPING};
+    /**
+     * Indicates whether the species were loaded in this virtual machine.
+     */
+    private static boolean speciesInitiated = false;
+    /**
+     * The name of the folder where the output of the jobs of a distributed
+     * search is stored.
+     */
+    private static final String JOBS_FOLDER_NAME = ".SearchGUI_jobs";
+    /**
+     * The FASTA file loaded in the sequence factory, null if none.
+     */
+    private File loadedFastaFile = null;
+    /**
+     * The last modification time of the FASTA file loaded in the sequence
+     * factory.
+     */
+    private long loadedFastaFileLastModified = 0;
+    /**
+     * The waiting handler of the searches, null to use a new one for every
+     * search.
+     */
+    private WaitingHandler searchWaitingHandler = null;
+    /**
+     * Indicates whether the process stops when the search crashes, only for
+     * a single search from the command line.
+     */
+    private boolean exitOnCrash = false;
+    /**
+     * Indicates whether the last search completed.
+     */
+    private boolean searchSuccessful = false;
+    /**
+     * The spectrum files written next to the input files by the last search:
+     * the files split from the input files and the files converted by
+     * msconvert.
+     */
+    private final ArrayList<File> producedSpectrumFiles = new ArrayList<File>();
 
     /**
      * Construct a new SearchCLI runnable from a list of arguments. When
@@ -65,19 +133,32 @@ public class SearchCLI implements Callable {
      * @param args the command line arguments
      */
     public SearchCLI(String[] args) {
+        this(args, null);
+    }
+
+    /**
+     * Construct a new SearchCLI runnable from a list of arguments using the
+     * given waiting handler for the search, allowing the search to be
+     * canceled from another thread.
+     *
+     * @param args the command line arguments
+     * @param searchWaitingHandler the waiting handler of the search, null to
+     * use a new one for every search
+     */
+    public SearchCLI(String[] args, WaitingHandler searchWaitingHandler) {
+
+        this.searchWaitingHandler = searchWaitingHandler;
 
         try {
             // check if there are updates to the paths
             String[] nonPathSettingArgsAsList = PathSettingsCLI.extractAndUpdatePathOptions(args);
+            arguments = nonPathSettingArgsAsList;
 
             waitingHandler = new WaitingHandlerCLIImpl();
-            
-            try {
-                SpeciesFactory speciesFactory = SpeciesFactory.getInstance();
-                speciesFactory.initiate(getJarFilePath());
-            } catch (Exception e) {
-                waitingHandler.appendReport("An error occurred while loading the species.", true, true);
-                e.printStackTrace();
+
+            // the path settings are not needed to print the usage
+            if (nonPathSettingArgsAsList.length > 0) {
+                PathSettingsCLI.loadPathSettings();
             }
             
             // parse the rest of the options   
@@ -86,6 +167,8 @@ public class SearchCLI implements Callable {
             BasicParser parser = new BasicParser();
             CommandLine line = parser.parse(nonPathOptions, nonPathSettingArgsAsList);
 
+            initiateSpecies(line, waitingHandler);
+
             if (!SearchCLIInputBean.isValidStartup(line)) {
                 PrintWriter lPrintWriter = new PrintWriter(System.out);
                 lPrintWriter.print(System.getProperty("line.separator") + "======================" + System.getProperty("line.separator"));
@@ -97,9 +180,23 @@ public class SearchCLI implements Callable {
                 lPrintWriter.close();
 
                 System.exit(0);
+            } else if (line.hasOption(SearchCLIParams.WORKER_PORT.id)) {
+                InetAddress workerAddress = null;
+                if (line.hasOption(SearchCLIParams.WORKER_ADDRESS.id)) {
+                    workerAddress = InetAddress.getByName(line.getOptionValue(SearchCLIParams.WORKER_ADDRESS.id));
+                }
+                File tokenFile = new File(line.getOptionValue(SearchCLIParams.WORKER_TOKEN.id));
+                new SearchCLIWorker(workerAddress, new Integer(line.getOptionValue(SearchCLIParams.WORKER_PORT.id)), tokenFile, waitingHandler).run();
+            } else if (line.hasOption(SearchCLIParams.BATCH.id)) {
+                batch(new File(line.getOptionValue(SearchCLIParams.BATCH.id)));
             } else {
                 searchCLIInputBean = new SearchCLIInputBean(line);
-                call();
+                if (searchCLIInputBean.getWatchFolder() == null) {
+                    exitOnCrash = searchWaitingHandler == null;
+                    call();
+                } else {
+                    watchFolder();
+                }
             }
         } catch (Exception e) {
             waitingHandler.appendReport("An error occurred while running the command line. " + getLogFileMessage(), true, true);
@@ -107,18 +204,80 @@ public class SearchCLI implements Callable {
         }
     }
 
+    /**
+     * Loads the species if the given command line uses them, if not already
+     * done in this virtual machine. The species are only needed for the gene
+     * mapping options.
+     *
+     * @param line the command line
+     * @param waitingHandler the waiting handler
+     */
+    static void initiateSpecies(CommandLine line, WaitingHandler waitingHandler) {
+
+        boolean speciesNeeded = false;
+        for (IdentificationParametersCLIParams speciesOption : SPECIES_OPTIONS) {
+            if (line.hasOption(speciesOption.id)) {
+                speciesNeeded = true;
+                break;
+            }
+        }
+        if (!speciesNeeded) {
+            return;
+        }
+
+        synchronized (SearchCLI.class) {
+            if (speciesInitiated) {
+                return;
+            }
+            try {
+                SpeciesFactory speciesFactory = SpeciesFactory.getInstance();
+                speciesFactory.initiate(CompomicsWrapper.getJarFilePath(SearchCLI.class.getResource("SearchCLI.class").getPath(), "SearchGUI"));
+                speciesInitiated = true;
+            } catch (Exception e) {
+                waitingHandler.appendReport("An error occurred while loading the species.", true, true);
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Calling this method will run the configured SearchCLI process.
+     *
+     * @return true if the search completed, false if it crashed, was canceled
+     * or could not be run
      */
     public Object call() {
 
+        boolean success = false;
+
         // load enzymes
         enzymeFactory = EnzymeFactory.getInstance();
 
+        // the spectrum files decompressed for the search
+        ArrayList<File> decompressedFiles = new ArrayList<File>();
+        producedSpectrumFiles.clear();
+
         try {
             // @TODO: not sure if this is the best place to perform the mgf validation and splitting??
             WaitingHandlerCLIImpl waitingHandlerCLIImpl = new WaitingHandlerCLIImpl();
 
+            // decompress the compressed spectrum files, the mzML and raw files are handled by the search handler
+            ArrayList<File> inputSpectrumFiles = new ArrayList<File>(searchCLIInputBean.getSpectrumFiles().size());
+            ArrayList<File> mzmlFiles = new ArrayList<File>();
+            for (File tempSpectrumFile : searchCLIInputBean.getSpectrumFiles()) {
+                if (MzmlFiles.isMzml(tempSpectrumFile) || tempSpectrumFile.getName().toLowerCase().endsWith(SearchCLIInputBean.RAW_EXTENSION)) {
+                    mzmlFiles.add(tempSpectrumFile);
+                } else if (SpectrumFileDecompressor.isCompressed(tempSpectrumFile)) {
+                    waitingHandlerCLIImpl.appendReport("Decompressing spectrum file: " + tempSpectrumFile.getAbsolutePath(), true, true);
+                    File decompressedFile = SpectrumFileDecompressor.decompress(tempSpectrumFile, SearchHandler.getPeakListFolder(getJarFilePath()));
+                    decompressedFiles.add(decompressedFile);
+                    inputSpectrumFiles.add(decompressedFile);
+                } else {
+                    inputSpectrumFiles.add(tempSpectrumFile);
+                }
+            }
+            searchCLIInputBean.setSpectrumFiles(inputSpectrumFiles);
+
             // @TODO: merge with code from the gui (and make it gui independent!)
             // validate that all the spectra has unique spectrum titles
             for (File tempMgfFile : searchCLIInputBean.getSpectrumFiles()) {
@@ -201,6 +360,7 @@ public class SearchCLI implements Callable {
                     for (File tempMgfFile : splitMgfs) {
                         spectrumFiles.add(tempMgfFile);
                     }
+                    producedSpectrumFiles.addAll(splitMgfs);
                 }
 
                 waitingHandlerCLIImpl.appendReport("Current MGF input (listed in \"output_folder\"\\searchGUI_input.txt): ", true, true);
@@ -243,13 +403,18 @@ public class SearchCLI implements Callable {
             userPreferences.setIncludeDateInOutputName(searchCLIInputBean.isOutputDate());
             UtilitiesUserPreferences.saveUserPreferences(userPreferences);
 
+            // keep the FASTA file loaded between searches
             File fastaFile = searchParameters.getFastaFile();
-            SequenceFactory.getInstance().loadFastaFile(fastaFile);
+            if (loadedFastaFile == null || !loadedFastaFile.equals(fastaFile) || loadedFastaFile.lastModified() != loadedFastaFileLastModified) {
+                SequenceFactory.getInstance().loadFastaFile(fastaFile);
+                loadedFastaFile = fastaFile;
+                loadedFastaFileLastModified = fastaFile.lastModified();
+            }
 
             // @TODO: validate the mgf files: see SearchGUI.validateMgfFile
-            SearchHandler searchHandler = new SearchHandler(identificationParameters,
+            searchHandler = new SearchHandler(identificationParameters,
                     searchCLIInputBean.getOutputFolder(), searchCLIInputBean.getDefaultOutputFileName(),
-                    spectrumFiles, new ArrayList<File>(), parametersFile,
+                    spectrumFiles, mzmlFiles, parametersFile,
                     searchCLIInputBean.isOmssaEnabled(), searchCLIInputBean.isXTandemEnabled(),
                     searchCLIInputBean.isMsgfEnabled(), searchCLIInputBean.isMsAmandaEnabled(),
                     searchCLIInputBean.isMyriMatchEnabled(), searchCLIInputBean.isCometEnabled(),
@@ -264,18 +429,65 @@ public class SearchCLI implements Callable {
                     processingPreferences);
 
             searchHandler.setLogFolder(logFolder);
+            searchHandler.setExitOnCrash(exitOnCrash);
+            searchHandler.setDataExportMode(searchCLIInputBean.getDataExportMode());
+            searchHandler.setProcessTimeoutFactor(searchCLIInputBean.getProcessTimeoutFactor());
+            searchHandler.setProcessSilenceTimeout(searchCLIInputBean.getProcessSilenceTimeout());
+            searchHandler.setProcessRetries(searchCLIInputBean.getProcessRetries());
+            searchHandler.setProcessRetryBackoff(searchCLIInputBean.getProcessRetryBackoff());
+            searchHandler.setCgroupConfinement(searchCLIInputBean.isCgroupConfinement());
+            searchHandler.setCgroupCpus(searchCLIInputBean.getCgroupCpus());
+            searchHandler.setCgroupMemory(searchCLIInputBean.getCgroupMemory());
+            searchHandler.setEngineBatchSize(searchCLIInputBean.getEngineBatchSize());
+            searchHandler.setNovorWorkers(searchCLIInputBean.getNovorWorkers());
+            searchHandler.setStreamSpectra(searchCLIInputBean.isStreamSpectra());
+            searchHandler.setCometIndex(searchCLIInputBean.isCometIndex());
+            searchHandler.setCometAutoBatchSize(searchCLIInputBean.isCometAutoBatchSize());
+
+            // the mzML and raw files are converted to mgf if needed by a search engine
+            if (!mzmlFiles.isEmpty()) {
+                MsConvertParameters msConvertParameters = new MsConvertParameters();
+                msConvertParameters.setMsFormat(MsFormat.mgf);
+                searchHandler.setMsConvertParameters(msConvertParameters);
+            }
 
             // incrementing the counter for a new SearchGUI start
             if (userPreferences.isAutoUpdate()) {
                 Util.sendGAUpdate("UA-36198780-2", "startrun-cl", "searchgui-" + (new Properties().getVersion()));
             }
 
-            searchHandler.startSearch(waitingHandlerCLIImpl);
+            if (searchCLIInputBean.getWorkers().isEmpty()) {
+                searchHandler.startSearch(searchWaitingHandler != null ? searchWaitingHandler : waitingHandlerCLIImpl);
+                producedSpectrumFiles.addAll(searchHandler.getMsConvertFiles());
+                success = !searchHandler.isSearchFailed();
+            } else {
+                ArrayList<File> distributedFiles = new ArrayList<File>(spectrumFiles);
+                distributedFiles.addAll(mzmlFiles);
+                success = searchDistributed(distributedFiles, parametersFile, userPreferences, waitingHandlerCLIImpl);
+            }
         } catch (Exception e) {
             waitingHandler.appendReport("An error occurred while running the command line. " + getLogFileMessage(), true, true);
             e.printStackTrace();
         }
 
+        // delete the decompressed spectrum files and their indexes
+        if (!decompressedFiles.isEmpty()) {
+            try {
+                spectrumFactory.closeFiles();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            for (File decompressedFile : decompressedFiles) {
+                File indexFile = new File(decompressedFile.getParent(), decompressedFile.getName() + ".cui");
+                if (indexFile.exists()) {
+                    indexFile.delete();
+                }
+                if (decompressedFile.exists()) {
+                    decompressedFile.delete();
+                }
+            }
+        }
+
         try {
             TempFilesManager.deleteTempFolders();
         } catch (Exception e) {
@@ -283,7 +495,314 @@ public class SearchCLI implements Callable {
             e.printStackTrace();
         }
 
-        return null;
+        searchSuccessful = success;
+
+        return success;
+    }
+
+    /**
+     * Indicates whether the last search run by this SearchCLI completed, see
+     * call().
+     *
+     * @return true if the last search completed
+     */
+    public boolean isSearchSuccessful() {
+        return searchSuccessful;
+    }
+
+    /**
+     * Runs the searches of the given batch manifest in this process. Every
+     * run is validated before the first search starts. The runs sharing a
+     * FASTA file are executed one after the other so that the database is
+     * loaded only once, the species, enzymes and path settings being loaded
+     * once for all runs.
+     *
+     * @param manifestFile the batch manifest file
+     *
+     * @throws IOException thrown if an error occurred while reading the
+     * manifest or the identification parameters
+     * @throws ClassNotFoundException thrown if the search parameters cannot be
+     * converted
+     */
+    private void batch(File manifestFile) throws IOException, ClassNotFoundException {
+
+        BatchManifest manifest = new BatchManifest(manifestFile);
+        ArrayList<LinkedHashMap<String, String>> runs = manifest.getRuns();
+
+        // the options of the command line apply to all runs
+        ArrayList<String> commonArgumentsList = new ArrayList<String>();
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i].equals("-" + SearchCLIParams.BATCH.id)) {
+                i++; // skip the value
+            } else {
+                commonArgumentsList.add(arguments[i]);
+            }
+        }
+        String[] commonArguments = commonArgumentsList.toArray(new String[commonArgumentsList.size()]);
+
+        waitingHandler.appendReport("Validating the " + runs.size() + " run(s) of " + manifestFile.getAbsolutePath() + ".", true, true);
+
+        Options options = new Options();
+        SearchCLIParams.createOptionsCLI(options);
+
+        // validate all runs and group them by FASTA file, in the order of the manifest
+        LinkedHashMap<String, ArrayList<BatchRun>> runsPerFasta = new LinkedHashMap<String, ArrayList<BatchRun>>();
+        int nInvalid = 0;
+
+        for (int i = 0; i < runs.size(); i++) {
+
+            LinkedHashMap<String, String> run = runs.get(i);
+            String[] runArguments = BatchManifest.getArguments(run, commonArguments);
+            String runName = "Run " + (i + 1);
+
+            if (run.containsKey(SearchCLIParams.BATCH.id) || run.containsKey(SearchCLIParams.WATCH_FOLDER.id) || run.containsKey(SearchCLIParams.WORKER_PORT.id)) {
+                waitingHandler.appendReport(runName + ": the batch, watch folder and worker modes cannot be used in a run.", true, true);
+                nInvalid++;
+                continue;
+            }
+
+            CommandLine runLine;
+            try {
+                runLine = new BasicParser().parse(options, runArguments);
+            } catch (ParseException e) {
+                waitingHandler.appendReport(runName + ": " + e.getMessage(), true, true);
+                nInvalid++;
+                continue;
+            }
+
+            if (!SearchCLIInputBean.isValidStartup(runLine)) {
+                waitingHandler.appendReport(runName + " is not valid.", true, true);
+                nInvalid++;
+                continue;
+            }
+
+            SearchCLIInputBean runInputBean = new SearchCLIInputBean(runLine);
+            File fastaFile = runInputBean.getIdentificationParameters().getSearchParameters().getFastaFile();
+            String fastaPath = fastaFile == null ? "" : fastaFile.getAbsolutePath();
+
+            ArrayList<BatchRun> fastaRuns = runsPerFasta.get(fastaPath);
+            if (fastaRuns == null) {
+                fastaRuns = new ArrayList<BatchRun>();
+                runsPerFasta.put(fastaPath, fastaRuns);
+            }
+            fastaRuns.add(new BatchRun(runName, runArguments, runInputBean));
+        }
+
+        if (nInvalid > 0) {
+            waitingHandler.appendReport(nInvalid + " run(s) of the manifest are not valid, no search started.", true, true);
+            return;
+        }
+
+        waitingHandler.appendReport("Running " + runs.size() + " run(s) using " + runsPerFasta.size() + " FASTA file(s).", true, true);
+
+        ArrayList<String> failedRuns = new ArrayList<String>();
+        int runIndex = 0;
+
+        for (ArrayList<BatchRun> fastaRuns : runsPerFasta.values()) {
+            for (BatchRun batchRun : fastaRuns) {
+
+                if (searchWaitingHandler != null && searchWaitingHandler.isRunCanceled()) {
+                    waitingHandler.appendReport("Batch canceled.", true, true);
+                    return;
+                }
+
+                runIndex++;
+                waitingHandler.appendReport("Batch run " + runIndex + "/" + runs.size() + " (" + batchRun.name + " of the manifest): "
+                        + batchRun.inputBean.getOutputFolder().getAbsolutePath(), true, true);
+
+                searchCLIInputBean = batchRun.inputBean;
+                arguments = batchRun.arguments;
+
+                if (!Boolean.TRUE.equals(call())) {
+                    failedRuns.add(batchRun.name);
+                }
+            }
+        }
+
+        if (failedRuns.isEmpty()) {
+            waitingHandler.appendReport("Batch completed: " + runs.size() + " run(s).", true, true);
+        } else {
+            String failedRunsList = failedRuns.toString();
+            failedRunsList = failedRunsList.substring(1, failedRunsList.length() - 1);
+            waitingHandler.appendReport("Batch completed: " + failedRuns.size() + " of " + runs.size() + " run(s) failed (" + failedRunsList + "). "
+                    + getLogFileMessage(), true, true);
+        }
+    }
+
+    /**
+     * Distributes the search of the given spectrum files over the workers and
+     * organizes the output of the workers.
+     *
+     * @param spectrumFiles the spectrum files
+     * @param parametersFile the identification parameters file
+     * @param userPreferences the user preferences of this search
+     * @param waitingHandler the waiting handler
+     *
+     * @return true if all the spectrum files were searched
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the workers
+     * @throws IOException thrown if an error occurred while organizing the
+     * output
+     */
+    private boolean searchDistributed(ArrayList<File> spectrumFiles, File parametersFile, UtilitiesUserPreferences userPreferences,
+            WaitingHandler waitingHandler) throws InterruptedException, IOException {
+
+        // the arguments of the jobs: the search options of this command line, uncompressed output in the job folders
+        ArrayList<String> jobArguments = new ArrayList<String>();
+        for (int i = 0; i < arguments.length; i++) {
+            String argument = arguments[i];
+            boolean coordinatorOption = argument.equals("-" + IdentificationParametersCLIParams.IDENTIFICATION_PARAMETERS.id);
+            for (SearchCLIParams option : COORDINATOR_OPTIONS) {
+                if (argument.equals("-" + option.id)) {
+                    coordinatorOption = true;
+                    break;
+                }
+            }
+            // the workers use their own search engines
+            for (SearchCLIParams option : SearchCLIWorker.REFUSED_OPTIONS) {
+                if (argument.equals("-" + option.id)) {
+                    coordinatorOption = true;
+                    break;
+                }
+            }
+            if (coordinatorOption) {
+                i++; // skip the value
+            } else {
+                jobArguments.add(argument);
+            }
+        }
+        jobArguments.add("-" + IdentificationParametersCLIParams.IDENTIFICATION_PARAMETERS.id);
+        jobArguments.add(parametersFile.getAbsolutePath());
+        jobArguments.add("-" + SearchCLIParams.OUTPUT_OPTION.id);
+        jobArguments.add("3"); // no zipping
+        jobArguments.add("-" + SearchCLIParams.OUTPUT_DATA.id);
+        jobArguments.add("0");
+
+        File jobsFolder = new File(searchCLIInputBean.getOutputFolder(), JOBS_FOLDER_NAME);
+
+        waitingHandler.appendReport("Distributing the search over " + searchCLIInputBean.getWorkers().size() + " worker(s).", true, true);
+
+        SearchCoordinator searchCoordinator = new SearchCoordinator(searchCLIInputBean.getWorkers(), searchCLIInputBean.getWorkerRetries(),
+                SearchCLIWorker.readToken(searchCLIInputBean.getWorkerToken()), waitingHandler);
+        HashMap<String, HashMap<Integer, File>> identificationFiles = searchCoordinator.search(spectrumFiles, jobArguments, jobsFolder);
+
+        if (!searchCoordinator.getFailedSpectrumFiles().isEmpty()) {
+            waitingHandler.appendReport(searchCoordinator.getFailedSpectrumFiles().size() + " spectrum file(s) could not be searched.", true, true);
+        }
+
+        if (!identificationFiles.isEmpty()) {
+
+            // workers sharing the home folder of the coordinator overwrite the user preferences
+            UtilitiesUserPreferences.saveUserPreferences(userPreferences);
+
+            waitingHandler.appendReport("Preparing output files.", true, true);
+            searchHandler.organizeDistributedOutput(identificationFiles, searchCoordinator.getJobFolders(), waitingHandler);
+        }
+
+        Util.deleteDir(jobsFolder);
+
+        waitingHandler.appendReport("Distributed search completed.", true, true);
+
+        return searchCoordinator.getFailedSpectrumFiles().isEmpty();
+    }
+
+    /**
+     * Returns the identification files of the last search indexed by
+     * spectrum file name and algorithm index, null if no search was run.
+     *
+     * @return the identification files of the last search
+     */
+    public HashMap<String, HashMap<Integer, File>> getIdentificationFiles() {
+        if (searchHandler == null) {
+            return null;
+        }
+        return searchHandler.getIdentificationFiles();
+    }
+
+    /**
+     * Monitors the watch folder and searches every new spectrum file once it
+     * is completely written, i.e., when its size and modification date did
+     * not change during one interval. The spectrum files given on the command
+     * line, if any, are searched first. The results of every file are named
+     * after the file. Runs until the process is stopped.
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for new files
+     */
+    private void watchFolder() throws InterruptedException {
+
+        File folder = searchCLIInputBean.getWatchFolder();
+        String defaultOutputFileName = searchCLIInputBean.getDefaultOutputFileName();
+        long interval = searchCLIInputBean.getWatchInterval() * 1000L;
+
+        // the files searched or produced by a search, and the state of the files being written
+        HashSet<String> processedFiles = new HashSet<String>();
+        HashMap<String, String> fileStates = new HashMap<String, String>();
+
+        if (!searchCLIInputBean.getSpectrumFiles().isEmpty()) {
+            for (File spectrumFile : searchCLIInputBean.getSpectrumFiles()) {
+                processedFiles.add(spectrumFile.getAbsolutePath());
+            }
+            call();
+            for (File producedFile : producedSpectrumFiles) {
+                processedFiles.add(producedFile.getAbsolutePath());
+            }
+        }
+
+        waitingHandler.appendReport("Watching " + folder.getAbsolutePath() + " for new spectrum files.", true, true);
+
+        while (true) {
+
+            ArrayList<File> folderFiles;
+            try {
+                folderFiles = SearchCLIInputBean.getSpectrumFiles(folder.getAbsolutePath());
+            } catch (FileNotFoundException e) {
+                waitingHandler.appendReport("Watch folder " + folder.getAbsolutePath() + " not found.", true, true);
+                folderFiles = new ArrayList<File>();
+            }
+
+            for (File spectrumFile : folderFiles) {
+
+                String path = spectrumFile.getAbsolutePath();
+
+                if (!processedFiles.contains(path)) {
+
+                    String state = spectrumFile.length() + "_" + spectrumFile.lastModified();
+
+                    if (spectrumFile.length() > 0 && state.equals(fileStates.get(path))) {
+
+                        processedFiles.add(path);
+                        fileStates.remove(path);
+
+                        String runName = Util.removeExtension(spectrumFile.getName());
+                        if (SpectrumFileDecompressor.isCompressed(spectrumFile)) {
+                            runName = Util.removeExtension(SpectrumFileDecompressor.getDecompressedFileName(spectrumFile));
+                        }
+
+                        waitingHandler.appendReport("New spectrum file: " + path, true, true);
+
+                        ArrayList<File> spectrumFiles = new ArrayList<File>(1);
+                        spectrumFiles.add(spectrumFile);
+                        searchCLIInputBean.setSpectrumFiles(spectrumFiles);
+                        searchCLIInputBean.setDefaultOutputFileName(runName + "_" + defaultOutputFileName);
+                        call();
+
+                        // ignore the files split or converted from this file
+                        for (File producedFile : producedSpectrumFiles) {
+                            processedFiles.add(producedFile.getAbsolutePath());
+                        }
+
+                        waitingHandler.appendReport("Watching " + folder.getAbsolutePath() + " for new spectrum files.", true, true);
+
+                    } else {
+                        fileStates.put(path, state);
+                    }
+                }
+            }
+
+            Thread.sleep(interval);
+        }
     }
 
     /**
@@ -427,4 +946,36 @@ public class SearchCLI implements Callable {
     public String getJarFilePath() {
         return CompomicsWrapper.getJarFilePath(this.getClass().getResource("SearchCLI.class").getPath(), "SearchGUI");
     }
+
+    /**
+     * A validated run of a batch manifest.
+     */
+    private static class BatchRun {
+
+        /**
+         * The name of the run in the manifest.
+         */
+        private final String name;
+        /**
+         * The command line arguments of the run.
+         */
+        private final String[] arguments;
+        /**
+         * The parsed command line of the run.
+         */
+        private final SearchCLIInputBean inputBean;
+
+        /**
+         * Constructor.
+         *
+         * @param name the name of the run in the manifest
+         * @param arguments the command line arguments of the run
+         * @param inputBean the parsed command line of the run
+         */
+        private BatchRun(String name, String[] arguments, SearchCLIInputBean inputBean) {
+            this.name = name;
+            this.arguments = arguments;
+            this.inputBean = inputBean;
+        }
+    }
 }
@@ -3,8 +3,11 @@ package eu.isas.searchgui.cmd;
 import com.compomics.software.cli.CommandLineUtils;
 import com.compomics.software.cli.CommandParameter;
 import com.compomics.cli.identification_parameters.IdentificationParametersInputBean;
+import com.compomics.util.experiment.massspectrometry.proteowizard.MsFormat;
 import com.compomics.util.preferences.IdentificationParameters;
 import com.compomics.util.preferences.SearchGuiOutputOption;
+import eu.isas.searchgui.utilities.DataExportMode;
+import eu.isas.searchgui.utilities.SpectrumFileDecompressor;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -20,10 +23,38 @@ import org.apache.commons.cli.CommandLine;
  */
 public class SearchCLIInputBean {
 
+    /**
+     * The extension of the Thermo raw files, converted with msconvert.
+     */
+    public static final String RAW_EXTENSION = ".raw";
     /**
      * The spectrum files.
      */
     private ArrayList<File> spectrumFiles;
+    /**
+     * The folder to monitor for new spectrum files, null if not in watch
+     * mode.
+     */
+    private File watchFolder = null;
+    /**
+     * The interval in seconds between two checks of the watch folder.
+     */
+    private int watchInterval = 30;
+    /**
+     * The workers of a distributed search as host:port, empty if the search
+     * is not distributed.
+     */
+    private ArrayList<String> workers = new ArrayList<String>();
+    /**
+     * The number of times a job is sent again when it fails or its worker is
+     * lost.
+     */
+    private int workerRetries = 2;
+    /**
+     * The file containing the secret shared with the workers, null if not
+     * set.
+     */
+    private File workerToken = null;
     /**
      * The output folder.
      */
@@ -137,6 +168,15 @@ public class SearchCLIInputBean {
      * to Dalton.
      */
     private Double refMass = 2000.0;
+    /**
+     * Indicates whether Comet searches the peptide index of the database.
+     */
+    private boolean cometIndex = false;
+    /**
+     * Indicates whether the Comet spectrum batch size is set from the input
+     * size and the memory budget.
+     */
+    private boolean cometAutoBatchSize = false;
     /**
      * How to handle duplicate spectrum titles. 0: do nothing, 1: rename by
      * adding (2), (3), etc, behind the titles of the duplicated titles, or 2:
@@ -152,6 +192,50 @@ public class SearchCLIInputBean {
      * Number of threads to use. Defaults to the number of cores available.
      */
     private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The factor of the expected duration after which a search engine
+     * process is stopped, 0 to never stop processes.
+     */
+    private int processTimeoutFactor = 10;
+    /**
+     * The number of minutes without output and CPU usage after which a
+     * process is stopped, 0 to never stop processes.
+     */
+    private int processSilenceTimeout = 30;
+    /**
+     * The number of times a process which did not respond is started again.
+     */
+    private int processRetries = 1;
+    /**
+     * The number of seconds to wait before starting a process again.
+     */
+    private int processRetryBackoff = 60;
+    /**
+     * Indicates whether the processes are confined in cgroups.
+     */
+    private boolean cgroupConfinement = false;
+    /**
+     * The CPUs the confined processes may use, null for all.
+     */
+    private String cgroupCpus = null;
+    /**
+     * The maximal memory of a confined process in MB, 0 for no limit.
+     */
+    private int cgroupMemory = 0;
+    /**
+     * The maximal number of spectrum files searched in a single process by
+     * the engines supporting it, 0 for all files.
+     */
+    private int engineBatchSize = 1;
+    /**
+     * The number of Novor processes run in parallel, 0 for one per thread.
+     */
+    private int novorWorkers = 1;
+    /**
+     * Indicates whether the spectra converted for Tide and Andromeda are
+     * streamed through named pipes.
+     */
+    private boolean streamSpectra = false;
     /**
      * The way the output should be organized.
      */
@@ -161,6 +245,11 @@ public class SearchCLIInputBean {
      * output.
      */
     private Boolean outputData = false;
+    /**
+     * The way the mgf and FASTA files are exported when the output is not
+     * zipped.
+     */
+    private DataExportMode dataExportMode = DataExportMode.reflink;
     /**
      * Indicates whether the date should be included in the output file name.
      */
@@ -191,8 +280,35 @@ public class SearchCLIInputBean {
     public SearchCLIInputBean(CommandLine aLine) throws IOException, ClassNotFoundException {
 
         // get the files needed for the search
-        String spectrumFilesTxt = aLine.getOptionValue(SearchCLIParams.SPECTRUM_FILES.id);
-        spectrumFiles = getSpectrumFiles(spectrumFilesTxt);
+        if (aLine.hasOption(SearchCLIParams.SPECTRUM_FILES.id)) {
+            String spectrumFilesTxt = aLine.getOptionValue(SearchCLIParams.SPECTRUM_FILES.id);
+            spectrumFiles = getSpectrumFiles(spectrumFilesTxt);
+        } else {
+            spectrumFiles = new ArrayList<File>();
+        }
+
+        // the watch folder
+        if (aLine.hasOption(SearchCLIParams.WATCH_FOLDER.id)) {
+            watchFolder = new File(aLine.getOptionValue(SearchCLIParams.WATCH_FOLDER.id));
+        }
+        if (aLine.hasOption(SearchCLIParams.WATCH_INTERVAL.id)) {
+            watchInterval = new Integer(aLine.getOptionValue(SearchCLIParams.WATCH_INTERVAL.id));
+        }
+
+        // the workers
+        if (aLine.hasOption(SearchCLIParams.WORKERS.id)) {
+            for (String worker : aLine.getOptionValue(SearchCLIParams.WORKERS.id).split(",")) {
+                if (!worker.trim().equals("")) {
+                    workers.add(worker.trim());
+                }
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.WORKER_RETRIES.id)) {
+            workerRetries = new Integer(aLine.getOptionValue(SearchCLIParams.WORKER_RETRIES.id));
+        }
+        if (aLine.hasOption(SearchCLIParams.WORKER_TOKEN.id)) {
+            workerToken = new File(aLine.getOptionValue(SearchCLIParams.WORKER_TOKEN.id));
+        }
 
         // output folder
         String arg = aLine.getOptionValue(SearchCLIParams.OUTPUT_FOLDER.id);
@@ -334,6 +450,53 @@ public class SearchCLIInputBean {
             nThreads = new Integer(arg);
         }
 
+        // get the process timeout
+        if (aLine.hasOption(SearchCLIParams.PROCESS_TIMEOUT.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.PROCESS_TIMEOUT.id);
+            processTimeoutFactor = new Integer(arg);
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_SILENCE_TIMEOUT.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.PROCESS_SILENCE_TIMEOUT.id);
+            processSilenceTimeout = new Integer(arg);
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_RETRIES.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.PROCESS_RETRIES.id);
+            processRetries = new Integer(arg);
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_RETRY_BACKOFF.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.PROCESS_RETRY_BACKOFF.id);
+            processRetryBackoff = new Integer(arg);
+        }
+        if (aLine.hasOption(SearchCLIParams.CGROUP.id)) {
+            int input = new Integer(aLine.getOptionValue(SearchCLIParams.CGROUP.id));
+            cgroupConfinement = input == 1;
+        }
+        if (aLine.hasOption(SearchCLIParams.CGROUP_CPUS.id)) {
+            cgroupCpus = aLine.getOptionValue(SearchCLIParams.CGROUP_CPUS.id).trim();
+        }
+        if (aLine.hasOption(SearchCLIParams.CGROUP_MEMORY.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.CGROUP_MEMORY.id);
+            cgroupMemory = new Integer(arg);
+        }
+
+        // get the number of spectrum files per search engine process
+        if (aLine.hasOption(SearchCLIParams.ENGINE_BATCH_SIZE.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.ENGINE_BATCH_SIZE.id);
+            engineBatchSize = new Integer(arg);
+        }
+
+        // get the number of parallel novor processes
+        if (aLine.hasOption(SearchCLIParams.NOVOR_WORKERS.id)) {
+            arg = aLine.getOptionValue(SearchCLIParams.NOVOR_WORKERS.id);
+            novorWorkers = new Integer(arg);
+        }
+
+        // get the spectrum streaming option
+        if (aLine.hasOption(SearchCLIParams.SPECTRUM_STREAMING.id)) {
+            int input = new Integer(aLine.getOptionValue(SearchCLIParams.SPECTRUM_STREAMING.id));
+            streamSpectra = input == 1;
+        }
+
         // set the target-decoy tag
         if (aLine.hasOption(SearchCLIParams.TARGET_DECOY_TAG.id)) {
             arg = aLine.getOptionValue(SearchCLIParams.TARGET_DECOY_TAG.id);
@@ -347,6 +510,18 @@ public class SearchCLIInputBean {
             refMass = option;
         }
 
+        // set the use of the comet index
+        if (aLine.hasOption(SearchCLIParams.COMET_INDEX.id)) {
+            int input = new Integer(aLine.getOptionValue(SearchCLIParams.COMET_INDEX.id));
+            cometIndex = input == 1;
+        }
+
+        // set the automatic comet batch size
+        if (aLine.hasOption(SearchCLIParams.COMET_AUTO_BATCH.id)) {
+            int input = new Integer(aLine.getOptionValue(SearchCLIParams.COMET_AUTO_BATCH.id));
+            cometAutoBatchSize = input == 1;
+        }
+
         // load the output preference
         if (aLine.hasOption(SearchCLIParams.OUTPUT_DEFAULT_NAME.id)) {
             arg = aLine.getOptionValue(SearchCLIParams.OUTPUT_DEFAULT_NAME.id);
@@ -360,6 +535,10 @@ public class SearchCLIInputBean {
             int input = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_DATA.id));
             outputData = input == 1;
         }
+        if (aLine.hasOption(SearchCLIParams.OUTPUT_DATA_EXPORT.id)) {
+            int option = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_DATA_EXPORT.id));
+            dataExportMode = DataExportMode.getDataExportMode(option);
+        }
         if (aLine.hasOption(SearchCLIParams.OUTPUT_DATE.id)) {
             int input = new Integer(aLine.getOptionValue(SearchCLIParams.OUTPUT_DATE.id));
             outputDate = input == 1;
@@ -385,6 +564,64 @@ public class SearchCLIInputBean {
         return spectrumFiles;
     }
 
+    /**
+     * Sets the spectrum files.
+     *
+     * @param spectrumFiles the spectrum files
+     */
+    public void setSpectrumFiles(ArrayList<File> spectrumFiles) {
+        this.spectrumFiles = spectrumFiles;
+    }
+
+    /**
+     * Returns the folder to monitor for new spectrum files, null if not in
+     * watch mode.
+     *
+     * @return the folder to monitor for new spectrum files
+     */
+    public File getWatchFolder() {
+        return watchFolder;
+    }
+
+    /**
+     * Returns the interval in seconds between two checks of the watch folder.
+     *
+     * @return the interval in seconds between two checks of the watch folder
+     */
+    public int getWatchInterval() {
+        return watchInterval;
+    }
+
+    /**
+     * Returns the workers of a distributed search as host:port, empty if the
+     * search is not distributed.
+     *
+     * @return the workers of a distributed search
+     */
+    public ArrayList<String> getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Returns the number of times a job is sent again when it fails or its
+     * worker is lost.
+     *
+     * @return the number of times a job is sent again
+     */
+    public int getWorkerRetries() {
+        return workerRetries;
+    }
+
+    /**
+     * Returns the file containing the secret shared with the workers, null
+     * if not set.
+     *
+     * @return the file containing the secret shared with the workers
+     */
+    public File getWorkerToken() {
+        return workerToken;
+    }
+
     /**
      * Returns the output folder.
      *
@@ -418,7 +655,8 @@ public class SearchCLIInputBean {
 
     /**
      * Returns a list of spectrum files as imported from the command line
-     * option.
+     * option. Compressed mgf files (mgf.gz and mgf.zst), mzML files and Thermo
+     * raw files are included.
      *
      * @param optionInput the command line option
      * @return a list of file candidates
@@ -428,6 +666,10 @@ public class SearchCLIInputBean {
     public static ArrayList<File> getSpectrumFiles(String optionInput) throws FileNotFoundException {
         ArrayList<String> extentions = new ArrayList<String>();
         extentions.add(".mgf");
+        extentions.add(SpectrumFileDecompressor.MGF_GZ_EXTENSION);
+        extentions.add(SpectrumFileDecompressor.MGF_ZST_EXTENSION);
+        extentions.add(MsFormat.mzML.fileNameEnding);
+        extentions.add(RAW_EXTENSION);
         return CommandLineUtils.getFiles(optionInput, extentions);
     }
 
@@ -691,6 +933,102 @@ public class SearchCLIInputBean {
         return nThreads;
     }
 
+    /**
+     * Returns the factor of the expected duration after which a search
+     * engine process is stopped, 0 if processes are never stopped.
+     *
+     * @return the process timeout factor
+     */
+    public int getProcessTimeoutFactor() {
+        return processTimeoutFactor;
+    }
+
+    /**
+     * Returns the number of minutes without output and CPU usage after which
+     * a process is stopped, 0 if processes are never stopped.
+     *
+     * @return the process silence timeout in minutes
+     */
+    public int getProcessSilenceTimeout() {
+        return processSilenceTimeout;
+    }
+
+    /**
+     * Returns the number of times a process which did not respond is started
+     * again.
+     *
+     * @return the number of process retries
+     */
+    public int getProcessRetries() {
+        return processRetries;
+    }
+
+    /**
+     * Returns the number of seconds to wait before starting a process again.
+     *
+     * @return the process retry backoff in seconds
+     */
+    public int getProcessRetryBackoff() {
+        return processRetryBackoff;
+    }
+
+    /**
+     * Indicates whether the processes are confined in cgroups.
+     *
+     * @return true if the processes are confined in cgroups
+     */
+    public boolean isCgroupConfinement() {
+        return cgroupConfinement;
+    }
+
+    /**
+     * Returns the CPUs the confined processes may use, null for all.
+     *
+     * @return the CPUs the confined processes may use
+     */
+    public String getCgroupCpus() {
+        return cgroupCpus;
+    }
+
+    /**
+     * Returns the maximal memory of a confined process in MB, 0 for no limit.
+     *
+     * @return the maximal memory of a confined process in MB
+     */
+    public int getCgroupMemory() {
+        return cgroupMemory;
+    }
+
+    /**
+     * Returns the maximal number of spectrum files searched in a single
+     * process by the engines supporting it, 0 for all files.
+     *
+     * @return the maximal number of spectrum files per search engine process
+     */
+    public int getEngineBatchSize() {
+        return engineBatchSize;
+    }
+
+    /**
+     * Returns the number of Novor processes run in parallel, 0 for one per
+     * thread.
+     *
+     * @return the number of Novor processes run in parallel
+     */
+    public int getNovorWorkers() {
+        return novorWorkers;
+    }
+
+    /**
+     * Indicates whether the spectra converted for Tide and Andromeda are
+     * streamed through named pipes.
+     *
+     * @return true if the spectra are streamed through named pipes
+     */
+    public boolean isStreamSpectra() {
+        return streamSpectra;
+    }
+
     /**
      * Verifies the command line start parameters.
      *
@@ -706,8 +1044,71 @@ public class SearchCLIInputBean {
             return false;
         }
 
+        // check the worker mode
+        if (aLine.hasOption(SearchCLIParams.WORKER_PORT.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.WORKER_PORT.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.WORKER_PORT.id, arg, false)) {
+                return false;
+            }
+            return isValidWorkerToken(aLine);
+        }
+
+        // check the batch manifest, the runs are validated when the manifest is loaded
+        if (aLine.hasOption(SearchCLIParams.BATCH.id)) {
+            File manifestFile = new File(aLine.getOptionValue(SearchCLIParams.BATCH.id));
+            if (!manifestFile.isFile()) {
+                System.out.println(System.getProperty("line.separator") + "Batch manifest \'" + manifestFile.getName() + "\' not found." + System.getProperty("line.separator"));
+                return false;
+            }
+            return true;
+        }
+
+        // check the workers
+        if (aLine.hasOption(SearchCLIParams.WORKERS.id)) {
+            for (String worker : aLine.getOptionValue(SearchCLIParams.WORKERS.id).split(",")) {
+                worker = worker.trim();
+                int separatorIndex = worker.lastIndexOf(":");
+                if (separatorIndex <= 0 || !CommandParameter.isPositiveInteger(SearchCLIParams.WORKERS.id, worker.substring(separatorIndex + 1), false)) {
+                    System.out.println(System.getProperty("line.separator") + "Worker \'" + worker + "\' not recognized, host:port expected." + System.getProperty("line.separator"));
+                    return false;
+                }
+            }
+            if (!isValidWorkerToken(aLine)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.WORKER_RETRIES.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.WORKER_RETRIES.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.WORKER_RETRIES.id, arg, true)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.JOB_PRIORITY.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.JOB_PRIORITY.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.JOB_PRIORITY.id, arg, true)) {
+                return false;
+            }
+        }
+
+        // check the watch folder
+        if (aLine.hasOption(SearchCLIParams.WATCH_FOLDER.id)) {
+            File watchFolder = new File(aLine.getOptionValue(SearchCLIParams.WATCH_FOLDER.id));
+            if (!watchFolder.isDirectory()) {
+                System.out.println(System.getProperty("line.separator") + "Watch folder \'" + watchFolder.getName() + "\' not found." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.WATCH_INTERVAL.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.WATCH_INTERVAL.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.WATCH_INTERVAL.id, arg, false)) {
+                return false;
+            }
+        }
+
         // check the spectrum files
-        if (!aLine.hasOption(SearchCLIParams.SPECTRUM_FILES.id) || ((String) aLine.getOptionValue(SearchCLIParams.SPECTRUM_FILES.id)).equals("")) {
+        if (aLine.hasOption(SearchCLIParams.WATCH_FOLDER.id) && !aLine.hasOption(SearchCLIParams.SPECTRUM_FILES.id)) {
+            // the spectrum files are taken from the watch folder
+        } else if (!aLine.hasOption(SearchCLIParams.SPECTRUM_FILES.id) || ((String) aLine.getOptionValue(SearchCLIParams.SPECTRUM_FILES.id)).equals("")) {
             System.out.println(System.getProperty("line.separator") + "Spectrum files not specified." + System.getProperty("line.separator"));
             return false;
         } else {
@@ -761,6 +1162,21 @@ public class SearchCLIInputBean {
             }
         }
 
+        // check the output data export option
+        if (aLine.hasOption(SearchCLIParams.OUTPUT_DATA_EXPORT.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.OUTPUT_DATA_EXPORT.id);
+            try {
+                int option = new Integer(input);
+                if (DataExportMode.getDataExportMode(option) == null) {
+                    System.out.println(System.getProperty("line.separator") + "Output data export option \'" + option + "\' not recognized." + System.getProperty("line.separator"));
+                    return false;
+                }
+            } catch (Exception e) {
+                System.out.println(System.getProperty("line.separator") + "Output data export option \'" + input + "\' not recognized." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+
         // check the output date option
         if (aLine.hasOption(SearchCLIParams.OUTPUT_DATE.id)) {
             String input = aLine.getOptionValue(SearchCLIParams.OUTPUT_DATE.id);
@@ -794,6 +1210,75 @@ public class SearchCLIInputBean {
             }
         }
 
+        // check the process timeout
+        if (aLine.hasOption(SearchCLIParams.PROCESS_TIMEOUT.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.PROCESS_TIMEOUT.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.PROCESS_TIMEOUT.id, arg, true)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_SILENCE_TIMEOUT.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.PROCESS_SILENCE_TIMEOUT.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.PROCESS_SILENCE_TIMEOUT.id, arg, true)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_RETRIES.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.PROCESS_RETRIES.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.PROCESS_RETRIES.id, arg, true)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.PROCESS_RETRY_BACKOFF.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.PROCESS_RETRY_BACKOFF.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.PROCESS_RETRY_BACKOFF.id, arg, true)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.CGROUP.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.CGROUP.id);
+            if (!CommandParameter.isBooleanInput(SearchCLIParams.CGROUP.id, input)) {
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.CGROUP_CPUS.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.CGROUP_CPUS.id).trim();
+            if (!arg.matches("[0-9]+(-[0-9]+)?(,[0-9]+(-[0-9]+)?)*")) {
+                System.out.println(System.getProperty("line.separator") + "CPU list \'" + arg + "\' not valid, e.g., '0-7' or '0,2,4' expected." + System.getProperty("line.separator"));
+                return false;
+            }
+        }
+        if (aLine.hasOption(SearchCLIParams.CGROUP_MEMORY.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.CGROUP_MEMORY.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.CGROUP_MEMORY.id, arg, true)) {
+                return false;
+            }
+        }
+
+        // check the number of spectrum files per search engine process
+        if (aLine.hasOption(SearchCLIParams.ENGINE_BATCH_SIZE.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.ENGINE_BATCH_SIZE.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.ENGINE_BATCH_SIZE.id, arg, true)) {
+                return false;
+            }
+        }
+
+        // check the number of parallel novor processes
+        if (aLine.hasOption(SearchCLIParams.NOVOR_WORKERS.id)) {
+            String arg = aLine.getOptionValue(SearchCLIParams.NOVOR_WORKERS.id);
+            if (!CommandParameter.isPositiveInteger(SearchCLIParams.NOVOR_WORKERS.id, arg, true)) {
+                return false;
+            }
+        }
+
+        // check the spectrum streaming option
+        if (aLine.hasOption(SearchCLIParams.SPECTRUM_STREAMING.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.SPECTRUM_STREAMING.id);
+            if (!CommandParameter.isBooleanInput(SearchCLIParams.SPECTRUM_STREAMING.id, input)) {
+                return false;
+            }
+        }
+
         // check the search engine on/off status
         if (aLine.hasOption(SearchCLIParams.OMSSA.id)) {
             String input = aLine.getOptionValue(SearchCLIParams.OMSSA.id);
@@ -988,6 +1473,22 @@ public class SearchCLIInputBean {
             }
         }
 
+        // check the use of the comet index
+        if (aLine.hasOption(SearchCLIParams.COMET_INDEX.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.COMET_INDEX.id);
+            if (!CommandParameter.isBooleanInput(SearchCLIParams.COMET_INDEX.id, input)) {
+                return false;
+            }
+        }
+
+        // check the automatic comet batch size
+        if (aLine.hasOption(SearchCLIParams.COMET_AUTO_BATCH.id)) {
+            String input = aLine.getOptionValue(SearchCLIParams.COMET_AUTO_BATCH.id);
+            if (!CommandParameter.isBooleanInput(SearchCLIParams.COMET_AUTO_BATCH.id, input)) {
+                return false;
+            }
+        }
+
         // check the identification parameters
         if (!IdentificationParametersInputBean.isValidStartup(aLine, false)) {
             return false;
@@ -996,6 +1497,27 @@ public class SearchCLIInputBean {
         return true;
     }
 
+    /**
+     * Verifies that the file containing the secret shared by a coordinator
+     * and its workers is given.
+     *
+     * @param aLine the command line to validate
+     *
+     * @return true if the file is given and exists
+     */
+    private static boolean isValidWorkerToken(CommandLine aLine) {
+        if (!aLine.hasOption(SearchCLIParams.WORKER_TOKEN.id)) {
+            System.out.println(System.getProperty("line.separator") + "Worker token file not specified." + System.getProperty("line.separator"));
+            return false;
+        }
+        File tokenFile = new File(aLine.getOptionValue(SearchCLIParams.WORKER_TOKEN.id));
+        if (!tokenFile.isFile()) {
+            System.out.println(System.getProperty("line.separator") + "Worker token file \'" + tokenFile.getName() + "\' not found." + System.getProperty("line.separator"));
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Returns the path settings provided by the user.
      *
@@ -1041,6 +1563,16 @@ public class SearchCLIInputBean {
         return outputData;
     }
 
+    /**
+     * Returns the way the mgf and FASTA files are exported when the output is
+     * not zipped.
+     *
+     * @return the way the mgf and FASTA files are exported
+     */
+    public DataExportMode getDataExportMode() {
+        return dataExportMode;
+    }
+
     /**
      * Indicates whether the date should be included in the output name.
      *
@@ -1137,4 +1669,23 @@ public class SearchCLIInputBean {
     public void setRefMass(Double refMass) {
         this.refMass = refMass;
     }
+
+    /**
+     * Indicates whether Comet searches the peptide index of the database.
+     *
+     * @return true if Comet searches the peptide index of the database
+     */
+    public boolean isCometIndex() {
+        return cometIndex;
+    }
+
+    /**
+     * Indicates whether the Comet spectrum batch size is set from the input
+     * size and the memory budget.
+     *
+     * @return true if the Comet spectrum batch size is set automatically
+     */
+    public boolean isCometAutoBatchSize() {
+        return cometAutoBatchSize;
+    }
 }
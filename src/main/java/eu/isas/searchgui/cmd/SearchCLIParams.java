@@ -2,6 +2,7 @@ package eu.isas.searchgui.cmd;
 
 import com.compomics.cli.identification_parameters.IdentificationParametersCLIParams;
 import com.compomics.util.preferences.SearchGuiOutputOption;
+import eu.isas.searchgui.utilities.DataExportMode;
 import org.apache.commons.cli.Options;
 
 /**
@@ -16,10 +17,21 @@ public enum SearchCLIParams {
     // IMPORTANT: Any change here must be reported in the wiki: 
     // https://github.com/compomics/searchgui/wiki/SearchCLI.
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
-    SPECTRUM_FILES("spectrum_files", "Spectrum files (mgf format), comma separated list or an entire folder.", true),
+    SPECTRUM_FILES("spectrum_files", "Spectrum files (mgf format, optionally compressed as mgf.gz or mgf.zst, mzML format or Thermo raw format), comma separated list or an entire folder. "
+            + "The mzML files are searched directly when all search engines read mzML, and converted to mgf with msconvert otherwise. The raw files are converted with msconvert.", true),
     OUTPUT_FOLDER("output_folder", "The output folder.", true),
 
     THREADS("threads", "Number of threads to use for the processing, default: the number of cores.", false),
+    PROCESS_TIMEOUT("process_timeout", "Stop a search engine process running longer than this factor times its expected duration, estimated from the previous runs of the engine with the same number of threads and a FASTA file of similar size (0: never stop, default is '10').", false),
+    PROCESS_SILENCE_TIMEOUT("process_silence_timeout", "Stop a process which did not write any output nor use any CPU during this number of minutes (0: never stop, default is '30').", false),
+    PROCESS_RETRIES("process_retries", "The number of times a process stopped because it did not respond is started again. Default is '1'.", false),
+    PROCESS_RETRY_BACKOFF("process_retry_backoff", "The number of seconds to wait before starting a process again, doubled at every retry. Default is '60'.", false),
+    CGROUP("cgroup", "Confine every process in its own cgroup (Linux, cgroup v2), limiting its CPU usage to the number of threads and reporting the resources used (0: off, 1: on, default is '0').", false),
+    CGROUP_CPUS("cgroup_cpus", "The CPUs the confined processes may use, e.g., '0-7' or '0,2,4'. Default: all.", false),
+    CGROUP_MEMORY("cgroup_memory", "The maximal memory of a confined process in MB (0: no limit, default is '0').", false),
+    ENGINE_BATCH_SIZE("engine_batch_size", "The maximal number of spectrum files searched in a single process by MyriMatch, Comet, MS-GF+, Tide (text output only) and DirecTag (0: all files, default is '1').", false),
+    NOVOR_WORKERS("novor_workers", "The number of Novor processes run in parallel on shards of the spectrum files, every process handling its shards one after the other (0: one per thread, default is '1').", false),
+    SPECTRUM_STREAMING("spectrum_streaming", "Stream the spectra converted for Tide and Andromeda to the engines through named pipes instead of temporary files, where available (0: off, 1: on, default is '0').", false),
     
     OMSSA("omssa", "Turn the OMSSA search on or off (0: off, 1: on,  default is '0').", false),
     XTANDEM("xtandem", "Turn the X!Tandem search on or off (0: off, 1: on, default is '0').", false),
@@ -51,13 +63,28 @@ public enum SearchCLIParams {
     MISSING_TITLE_HANDLING("missing_titles", "Add missing spectrum titles. (0: no correction, 1: add missing spectrum titles, default is '0').", false),
     
     REFERENCE_MASS("ref_mass", "Reference mass for the conversion of the fragment ion tolerance from ppm to Dalton. Default is '2000'.", false),
+    COMET_AUTO_BATCH("comet_auto_batch", "Set the Comet spectrum batch size from the number of spectra, the database size and the memory budget, i.e., the cgroup memory limit if set or the available memory (0: off, 1: on, default is '0').", false),
+    COMET_INDEX("comet_index", "Search the Comet peptide index of the FASTA file, created next to the FASTA file and reused as long as the database, enzyme and modifications are unchanged. Requires Comet 2020.01 or newer (0: off, 1: on, default is '0').", false),
     
     OUTPUT_DEFAULT_NAME("output_default_name", "Optional output default name, default is 'searchgui_out'.", false),
     OUTPUT_OPTION("output_option", "Optional result file compression (" + SearchGuiOutputOption.getCommandLineOptions() + "), default is '0'.", false),
     OUTPUT_DATA("output_data", "Include mgf and FASTA file in zipped output (0: no, 1: yes, default is '0').", false),
+    OUTPUT_DATA_EXPORT("output_data_export", "Export of the mgf and FASTA file in uncompressed output (" + DataExportMode.getCommandLineOptions() + "), default is '2'. Files are copied when links are not possible.", false),
     OUTPUT_DATE("output_date", "Include date in output name (0: no, 1: yes, default is '0').", false),
     RENAME_XTANDEM_OUTPUT("rename_xtandem", "Turn the renaming of the X! Tandem files on/off. (0: off, 1: on, default is '1').", false),
     
+    BATCH("batch", "A manifest of several runs, either a tab separated file with the option names as header and one run per line, or a JSON array with one object per run. Every run gives its own options, e.g., spectrum_files, id_params and output_folder, the options of the command line apply to all runs. The runs are executed in one process, runs sharing a FASTA file one after the other. Replaces spectrum_files and output_folder.", false),
+    
+    WATCH_FOLDER("watch_folder", "Folder to monitor for new spectrum files (mgf, mgf.gz, mgf.zst, mzML or Thermo raw). Every new file is searched once completely written and SearchCLI runs until stopped. Replaces spectrum_files.", false),
+    WATCH_INTERVAL("watch_interval", "The interval in seconds between two checks of the watch folder. A file is considered complete when unchanged for one interval. Default is '30'.", false),
+    
+    WORKERS("workers", "Comma separated list of SearchCLI workers (host:port) to distribute the search to, one job per spectrum file. The workers must access the spectrum files and the output folder using the same paths.", false),
+    WORKER_RETRIES("worker_retries", "The number of times a job is sent again when it fails or its worker is lost. Default is '2'.", false),
+    WORKER_PORT("worker_port", "Start SearchCLI as a worker listening for search jobs on the given port. Only worker_address and worker_token are used.", false),
+    WORKER_ADDRESS("worker_address", "The address a worker listens on, e.g., 127.0.0.1 to accept jobs from this machine only. Default: all addresses.", false),
+    WORKER_TOKEN("worker_token", "A token file, mandatory with workers and worker_port. For a worker, one line per user or project with the tab separated secret, user name, priority and share weight, the last three being optional (default: the line number, '0' and '1'). Workers run one job at a time: waiting jobs of higher priority start first, and among equal priorities the user with the least core time used relative to their share weight goes first. For a coordinator, the secret is the first field of the first line.", false),
+    JOB_PRIORITY("job_priority", "The priority of the jobs of a distributed search, can only lower the priority given to the user by the workers. Running jobs are not interrupted.", false),
+    
     TARGET_DECOY_TAG("target_decoy_tag", "The tag added after adding decoy sequences to a FASTA file. Default is '_concatenated_target_decoy'", false);
 
     /**
@@ -158,14 +185,42 @@ public enum SearchCLIParams {
         output += "-" + String.format(formatter, OUTPUT_DEFAULT_NAME.id) + " " + OUTPUT_DEFAULT_NAME.description + "\n";
         output += "-" + String.format(formatter, OUTPUT_OPTION.id) + " " + OUTPUT_OPTION.description + "\n";
         output += "-" + String.format(formatter, OUTPUT_DATA.id) + " " + OUTPUT_DATA.description + "\n";
+        output += "-" + String.format(formatter, OUTPUT_DATA_EXPORT.id) + " " + OUTPUT_DATA_EXPORT.description + "\n";
         output += "-" + String.format(formatter, OUTPUT_DATE.id) + " " + OUTPUT_DATE.description + "\n";
         output += "-" + String.format(formatter, RENAME_XTANDEM_OUTPUT.id) + " " + RENAME_XTANDEM_OUTPUT.description + "\n";
         
+        output += "\n\nBatch Submission:\n\n";
+        output += "-" + String.format(formatter, BATCH.id) + " " + BATCH.description + "\n";
+        
+        output += "\n\nWatch Folder:\n\n";
+        output += "-" + String.format(formatter, WATCH_FOLDER.id) + " " + WATCH_FOLDER.description + "\n";
+        output += "-" + String.format(formatter, WATCH_INTERVAL.id) + " " + WATCH_INTERVAL.description + "\n";
+        
+        output += "\n\nDistributed Search:\n\n";
+        output += "-" + String.format(formatter, WORKERS.id) + " " + WORKERS.description + "\n";
+        output += "-" + String.format(formatter, WORKER_RETRIES.id) + " " + WORKER_RETRIES.description + "\n";
+        output += "-" + String.format(formatter, WORKER_PORT.id) + " " + WORKER_PORT.description + "\n";
+        output += "-" + String.format(formatter, WORKER_ADDRESS.id) + " " + WORKER_ADDRESS.description + "\n";
+        output += "-" + String.format(formatter, WORKER_TOKEN.id) + " " + WORKER_TOKEN.description + "\n";
+        output += "-" + String.format(formatter, JOB_PRIORITY.id) + " " + JOB_PRIORITY.description + "\n";
+        
         output += "\n\nProcessing Options:\n\n";
         output += "-" + String.format(formatter, THREADS.id) + " " + THREADS.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_TIMEOUT.id) + " " + PROCESS_TIMEOUT.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_SILENCE_TIMEOUT.id) + " " + PROCESS_SILENCE_TIMEOUT.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_RETRIES.id) + " " + PROCESS_RETRIES.description + "\n";
+        output += "-" + String.format(formatter, PROCESS_RETRY_BACKOFF.id) + " " + PROCESS_RETRY_BACKOFF.description + "\n";
+        output += "-" + String.format(formatter, CGROUP.id) + " " + CGROUP.description + "\n";
+        output += "-" + String.format(formatter, CGROUP_CPUS.id) + " " + CGROUP_CPUS.description + "\n";
+        output += "-" + String.format(formatter, CGROUP_MEMORY.id) + " " + CGROUP_MEMORY.description + "\n";
+        output += "-" + String.format(formatter, ENGINE_BATCH_SIZE.id) + " " + ENGINE_BATCH_SIZE.description + "\n";
+        output += "-" + String.format(formatter, NOVOR_WORKERS.id) + " " + NOVOR_WORKERS.description + "\n";
+        output += "-" + String.format(formatter, SPECTRUM_STREAMING.id) + " " + SPECTRUM_STREAMING.description + "\n";
         
         output += "\n\nAdvanced Options:\n\n";
         output += "-" + String.format(formatter, REFERENCE_MASS.id) + " " + REFERENCE_MASS.description + "\n";
+        output += "-" + String.format(formatter, COMET_INDEX.id) + " " + COMET_INDEX.description + "\n";
+        output += "-" + String.format(formatter, COMET_AUTO_BATCH.id) + " " + COMET_AUTO_BATCH.description + "\n";
         
         output += "\n\nOptional Temporary Folder:\n\n";
         output += "-" + String.format(formatter, PathSettingsCLIParams.ALL.id) + " " + PathSettingsCLIParams.ALL.description + "\n";
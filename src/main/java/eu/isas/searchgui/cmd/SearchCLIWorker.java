@@ -0,0 +1,633 @@
+package eu.isas.searchgui.cmd;
+
+import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerCLIImpl;
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.ProcessTree;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * A SearchCLI worker running the search jobs sent by coordinator SearchCLIs.
+ * The worker listens on a TCP port, accepts jobs from several coordinators
+ * at the same time and runs one job at a time in the order given by a
+ * SearchJobScheduler.
+ *
+ * The protocol is line based. The coordinator sends one line with the job
+ * keyword followed by the SearchCLI arguments of the job. While the job is
+ * waiting or running the worker regularly sends a queued or running
+ * heartbeat line, the queued line giving the number of jobs waiting. When
+ * the job is finished, the worker sends one line per identification file
+ * with the spectrum file name, the algorithm index and the path of the file,
+ * followed by a line indicating that the job is done, or a line indicating
+ * that the job failed with an error message. Sending the status keyword
+ * instead of a job returns one line per user with the queue metrics of the
+ * scheduler followed by a done line. All fields are tab separated.
+ *
+ * Every request starts with a token line giving the secret of a user or
+ * project, requests without a known secret are refused. The worker reads the
+ * secrets from its token file, one line per user with the tab separated
+ * secret, user name, priority and share weight, the last three being
+ * optional. The user, priority and share weight of a job are thus set by the
+ * worker, the job can only lower its priority. The jobs are validated before
+ * they are run, and cannot change the paths, the search engines or the mode
+ * of the worker.
+ *
+ * @author Harald Barsnes
+ */
+public class SearchCLIWorker {
+
+    /**
+     * The keyword of a job line.
+     */
+    public static final String JOB = "JOB";
+    /**
+     * The keyword of the line giving the secret shared with the worker.
+     */
+    public static final String TOKEN = "TOKEN";
+    /**
+     * The keyword of a heartbeat line.
+     */
+    public static final String RUNNING = "RUNNING";
+    /**
+     * The keyword of a heartbeat line of a waiting job.
+     */
+    public static final String QUEUED = "QUEUED";
+    /**
+     * The keyword of a status request.
+     */
+    public static final String STATUS = "STATUS";
+    /**
+     * The keyword of an identification file line.
+     */
+    public static final String FILE = "FILE";
+    /**
+     * The keyword of a successful job completion line.
+     */
+    public static final String DONE = "DONE";
+    /**
+     * The keyword of a failed job line.
+     */
+    public static final String FAILED = "FAILED";
+    /**
+     * The field separator.
+     */
+    public static final String SEPARATOR = "\t";
+    /**
+     * The interval between two heartbeats in milliseconds.
+     */
+    public static final int HEARTBEAT_INTERVAL = 10000;
+    /**
+     * The time given to the processes left by a job to terminate before they
+     * are killed in milliseconds.
+     */
+    private static final long TERMINATION_GRACE_PERIOD = 5000;
+    /**
+     * The options refused in the jobs: the worker uses its own search engines
+     * and runs one search per job.
+     */
+    public static final SearchCLIParams[] REFUSED_OPTIONS = {SearchCLIParams.WORKER_PORT, SearchCLIParams.WORKER_ADDRESS,
+        SearchCLIParams.WORKER_TOKEN, SearchCLIParams.WORKERS, SearchCLIParams.BATCH, SearchCLIParams.WATCH_FOLDER,
+        SearchCLIParams.OMSSA_LOCATION, SearchCLIParams.MAKEBLASTDB_LOCATION, SearchCLIParams.XTANDEM_LOCATION,
+        SearchCLIParams.MSGF_LOCATION, SearchCLIParams.MS_AMANDA_LOCATION, SearchCLIParams.MYRIMATCH_LOCATION,
+        SearchCLIParams.COMET_LOCATION, SearchCLIParams.TIDE_LOCATION, SearchCLIParams.ANDROMEDA_LOCATION,
+        SearchCLIParams.NOVOR_LOCATION, SearchCLIParams.DIRECTAG_LOCATION};
+    /**
+     * The address to listen on, null for all addresses.
+     */
+    private final InetAddress address;
+    /**
+     * The port to listen to.
+     */
+    private final int port;
+    /**
+     * The users allowed to submit jobs.
+     */
+    private final ArrayList<WorkerUser> users;
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The scheduler of the jobs.
+     */
+    private final SearchJobScheduler scheduler = new SearchJobScheduler();
+
+    /**
+     * Constructor.
+     *
+     * @param address the address to listen on, null for all addresses
+     * @param port the port to listen to
+     * @param tokenFile the token file giving the secrets of the users
+     * @param waitingHandler the waiting handler
+     *
+     * @throws IOException thrown if the token file cannot be read or is not
+     * valid
+     */
+    public SearchCLIWorker(InetAddress address, int port, File tokenFile, WaitingHandler waitingHandler) throws IOException {
+        this.address = address;
+        this.port = port;
+        this.users = readUsers(tokenFile);
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Reads the secret sent by a coordinator to the workers from the first
+     * field of the first line of the given file, so that the coordinator can
+     * use a copy of its line of the token file of the workers.
+     *
+     * @param tokenFile the file containing the secret
+     *
+     * @return the secret
+     *
+     * @throws IOException thrown if the file cannot be read or is empty
+     */
+    public static String readToken(File tokenFile) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), "UTF-8"));
+        String token;
+
+        try {
+            token = reader.readLine();
+        } finally {
+            reader.close();
+        }
+
+        if (token == null || token.trim().equals("")) {
+            throw new IOException("No secret found in " + tokenFile.getName() + ".");
+        }
+
+        return token.trim().split(SEPARATOR)[0];
+    }
+
+    /**
+     * Reads the users allowed to submit jobs from the given token file, one
+     * line per user with the tab separated secret, user name, priority and
+     * share weight. The user name defaults to the line number, the priority
+     * to 0 and the share weight to 1.
+     *
+     * @param tokenFile the token file
+     *
+     * @return the users
+     *
+     * @throws IOException thrown if the file cannot be read or is not valid
+     */
+    private static ArrayList<WorkerUser> readUsers(File tokenFile) throws IOException {
+
+        ArrayList<WorkerUser> users = new ArrayList<WorkerUser>();
+        HashSet<String> tokens = new HashSet<String>();
+        HashSet<String> userNames = new HashSet<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tokenFile), "UTF-8"));
+
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+
+                lineNumber++;
+                if (line.trim().equals("")) {
+                    continue;
+                }
+
+                String[] fields = line.trim().split(SEPARATOR);
+                String user = fields.length > 1 ? fields[1].trim() : "user" + lineNumber;
+
+                if (!tokens.add(fields[0]) || !userNames.add(user)) {
+                    throw new IOException("Duplicate secret or user on line " + lineNumber + " of " + tokenFile.getName() + ".");
+                }
+
+                try {
+                    int priority = fields.length > 2 ? new Integer(fields[2].trim()) : 0;
+                    double shareWeight = fields.length > 3 ? new Double(fields[3].trim()) : 1;
+                    if (priority < 0 || shareWeight <= 0) {
+                        throw new NumberFormatException();
+                    }
+                    users.add(new WorkerUser(fields[0], user, priority, shareWeight));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid priority or share weight on line " + lineNumber + " of " + tokenFile.getName() + ".");
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (users.isEmpty()) {
+            throw new IOException("No secret found in " + tokenFile.getName() + ".");
+        }
+
+        return users;
+    }
+
+    /**
+     * Listens for jobs and runs them until the process is stopped.
+     *
+     * @throws IOException thrown if the port cannot be opened
+     */
+    public void run() throws IOException {
+
+        ServerSocket serverSocket = new ServerSocket(port, 0, address);
+
+        waitingHandler.appendReport("Waiting for search jobs on " + (address == null ? "port " + port : address.getHostAddress() + ":" + port) + ".", true, true);
+
+        try {
+            while (true) {
+
+                final Socket socket = serverSocket.accept();
+
+                // every connection is handled in its own thread and waits for its turn in the scheduler
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            processRequest(socket);
+                        } catch (IOException e) {
+                            waitingHandler.appendReport("The connection to the coordinator was lost.", true, true);
+                            e.printStackTrace();
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    }
+                }, "SearchCLI connection " + socket.getRemoteSocketAddress()).start();
+            }
+        } finally {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Reads a request from the given connection and answers it.
+     *
+     * @param socket the connection to the coordinator
+     *
+     * @throws IOException thrown if an error occurred while communicating
+     * with the coordinator
+     */
+    private void processRequest(Socket socket) throws IOException {
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+
+        // the coordinators send the request at once, do not wait for silent connections
+        socket.setSoTimeout(HEARTBEAT_INTERVAL);
+
+        WorkerUser user = getUser(in.readLine());
+
+        if (user == null) {
+            waitingHandler.appendReport("Request from " + socket.getInetAddress().getHostAddress() + " refused.", true, true);
+            sendLine(out, FAILED + SEPARATOR + "Not authorized.");
+            return;
+        }
+
+        String line = in.readLine();
+
+        if (line != null && line.equals(STATUS)) {
+            for (String userStatus : scheduler.getStatus()) {
+                sendLine(out, userStatus);
+            }
+            sendLine(out, DONE);
+        } else if (line != null && line.startsWith(JOB + SEPARATOR)) {
+            processJob(socket, out, user, line.substring(JOB.length() + SEPARATOR.length()).split(SEPARATOR));
+        } else {
+            sendLine(out, FAILED + SEPARATOR + "Unexpected request.");
+        }
+    }
+
+    /**
+     * Waits for the turn of the given job in the scheduler, runs it and sends
+     * the result.
+     *
+     * @param socket the connection to the coordinator
+     * @param out the stream to the coordinator
+     * @param user the user submitting the job
+     * @param arguments the SearchCLI arguments of the job
+     *
+     * @throws IOException thrown if an error occurred while communicating
+     * with the coordinator
+     */
+    private void processJob(Socket socket, Writer out, WorkerUser user, final String[] arguments) throws IOException {
+
+        String error = getJobError(arguments);
+
+        if (error != null) {
+            waitingHandler.appendReport("Search job of " + user.name + " from " + socket.getInetAddress().getHostName() + " refused: " + error, true, true);
+            sendLine(out, FAILED + SEPARATOR + error);
+            return;
+        }
+
+        int priority;
+        int nThreads;
+
+        try {
+            // the job can lower the priority of its user but not raise it
+            priority = Math.min(user.priority, new Integer(getArgument(arguments, SearchCLIParams.JOB_PRIORITY, Integer.toString(user.priority))));
+            nThreads = new Integer(getArgument(arguments, SearchCLIParams.THREADS, Integer.toString(Runtime.getRuntime().availableProcessors())));
+        } catch (NumberFormatException e) {
+            sendLine(out, FAILED + SEPARATOR + "Invalid number: " + e.getMessage());
+            return;
+        }
+
+        SearchJobScheduler.Ticket ticket = scheduler.submit(user.name, priority, user.shareWeight, nThreads);
+
+        // wait for the turn of the job and send heartbeats meanwhile
+        try {
+            while (!scheduler.awaitTurn(ticket, HEARTBEAT_INTERVAL)) {
+                sendLine(out, QUEUED + SEPARATOR + scheduler.getQueueDepth());
+            }
+        } catch (InterruptedException e) {
+            scheduler.cancel(ticket);
+            sendLine(out, FAILED + SEPARATOR + "Worker interrupted.");
+            return;
+        } catch (IOException e) {
+            scheduler.cancel(ticket);
+            throw e;
+        }
+
+        try {
+            runJob(socket, out, arguments, ticket);
+        } finally {
+            releaseProcesses();
+            scheduler.complete(ticket);
+            reportStatus();
+        }
+    }
+
+    /**
+     * Terminates the processes left behind by the last job, e.g., the
+     * grandchildren of a canceled engine, so that the cores are free before
+     * the next job starts.
+     */
+    private void releaseProcesses() {
+
+        int nTerminated = ProcessTree.terminateDescendants(TERMINATION_GRACE_PERIOD);
+
+        if (nTerminated > 0) {
+            waitingHandler.appendReport(nTerminated + " process(es) left by the search job terminated.", true, true);
+        } else if (nTerminated == -1) {
+            waitingHandler.appendReport("Some processes left by the search job could not be terminated.", true, true);
+        }
+    }
+
+    /**
+     * Runs the given job and sends the result.
+     *
+     * @param socket the connection to the coordinator
+     * @param out the stream to the coordinator
+     * @param arguments the SearchCLI arguments of the job
+     * @param ticket the ticket of the job
+     *
+     * @throws IOException thrown if an error occurred while communicating
+     * with the coordinator
+     */
+    private void runJob(Socket socket, Writer out, final String[] arguments, SearchJobScheduler.Ticket ticket) throws IOException {
+
+        final SearchCLI[] searchCLI = new SearchCLI[1];
+        final WaitingHandler jobWaitingHandler = new WaitingHandlerCLIImpl();
+
+        waitingHandler.appendReport("Starting search job of " + ticket.getUser() + " from " + socket.getInetAddress().getHostName()
+                + " after waiting " + ticket.getWaitingTime() / 1000 + " s.", true, true);
+
+        // run the search in a separate thread and send heartbeats meanwhile
+        Thread searchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    searchCLI[0] = new SearchCLI(arguments, jobWaitingHandler);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "SearchCLI job");
+
+        searchThread.start();
+
+        try {
+            while (searchThread.isAlive()) {
+                searchThread.join(HEARTBEAT_INTERVAL);
+                if (searchThread.isAlive()) {
+                    sendLine(out, RUNNING);
+                }
+            }
+        } catch (InterruptedException e) {
+            sendLine(out, FAILED + SEPARATOR + "Worker interrupted.");
+            return;
+        } catch (IOException e) {
+
+            // the coordinator is gone or does not need the job anymore, e.g., when a speculative copy finished first
+            waitingHandler.appendReport("Canceling the search job of " + ticket.getUser() + ".", true, true);
+            jobWaitingHandler.setRunCanceled();
+            try {
+                searchThread.join();
+            } catch (InterruptedException ie) {
+                // the scheduler is released anyway
+            }
+            throw e;
+        }
+
+        if (searchCLI[0] == null || !searchCLI[0].isSearchSuccessful()) {
+            waitingHandler.appendReport("Search job failed.", true, true);
+            sendLine(out, FAILED + SEPARATOR + "The search did not complete. " + SearchCLI.getLogFileMessage());
+            return;
+        }
+
+        HashMap<String, HashMap<Integer, File>> identificationFiles = searchCLI[0].getIdentificationFiles();
+
+        if (identificationFiles == null || identificationFiles.isEmpty()) {
+            sendLine(out, FAILED + SEPARATOR + "No identification file produced. " + SearchCLI.getLogFileMessage());
+            return;
+        }
+
+        for (String spectrumFileName : identificationFiles.keySet()) {
+            HashMap<Integer, File> fileMap = identificationFiles.get(spectrumFileName);
+            for (Integer algorithm : fileMap.keySet()) {
+                sendLine(out, FILE + SEPARATOR + spectrumFileName + SEPARATOR + algorithm + SEPARATOR + fileMap.get(algorithm).getAbsolutePath());
+            }
+        }
+
+        sendLine(out, DONE);
+
+        waitingHandler.appendReport("Search job completed.", true, true);
+    }
+
+    /**
+     * Reports the queue metrics of the scheduler.
+     */
+    private void reportStatus() {
+
+        List<String> status = scheduler.getStatus();
+
+        waitingHandler.appendReport(scheduler.getQueueDepth() + " job(s) waiting.", true, true);
+        waitingHandler.appendReport("User" + SEPARATOR + "Waiting" + SEPARATOR + "Started" + SEPARATOR + "Mean wait (s)"
+                + SEPARATOR + "Max wait (s)" + SEPARATOR + "Weighted core time (s)", true, true);
+
+        for (String userStatus : status) {
+            waitingHandler.appendReport(userStatus, true, true);
+        }
+    }
+
+    /**
+     * Returns the user whose secret is given by the given token line.
+     *
+     * @param line the token line sent by the coordinator
+     *
+     * @return the user, null if the secret is not known
+     *
+     * @throws IOException thrown if the encoding is not supported
+     */
+    private WorkerUser getUser(String line) throws IOException {
+
+        if (line == null || !line.startsWith(TOKEN + SEPARATOR)) {
+            return null;
+        }
+
+        byte[] secret = line.substring(TOKEN.length() + SEPARATOR.length()).getBytes("UTF-8");
+        WorkerUser result = null;
+
+        // compared in constant time, the comparison does not tell how much of a secret matches
+        for (WorkerUser user : users) {
+            if (MessageDigest.isEqual(user.token.getBytes("UTF-8"), secret)) {
+                result = user;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Validates the SearchCLI arguments of a job before the job is run. The
+     * arguments are parsed and validated as done by SearchCLI, and the path
+     * options and the options in REFUSED_OPTIONS are refused.
+     *
+     * @param arguments the SearchCLI arguments of the job
+     *
+     * @return the reason why the job is refused, null if the job is valid
+     */
+    private String getJobError(String[] arguments) {
+
+        CommandLine line;
+
+        try {
+            Options options = new Options();
+            SearchCLIParams.createOptionsCLI(options);
+            line = new BasicParser().parse(options, arguments);
+        } catch (ParseException e) {
+            return "Invalid arguments: " + e.getMessage();
+        }
+
+        if (line.getArgs().length > 0) {
+            return "Unexpected argument: " + line.getArgs()[0] + ".";
+        }
+
+        for (String pathOption : PathSettingsCLIParams.getOptionIDs()) {
+            if (line.hasOption(pathOption.substring(1))) {
+                return "Option " + pathOption + " not accepted by the worker.";
+            }
+        }
+
+        for (SearchCLIParams option : REFUSED_OPTIONS) {
+            if (line.hasOption(option.id)) {
+                return "Option -" + option.id + " not accepted by the worker.";
+            }
+        }
+
+        SearchCLI.initiateSpecies(line, waitingHandler);
+
+        try {
+            if (!SearchCLIInputBean.isValidStartup(line)) {
+                return "Invalid arguments, see the output of the worker.";
+            }
+        } catch (Exception e) {
+            return "Invalid arguments: " + e.getMessage();
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the value of the given option in the arguments of a job.
+     *
+     * @param arguments the SearchCLI arguments of the job
+     * @param option the option
+     * @param defaultValue the value to return if the option is not set
+     *
+     * @return the value of the option
+     */
+    private static String getArgument(String[] arguments, SearchCLIParams option, String defaultValue) {
+        for (int i = 0; i < arguments.length - 1; i++) {
+            if (arguments[i].equals("-" + option.id)) {
+                return arguments[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Sends a line to the coordinator.
+     *
+     * @param out the stream to the coordinator
+     * @param line the line
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    private static void sendLine(Writer out, String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+    }
+
+    /**
+     * A user allowed to submit jobs to the worker.
+     */
+    private static class WorkerUser {
+
+        /**
+         * The secret of the user.
+         */
+        private final String token;
+        /**
+         * The user name.
+         */
+        private final String name;
+        /**
+         * The priority of the jobs of the user, higher first.
+         */
+        private final int priority;
+        /**
+         * The share weight of the user.
+         */
+        private final double shareWeight;
+
+        /**
+         * Constructor.
+         *
+         * @param token the secret of the user
+         * @param name the user name
+         * @param priority the priority of the jobs of the user
+         * @param shareWeight the share weight of the user
+         */
+        private WorkerUser(String token, String name, int priority, double shareWeight) {
+            this.token = token;
+            this.name = name;
+            this.priority = priority;
+            this.shareWeight = shareWeight;
+        }
+    }
+}
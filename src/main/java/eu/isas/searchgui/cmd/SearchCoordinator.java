@@ -0,0 +1,522 @@
+package eu.isas.searchgui.cmd;
+
+import com.compomics.util.Util;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Distributes a search over SearchCLI workers, one job per spectrum file. The
+ * workers access the input and write their output on a file system shared
+ * with the coordinator. A job is sent again to another worker when a worker
+ * is lost, i.e., when the connection fails or no heartbeat is received, and
+ * to any worker when the job fails, up to the given number of retries.
+ *
+ * When no job is waiting, idle workers run a speculative copy of the
+ * stragglers, i.e., the jobs running for more than a given factor of the
+ * duration expected from the throughput of the completed jobs. The first
+ * copy to finish is kept and the other one is canceled.
+ *
+ * @author Harald Barsnes
+ */
+public class SearchCoordinator {
+
+    /**
+     * The time without message after which a worker is considered lost in
+     * milliseconds.
+     */
+    private static final int WORKER_TIMEOUT = 6 * SearchCLIWorker.HEARTBEAT_INTERVAL;
+    /**
+     * The timeout when connecting to a worker in milliseconds.
+     */
+    private static final int CONNECTION_TIMEOUT = 30000;
+    /**
+     * The factor of the expected duration after which a running job is
+     * considered a straggler.
+     */
+    private static final double STRAGGLER_FACTOR = 3;
+    /**
+     * The minimal number of completed jobs before stragglers are detected.
+     */
+    private static final int MIN_COMPLETED_JOBS = 2;
+    /**
+     * The workers as host:port.
+     */
+    private final ArrayList<String> workers;
+    /**
+     * The number of times a job is retried.
+     */
+    private final int nRetries;
+    /**
+     * The secret shared with the workers.
+     */
+    private final String token;
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The jobs waiting for a worker.
+     */
+    private final LinkedBlockingQueue<Job> jobQueue = new LinkedBlockingQueue<Job>();
+    /**
+     * The number of jobs not completed or failed.
+     */
+    private final AtomicInteger nJobsRemaining = new AtomicInteger();
+    /**
+     * The identification files of the completed jobs indexed by spectrum file
+     * name and algorithm index.
+     */
+    private final HashMap<String, HashMap<Integer, File>> identificationFiles = new HashMap<String, HashMap<Integer, File>>();
+    /**
+     * The output folders of the jobs.
+     */
+    private final ArrayList<File> jobFolders = new ArrayList<File>();
+    /**
+     * The spectrum files which could not be searched.
+     */
+    private final ArrayList<File> failedSpectrumFiles = new ArrayList<File>();
+    /**
+     * The jobs currently running on at least one worker.
+     */
+    private final ArrayList<Job> runningJobs = new ArrayList<Job>();
+    /**
+     * The throughput of the completed jobs in bytes of spectrum file per
+     * millisecond.
+     */
+    private final ArrayList<Double> throughputs = new ArrayList<Double>();
+
+    /**
+     * Constructor.
+     *
+     * @param workers the workers as host:port
+     * @param nRetries the number of times a job is retried
+     * @param token the secret shared with the workers
+     * @param waitingHandler the waiting handler
+     */
+    public SearchCoordinator(ArrayList<String> workers, int nRetries, String token, WaitingHandler waitingHandler) {
+        this.workers = workers;
+        this.nRetries = nRetries;
+        this.token = token;
+        this.waitingHandler = waitingHandler;
+    }
+
+    /**
+     * Searches the given spectrum files on the workers and waits for the
+     * search to be completed.
+     *
+     * @param spectrumFiles the spectrum files
+     * @param jobArguments the SearchCLI arguments common to all jobs
+     * @param jobsFolder the folder where to store the output of the jobs
+     *
+     * @return the identification files indexed by spectrum file name and
+     * algorithm index
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the jobs
+     */
+    public HashMap<String, HashMap<Integer, File>> search(ArrayList<File> spectrumFiles, ArrayList<String> jobArguments, File jobsFolder)
+            throws InterruptedException {
+
+        for (File spectrumFile : spectrumFiles) {
+
+            File jobFolder = new File(jobsFolder, Util.removeExtension(spectrumFile.getName()));
+            jobFolder.mkdirs();
+            jobFolders.add(jobFolder);
+
+            jobQueue.add(new Job(spectrumFile, jobFolder, jobArguments));
+        }
+
+        nJobsRemaining.set(spectrumFiles.size());
+
+        ArrayList<Thread> workerThreads = new ArrayList<Thread>(workers.size());
+        for (final String worker : workers) {
+            Thread workerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker(worker);
+                }
+            }, "SearchCLI worker " + worker);
+            workerThreads.add(workerThread);
+            workerThread.start();
+        }
+
+        for (Thread workerThread : workerThreads) {
+            workerThread.join();
+        }
+
+        // the jobs left when all workers are lost
+        Job job;
+        while ((job = jobQueue.poll()) != null) {
+            waitingHandler.appendReport("No worker left to search " + job.spectrumFile.getName() + ".", true, true);
+            failedSpectrumFiles.add(job.spectrumFile);
+        }
+
+        return identificationFiles;
+    }
+
+    /**
+     * Returns the output folders of the jobs.
+     *
+     * @return the output folders of the jobs
+     */
+    public ArrayList<File> getJobFolders() {
+        return jobFolders;
+    }
+
+    /**
+     * Returns the spectrum files which could not be searched.
+     *
+     * @return the spectrum files which could not be searched
+     */
+    public ArrayList<File> getFailedSpectrumFiles() {
+        return failedSpectrumFiles;
+    }
+
+    /**
+     * Sends jobs to the given worker until all jobs are done or the worker is
+     * lost.
+     *
+     * @param worker the worker as host:port
+     */
+    private void runWorker(String worker) {
+
+        while (nJobsRemaining.get() > 0) {
+
+            Job job;
+            try {
+                job = jobQueue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            File outputFolder = null;
+
+            if (job != null) {
+                outputFolder = job.jobFolder;
+                waitingHandler.appendReport("Searching " + job.spectrumFile.getName() + " on " + worker + ".", true, true);
+            } else {
+                job = getStraggler();
+                if (job != null) {
+                    outputFolder = new File(job.jobFolder.getParentFile(), job.jobFolder.getName() + "_speculative");
+                    outputFolder.mkdirs();
+                    synchronized (jobFolders) {
+                        jobFolders.add(outputFolder);
+                    }
+                    waitingHandler.appendReport("Search of " + job.spectrumFile.getName() + " is straggling, running a speculative copy on " + worker + ".", true, true);
+                }
+            }
+
+            if (job != null) {
+
+                synchronized (job) {
+                    if (job.nRunning == 0) {
+                        job.startTime = System.currentTimeMillis();
+                        synchronized (runningJobs) {
+                            runningJobs.add(job);
+                        }
+                    }
+                    job.nRunning++;
+                }
+
+                Socket socket = new Socket();
+
+                try {
+                    HashMap<Integer, File> jobFiles = runJob(worker, socket, job, outputFolder);
+                    complete(job, jobFiles, worker);
+
+                } catch (JobFailedException e) {
+                    waitingHandler.appendReport("Search of " + job.spectrumFile.getName() + " failed on " + worker + ": " + e.getMessage(), true, true);
+                    retry(job);
+
+                } catch (IOException e) {
+                    if (job.completed) {
+                        // canceled because the other copy of the job finished first
+                        retry(job);
+                    } else {
+                        waitingHandler.appendReport("Worker " + worker + " lost while searching " + job.spectrumFile.getName() + ".", true, true);
+                        e.printStackTrace();
+                        retry(job);
+                        return;
+                    }
+                } finally {
+                    synchronized (job) {
+                        job.sockets.remove(socket);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a running job straggling and not yet copied, null if none. The
+     * returned job is marked as copied.
+     *
+     * @return a straggling job
+     */
+    private Job getStraggler() {
+
+        double medianThroughput;
+
+        synchronized (throughputs) {
+            if (throughputs.size() < MIN_COMPLETED_JOBS) {
+                return null;
+            }
+            ArrayList<Double> sortedThroughputs = new ArrayList<Double>(throughputs);
+            Collections.sort(sortedThroughputs);
+            medianThroughput = sortedThroughputs.get(sortedThroughputs.size() / 2);
+        }
+
+        long now = System.currentTimeMillis();
+
+        synchronized (runningJobs) {
+            for (Job job : runningJobs) {
+                synchronized (job) {
+                    if (!job.speculated && !job.completed && job.nRunning == 1) {
+                        double expectedDuration = job.spectrumFile.length() / medianThroughput;
+                        if (now - job.startTime > STRAGGLER_FACTOR * expectedDuration) {
+                            job.speculated = true;
+                            return job;
+                        }
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Stores the result of a job if no other copy of the job completed
+     * before and cancels the other copies.
+     *
+     * @param job the job
+     * @param jobFiles the identification files of the job indexed by
+     * algorithm index
+     * @param worker the worker as host:port
+     */
+    private void complete(Job job, HashMap<Integer, File> jobFiles, String worker) {
+
+        synchronized (job) {
+
+            job.nRunning--;
+
+            if (job.completed) {
+                return;
+            }
+
+            job.completed = true;
+
+            // cancel the other copies
+            for (Socket socket : job.sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // already closed
+                }
+            }
+        }
+
+        synchronized (runningJobs) {
+            runningJobs.remove(job);
+        }
+        synchronized (throughputs) {
+            throughputs.add(((double) job.spectrumFile.length()) / Math.max(1, System.currentTimeMillis() - job.startTime));
+        }
+        synchronized (identificationFiles) {
+            identificationFiles.put(job.spectrumFile.getName(), jobFiles);
+        }
+
+        nJobsRemaining.decrementAndGet();
+        waitingHandler.appendReport("Search of " + job.spectrumFile.getName() + " completed on " + worker + ".", true, true);
+    }
+
+    /**
+     * Puts a failed job back in the queue if it can be retried. Failures of
+     * a copy are ignored while another copy is running or after a copy
+     * completed.
+     *
+     * @param job the job
+     */
+    private void retry(Job job) {
+
+        synchronized (job) {
+            job.nRunning--;
+            if (job.completed || job.nRunning > 0) {
+                return;
+            }
+        }
+
+        synchronized (runningJobs) {
+            runningJobs.remove(job);
+        }
+
+        job.nAttempts++;
+        if (job.nAttempts <= nRetries) {
+            jobQueue.add(job);
+        } else {
+            waitingHandler.appendReport("Giving up the search of " + job.spectrumFile.getName() + ".", true, true);
+            synchronized (failedSpectrumFiles) {
+                failedSpectrumFiles.add(job.spectrumFile);
+            }
+            nJobsRemaining.decrementAndGet();
+        }
+    }
+
+    /**
+     * Runs a job on the given worker.
+     *
+     * @param worker the worker as host:port
+     * @param socket the socket to use to connect to the worker
+     * @param job the job
+     * @param outputFolder the output folder of this copy of the job
+     *
+     * @return the identification files of the job indexed by algorithm index
+     *
+     * @throws IOException thrown if the communication with the worker failed
+     * @throws JobFailedException thrown if the worker could not run the job
+     */
+    private HashMap<Integer, File> runJob(String worker, Socket socket, Job job, File outputFolder) throws IOException, JobFailedException {
+
+        int separatorIndex = worker.lastIndexOf(":");
+        String host = worker.substring(0, separatorIndex);
+        int port = new Integer(worker.substring(separatorIndex + 1));
+
+        synchronized (job) {
+            if (job.completed) {
+                throw new IOException("Job already completed.");
+            }
+            job.sockets.add(socket);
+        }
+
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECTION_TIMEOUT);
+            socket.setSoTimeout(WORKER_TIMEOUT);
+
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+
+            out.write(SearchCLIWorker.TOKEN + SearchCLIWorker.SEPARATOR + token + "\n");
+
+            StringBuilder jobLine = new StringBuilder(SearchCLIWorker.JOB);
+            for (String argument : job.arguments) {
+                jobLine.append(SearchCLIWorker.SEPARATOR).append(argument);
+            }
+            jobLine.append(SearchCLIWorker.SEPARATOR).append("-").append(SearchCLIParams.SPECTRUM_FILES.id);
+            jobLine.append(SearchCLIWorker.SEPARATOR).append(job.spectrumFile.getAbsolutePath());
+            jobLine.append(SearchCLIWorker.SEPARATOR).append("-").append(SearchCLIParams.OUTPUT_FOLDER.id);
+            jobLine.append(SearchCLIWorker.SEPARATOR).append(outputFolder.getAbsolutePath());
+            out.write(jobLine.append("\n").toString());
+            out.flush();
+
+            HashMap<Integer, File> jobFiles = new HashMap<Integer, File>();
+            boolean queued = false;
+            String line;
+
+            while ((line = in.readLine()) != null) {
+
+                String[] fields = line.split(SearchCLIWorker.SEPARATOR);
+
+                if (fields[0].equals(SearchCLIWorker.QUEUED) && !queued) {
+                    queued = true;
+                    waitingHandler.appendReport("Search of " + job.spectrumFile.getName() + " queued on " + worker
+                            + (fields.length > 1 ? " (" + fields[1] + " job(s) waiting)" : "") + ".", true, true);
+                } else if (fields[0].equals(SearchCLIWorker.FILE) && fields.length == 4) {
+                    jobFiles.put(new Integer(fields[2]), new File(fields[3]));
+                } else if (fields[0].equals(SearchCLIWorker.DONE)) {
+                    return jobFiles;
+                } else if (fields[0].equals(SearchCLIWorker.FAILED)) {
+                    throw new JobFailedException(fields.length > 1 ? fields[1] : "Unknown error.");
+                }
+            }
+
+            throw new IOException("Connection closed by the worker.");
+
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * A search job.
+     */
+    private static class Job {
+
+        /**
+         * The spectrum file to search.
+         */
+        private final File spectrumFile;
+        /**
+         * The output folder of the job.
+         */
+        private final File jobFolder;
+        /**
+         * The SearchCLI arguments common to all jobs.
+         */
+        private final ArrayList<String> arguments;
+        /**
+         * The number of failed attempts.
+         */
+        private int nAttempts = 0;
+        /**
+         * The number of copies of the job currently running.
+         */
+        private int nRunning = 0;
+        /**
+         * The time the current attempt started.
+         */
+        private long startTime = 0;
+        /**
+         * Indicates whether a speculative copy of the job was started.
+         */
+        private boolean speculated = false;
+        /**
+         * Indicates whether a copy of the job completed.
+         */
+        private volatile boolean completed = false;
+        /**
+         * The connections of the running copies of the job.
+         */
+        private final ArrayList<Socket> sockets = new ArrayList<Socket>(2);
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumFile the spectrum file to search
+         * @param jobFolder the output folder of the job
+         * @param arguments the SearchCLI arguments common to all jobs
+         */
+        private Job(File spectrumFile, File jobFolder, ArrayList<String> arguments) {
+            this.spectrumFile = spectrumFile;
+            this.jobFolder = jobFolder;
+            this.arguments = arguments;
+        }
+    }
+
+    /**
+     * Exception thrown when a worker reports that a job failed.
+     */
+    private static class JobFailedException extends Exception {
+
+        /**
+         * Constructor.
+         *
+         * @param message the error message of the worker
+         */
+        private JobFailedException(String message) {
+            super(message);
+        }
+    }
+}
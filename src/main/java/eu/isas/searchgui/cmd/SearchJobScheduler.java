@@ -0,0 +1,340 @@
+package eu.isas.searchgui.cmd;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Schedules the search jobs submitted to a SearchCLI worker by several users.
+ * Jobs run one at a time and the next job is selected when a job is
+ * finished, i.e., running jobs are never interrupted but a job submitted with
+ * a higher priority passes all waiting jobs of lower priority. Among the jobs
+ * of the highest priority, the next job is taken from the user who has used
+ * the least core time relative to their share weight. The core time of a job
+ * is its duration times its number of threads, it is only used to order the
+ * waiting jobs: the jobs do not share the cores, and the shares are only
+ * approached while several users keep jobs waiting. Within a user, jobs run
+ * in submission order.
+ *
+ * @author Harald Barsnes
+ */
+public class SearchJobScheduler {
+
+    /**
+     * The queues of the users indexed by user name.
+     */
+    private final HashMap<String, UserQueue> userQueues = new HashMap<String, UserQueue>();
+    /**
+     * The job currently running, null if none.
+     */
+    private Ticket runningTicket = null;
+    /**
+     * The index of the next ticket.
+     */
+    private long ticketIndex = 0;
+
+    /**
+     * Submits a job.
+     *
+     * @param user the user submitting the job
+     * @param priority the priority of the job, higher first
+     * @param shareWeight the share weight of the user
+     * @param nThreads the number of threads used by the job
+     *
+     * @return the ticket of the job
+     */
+    public synchronized Ticket submit(String user, int priority, double shareWeight, int nThreads) {
+
+        UserQueue userQueue = userQueues.get(user);
+
+        if (userQueue == null) {
+            userQueue = new UserQueue(user);
+            userQueues.put(user, userQueue);
+        }
+
+        // a user becoming active does not get credit for the time they were idle
+        if (userQueue.waitingTickets.isEmpty() && (runningTicket == null || runningTicket.userQueue != userQueue)) {
+            double minUsage = Double.MAX_VALUE;
+            for (UserQueue otherQueue : userQueues.values()) {
+                if (otherQueue != userQueue && otherQueue.isActive()) {
+                    minUsage = Math.min(minUsage, otherQueue.normalizedUsage);
+                }
+            }
+            if (minUsage != Double.MAX_VALUE) {
+                userQueue.normalizedUsage = Math.max(userQueue.normalizedUsage, minUsage);
+            }
+        }
+
+        userQueue.shareWeight = shareWeight;
+
+        Ticket ticket = new Ticket(userQueue, priority, nThreads, ticketIndex++);
+        userQueue.waitingTickets.add(ticket);
+
+        return ticket;
+    }
+
+    /**
+     * Waits until the given job can start or until the timeout is reached.
+     * When the method returns true, the job is considered running and
+     * complete must be called when it is finished.
+     *
+     * @param ticket the ticket of the job
+     * @param timeout the maximal time to wait in milliseconds
+     *
+     * @return true if the job can start
+     *
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting
+     */
+    public synchronized boolean awaitTurn(Ticket ticket, long timeout) throws InterruptedException {
+
+        long end = System.currentTimeMillis() + timeout;
+
+        while (runningTicket != null || selectNext() != ticket) {
+            long remaining = end - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+
+        UserQueue userQueue = ticket.userQueue;
+        userQueue.waitingTickets.remove(ticket);
+
+        long waitingTime = System.currentTimeMillis() - ticket.submissionTime;
+        userQueue.nStarted++;
+        userQueue.totalWaitingTime += waitingTime;
+        userQueue.maxWaitingTime = Math.max(userQueue.maxWaitingTime, waitingTime);
+
+        ticket.startTime = System.currentTimeMillis();
+        runningTicket = ticket;
+
+        return true;
+    }
+
+    /**
+     * Indicates that the given running job is finished, the core time used is
+     * charged to the user and the next job can start.
+     *
+     * @param ticket the ticket of the job
+     */
+    public synchronized void complete(Ticket ticket) {
+
+        if (runningTicket == ticket) {
+            long duration = System.currentTimeMillis() - ticket.startTime;
+            UserQueue userQueue = ticket.userQueue;
+            userQueue.normalizedUsage += ((double) duration) * ticket.nThreads / userQueue.shareWeight;
+            runningTicket = null;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Removes a job which has not started, for instance when the submitter
+     * is lost.
+     *
+     * @param ticket the ticket of the job
+     */
+    public synchronized void cancel(Ticket ticket) {
+        if (ticket.userQueue.waitingTickets.remove(ticket)) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of jobs waiting.
+     *
+     * @return the number of jobs waiting
+     */
+    public synchronized int getQueueDepth() {
+        int queueDepth = 0;
+        for (UserQueue userQueue : userQueues.values()) {
+            queueDepth += userQueue.waitingTickets.size();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Returns the status of the queues, one line per user with the user name,
+     * the number of jobs waiting, the number of jobs started, the mean and
+     * maximal waiting time in seconds, and the core time used in core
+     * seconds relative to the share weight. Fields are tab separated.
+     *
+     * @return the status of the queues
+     */
+    public synchronized ArrayList<String> getStatus() {
+
+        ArrayList<String> status = new ArrayList<String>(userQueues.size());
+
+        for (UserQueue userQueue : new TreeMap<String, UserQueue>(userQueues).values()) {
+
+            double meanWaitingTime = 0;
+            if (userQueue.nStarted > 0) {
+                meanWaitingTime = ((double) userQueue.totalWaitingTime) / userQueue.nStarted / 1000;
+            }
+
+            status.add(userQueue.user
+                    + SearchCLIWorker.SEPARATOR + userQueue.waitingTickets.size()
+                    + SearchCLIWorker.SEPARATOR + userQueue.nStarted
+                    + SearchCLIWorker.SEPARATOR + Math.round(meanWaitingTime)
+                    + SearchCLIWorker.SEPARATOR + userQueue.maxWaitingTime / 1000
+                    + SearchCLIWorker.SEPARATOR + Math.round(userQueue.normalizedUsage / 1000));
+        }
+
+        return status;
+    }
+
+    /**
+     * Returns the next job to run, null if none.
+     *
+     * @return the next job to run
+     */
+    private Ticket selectNext() {
+
+        Ticket next = null;
+
+        for (UserQueue userQueue : userQueues.values()) {
+
+            if (!userQueue.waitingTickets.isEmpty()) {
+
+                // the first job of highest priority of this user
+                Ticket candidate = null;
+                for (Ticket ticket : userQueue.waitingTickets) {
+                    if (candidate == null || ticket.priority > candidate.priority) {
+                        candidate = ticket;
+                    }
+                }
+
+                if (next == null
+                        || candidate.priority > next.priority
+                        || candidate.priority == next.priority && userQueue.normalizedUsage < next.userQueue.normalizedUsage
+                        || candidate.priority == next.priority && userQueue.normalizedUsage == next.userQueue.normalizedUsage && candidate.index < next.index) {
+                    next = candidate;
+                }
+            }
+        }
+
+        return next;
+    }
+
+    /**
+     * The ticket of a submitted job.
+     */
+    public static class Ticket {
+
+        /**
+         * The queue of the user who submitted the job.
+         */
+        private final UserQueue userQueue;
+        /**
+         * The priority of the job.
+         */
+        private final int priority;
+        /**
+         * The number of threads used by the job.
+         */
+        private final int nThreads;
+        /**
+         * The index of the ticket, used to keep the submission order.
+         */
+        private final long index;
+        /**
+         * The submission time.
+         */
+        private final long submissionTime = System.currentTimeMillis();
+        /**
+         * The start time, 0 if not started.
+         */
+        private long startTime = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param userQueue the queue of the user who submitted the job
+         * @param priority the priority of the job
+         * @param nThreads the number of threads used by the job
+         * @param index the index of the ticket
+         */
+        private Ticket(UserQueue userQueue, int priority, int nThreads, long index) {
+            this.userQueue = userQueue;
+            this.priority = priority;
+            this.nThreads = nThreads;
+            this.index = index;
+        }
+
+        /**
+         * Returns the name of the user who submitted the job.
+         *
+         * @return the name of the user who submitted the job
+         */
+        public String getUser() {
+            return userQueue.user;
+        }
+
+        /**
+         * Returns the time the job waited before starting in milliseconds.
+         *
+         * @return the time the job waited before starting
+         */
+        public long getWaitingTime() {
+            if (startTime == 0) {
+                return System.currentTimeMillis() - submissionTime;
+            }
+            return startTime - submissionTime;
+        }
+    }
+
+    /**
+     * The jobs and usage of a user.
+     */
+    private class UserQueue {
+
+        /**
+         * The user name.
+         */
+        private final String user;
+        /**
+         * The share weight of the user.
+         */
+        private double shareWeight = 1;
+        /**
+         * The jobs waiting in submission order.
+         */
+        private final ArrayList<Ticket> waitingTickets = new ArrayList<Ticket>();
+        /**
+         * The core time used in core milliseconds divided by the share
+         * weight.
+         */
+        private double normalizedUsage = 0;
+        /**
+         * The number of jobs started.
+         */
+        private int nStarted = 0;
+        /**
+         * The total time waited by the jobs started in milliseconds.
+         */
+        private long totalWaitingTime = 0;
+        /**
+         * The maximal time waited by a job in milliseconds.
+         */
+        private long maxWaitingTime = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param user the user name
+         */
+        private UserQueue(String user) {
+            this.user = user;
+        }
+
+        /**
+         * Indicates whether the user has a job waiting or running.
+         *
+         * @return true if the user has a job waiting or running
+         */
+        private boolean isActive() {
+            return !waitingTickets.isEmpty() || runningTicket != null && runningTicket.userQueue == this;
+        }
+    }
+}
@@ -22,6 +22,8 @@ import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.preferences.IdentificationParameters;
 import com.compomics.util.protein.Header;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.EngineConfigurationCache;
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -38,6 +40,15 @@ import java.util.HashMap;
  */
 public class AndromedaProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.apl};
+    /**
+     * Indicates whether the search engine reads its spectrum files once and
+     * sequentially, so that they can be streamed through a named pipe.
+     */
+    public static final boolean SEQUENTIAL_INPUT = true;
     /**
      * The Andromeda folder.
      */
@@ -86,6 +97,29 @@ public class AndromedaProcessBuilder extends SearchGUIProcessBuilder {
      * writing a file.
      */
     public AndromedaProcessBuilder(File andromedaFolder, SearchParameters searchParameters, File searchParametersFile, File spectrumFile, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) throws IOException {
+        this(andromedaFolder, searchParameters, searchParametersFile, spectrumFile, waitingHandler, exceptionHandler, nThreads, null);
+    }
+
+    /**
+     * Constructor. The parameters file is written once per run in the given
+     * configuration cache and used by all the searches with the same search
+     * parameters.
+     *
+     * @param andromedaFolder the Andromeda folder
+     * @param searchParameters the search parameters
+     * @param searchParametersFile the file where to save the search parameters
+     * @param spectrumFile the spectrum file
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads
+     * @param configurationCache the cache of the configuration files of the
+     * run, null to write the parameters file for every search
+     *
+     * @throws IOException thrown whenever an error occurred while reading or
+     * writing a file.
+     */
+    public AndromedaProcessBuilder(File andromedaFolder, SearchParameters searchParameters, File searchParametersFile, File spectrumFile, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads,
+            EngineConfigurationCache configurationCache) throws IOException {
 
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
@@ -107,7 +141,19 @@ public class AndromedaProcessBuilder extends SearchGUIProcessBuilder {
         andromeda.setExecutable(true);
 
         // create parameters file
-        File andromedaParametersFile = createParametersFile(searchParametersFile);
+        File configurationFolder = null;
+        if (configurationCache != null) {
+            configurationFolder = configurationCache.getConfigurationFolder(Advocate.andromeda, searchParameters, null);
+        }
+        File andromedaParametersFile;
+        if (configurationFolder == null) {
+            andromedaParametersFile = createParametersFile(searchParametersFile, andromedaTempFolder);
+        } else if (!configurationCache.isConfigured(configurationFolder)) {
+            andromedaParametersFile = createParametersFile(searchParametersFile, configurationFolder);
+            configurationCache.setConfigured(configurationFolder);
+        } else {
+            andromedaParametersFile = new File(configurationFolder, getParametersFileName(searchParametersFile));
+        }
 
         // full path to executable
         process_name_array.add(andromeda.getAbsolutePath());
@@ -568,28 +614,35 @@ public class AndromedaProcessBuilder extends SearchGUIProcessBuilder {
         return result.toString();
     }
 
+    /**
+     * Returns the name of the parameters file.
+     *
+     * @param searchParametersFile the file where to save the search parameters
+     *
+     * @return the name of the parameters file
+     */
+    private static String getParametersFileName(File searchParametersFile) {
+        try {
+            return Util.removeExtension(searchParametersFile.getName()) + ".apar";
+        } catch (Exception e) {
+            return "SearchGUI.apar";
+        }
+    }
+
     /**
      * Create the parameters file.
      *
      * @param searchParametersFile the file where to save the search parameters
+     * @param folder the folder where to write the parameters file
      *
      * @return the parameters file
      *
      * @throws IOException exception thrown whenever an error occurred while
      * writing the configuration file
      */
-    private File createParametersFile(File searchParametersFile) throws IOException {
-
-        File andromedaTempFolder = new File(andromedaTempFolderPath);
-
-        String fileName;
-        try {
-            fileName = Util.removeExtension(searchParametersFile.getName()) + ".apar";
-        } catch (Exception e) {
-            fileName = "SearchGUI.apar";
-        }
+    private File createParametersFile(File searchParametersFile, File folder) throws IOException {
 
-        File parameterFile = new File(andromedaTempFolder, fileName);
+        File parameterFile = new File(folder, getParametersFileName(searchParametersFile));
         BufferedWriter bw = new BufferedWriter(new FileWriter(parameterFile));
 
         try {
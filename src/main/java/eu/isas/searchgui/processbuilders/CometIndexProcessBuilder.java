@@ -0,0 +1,255 @@
+package eu.isas.searchgui.processbuilders;
+
+import com.compomics.util.exceptions.ExceptionHandler;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.DatabaseLock;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * ProcessBuilder for the creation of the Comet peptide index (.idx) of a
+ * FASTA file. The index is written next to the FASTA file together with a
+ * manifest listing the FASTA file and the Comet parameters the index depends
+ * on, i.e., the enzyme, the modifications and the peptide mass and length
+ * ranges. Searches with other parameters, e.g., other tolerances, reuse the
+ * index. Requires Comet 2020.01 or newer.
+ *
+ * @author Harald Barsnes
+ */
+public class CometIndexProcessBuilder extends CometProcessBuilder {
+
+    /**
+     * The extension of the Comet peptide index, appended to the FASTA file
+     * name.
+     */
+    public static final String INDEX_EXTENSION = ".idx";
+    /**
+     * The extension of the manifest of the index, appended to the index file
+     * name.
+     */
+    public static final String INDEX_MANIFEST_EXTENSION = ".manifest";
+    /**
+     * The Comet parameters the index depends on, parameters starting with
+     * the given names.
+     */
+    private static final String[] INDEX_PARAMETERS = {"database_name", "decoy_search", "search_enzyme_number", "search_enzyme2_number",
+        "num_enzyme_termini", "allowed_missed_cleavage", "variable_mod", "max_variable_mods_in_peptide", "require_variable_mod",
+        "digest_mass_range", "peptide_length_range", "clip_nterm_methionine", "mass_type_parent", "nucleotide_reading_frame", "add_"};
+    /**
+     * The FASTA file.
+     */
+    private File fastaFile;
+    /**
+     * The signature of the index.
+     */
+    private String indexSignature;
+
+    /**
+     * Constructor.
+     *
+     * @param cometFolder the Comet folder
+     * @param searchParameters the search parameters
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads
+     * @param refMass a reference mass to convert fragment ion tolerance from
+     * ppm to Dalton
+     *
+     * @throws IOException thrown if there are problems creating the Comet
+     * parameter file
+     */
+    public CometIndexProcessBuilder(File cometFolder, SearchParameters searchParameters,
+            WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads, Double refMass) throws IOException {
+
+        super(cometFolder, searchParameters, new ArrayList<File>(), searchParameters.getFastaFile(), true,
+                waitingHandler, exceptionHandler, nThreads, refMass);
+
+        fastaFile = searchParameters.getFastaFile();
+        indexSignature = createIndexSignature();
+    }
+
+    /**
+     * Creates the signature of the index from the FASTA file and the
+     * parameters file: the FASTA file size and modification date and the
+     * Comet parameters the index depends on, including the enzyme
+     * definitions.
+     *
+     * @return the signature of the index
+     *
+     * @throws IOException thrown if an error occurred while reading the
+     * parameters file
+     */
+    private String createIndexSignature() throws IOException {
+
+        StringBuilder signature = new StringBuilder();
+        signature.append(fastaFile.getAbsolutePath()).append(System.getProperty("line.separator"));
+        signature.append(fastaFile.length()).append(System.getProperty("line.separator"));
+        signature.append(fastaFile.lastModified()).append(System.getProperty("line.separator"));
+
+        BufferedReader br = new BufferedReader(new FileReader(getParametersFile()));
+
+        try {
+            boolean enzymeListing = false;
+            String line;
+
+            while ((line = br.readLine()) != null) {
+
+                if (line.startsWith("# comet_version")) {
+                    signature.append(line.trim()).append(System.getProperty("line.separator"));
+                    continue;
+                }
+
+                // remove the comments
+                int commentIndex = line.indexOf('#');
+                if (commentIndex != -1) {
+                    line = line.substring(0, commentIndex);
+                }
+                line = line.trim();
+
+                if (line.startsWith("[COMET_ENZYME_INFO]")) {
+                    enzymeListing = true;
+                }
+
+                if (!line.isEmpty() && (enzymeListing || isIndexParameter(line))) {
+                    signature.append(line).append(System.getProperty("line.separator"));
+                }
+            }
+        } finally {
+            br.close();
+        }
+
+        return signature.toString();
+    }
+
+    /**
+     * Indicates whether the given line of the parameters file sets a
+     * parameter the index depends on.
+     *
+     * @param line the line
+     *
+     * @return true if the line sets a parameter the index depends on
+     */
+    private static boolean isIndexParameter(String line) {
+        for (String parameter : INDEX_PARAMETERS) {
+            if (line.startsWith(parameter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the peptide index file.
+     *
+     * @return the peptide index file
+     */
+    public File getIndexFile() {
+        return new File(fastaFile.getAbsolutePath() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Returns the manifest of the index.
+     *
+     * @return the manifest of the index
+     */
+    public File getIndexManifestFile() {
+        return new File(getIndexFile().getAbsolutePath() + INDEX_MANIFEST_EXTENSION);
+    }
+
+    /**
+     * Returns the file used to lock the index when it is created or used by
+     * multiple processes.
+     *
+     * @return the file used to lock the index
+     */
+    public File getIndexLockFile() {
+        return DatabaseLock.getLockFile(getIndexFile());
+    }
+
+    /**
+     * Returns the signature of the index, i.e., the FASTA file and the Comet
+     * parameters the index depends on.
+     *
+     * @return the signature of the index
+     */
+    public String getIndexSignature() {
+        return indexSignature;
+    }
+
+    /**
+     * Indicates whether the index exists and was created with the same FASTA
+     * file and parameters as this process.
+     *
+     * @return true if the existing index can be reused
+     */
+    public boolean isIndexUpToDate() {
+
+        File manifestFile = getIndexManifestFile();
+
+        if (!manifestFile.exists() || !getIndexFile().exists()) {
+            return false;
+        }
+
+        StringBuilder savedSignature = new StringBuilder();
+
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(manifestFile));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    savedSignature.append(line).append(System.getProperty("line.separator"));
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return savedSignature.toString().equals(indexSignature);
+    }
+
+    /**
+     * Saves the manifest of the index. To be called when the indexing has
+     * completed.
+     *
+     * @throws IOException thrown if an error occurred while writing the
+     * manifest
+     */
+    public void saveIndexManifest() throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(getIndexManifestFile()));
+        try {
+            bw.write(indexSignature);
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Deletes the manifest of the index, to be called before the index is
+     * rewritten.
+     */
+    public void deleteIndexManifest() {
+        File manifestFile = getIndexManifestFile();
+        if (manifestFile.exists()) {
+            manifestFile.delete();
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "Comet Indexing";
+    }
+
+    @Override
+    public String getCurrentlyProcessedFileName() {
+        return fastaFile.getName();
+    }
+}
@@ -14,11 +14,13 @@ import com.compomics.util.experiment.identification.identification_parameters.to
 import com.compomics.util.experiment.identification.identification_parameters.tool_specific.CometParameters.CometOutputFormat;
 import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 
@@ -30,6 +32,10 @@ import java.util.Iterator;
  */
 public class CometProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine, in order of preference.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mzML, SpectrumFormat.mgf};
     /**
      * The Comet folder.
      */
@@ -51,9 +57,13 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
      */
     private final String COMET_VERSION = "2018.01 rev. 3"; // @TODO: extract from the comet usage details?
     /**
-     * The spectrum file.
+     * The spectrum files.
      */
-    private File spectrumFile;
+    private ArrayList<File> spectrumFiles;
+    /**
+     * The database given to Comet, the FASTA file or its peptide index.
+     */
+    private File databaseFile;
     /**
      * The search parameters.
      */
@@ -74,6 +84,10 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
      * A reference mass to convert fragment ion tolerance from ppm to Dalton.
      */
     private Double refMass;
+    /**
+     * The number of spectra searched at a time, 0 for all spectra.
+     */
+    private Integer spectrumBatchSize;
 
     /**
      * Constructor.
@@ -92,15 +106,65 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
      */
     public CometProcessBuilder(File cometFolder, SearchParameters searchParameters, File spectrumFile,
             WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads, Double refMass) throws IOException {
+        this(cometFolder, searchParameters, new ArrayList<File>(Arrays.asList(spectrumFile)), searchParameters.getFastaFile(),
+                waitingHandler, exceptionHandler, nThreads, refMass);
+    }
+
+    /**
+     * Constructor for searching several spectrum files in one process, thus
+     * indexing the database only once. Comet writes one result file per
+     * spectrum file, next to the spectrum file.
+     *
+     * @param cometFolder the Comet folder
+     * @param searchParameters the search parameters
+     * @param spectrumFiles the spectrum files
+     * @param databaseFile the database to search, the FASTA file or its
+     * peptide index created by the CometIndexProcessBuilder
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads
+     * @param refMass a reference mass to convert fragment ion tolerance from
+     * ppm to Dalton
+     *
+     * @throws IOException thrown if there are problems creating the Comet
+     * parameter file
+     */
+    public CometProcessBuilder(File cometFolder, SearchParameters searchParameters, ArrayList<File> spectrumFiles, File databaseFile,
+            WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads, Double refMass) throws IOException {
+        this(cometFolder, searchParameters, spectrumFiles, databaseFile, false, waitingHandler, exceptionHandler, nThreads, refMass);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param cometFolder the Comet folder
+     * @param searchParameters the search parameters
+     * @param spectrumFiles the spectrum files, empty when creating the index
+     * @param databaseFile the database, the FASTA file or its peptide index
+     * @param createIndex if true, the peptide index of the FASTA file is
+     * created instead of searching
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads
+     * @param refMass a reference mass to convert fragment ion tolerance from
+     * ppm to Dalton
+     *
+     * @throws IOException thrown if there are problems creating the Comet
+     * parameter file
+     */
+    CometProcessBuilder(File cometFolder, SearchParameters searchParameters, ArrayList<File> spectrumFiles, File databaseFile, boolean createIndex,
+            WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads, Double refMass) throws IOException {
 
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
         this.cometFolder = cometFolder;
         this.searchParameters = searchParameters;
         cometParameters = (CometParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.comet.getIndex());
-        this.spectrumFile = spectrumFile;
+        this.spectrumFiles = spectrumFiles;
+        this.databaseFile = databaseFile;
         this.nThreads = nThreads;
         this.refMass = refMass;
+        spectrumBatchSize = cometParameters.getBatchSize();
 
         createParametersFile();
 
@@ -117,8 +181,15 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
             process_name_array.add("-P" + path);
         }
 
-        // link to the input file
-        process_name_array.add(spectrumFile.getAbsolutePath());
+        // create the peptide index of the database instead of searching
+        if (createIndex) {
+            process_name_array.add("-i");
+        }
+
+        // link to the input files
+        for (File spectrumFile : spectrumFiles) {
+            process_name_array.add(spectrumFile.getAbsolutePath());
+        }
 
         process_name_array.trimToSize();
 
@@ -139,11 +210,45 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
     }
 
     /**
-     * Create the parameters file.
+     * Sets the number of spectra searched at a time, overriding the batch
+     * size of the Comet parameters, and writes the parameters file again.
      *
-     * @throws IOException
+     * @param spectrumBatchSize the number of spectra searched at a time, 0
+     * for all spectra
+     *
+     * @throws IOException thrown if there are problems creating the Comet
+     * parameter file
      */
-    private void createParametersFile() throws IOException {
+    public void setSpectrumBatchSize(int spectrumBatchSize) throws IOException {
+        this.spectrumBatchSize = spectrumBatchSize;
+        createParametersFile();
+    }
+
+    /**
+     * Returns the number of spectra searched at a time, 0 for all spectra.
+     *
+     * @return the number of spectra searched at a time
+     */
+    public Integer getSpectrumBatchSize() {
+        return spectrumBatchSize;
+    }
+
+    /**
+     * Returns the database given to Comet, the FASTA file or its peptide
+     * index.
+     *
+     * @return the database given to Comet
+     */
+    public File getDatabaseFile() {
+        return databaseFile;
+    }
+
+    /**
+     * Returns the Comet parameters file written by this process builder.
+     *
+     * @return the Comet parameters file
+     */
+    File getParametersFile() {
 
         File cometTempFolder;
         if (cometTempFolderPath == null) {
@@ -152,12 +257,24 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
             cometTempFolder = new File(cometTempFolderPath);
         }
 
+        return new File(cometTempFolder, "comet.params");
+    }
+
+    /**
+     * Create the parameters file.
+     *
+     * @throws IOException
+     */
+    private void createParametersFile() throws IOException {
+
+        File cometTempFolder = getParametersFile().getParentFile();
+
         // create the temp folder if it doesn't exist
         if (!cometTempFolder.exists()) {
             cometTempFolder.mkdirs();
         }
 
-        BufferedWriter br = new BufferedWriter(new FileWriter(new File(cometTempFolder, "comet.params")));
+        BufferedWriter br = new BufferedWriter(new FileWriter(getParametersFile()));
 
         String precursorToleranceType; // @TODO: what about mmu?
         if (searchParameters.getPrecursorAccuracyType() == SearchParameters.MassAccuracyType.DA) {
@@ -246,7 +363,7 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
                     /////////////////////////
                     // database details
                     /////////////////////////
-                    + "database_name = " + searchParameters.getFastaFile().getAbsolutePath() + System.getProperty("line.separator")
+                    + "database_name = " + databaseFile.getAbsolutePath() + System.getProperty("line.separator")
                     + "decoy_search = 0 # 0=no (default), 1=concatenated search, 2=separate search" + System.getProperty("line.separator")
                     /////////////////////////
                     // number of threads
@@ -340,7 +457,7 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
                     + "max_precursor_charge = " + searchParameters.getMaxChargeSearched() + "                 # set maximum precursor charge state to analyze (allowed max 9)" + System.getProperty("line.separator")
                     + "nucleotide_reading_frame = 0           # 0=proteinDB, 1-6, 7=forward three, 8=reverse three, 9=all six" + System.getProperty("line.separator")
                     + "clip_nterm_methionine = " + clip_nterm_methionine + "                 # 0=leave sequences as-is; 1=also consider sequence w/o N-term methionine" + System.getProperty("line.separator")
-                    + "spectrum_batch_size = " + cometParameters.getBatchSize() + "                 # max. # of spectra to search at a time; 0 to search the entire scan range in one loop" + System.getProperty("line.separator")
+                    + "spectrum_batch_size = " + spectrumBatchSize + "                 # max. # of spectra to search at a time; 0 to search the entire scan range in one loop" + System.getProperty("line.separator")
                     + "decoy_prefix = DECOY_                  # decoy entries are denoted by this string which is pre-pended to each protein accession" + System.getProperty("line.separator")
                     + "output_suffix = .comet                 # add a suffix to output base names i.e. suffix \"-C\" generates base-C.pep.xml from base.mzXML input" + System.getProperty("line.separator")
                     + "mass_offsets =                         # one or more mass offsets to search (values substracted from deconvoluted precursor mass)" + System.getProperty("line.separator") // @TODO: implement?
@@ -855,7 +972,7 @@ public class CometProcessBuilder extends SearchGUIProcessBuilder {
 
     @Override
     public String getCurrentlyProcessedFileName() {
-        return spectrumFile.getName();
+        return getFileNames(spectrumFiles);
     }
 
     /**
@@ -9,8 +9,10 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.identification_parameters.tool_specific.DirecTagParameters;
 import com.compomics.util.preferences.IdentificationParameters;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class will set up and start a process to run DirecTag.
@@ -20,14 +22,18 @@ import java.util.ArrayList;
  */
 public class DirecTagProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine, in order of preference.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mzML, SpectrumFormat.mgf};
     /**
      * Title of the DirecTag executable.
      */
     public static final String EXECUTABLE_FILE_NAME = "directag";
     /**
-     * The spectrumFile file.
+     * The spectrum files.
      */
-    private File spectrumFile;
+    private ArrayList<File> spectrumFiles;
     /**
      * The post translational modifications factory.
      */
@@ -49,7 +55,23 @@ public class DirecTagProcessBuilder extends SearchGUIProcessBuilder {
      * @param exceptionHandler the exception handler
      */
     public DirecTagProcessBuilder(File exeFolder, File spectrumFile, int nThreads, File outputFolder, SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler) {
-        this.spectrumFile = spectrumFile;
+        this(exeFolder, new ArrayList<File>(Arrays.asList(spectrumFile)), nThreads, outputFolder, searchParameters, waitingHandler, exceptionHandler);
+    }
+
+    /**
+     * Constructor for processing several spectrum files in one process. One
+     * result file is created per spectrum file.
+     *
+     * @param exeFolder the path to the executable
+     * @param spectrumFiles the spectrum files
+     * @param nThreads the number of threads
+     * @param outputFolder the output folder
+     * @param searchParameters the search parameters
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the exception handler
+     */
+    public DirecTagProcessBuilder(File exeFolder, ArrayList<File> spectrumFiles, int nThreads, File outputFolder, SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler) {
+        this.spectrumFiles = spectrumFiles;
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
 
@@ -60,8 +82,10 @@ public class DirecTagProcessBuilder extends SearchGUIProcessBuilder {
         process_name_array.add(exeFolder.getAbsolutePath() + File.separator + EXECUTABLE_FILE_NAME);
         process_name_array.trimToSize();
 
-        // link to the spectrum file
-        process_name_array.add(spectrumFile.getAbsolutePath());
+        // link to the spectrum files
+        for (File spectrumFile : spectrumFiles) {
+            process_name_array.add(spectrumFile.getAbsolutePath());
+        }
 
         // number of cores
         process_name_array.add("-cpus");
@@ -271,7 +295,7 @@ public class DirecTagProcessBuilder extends SearchGUIProcessBuilder {
      * @return the file name of the currently processed file
      */
     public String getCurrentlyProcessedFileName() {
-        return spectrumFile.getName();
+        return getFileNames(spectrumFiles);
     }
 
     /**
@@ -14,7 +14,9 @@ import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.preferences.DigestionPreferences.Specificity;
 import com.compomics.util.pride.CvTerm;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.EngineConfigurationCache;
 
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -29,6 +31,10 @@ import java.util.StringTokenizer;
  */
 public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mgf};
     /**
      * The settings XML file for MS Amanda.
      */
@@ -49,6 +55,10 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
      * The MS Amanda folder.
      */
     private File msAmandaFolder;
+    /**
+     * The folder where to write the enzymes and settings files.
+     */
+    private File configurationFolder;
     /**
      * The name of the MS Amanda executable.
      */
@@ -189,6 +199,27 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
      */
     public MsAmandaProcessBuilder(File msAmandaDirectory, String mgfPath, String outputPath,
             SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) {
+        this(msAmandaDirectory, mgfPath, outputPath, searchParameters, waitingHandler, exceptionHandler, nThreads, null);
+    }
+
+    /**
+     * Constructor. The enzymes and settings files are written once per run in
+     * the given configuration cache and used by all the searches with the
+     * same search parameters.
+     *
+     * @param msAmandaDirectory directory location of MSAmanda.exe
+     * @param mgfPath the path to file containing the spectra
+     * @param outputPath path where to output the results
+     * @param searchParameters the search parameters
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads to use (note: cannot be used)
+     * @param configurationCache the cache of the configuration files of the
+     * run, null to write the files for every search
+     */
+    public MsAmandaProcessBuilder(File msAmandaDirectory, String mgfPath, String outputPath,
+            SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads,
+            EngineConfigurationCache configurationCache) {
 
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
@@ -259,15 +290,30 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
             missedCleavages = 0; 
         }
 
-        // set the modifications
-        modificationsAsString = getModificationsAsString(searchParameters.getPtmSettings());
         instrument = msAmandaParameters.getInstrumentID();
 
-        // create the enzyme file
-        createEnzymeFile();
+        if (configurationCache != null) {
+            configurationFolder = configurationCache.getConfigurationFolder(Advocate.msAmanda, searchParameters, null);
+        }
+        if (configurationFolder == null) {
+            configurationFolder = msAmandaFolder;
+        }
+
+        if (configurationCache == null || !configurationCache.isConfigured(configurationFolder)) {
+
+            // set the modifications
+            modificationsAsString = getModificationsAsString(searchParameters.getPtmSettings());
+
+            // create the enzyme file
+            createEnzymeFile();
 
-        // create the settings xml file
-        createSettingsFile();
+            // create the settings xml file
+            createSettingsFile();
+
+            if (configurationCache != null) {
+                configurationCache.setConfigured(configurationFolder);
+            }
+        }
 
         // make sure that the ms amanda exe file is executable
         File msAmanda = new File(msAmandaFolder.getAbsolutePath() + File.separator + EXECUTABLE_FILE_NAME);
@@ -303,7 +349,7 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
         process_name_array.add(CommandLineUtils.getCommandLineArgument(database));
 
         // add the settings file
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(msAmandaFolder, SETTINGS_FILE)));
+        process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(configurationFolder, SETTINGS_FILE)));
 
         // add the output file
         process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(outputPath)));
@@ -329,7 +375,7 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
      */
     private void createEnzymeFile() {
 
-        File enzymeFile = new File(msAmandaFolder, ENZYMES_FILE);
+        File enzymeFile = new File(configurationFolder, ENZYMES_FILE);
 
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(enzymeFile));
@@ -404,7 +450,7 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
      */
     private void createSettingsFile() throws IllegalArgumentException {
 
-        File settingsFile = new File(msAmandaFolder, SETTINGS_FILE);
+        File settingsFile = new File(configurationFolder, SETTINGS_FILE);
 
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(settingsFile));
@@ -435,7 +481,7 @@ public class MsAmandaProcessBuilder extends SearchGUIProcessBuilder {
                     + "\t<basic_settings> " + System.getProperty("line.separator")
                     + "\t\t<instruments_file>" + new File(msAmandaFolder, INSTRUMENTS_FILE).getAbsolutePath() + "</instruments_file> " + System.getProperty("line.separator")
                     + "\t\t<unimod_file>" + new File(msAmandaFolder, UNIMOD_FILE).getAbsolutePath() + "</unimod_file> " + System.getProperty("line.separator")
-                    + "\t\t<enzyme_file>" + new File(msAmandaFolder, ENZYMES_FILE).getAbsolutePath() + "</enzyme_file> " + System.getProperty("line.separator")
+                    + "\t\t<enzyme_file>" + new File(configurationFolder, ENZYMES_FILE).getAbsolutePath() + "</enzyme_file> " + System.getProperty("line.separator")
                     + "\t\t<monoisotopic>" + monoisotopic + "</monoisotopic> " + System.getProperty("line.separator")
                     + "\t\t<considered_charges>" + getChargeRangeAsString() + "</considered_charges> " + System.getProperty("line.separator")
                     
@@ -30,6 +30,11 @@ public class MsConvertProcessBuilder extends SearchGUIProcessBuilder {
      * The conversion parameters.
      */
     private MsConvertParameters msConvertParameters;
+    /**
+     * The format to convert to, overrides the format of the msconvert
+     * parameters if not null.
+     */
+    private MsFormat msFormat = null;
     /**
      * Boolean indicating whether the progress should be displayed. "Verbose"
      * mode of msconvert.
@@ -51,12 +56,34 @@ public class MsConvertProcessBuilder extends SearchGUIProcessBuilder {
      */
     public MsConvertProcessBuilder(WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, File rawFile, File destinationFolder, MsConvertParameters msConvertParameters)
             throws FileNotFoundException, IOException, ClassNotFoundException {
+        this(waitingHandler, exceptionHandler, rawFile, destinationFolder, msConvertParameters, null);
+    }
+
+    /**
+     * Constructor for the process builder converting to the given format
+     * with the filters of the msconvert parameters.
+     *
+     * @param waitingHandler the waiting handler
+     * @param rawFile the raw file to convert
+     * @param destinationFolder the destination folder
+     * @param msConvertParameters the msconvert parameters
+     * @param msFormat the format to convert to, null to use the format of the
+     * msconvert parameters
+     * @param exceptionHandler the handler of exceptions
+     *
+     * @throws FileNotFoundException thrown if files cannot be found
+     * @throws IOException thrown if there are problems accessing the files
+     * @throws ClassNotFoundException thrown if a class cannot be found
+     */
+    public MsConvertProcessBuilder(WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, File rawFile, File destinationFolder, MsConvertParameters msConvertParameters,
+            MsFormat msFormat) throws FileNotFoundException, IOException, ClassNotFoundException {
 
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
         this.rawFile = rawFile;
         this.destinationFolder = destinationFolder;
         this.msConvertParameters = msConvertParameters;
+        this.msFormat = msFormat;
 
         setUpProcessBuilder();
     }
@@ -81,7 +108,10 @@ public class MsConvertProcessBuilder extends SearchGUIProcessBuilder {
         process_name_array.add(CommandLineUtils.getCommandLineArgument(proteoWizardFolder));
         process_name_array.add(CommandLineUtils.getCommandLineArgument(rawFile));
 
-        MsFormat msFormat = msConvertParameters.getMsFormat();
+        MsFormat msFormat = this.msFormat;
+        if (msFormat == null) {
+            msFormat = msConvertParameters.getMsFormat();
+        }
         if (msFormat == null) {
             msFormat = MsFormat.mgf;
         }
@@ -0,0 +1,299 @@
+package eu.isas.searchgui.processbuilders;
+
+import com.compomics.software.CompomicsWrapper;
+import com.compomics.software.cli.CommandLineUtils;
+import com.compomics.util.Util;
+import com.compomics.util.exceptions.ExceptionHandler;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.identification_parameters.tool_specific.MsgfParameters;
+import com.compomics.util.preferences.UtilitiesUserPreferences;
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.DatabaseLock;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+/**
+ * ProcessBuilder for the creation of the MS-GF+ database files (.canno,
+ * .cnlcp, .csarr and .cseq) of a FASTA file. MS-GF+ otherwise builds these
+ * files on first use, and concurrent searches on a new database write them
+ * at the same time. The files are written next to the FASTA file together
+ * with a manifest listing the FASTA file and the decoy setting used, so that
+ * later searches can reuse them.
+ *
+ * @author Harald Barsnes
+ */
+public class MsgfIndexProcessBuilder extends SearchGUIProcessBuilder {
+
+    /**
+     * The MS-GF+ class building the database files.
+     */
+    private static final String BUILD_SA_CLASS = "edu.ucsd.msjava.msdbsearch.BuildSA";
+    /**
+     * The extensions of the database files created by MS-GF+.
+     */
+    public static final String[] INDEX_EXTENSIONS = {".canno", ".cnlcp", ".csarr", ".cseq"};
+    /**
+     * The infix added by MS-GF+ to the name of the concatenated target/decoy
+     * database.
+     */
+    private static final String DECOY_INFIX = ".revCat";
+    /**
+     * The extension of the manifest of the database files.
+     */
+    public static final String INDEX_MANIFEST_EXTENSION = ".msgf_manifest";
+    /**
+     * The FASTA file.
+     */
+    private File fastaFile;
+    /**
+     * True if MS-GF+ searches the decoy database it creates.
+     */
+    private boolean searchDecoyDatabase;
+    /**
+     * The signature of the database files.
+     */
+    private String indexSignature;
+
+    /**
+     * Constructor.
+     *
+     * @param msgfDirectory directory location of MSGFPlus.jar
+     * @param searchParameters the search parameters
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param isCommandLine true if run from the command line, false if GUI
+     *
+     * @throws java.io.IOException exception thrown whenever an error occurred
+     * while getting the Java home
+     * @throws java.io.FileNotFoundException exception thrown whenever an error
+     * occurred while getting the java home
+     * @throws java.lang.ClassNotFoundException exception thrown whenever an
+     * error occurred while getting the SearchGUI path
+     */
+    public MsgfIndexProcessBuilder(File msgfDirectory, SearchParameters searchParameters,
+            WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, boolean isCommandLine)
+            throws IOException, FileNotFoundException, ClassNotFoundException {
+
+        this.waitingHandler = waitingHandler;
+        this.exceptionHandler = exceptionHandler;
+        fastaFile = searchParameters.getFastaFile();
+        MsgfParameters msgfParameters = (MsgfParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.msgf.getIndex());
+        searchDecoyDatabase = msgfParameters.searchDecoyDatabase();
+
+        File msgfExecutable = new File(msgfDirectory, MsgfProcessBuilder.EXECUTABLE_FILE_NAME);
+        indexSignature = fastaFile.getAbsolutePath() + System.getProperty("line.separator")
+                + fastaFile.length() + System.getProperty("line.separator")
+                + fastaFile.lastModified() + System.getProperty("line.separator")
+                + "tda " + getDecoySetting() + System.getProperty("line.separator")
+                + msgfExecutable.length() + System.getProperty("line.separator");
+
+        // set java home
+        UtilitiesUserPreferences utilitiesUserPreferences = UtilitiesUserPreferences.loadUserPreferences();
+        CompomicsWrapper wrapper = new CompomicsWrapper();
+        ArrayList<String> javaHomeAndOptions = wrapper.getJavaHomeAndOptions(utilitiesUserPreferences.getSearchGuiPath());
+        process_name_array.add(javaHomeAndOptions.get(0)); // set java home
+
+        // set java options, the same as for the search
+        if (!isCommandLine) {
+            for (int i = 1; i < javaHomeAndOptions.size(); i++) {
+                process_name_array.add(javaHomeAndOptions.get(i));
+            }
+        } else {
+            process_name_array.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        }
+
+        // add the class building the database files
+        process_name_array.add("-cp");
+        process_name_array.add(CommandLineUtils.getCommandLineArgument(msgfExecutable));
+        process_name_array.add(BUILD_SA_CLASS);
+
+        // add the database
+        process_name_array.add("-d");
+        process_name_array.add(CommandLineUtils.getCommandLineArgument(fastaFile));
+
+        // build the files of the database searched, with or without decoys
+        process_name_array.add("-tda");
+        process_name_array.add(getDecoySetting());
+
+        process_name_array.trimToSize();
+
+        // print the command to the log file
+        System.out.println(System.getProperty("line.separator") + System.getProperty("line.separator") + "ms-gf+ indexing command: ");
+
+        for (Object element : process_name_array) {
+            System.out.print(element + " ");
+        }
+
+        System.out.println(System.getProperty("line.separator"));
+
+        pb = new ProcessBuilder(process_name_array);
+
+        pb.directory(msgfDirectory);
+        // set error out and std out to same stream
+        pb.redirectErrorStream(true);
+    }
+
+    /**
+     * Returns the MS-GF+ decoy setting: 1 if MS-GF+ searches the decoy
+     * database it creates, 0 otherwise.
+     *
+     * @return the MS-GF+ decoy setting
+     */
+    private String getDecoySetting() {
+        return searchDecoyDatabase ? "1" : "0";
+    }
+
+    /**
+     * Returns the path of the database files without extension, i.e., the
+     * FASTA file without extension, followed by the decoy infix if MS-GF+
+     * searches its concatenated target/decoy database.
+     *
+     * @return the path of the database files without extension
+     */
+    private String getIndexPath() {
+        String path = Util.removeExtension(fastaFile.getAbsolutePath());
+        if (searchDecoyDatabase) {
+            path += DECOY_INFIX;
+        }
+        return path;
+    }
+
+    /**
+     * Returns the database files created by MS-GF+.
+     *
+     * @return the database files created by MS-GF+
+     */
+    public ArrayList<File> getIndexFiles() {
+        ArrayList<File> indexFiles = new ArrayList<File>(INDEX_EXTENSIONS.length);
+        String indexPath = getIndexPath();
+        for (String extension : INDEX_EXTENSIONS) {
+            indexFiles.add(new File(indexPath + extension));
+        }
+        return indexFiles;
+    }
+
+    /**
+     * Returns the manifest of the database files.
+     *
+     * @return the manifest of the database files
+     */
+    public File getIndexManifestFile() {
+        return new File(getIndexPath() + INDEX_MANIFEST_EXTENSION);
+    }
+
+    /**
+     * Returns the file used to lock the database files when they are created
+     * or used by multiple processes.
+     *
+     * @return the file used to lock the database files
+     */
+    public File getIndexLockFile() {
+        return DatabaseLock.getLockFile(new File(getIndexPath() + ".msgf"));
+    }
+
+    /**
+     * Indicates whether all database files exist.
+     *
+     * @return true if all database files exist
+     */
+    public boolean indexFilesExist() {
+        for (File indexFile : getIndexFiles()) {
+            if (!indexFile.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether the database files exist and were created from the
+     * same FASTA file, with the same decoy setting and MS-GF+ version as this
+     * process.
+     *
+     * @return true if the existing database files can be reused
+     */
+    public boolean isIndexUpToDate() {
+
+        File manifestFile = getIndexManifestFile();
+
+        if (!manifestFile.exists() || !indexFilesExist()) {
+            return false;
+        }
+
+        StringBuilder savedSignature = new StringBuilder();
+
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(manifestFile));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    savedSignature.append(line).append(System.getProperty("line.separator"));
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return savedSignature.toString().equals(indexSignature);
+    }
+
+    /**
+     * Saves the manifest of the database files. To be called when the
+     * indexing has completed.
+     *
+     * @throws IOException thrown if an error occurred while writing the
+     * manifest
+     */
+    public void saveIndexManifest() throws IOException {
+        BufferedWriter bw = new BufferedWriter(new FileWriter(getIndexManifestFile()));
+        try {
+            bw.write(indexSignature);
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Deletes the manifest and the database files, including the decoy
+     * database, to be called before the database files are rewritten. MS-GF+
+     * does not rebuild existing files.
+     */
+    public void deleteIndex() {
+        File manifestFile = getIndexManifestFile();
+        if (manifestFile.exists()) {
+            manifestFile.delete();
+        }
+        if (searchDecoyDatabase) {
+            File decoyFastaFile = new File(getIndexPath() + ".fasta");
+            if (decoyFastaFile.exists()) {
+                decoyFastaFile.delete();
+            }
+        }
+        for (File indexFile : getIndexFiles()) {
+            if (indexFile.exists()) {
+                indexFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public String getType() {
+        return "MS-GF+ Indexing";
+    }
+
+    @Override
+    public String getCurrentlyProcessedFileName() {
+        return fastaFile.getName();
+    }
+}
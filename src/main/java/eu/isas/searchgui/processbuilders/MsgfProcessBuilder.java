@@ -14,6 +14,9 @@ import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.preferences.UtilitiesUserPreferences;
 import com.compomics.util.pride.CvTerm;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.EngineConfigurationCache;
+import eu.isas.searchgui.utilities.MsgfWorker;
+import eu.isas.searchgui.utilities.SpectrumFormat;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -22,7 +25,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -33,6 +38,10 @@ import java.util.List;
  */
 public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine, in order of preference.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mzML, SpectrumFormat.mgf};
     /**
      * The MS-GF+ modifications file.
      */
@@ -67,9 +76,9 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
      */
     public final static String EXECUTABLE_FILE_NAME = "MSGFPlus.jar";
     /**
-     * The spectrum file to search.
+     * The spectrum files to search.
      */
-    private String spectrumFile;
+    private ArrayList<File> spectrumFiles;
     /**
      * The MS-GF+ parameters.
      */
@@ -102,12 +111,45 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
             WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads, boolean isCommandLine)
             throws IOException, FileNotFoundException, ClassNotFoundException {
 
+        this(msgfDirectory, new ArrayList<File>(Arrays.asList(new File(mgfFile))), new ArrayList<File>(Arrays.asList(outputFile)),
+                searchParameters, waitingHandler, exceptionHandler, nThreads, isCommandLine, null);
+    }
+
+    /**
+     * Constructor for the search of several spectrum files in one Java
+     * virtual machine. Several spectrum files are searched one after the
+     * other by a MsgfWorker, saving the start of a virtual machine and the
+     * loading of MS-GF+ for every file.
+     *
+     * @param msgfDirectory directory location of MSGFPlus.jar
+     * @param spectrumFiles the spectrum files to search
+     * @param outputFiles the output files, one per spectrum file
+     * @param searchParameters the search parameters
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads to use
+     * @param isCommandLine true if run from the command line, false if GUI
+     * @param configurationCache the cache of the configuration files of the
+     * run, null to write the modifications and enzymes files for every search
+     *
+     * @throws java.io.IOException exception thrown whenever an error occurred
+     * while getting the Java home
+     * @throws java.io.FileNotFoundException exception thrown whenever an error
+     * occurred while getting the java home
+     * @throws java.lang.ClassNotFoundException exception thrown whenever an
+     * error occurred while getting the SearchGUI path
+     */
+    public MsgfProcessBuilder(File msgfDirectory, ArrayList<File> spectrumFiles, ArrayList<File> outputFiles, SearchParameters searchParameters,
+            WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads, boolean isCommandLine,
+            EngineConfigurationCache configurationCache)
+            throws IOException, FileNotFoundException, ClassNotFoundException {
+
         this.searchParameters = searchParameters;
         msgfParameters = (MsgfParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.msgf.getIndex());
 
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
-        this.spectrumFile = mgfFile;
+        this.spectrumFiles = spectrumFiles;
 
         // make sure that the msgf+ jar file is executable
         File msgfExecutable = new File(msgfDirectory.getAbsolutePath() + File.separator + EXECUTABLE_FILE_NAME);
@@ -119,13 +161,32 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
             parametersFolder.mkdir();
         }
 
-        // create the ms-gf+ modification file
-        msgfModFile = new File(parametersFolder, MOD_FILE);
-        createModificationsFile();
-
-        // create ms-gf+ enzyme file
+        // the modification file can be anywhere, the enzymes file has to be in the parameters folder
+        File configurationFolder = null;
+        if (configurationCache != null) {
+            configurationFolder = configurationCache.getConfigurationFolder(Advocate.msgf, searchParameters, null);
+        }
+        if (configurationFolder == null) {
+            configurationFolder = parametersFolder;
+        }
+        msgfModFile = new File(configurationFolder, MOD_FILE);
         msgfEnzymesFile = new File(parametersFolder, ENZYMES_FILE);
-        createEnzymesFile();
+
+        if (configurationCache == null || !configurationCache.isConfigured(configurationFolder)) {
+
+            // create the ms-gf+ modification file
+            createModificationsFile();
+
+            // create ms-gf+ enzyme file
+            createEnzymesFile(true);
+
+            if (configurationCache != null) {
+                configurationCache.setConfigured(configurationFolder);
+            }
+        } else {
+            // the enzymes file is already written, only map the enzymes
+            createEnzymesFile(false);
+        }
 
         // set java home
         UtilitiesUserPreferences utilitiesUserPreferences = UtilitiesUserPreferences.loadUserPreferences();
@@ -147,22 +208,48 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
             }
         }
 
-        // add the MSGFPlus.jar
-        process_name_array.add("-jar");
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(msgfDirectory, EXECUTABLE_FILE_NAME)));
+        if (spectrumFiles.size() == 1) {
+
+            // add the MSGFPlus.jar
+            process_name_array.add("-jar");
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(msgfDirectory, EXECUTABLE_FILE_NAME)));
 
-        // add the spectrum file
-        process_name_array.add("-s");
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(mgfFile)));
+            // add the spectrum file
+            process_name_array.add("-s");
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(spectrumFiles.get(0)));
+
+            // set the output file
+            process_name_array.add("-o");
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(outputFiles.get(0)));
+
+        } else {
+
+            // add the MSGFPlus.jar and the SearchGUI jar file with the worker
+            File searchGuiJar;
+            try {
+                searchGuiJar = new File(MsgfWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("SearchGUI jar file not found.");
+            }
+            process_name_array.add("-cp");
+            process_name_array.add(CommandLineUtils.getQuoteType()
+                    + new File(msgfDirectory, EXECUTABLE_FILE_NAME).getAbsolutePath()
+                    + File.pathSeparator + searchGuiJar.getAbsolutePath()
+                    + CommandLineUtils.getQuoteType());
+            process_name_array.add(MsgfWorker.class.getName());
+
+            // add the spectrum and output files
+            process_name_array.add("" + spectrumFiles.size());
+            for (int i = 0; i < spectrumFiles.size(); i++) {
+                process_name_array.add(CommandLineUtils.getCommandLineArgument(spectrumFiles.get(i)));
+                process_name_array.add(CommandLineUtils.getCommandLineArgument(outputFiles.get(i)));
+            }
+        }
 
         // add the database
         process_name_array.add("-d");
         process_name_array.add(CommandLineUtils.getCommandLineArgument(searchParameters.getFastaFile()));
 
-        // set the output file
-        process_name_array.add("-o");
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(outputFile));
-
         // set the precursor mass tolerance
         Double precursorMassError = searchParameters.getPrecursorAccuracy();
         String precursorMassErrorUnit = "ppm";
@@ -313,11 +400,13 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
     }
 
     /**
-     * Creates the MS-GF+ enzymes file.
+     * Creates the MS-GF+ enzymes file and the corresponding enzyme map.
+     *
+     * @param writeFile if false only the enzyme map is created
      *
      * @throws IOException if the enzymes file could not be written
      */
-    private void createEnzymesFile() throws IOException {
+    private void createEnzymesFile(boolean writeFile) throws IOException {
 
         // Format: ShortName,CleaveAt,Terminus
         // - ShortName: an unique short name of the enzyme (e.g. Tryp). No space is allowed.
@@ -328,7 +417,10 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
         enzymeMap = new HashMap<String, Integer>();
 
         try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter(msgfEnzymesFile));
+            BufferedWriter bw = null;
+            if (writeFile) {
+                bw = new BufferedWriter(new FileWriter(msgfEnzymesFile));
+            }
             try {
 
                 EnzymeFactory enzymeFactory = EnzymeFactory.getInstance();
@@ -361,16 +453,20 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
                         nameWithoutComma = nameWithoutComma.replaceAll(",", "");
                         String nameWithoutCommaAndSpaces = nameWithoutComma.replaceAll(" ", "_");
 
-                        bw.write(nameWithoutCommaAndSpaces + ",");
-                        bw.write(cleavageSite + ",");
-                        bw.write(cleavageType + ",");
-                        bw.write(nameWithoutComma + System.getProperty("line.separator"));
+                        if (bw != null) {
+                            bw.write(nameWithoutCommaAndSpaces + ",");
+                            bw.write(cleavageSite + ",");
+                            bw.write(cleavageType + ",");
+                            bw.write(nameWithoutComma + System.getProperty("line.separator"));
+                        }
 
                         enzymeMap.put(enzymeName, enzymeCounter++);
                     }
                 }
             } finally {
-                bw.close();
+                if (bw != null) {
+                    bw.close();
+                }
             }
         } catch (IOException ioe) {
             throw new IOException("Could not create MS-GF+ enzymes file. Unable to write file: '" + ioe.getMessage() + "'.");
@@ -455,7 +551,7 @@ public class MsgfProcessBuilder extends SearchGUIProcessBuilder {
      * @return the file name of the currently processed file
      */
     public String getCurrentlyProcessedFileName() {
-        return spectrumFile;
+        return getFileNames(spectrumFiles);
     }
 
     /**
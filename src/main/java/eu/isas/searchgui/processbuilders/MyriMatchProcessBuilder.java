@@ -11,8 +11,10 @@ import com.compomics.util.experiment.identification.identification_parameters.to
 import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.waiting.WaitingHandler;
 
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -22,6 +24,10 @@ import java.util.HashMap;
  */
 public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine, in order of preference.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mzML, SpectrumFormat.mgf};
     /**
      * The post translational modifications factory.
      */
@@ -31,9 +37,9 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
      */
     public static final String EXECUTABLE_FILE_NAME = "myrimatch";
     /**
-     * The spectrum file to search.
+     * The spectrum files to search.
      */
-    private String spectrumFile;
+    private ArrayList<File> spectrumFiles;
     /**
      * The MyriMatch parameters.
      */
@@ -60,13 +66,32 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
      */
     public MyriMatchProcessBuilder(File myriMatchDirectory, String mgfFile, File outputFolder,
             SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) {
+        this(myriMatchDirectory, new ArrayList<File>(Arrays.asList(new File(mgfFile))), outputFolder,
+                searchParameters, waitingHandler, exceptionHandler, nThreads);
+    }
+
+    /**
+     * Constructor for searching several spectrum files in one process, thus
+     * loading the database only once. One result file is created per
+     * spectrum file.
+     *
+     * @param myriMatchDirectory directory location of MyriMatch executable
+     * @param spectrumFiles the spectrum files to search
+     * @param outputFolder folder where to output the results
+     * @param searchParameters the search parameters
+     * @param exceptionHandler the handler of exceptions
+     * @param waitingHandler the waiting handler
+     * @param nThreads the number of threads to use
+     */
+    public MyriMatchProcessBuilder(File myriMatchDirectory, ArrayList<File> spectrumFiles, File outputFolder,
+            SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) {
 
         this.searchParameters = searchParameters;
         this.exceptionHandler = exceptionHandler;
         myriMatchParameters = (MyriMatchParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.myriMatch.getIndex());
 
         this.waitingHandler = waitingHandler;
-        this.spectrumFile = mgfFile;
+        this.spectrumFiles = spectrumFiles;
 
         // make sure that the myrimatch file is executable
         File myriMatchExecutable = new File(myriMatchDirectory.getAbsolutePath() + File.separator + EXECUTABLE_FILE_NAME);
@@ -83,8 +108,10 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
         process_name_array.add("-ProteinDatabase");
         process_name_array.add(CommandLineUtils.getCommandLineArgument(searchParameters.getFastaFile()));
 
-        // add the spectrum file
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(mgfFile)));
+        // add the spectrum files
+        for (File spectrumFile : spectrumFiles) {
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(spectrumFile));
+        }
 
         // set the output format to mzIdentML
         process_name_array.add("-OutputFormat");
@@ -439,7 +466,7 @@ public class MyriMatchProcessBuilder extends SearchGUIProcessBuilder {
      * @return the file name of the currently processed file
      */
     public String getCurrentlyProcessedFileName() {
-        return spectrumFile;
+        return getFileNames(spectrumFiles);
     }
 
     /**
@@ -11,14 +11,22 @@ import com.compomics.util.experiment.identification.identification_parameters.to
 import com.compomics.util.preferences.IdentificationParameters;
 import com.compomics.util.preferences.UtilitiesUserPreferences;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.EngineConfigurationCache;
+import eu.isas.searchgui.utilities.MgfSharder;
+import eu.isas.searchgui.utilities.NovorWorker;
+import eu.isas.searchgui.utilities.SpectrumFormat;
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import javax.swing.JOptionPane;
@@ -30,14 +38,18 @@ import javax.swing.JOptionPane;
  */
 public class NovorProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mgf};
     /**
      * The name of the Novor executable.
      */
     public final static String EXECUTABLE_FILE_NAME = "novor.jar";
     /**
-     * The spectrumFile file.
+     * The spectrum files.
      */
-    private File spectrumFile;
+    private ArrayList<File> spectrumFiles;
     /**
      * The search parameters.
      */
@@ -46,6 +58,10 @@ public class NovorProcessBuilder extends SearchGUIProcessBuilder {
      * The path to the Novor executable.
      */
     private File novorFolder;
+    /**
+     * The folder where the parameters and modifications files are written.
+     */
+    private File parametersFolder;
     /**
      * The name of the Novor parameters file.
      */
@@ -85,8 +101,108 @@ public class NovorProcessBuilder extends SearchGUIProcessBuilder {
     public NovorProcessBuilder(File novorFolder, File mgfFile, File outputFile, SearchParameters searchParameters, boolean isCommandLine, 
             WaitingHandler waitingHandler, ExceptionHandler exceptionHandler) throws IOException, FileNotFoundException, ClassNotFoundException {
 
+        this(novorFolder, mgfFile, outputFile, searchParameters, isCommandLine, waitingHandler, exceptionHandler, null);
+    }
+
+    /**
+     * Constructor. The parameters and modifications files are written once
+     * per run in the given configuration cache and used by all the runs with
+     * the same search parameters.
+     *
+     * @param novorFolder the path to the Novor executable
+     * @param mgfFile the spectrum MGF file
+     * @param outputFile the output file
+     * @param searchParameters the search parameters
+     * @param isCommandLine true if run from the command line, false if GUI
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the exception handler
+     * @param configurationCache the cache of the configuration files of the
+     * run, null to write the files for every run
+     *
+     * @throws java.io.IOException exception thrown whenever an error occurred
+     * while getting the Java home
+     * @throws java.io.FileNotFoundException exception thrown whenever an error
+     * occurred while getting the java home
+     * @throws java.lang.ClassNotFoundException exception thrown whenever an
+     * error occurred while getting the SearchGUI path
+     */
+    public NovorProcessBuilder(File novorFolder, File mgfFile, File outputFile, SearchParameters searchParameters, boolean isCommandLine,
+            WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, EngineConfigurationCache configurationCache)
+            throws IOException, FileNotFoundException, ClassNotFoundException {
+
+        this(novorFolder, new ArrayList<File>(Arrays.asList(mgfFile)), new ArrayList<File>(Arrays.asList(outputFile)), novorFolder, true,
+                searchParameters, isCommandLine, waitingHandler, exceptionHandler, configurationCache);
+    }
+
+    /**
+     * Constructor for a Novor worker processing several spectrum files, e.g.,
+     * shards of spectrum files, one after the other in one Java virtual
+     * machine. The parameters and modifications files are written in the
+     * given folder, so that they can be written once for several workers.
+     *
+     * @param novorFolder the path to the Novor executable
+     * @param spectrumFiles the spectrum MGF files
+     * @param outputFiles the output files, one per spectrum file
+     * @param parametersFolder the folder of the parameters and modifications
+     * files
+     * @param createParameterFiles if true the parameters and modifications
+     * files are written, if false they are expected to exist
+     * @param searchParameters the search parameters
+     * @param isCommandLine true if run from the command line, false if GUI
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the exception handler
+     *
+     * @throws java.io.IOException exception thrown whenever an error occurred
+     * while getting the Java home
+     * @throws java.io.FileNotFoundException exception thrown whenever an error
+     * occurred while getting the java home
+     * @throws java.lang.ClassNotFoundException exception thrown whenever an
+     * error occurred while getting the SearchGUI path
+     */
+    public NovorProcessBuilder(File novorFolder, ArrayList<File> spectrumFiles, ArrayList<File> outputFiles, File parametersFolder, boolean createParameterFiles,
+            SearchParameters searchParameters, boolean isCommandLine, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler)
+            throws IOException, FileNotFoundException, ClassNotFoundException {
+
+        this(novorFolder, spectrumFiles, outputFiles, parametersFolder, createParameterFiles, searchParameters, isCommandLine,
+                waitingHandler, exceptionHandler, null);
+    }
+
+    /**
+     * Constructor for a Novor worker processing several spectrum files, e.g.,
+     * shards of spectrum files, one after the other in one Java virtual
+     * machine. If a configuration cache is given, the parameters and
+     * modifications files are written in the cache, if not already written,
+     * instead of the given folder.
+     *
+     * @param novorFolder the path to the Novor executable
+     * @param spectrumFiles the spectrum MGF files
+     * @param outputFiles the output files, one per spectrum file
+     * @param parametersFolder the folder of the parameters and modifications
+     * files
+     * @param createParameterFiles if true the parameters and modifications
+     * files are written, if false they are expected to exist
+     * @param searchParameters the search parameters
+     * @param isCommandLine true if run from the command line, false if GUI
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the exception handler
+     * @param configurationCache the cache of the configuration files of the
+     * run, can be null
+     *
+     * @throws java.io.IOException exception thrown whenever an error occurred
+     * while getting the Java home
+     * @throws java.io.FileNotFoundException exception thrown whenever an error
+     * occurred while getting the java home
+     * @throws java.lang.ClassNotFoundException exception thrown whenever an
+     * error occurred while getting the SearchGUI path
+     */
+    public NovorProcessBuilder(File novorFolder, ArrayList<File> spectrumFiles, ArrayList<File> outputFiles, File parametersFolder, boolean createParameterFiles,
+            SearchParameters searchParameters, boolean isCommandLine, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler,
+            EngineConfigurationCache configurationCache)
+            throws IOException, FileNotFoundException, ClassNotFoundException {
+
         this.novorFolder = novorFolder;
-        this.spectrumFile = mgfFile;
+        this.spectrumFiles = spectrumFiles;
+        this.parametersFolder = parametersFolder;
         this.searchParameters = searchParameters;
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
@@ -115,30 +231,77 @@ public class NovorProcessBuilder extends SearchGUIProcessBuilder {
             }
         }
 
-        // add novor.jar
-        process_name_array.add("-jar");
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(novorFolder, EXECUTABLE_FILE_NAME)));
+        if (spectrumFiles.size() == 1) {
+
+            // add novor.jar
+            process_name_array.add("-jar");
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(new File(novorFolder, EXECUTABLE_FILE_NAME)));
+
+        } else {
+
+            // add novor.jar and the SearchGUI jar file with the worker
+            File searchGuiJar;
+            try {
+                searchGuiJar = new File(NovorWorker.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            } catch (URISyntaxException e) {
+                throw new IOException("SearchGUI jar file not found.");
+            }
+            process_name_array.add("-cp");
+            process_name_array.add(CommandLineUtils.getQuoteType()
+                    + novorExecutable.getAbsolutePath()
+                    + File.pathSeparator + searchGuiJar.getAbsolutePath()
+                    + CommandLineUtils.getQuoteType());
+            process_name_array.add(NovorWorker.class.getName());
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(novorExecutable));
+
+            // add the spectrum and output files
+            process_name_array.add("" + spectrumFiles.size());
+            for (int i = 0; i < spectrumFiles.size(); i++) {
+                process_name_array.add(CommandLineUtils.getCommandLineArgument(spectrumFiles.get(i)));
+                process_name_array.add(CommandLineUtils.getCommandLineArgument(outputFiles.get(i)));
+            }
+        }
+
+        // use the cached parameters files if any. Note that writing the parameters file sets the
+        // Novor PTM map of the search parameters, the files are thus written again for the second run.
+        File configurationFolder = null;
+        if (configurationCache != null) {
+            configurationFolder = configurationCache.getConfigurationFolder(Advocate.novor, searchParameters, null);
+        }
+        boolean writeParameterFiles = createParameterFiles;
+        if (configurationFolder != null) {
+            this.parametersFolder = configurationFolder;
+            writeParameterFiles = !configurationCache.isConfigured(configurationFolder);
+        }
 
         // create the parameters file
-        createParameterFile();
+        if (writeParameterFiles) {
+            createParameterFile();
+            if (configurationFolder != null) {
+                configurationCache.setConfigured(configurationFolder);
+            }
+        }
 
         // add the parameters
         process_name_array.add("-p");
-        process_name_array.add(novorFolder.getAbsolutePath() + File.separator + parameterFileName);
+        process_name_array.add(this.parametersFolder.getAbsolutePath() + File.separator + parameterFileName);
 
         // add the custom modifications
         process_name_array.add("-m");
-        process_name_array.add(novorFolder.getAbsolutePath() + File.separator + modsFileName);
+        process_name_array.add(this.parametersFolder.getAbsolutePath() + File.separator + modsFileName);
 
-        // add output folder
-        process_name_array.add("-o");
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(outputFile));
+        if (spectrumFiles.size() == 1) {
 
-        // force overwrite of output file
-        process_name_array.add("-f");
+            // add output folder
+            process_name_array.add("-o");
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(outputFiles.get(0)));
 
-        // add the spectrum file
-        process_name_array.add(CommandLineUtils.getCommandLineArgument(spectrumFile));
+            // force overwrite of output file
+            process_name_array.add("-f");
+
+            // add the spectrum file
+            process_name_array.add(CommandLineUtils.getCommandLineArgument(spectrumFiles.get(0)));
+        }
 
         process_name_array.trimToSize();
 
@@ -164,7 +327,7 @@ public class NovorProcessBuilder extends SearchGUIProcessBuilder {
         // get the Novoe specific parameters
         NovorParameters novorParameters = (NovorParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.novor.getIndex());
         try {
-            FileWriter parameterWriter = new FileWriter(novorFolder.getAbsolutePath() + File.separator + parameterFileName);
+            FileWriter parameterWriter = new FileWriter(parametersFolder.getAbsolutePath() + File.separator + parameterFileName);
             BufferedWriter bufferedParameterWriter = new BufferedWriter(parameterWriter);
 
             bufferedParameterWriter.write("# Search parameters" + System.getProperty("line.separator"));
@@ -199,7 +362,7 @@ public class NovorProcessBuilder extends SearchGUIProcessBuilder {
             bufferedParameterWriter.write(System.getProperty("line.separator"));
 
             // modifications
-            FileWriter modsWriter = new FileWriter(novorFolder.getAbsolutePath() + File.separator + modsFileName);
+            FileWriter modsWriter = new FileWriter(parametersFolder.getAbsolutePath() + File.separator + modsFileName);
             BufferedWriter bufferedModsWriter = new BufferedWriter(modsWriter);
 
             // create map for mapping back to the utilities ptms used
@@ -333,7 +496,69 @@ public class NovorProcessBuilder extends SearchGUIProcessBuilder {
      * @return the file name of the currently processed file
      */
     public String getCurrentlyProcessedFileName() {
-        return spectrumFile.getName();
+        return getFileNames(spectrumFiles);
+    }
+
+    /**
+     * Merges the result files of the shards of a spectrum file into the
+     * result file of the spectrum file. The header is taken from the result
+     * of the first shard, and the spectrum indexes of the results are shifted
+     * by the offsets of the shards.
+     *
+     * @param sharder the sharder which split the spectrum file
+     * @param shardResultFiles the result files of the shards, in the order
+     * of the shards
+     * @param resultFile the result file of the spectrum file
+     *
+     * @throws IOException thrown if an error occurred while reading or
+     * writing the result files
+     */
+    public static void mergeShardResults(MgfSharder sharder, ArrayList<File> shardResultFiles, File resultFile) throws IOException {
+
+        File mgfFile = sharder.getMgfFile();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(resultFile));
+
+        try {
+            for (int shard = 0; shard < shardResultFiles.size(); shard++) {
+
+                File shardFile = sharder.getShardFiles().get(shard);
+                int offset = sharder.getOffset(shard);
+                BufferedReader br = new BufferedReader(new FileReader(shardResultFiles.get(shard)));
+
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+
+                        if (line.startsWith("#")) {
+                            // the header of the first shard, referring to the spectrum file
+                            if (shard == 0) {
+                                line = line.replace(shardFile.getAbsolutePath(), mgfFile.getAbsolutePath());
+                                line = line.replace(shardFile.getName(), mgfFile.getName());
+                                bw.write(line);
+                                bw.newLine();
+                            }
+                        } else if (!line.trim().isEmpty()) {
+                            // shift the spectrum index
+                            int separatorIndex = line.indexOf(',');
+                            if (separatorIndex != -1 && offset > 0) {
+                                try {
+                                    int spectrumIndex = Integer.parseInt(line.substring(0, separatorIndex).trim());
+                                    line = (spectrumIndex + offset) + line.substring(separatorIndex);
+                                } catch (NumberFormatException e) {
+                                    // not a result line, copied as is
+                                }
+                            }
+                            bw.write(line);
+                            bw.newLine();
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+            }
+        } finally {
+            bw.close();
+        }
     }
 
     /**
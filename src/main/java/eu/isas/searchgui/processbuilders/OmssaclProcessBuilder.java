@@ -15,6 +15,7 @@ import com.compomics.util.experiment.identification.identification_parameters.Pt
 import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.preferences.DigestionPreferences.Specificity;
 import com.compomics.util.preferences.IdentificationParameters;
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.BufferedWriter;
 
 import java.io.File;
@@ -33,6 +34,10 @@ import java.util.HashMap;
  */
 public class OmssaclProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mgf};
     /**
      * The spectra file as a string.
      */
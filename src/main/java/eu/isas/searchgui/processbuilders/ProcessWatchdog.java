@@ -0,0 +1,263 @@
+package eu.isas.searchgui.processbuilders;
+
+import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.ProcessTree;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Monitors a process started by a process builder. The process is reported
+ * when it runs longer than the straggler time and stopped when it runs longer
+ * than the timeout. It is considered hung and stopped when it did not write
+ * anything and did not use any CPU during the silence timeout. Where the CPU
+ * usage is not available, i.e., outside Linux, the silence alone is used.
+ * When stopped, the whole process tree is terminated. The number of events since
+ * the start of the virtual machine are kept as metrics.
+ *
+ * @author Harald Barsnes
+ */
+public class ProcessWatchdog implements Runnable {
+
+    /**
+     * The maximal interval between two checks in milliseconds.
+     */
+    private static final long CHECK_INTERVAL = 10000;
+    /**
+     * The number of straggling processes.
+     */
+    private static final AtomicInteger nStragglers = new AtomicInteger();
+    /**
+     * The number of processes stopped because they timed out.
+     */
+    private static final AtomicInteger nTimeouts = new AtomicInteger();
+    /**
+     * The number of processes stopped because they hung.
+     */
+    private static final AtomicInteger nHangs = new AtomicInteger();
+    /**
+     * The number of processes started again after hanging.
+     */
+    private static final AtomicInteger nRetries = new AtomicInteger();
+    /**
+     * The process monitored.
+     */
+    private final Process process;
+    /**
+     * The process builder of the process.
+     */
+    private final SearchGUIProcessBuilder processBuilder;
+    /**
+     * The waiting handler.
+     */
+    private final WaitingHandler waitingHandler;
+    /**
+     * The duration after which the process is reported as straggling in
+     * milliseconds, 0 if not monitored.
+     */
+    private final long stragglerTime;
+    /**
+     * The duration after which the process is stopped in milliseconds, 0 if
+     * not monitored.
+     */
+    private final long timeout;
+    /**
+     * The duration without output and CPU usage after which the process is
+     * considered hung in milliseconds, 0 if not monitored.
+     */
+    private final long silenceTimeout;
+    /**
+     * The time the process started.
+     */
+    private final long startTime = System.currentTimeMillis();
+    /**
+     * The time of the last output of the process.
+     */
+    private volatile long lastOutputTime = startTime;
+    /**
+     * Indicates whether the process was stopped because it timed out.
+     */
+    private volatile boolean timedOut = false;
+    /**
+     * Indicates whether the process was stopped because it hung.
+     */
+    private volatile boolean hung = false;
+    /**
+     * The monitoring thread.
+     */
+    private Thread thread;
+
+    /**
+     * Constructor.
+     *
+     * @param process the process to monitor
+     * @param processBuilder the process builder of the process
+     * @param waitingHandler the waiting handler
+     * @param stragglerTime the duration after which the process is reported
+     * as straggling in milliseconds, 0 if not monitored
+     * @param timeout the duration after which the process is stopped in
+     * milliseconds, 0 if not monitored
+     * @param silenceTimeout the duration without output and CPU usage after
+     * which the process is considered hung in milliseconds, 0 if not
+     * monitored
+     */
+    public ProcessWatchdog(Process process, SearchGUIProcessBuilder processBuilder, WaitingHandler waitingHandler,
+            long stragglerTime, long timeout, long silenceTimeout) {
+        this.process = process;
+        this.processBuilder = processBuilder;
+        this.waitingHandler = waitingHandler;
+        this.stragglerTime = stragglerTime;
+        this.timeout = timeout;
+        this.silenceTimeout = silenceTimeout;
+    }
+
+    /**
+     * Starts monitoring the process if any monitoring is enabled.
+     */
+    public void start() {
+        if (stragglerTime > 0 || timeout > 0 || silenceTimeout > 0) {
+            thread = new Thread(this, processBuilder.getType() + " watchdog");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops monitoring the process.
+     */
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Indicates that the process wrote some output.
+     */
+    public void outputReceived() {
+        lastOutputTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Indicates whether the process was stopped because it timed out.
+     *
+     * @return true if the process was stopped because it timed out
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Indicates whether the process was stopped because it hung.
+     *
+     * @return true if the process was stopped because it hung
+     */
+    public boolean isHung() {
+        return hung;
+    }
+
+    @Override
+    public void run() {
+
+        int pid = ProcessTree.getPid(process);
+        long lastCpuTime = -1;
+        long lastCpuChangeTime = startTime;
+        boolean stragglerReported = false;
+
+        long checkInterval = CHECK_INTERVAL;
+        if (silenceTimeout > 0) {
+            checkInterval = Math.min(checkInterval, Math.max(100, silenceTimeout / 4));
+        }
+
+        try {
+            while (true) {
+
+                Thread.sleep(checkInterval);
+
+                long now = System.currentTimeMillis();
+                long runningTime = now - startTime;
+
+                if (stragglerTime > 0 && !stragglerReported && runningTime >= stragglerTime) {
+                    stragglerReported = true;
+                    nStragglers.incrementAndGet();
+                    waitingHandler.appendReport(processBuilder.getType() + " is taking longer than expected for "
+                            + processBuilder.getCurrentlyProcessedFileName() + ".", true, true);
+                }
+
+                if (timeout > 0 && runningTime >= timeout) {
+                    timedOut = true;
+                    nTimeouts.incrementAndGet();
+                    waitingHandler.appendReport(processBuilder.getType() + " did not finish "
+                            + processBuilder.getCurrentlyProcessedFileName() + " in time, stopping the process.", true, true);
+                    ProcessTree.terminateTree(process, SearchGUIProcessBuilder.TERMINATION_GRACE_PERIOD);
+                    return;
+                }
+
+                if (silenceTimeout > 0) {
+
+                    long cpuTime = ProcessTree.getCpuTime(pid);
+                    if (cpuTime != lastCpuTime) {
+                        lastCpuTime = cpuTime;
+                        lastCpuChangeTime = now;
+                    }
+
+                    if (now - lastOutputTime >= silenceTimeout && (cpuTime == -1 || now - lastCpuChangeTime >= silenceTimeout)) {
+                        hung = true;
+                        nHangs.incrementAndGet();
+                        waitingHandler.appendReport(processBuilder.getType() + " stopped responding while processing "
+                                + processBuilder.getCurrentlyProcessedFileName() + ", stopping the process.", true, true);
+                        ProcessTree.terminateTree(process, SearchGUIProcessBuilder.TERMINATION_GRACE_PERIOD);
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // process finished
+        }
+    }
+
+    /**
+     * Increases the number of processes started again after hanging.
+     */
+    static void retryStarted() {
+        nRetries.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of straggling processes since the start of the
+     * virtual machine.
+     *
+     * @return the number of straggling processes
+     */
+    public static int getNStragglers() {
+        return nStragglers.get();
+    }
+
+    /**
+     * Returns the number of processes stopped because they timed out since
+     * the start of the virtual machine.
+     *
+     * @return the number of processes stopped because they timed out
+     */
+    public static int getNTimeouts() {
+        return nTimeouts.get();
+    }
+
+    /**
+     * Returns the number of processes stopped because they hung since the
+     * start of the virtual machine.
+     *
+     * @return the number of processes stopped because they hung
+     */
+    public static int getNHangs() {
+        return nHangs.get();
+    }
+
+    /**
+     * Returns the number of processes started again after hanging since the
+     * start of the virtual machine.
+     *
+     * @return the number of processes started again
+     */
+    public static int getNRetries() {
+        return nRetries.get();
+    }
+}
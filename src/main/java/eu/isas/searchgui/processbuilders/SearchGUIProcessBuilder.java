@@ -3,11 +3,15 @@ package eu.isas.searchgui.processbuilders;
 import com.compomics.util.exceptions.ExceptionHandler;
 import com.compomics.util.waiting.Duration;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.ProcessCgroup;
+import eu.isas.searchgui.utilities.ProcessTree;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -20,6 +24,11 @@ import java.util.Scanner;
  */
 public abstract class SearchGUIProcessBuilder implements Runnable {
 
+    /**
+     * The time given to a process to terminate before it is killed in
+     * milliseconds.
+     */
+    static final long TERMINATION_GRACE_PERIOD = 5000;
     /**
      * The process to be executed as array.
      */
@@ -40,6 +49,56 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
      * The exception handler to manage exception.
      */
     protected ExceptionHandler exceptionHandler;
+    /**
+     * The duration after which the process is reported as straggling in
+     * milliseconds, 0 if not monitored.
+     */
+    private long stragglerTime = 0;
+    /**
+     * The duration after which the process is considered hung and stopped in
+     * milliseconds, 0 if not monitored.
+     */
+    private long timeout = 0;
+    /**
+     * The duration without output and CPU usage after which the process is
+     * considered hung in milliseconds, 0 if not monitored.
+     */
+    private long silenceTimeout = 0;
+    /**
+     * The number of times a hung process is started again.
+     */
+    private int nRetries = 0;
+    /**
+     * The time to wait before starting a hung process again in milliseconds,
+     * doubled at every retry.
+     */
+    private long retryBackoff = 0;
+    /**
+     * The watchdog of the last run of the process.
+     */
+    private ProcessWatchdog watchdog = null;
+    /**
+     * Indicates whether the process is confined in a cgroup where available.
+     */
+    private boolean confined = false;
+    /**
+     * The number of CPUs the confined process may use in total, 0 for no
+     * limit.
+     */
+    private double cgroupCpuLimit = 0;
+    /**
+     * The CPUs the confined process may use, null for all.
+     */
+    private String cgroupCpus = null;
+    /**
+     * The maximal memory of the confined process in bytes, 0 for no limit.
+     */
+    private long cgroupMemoryLimit = 0;
+    /**
+     * The resource usage where the usage of the confined process is added,
+     * null if not accounted.
+     */
+    private ProcessCgroup.Usage cgroupUsage = null;
 
     /**
      * Empty constructor.
@@ -61,25 +120,79 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
     /**
      * Starts the process of a process builder, gets the input stream from the
      * process and shows it in a JEditorPane supporting HTML. Does not close
-     * until the process is completed.
+     * until the process is completed. A process stopped by the watchdog
+     * because it hung is started again after the retry backoff, up to the
+     * given number of retries.
      *
      * @throws java.io.IOException Exception thrown whenever an error occurred
      * while reading the progress stream
      */
     public void startProcess() throws IOException {
 
+        for (int attempt = 0;; attempt++) {
+
+            runProcess();
+
+            if (!isHung() || attempt >= nRetries || waitingHandler.isRunCanceled()) {
+                return;
+            }
+
+            long backoff = retryBackoff << attempt;
+            waitingHandler.appendReport("Starting " + getType() + " again for " + getCurrentlyProcessedFileName() + " in " + backoff / 1000
+                    + " s (retry " + (attempt + 1) + "/" + nRetries + ").", true, true);
+            ProcessWatchdog.retryStarted();
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs the process once under the watchdog.
+     *
+     * @throws java.io.IOException Exception thrown whenever an error occurred
+     * while reading the progress stream
+     */
+    private void runProcess() throws IOException {
+
         if (waitingHandler == null || !waitingHandler.isRunCanceled()) {
             Duration processDuration = new Duration();
             processDuration.start();
 
+            // confine the process and its descendants in a cgroup if requested
+            ProcessCgroup cgroup = null;
+            List<String> command = pb.command();
+            if (confined) {
+                try {
+                    cgroup = ProcessCgroup.create(getType(), cgroupCpuLimit, cgroupCpus, cgroupMemoryLimit);
+                } catch (IOException e) {
+                    waitingHandler.appendReport("Could not confine " + getType() + ", running without limits: " + e.getMessage(), true, true);
+                }
+                if (cgroup != null) {
+                    pb.command(cgroup.wrapCommand(command));
+                }
+            }
+
             p = null;
             try {
                 p = pb.start();
             } catch (IOException ioe) {
                 System.out.println(ioe.getMessage());
                 ioe.printStackTrace();
+            } finally {
+                pb.command(command);
+            }
+
+            if (cgroup != null) {
+                startReaper(cgroup);
             }
 
+            watchdog = new ProcessWatchdog(p, this, waitingHandler, stragglerTime, timeout, silenceTimeout);
+            watchdog.start();
+
             // get inputstream from process
             InputStream inputStream = p.getInputStream();
 
@@ -95,6 +208,7 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
                     // get input from scanner, send to std out and text box
                     while (scan.hasNext() && !waitingHandler.isRunCanceled()) {
                         String temp = scan.next();
+                        watchdog.outputReceived();
                         if (!lastString.contains(temp)) {
                             waitingHandler.appendReport(temp + " ", false, temp.lastIndexOf("%") == -1 || temp.lastIndexOf("100%") != -1);
                         }
@@ -109,6 +223,8 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
                     // get input from stream
                     while ((line = bufferedReader.readLine()) != null) {
 
+                        watchdog.outputReceived();
+
                         if (line.startsWith("processing file:") || line.startsWith("writing output file:")) {
                             waitingHandler.appendReport(line, false, true);
 
@@ -146,6 +262,7 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
                     // get input from stream and check for errors
                     while ((line = bufferedReader.readLine()) != null) {
 
+                        watchdog.outputReceived();
                         line += System.getProperty("line.separator");
 
                         if (line.lastIndexOf("<CompomicsError>") != -1) {
@@ -163,11 +280,27 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
                 bufferedReader.close();
             } finally {
 
+                // wait for process to terminate, processes hanging after closing their output are stopped by the watchdog
+                if (!waitingHandler.isRunCanceled()) {
+                    try {
+                        p.waitFor();
+                    } catch (InterruptedException e) {
+                        endProcess();
+                    }
+                }
+
+                watchdog.stop();
+
                 // check if the user has cancelled the process or not
                 if (waitingHandler.isRunCanceled()) {
-                    if (p != null) {
-                        p.destroy();
-                    }
+                    endProcess();
+                } else if (watchdog.isTimedOut() || watchdog.isHung()) {
+
+                    processDuration.end();
+                    waitingHandler.appendReportEndLine();
+                    waitingHandler.appendReport(getType() + " stopped for " + getCurrentlyProcessedFileName() + " after " + processDuration.toString()
+                            + (watchdog.isTimedOut() ? ": no result within the time limit." : ": the process stopped responding."), true, true);
+                    waitingHandler.appendReportEndLine();
                 } else {
 
                     processDuration.end();
@@ -175,26 +308,161 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
                     waitingHandler.appendReportEndLine();
                     waitingHandler.appendReport(getType() + " finished for " + getCurrentlyProcessedFileName() + " (" + processDuration.toString() + ").", true, true);
                     waitingHandler.appendReportEndLine();
+                }
 
-                    // wait for process to terminate before exiting
-                    try {
-                        p.waitFor();
-                    } catch (InterruptedException e) {
-                        if (p != null) {
-                            p.destroy();
-                        }
-                    }
+                if (cgroup != null) {
+                    releaseCgroup(cgroup);
                 }
             }
         }
     }
 
     /**
-     * Ends the process.
+     * Sets the durations after which the process is reported as straggling
+     * and after which it is considered hung and stopped, in milliseconds, 0
+     * for no limit.
+     *
+     * @param stragglerTime the duration after which the process is reported
+     * as straggling
+     * @param timeout the duration after which the process is stopped
+     */
+    public void setTimeouts(long stragglerTime, long timeout) {
+        this.stragglerTime = stragglerTime;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets how hung processes are detected and started again.
+     *
+     * @param silenceTimeout the duration without output and CPU usage after
+     * which the process is considered hung in milliseconds, 0 if not
+     * monitored
+     * @param nRetries the number of times a hung process is started again
+     * @param retryBackoff the time to wait before starting a hung process
+     * again in milliseconds, doubled at every retry
+     */
+    public void setHangDetection(long silenceTimeout, int nRetries, long retryBackoff) {
+        this.silenceTimeout = silenceTimeout;
+        this.nRetries = nRetries;
+        this.retryBackoff = retryBackoff;
+    }
+
+    /**
+     * Confines the process and its descendants in a cgroup where available,
+     * see ProcessCgroup. Limits of controllers which are not available are
+     * ignored.
+     *
+     * @param cpuLimit the number of CPUs the process may use in total, 0 for
+     * no limit
+     * @param cpus the CPUs the process may use, e.g., "0-3,8", null for all
+     * @param memoryLimit the maximal memory of the process in bytes, 0 for no
+     * limit
+     * @param usage the resource usage where the usage of the process is
+     * added, null if not accounted
+     */
+    public void setConfinement(double cpuLimit, String cpus, long memoryLimit, ProcessCgroup.Usage usage) {
+        this.confined = true;
+        this.cgroupCpuLimit = cpuLimit;
+        this.cgroupCpus = cpus;
+        this.cgroupMemoryLimit = memoryLimit;
+        this.cgroupUsage = usage;
+    }
+
+    /**
+     * Starts a thread stopping the processes left in the given cgroup when
+     * the process terminates, so that descendants which left the process
+     * tree do not keep the output stream open.
+     *
+     * @param cgroup the cgroup of the process
+     */
+    private void startReaper(final ProcessCgroup cgroup) {
+
+        final Process process = p;
+
+        Thread reaper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    process.waitFor();
+                    cgroup.kill();
+                } catch (InterruptedException e) {
+                    // the cgroup is released by the process builder anyway
+                }
+            }
+        }, getType() + " cgroup reaper");
+
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    /**
+     * Accounts for the resources used in the given cgroup, stops the
+     * processes left in it and deletes it.
+     *
+     * @param cgroup the cgroup
+     */
+    private void releaseCgroup(ProcessCgroup cgroup) {
+
+        if (cgroupUsage != null) {
+            cgroupUsage.add(cgroup);
+        }
+
+        if (cgroup.isOutOfMemory()) {
+            waitingHandler.appendReport(getType() + " exceeded the memory limit of " + cgroupMemoryLimit / 1048576 + " MB while processing "
+                    + getCurrentlyProcessedFileName() + ".", true, true);
+        }
+
+        if (!cgroup.delete()) {
+            waitingHandler.appendReport("Some " + getType() + " processes could not be stopped.", true, true);
+        }
+    }
+
+    /**
+     * Indicates whether the last run of the process was stopped because it
+     * timed out.
+     *
+     * @return true if the last run of the process timed out
+     */
+    public boolean isTimedOut() {
+        return watchdog != null && watchdog.isTimedOut();
+    }
+
+    /**
+     * Indicates whether the last run of the process was stopped because it
+     * hung.
+     *
+     * @return true if the last run of the process hung
+     */
+    public boolean isHung() {
+        return watchdog != null && watchdog.isHung();
+    }
+
+    /**
+     * Returns the exit value of the last run of the process, -1 if the
+     * process did not start or is not terminated.
+     *
+     * @return the exit value of the last run of the process
+     */
+    public int getExitValue() {
+        if (p == null) {
+            return -1;
+        }
+        try {
+            return p.exitValue();
+        } catch (IllegalThreadStateException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Ends the process together with the processes it started, e.g., the
+     * engine started by a wrapper script. The processes are first asked to
+     * terminate and killed if still running after a grace period. Returns
+     * when the processes are gone.
      */
     public void endProcess() {
-        if (p != null) {
-            p.destroy();
+        if (p != null && !ProcessTree.terminateTree(p, TERMINATION_GRACE_PERIOD)) {
+            waitingHandler.appendReport("Some " + getType() + " processes could not be stopped.", true, true);
         }
     }
 
@@ -211,4 +479,23 @@ public abstract class SearchGUIProcessBuilder implements Runnable {
      * @return the file name of the currently processed file
      */
     public abstract String getCurrentlyProcessedFileName();
+
+    /**
+     * Returns the names of the given files as a comma separated list, for
+     * the processes searching several spectrum files.
+     *
+     * @param files the files
+     *
+     * @return the names of the files
+     */
+    static String getFileNames(List<File> files) {
+        StringBuilder fileNames = new StringBuilder();
+        for (File file : files) {
+            if (fileNames.length() > 0) {
+                fileNames.append(", ");
+            }
+            fileNames.append(file.getName());
+        }
+        return fileNames.toString();
+    }
 }
@@ -11,7 +11,9 @@ import com.compomics.util.experiment.identification.identification_parameters.to
 import com.compomics.util.experiment.identification.identification_parameters.PtmSettings;
 import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.EngineConfigurationCache;
 
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -28,6 +30,10 @@ import java.util.HashSet;
  */
 public class TandemProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mgf};
     /**
      * The input XML file for X!Tandem.
      */
@@ -52,6 +58,10 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
      * The xTandem file.
      */
     private File xTandemFile;
+    /**
+     * The folder where to write the parameter and taxonomy files.
+     */
+    private File configurationFolder;
     /**
      * The input file.
      */
@@ -180,6 +190,27 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
      */
     public TandemProcessBuilder(File xTandem_directory, String mgfFile, String outputPath,
             SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) {
+        this(xTandem_directory, mgfFile, outputPath, searchParameters, waitingHandler, exceptionHandler, nThreads, null);
+    }
+
+    /**
+     * Constructor. The parameter and taxonomy files are written once per run
+     * in the given configuration cache and used by all the searches with the
+     * same search parameters.
+     *
+     * @param xTandem_directory directory location of tandem.exe
+     * @param mgfFile name of the file containing the spectra
+     * @param outputPath path where to output the results
+     * @param searchParameters the search parameters
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads to use
+     * @param configurationCache the cache of the configuration files of the
+     * run, null to write the files for every search
+     */
+    public TandemProcessBuilder(File xTandem_directory, String mgfFile, String outputPath,
+            SearchParameters searchParameters, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads,
+            EngineConfigurationCache configurationCache) {
 
         xtandemParameters = (XtandemParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.xtandem.getIndex());
 
@@ -322,9 +353,24 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
         selectedIons.addAll(searchParameters.getForwardIons());
         selectedIons.addAll(searchParameters.getRewindIons());
 
+        // the parameter file contains the number of threads, the output path is overridden by the input file
+        if (configurationCache != null) {
+            configurationFolder = configurationCache.getConfigurationFolder(Advocate.xtandem, searchParameters, Integer.toString(nThreads));
+        }
+        if (configurationFolder == null) {
+            configurationFolder = xTandemFile;
+        }
+        taxonomyFile = new File(configurationFolder, TAXONOMY_FILE);
+        parameterFile = new File(configurationFolder, PARAMETER_FILE);
+
+        if (configurationCache == null || !configurationCache.isConfigured(configurationFolder)) {
+            createTaxonomyFile();
+            createParameterFile();
+            if (configurationCache != null) {
+                configurationCache.setConfigured(configurationFolder);
+            }
+        }
         createInputFile();
-        createTaxonomyFile();
-        createParameterFile();
 
         // make sure that the tandem file is executable
         File xTandem = new File(xTandemFile.getAbsolutePath() + File.separator + EXECUTABLE_FILE_NAME);
@@ -363,8 +409,8 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
             BufferedWriter bw = new BufferedWriter(new FileWriter(inputFile));
             bw.write("<?xml version=\"1.0\"?>" + System.getProperty("line.separator")
                     + "<bioml>" + System.getProperty("line.separator")
-                    + "\t<note type=\"input\" label=\"list path, default parameters\">" + PARAMETER_FILE + "</note>" + System.getProperty("line.separator")
-                    + "\t<note type=\"input\" label=\"list path, taxonomy information\">" + TAXONOMY_FILE + "</note>" + System.getProperty("line.separator")
+                    + "\t<note type=\"input\" label=\"list path, default parameters\">" + parameterFile.getAbsolutePath() + "</note>" + System.getProperty("line.separator")
+                    + "\t<note type=\"input\" label=\"list path, taxonomy information\">" + taxonomyFile.getAbsolutePath() + "</note>" + System.getProperty("line.separator")
                     + "\t<note type=\"input\" label=\"protein, taxon\">all</note>" + System.getProperty("line.separator")
                     + "\t<note type=\"input\" label=\"spectrum, path\">" + spectrumFile + "</note>" + System.getProperty("line.separator")
                     + "\t<note type=\"input\" label=\"output, path\">" + outputPath + "</note>" + System.getProperty("line.separator")
@@ -381,7 +427,6 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
      * Creates the taxonomy file.
      */
     private void createTaxonomyFile() throws IllegalArgumentException {
-        taxonomyFile = new File(xTandemFile, TAXONOMY_FILE);
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(taxonomyFile));
             bw.write(
@@ -447,8 +492,6 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
             motifs += ptm.getRoundedMass() + "@" + ptm.getPattern().getPrositeFormat(); //@TODO: check how multiple modifications at the same amino acid are supported in the refinement search
         }
 
-        parameterFile = new File(xTandemFile, PARAMETER_FILE);
-
         try {
             BufferedWriter bw = new BufferedWriter(new FileWriter(parameterFile));
             bw.write(
@@ -459,7 +502,7 @@ public class TandemProcessBuilder extends SearchGUIProcessBuilder {
                     + "\t<note type=\"input\" label=\"list path, default parameters\">default_input.xml</note>" + System.getProperty("line.separator")
                     + "\t\t<note>This value is ignored when it is present in the default parameter" + System.getProperty("line.separator")
                     + "\t\tlist path.</note>" + System.getProperty("line.separator")
-                    + "\t<note type=\"input\" label=\"list path, taxonomy information\">" + TAXONOMY_FILE + "</note>" + System.getProperty("line.separator")
+                    + "\t<note type=\"input\" label=\"list path, taxonomy information\">" + taxonomyFile.getAbsolutePath() + "</note>" + System.getProperty("line.separator")
                     + System.getProperty("line.separator")
                     + "<note>spectrum parameters</note>" + System.getProperty("line.separator")
                     + "\t<note type=\"input\" label=\"spectrum, fragment monoisotopic mass error\">" + fragmentMassError + "</note>" + System.getProperty("line.separator")
@@ -10,7 +10,12 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.identification_parameters.tool_specific.TideParameters;
 import com.compomics.util.preferences.DigestionPreferences;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.DatabaseLock;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -25,6 +30,15 @@ public class TideIndexProcessBuilder extends SearchGUIProcessBuilder {
      * The name of the Tide executable.
      */
     public static final String EXECUTABLE_FILE_NAME = "crux";
+    /**
+     * The name of the file, stored in the index folder, where the signature
+     * of the index is saved.
+     */
+    public static final String INDEX_SIGNATURE_FILE_NAME = "searchgui_index_signature.txt";
+    /**
+     * The Tide folder.
+     */
+    private File tideFolder;
     /**
      * The FASTA file.
      */
@@ -58,6 +72,7 @@ public class TideIndexProcessBuilder extends SearchGUIProcessBuilder {
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
         this.searchParameters = searchParameters;
+        this.tideFolder = tideFolder;
         tideParameters = (TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex());
         this.fastaFile = searchParameters.getFastaFile();
 
@@ -408,6 +423,112 @@ public class TideIndexProcessBuilder extends SearchGUIProcessBuilder {
         return terminalModifications;
     }
 
+    /**
+     * Returns the folder where the index is written.
+     *
+     * @return the folder where the index is written
+     */
+    public File getIndexFolder() {
+        File indexFolder = new File(tideParameters.getFastIndexFolderName());
+        if (!indexFolder.isAbsolute()) {
+            indexFolder = new File(tideFolder, tideParameters.getFastIndexFolderName());
+        }
+        return indexFolder;
+    }
+
+    /**
+     * Returns the file used to lock the index when it is created or used by
+     * multiple processes.
+     *
+     * @return the file used to lock the index
+     */
+    public File getIndexLockFile() {
+        return DatabaseLock.getLockFile(getIndexFolder());
+    }
+
+    /**
+     * Returns the signature of the index, i.e., the indexing arguments and
+     * the FASTA file size and modification date.
+     *
+     * @return the signature of the index
+     */
+    public String getIndexSignature() {
+
+        StringBuilder signature = new StringBuilder();
+        signature.append(fastaFile.getAbsolutePath()).append(System.getProperty("line.separator"));
+        signature.append(fastaFile.length()).append(System.getProperty("line.separator"));
+        signature.append(fastaFile.lastModified()).append(System.getProperty("line.separator"));
+
+        // skip the executable as the same index can be used by different installations
+        for (int i = 1; i < process_name_array.size(); i++) {
+            signature.append(process_name_array.get(i)).append(System.getProperty("line.separator"));
+        }
+
+        return signature.toString();
+    }
+
+    /**
+     * Indicates whether the index folder contains an index created with the
+     * same FASTA file and indexing arguments as this process.
+     *
+     * @return true if the existing index can be reused
+     */
+    public boolean isIndexUpToDate() {
+
+        File signatureFile = new File(getIndexFolder(), INDEX_SIGNATURE_FILE_NAME);
+
+        if (!signatureFile.exists()) {
+            return false;
+        }
+
+        StringBuilder savedSignature = new StringBuilder();
+
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(signatureFile));
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    savedSignature.append(line).append(System.getProperty("line.separator"));
+                }
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return savedSignature.toString().equals(getIndexSignature());
+    }
+
+    /**
+     * Saves the signature of the index in the index folder. To be called when
+     * the indexing has completed.
+     *
+     * @throws IOException thrown if an error occurred while writing the
+     * signature file
+     */
+    public void saveIndexSignature() throws IOException {
+        File signatureFile = new File(getIndexFolder(), INDEX_SIGNATURE_FILE_NAME);
+        BufferedWriter bw = new BufferedWriter(new FileWriter(signatureFile));
+        try {
+            bw.write(getIndexSignature());
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Deletes the signature of the index, to be called before the index is
+     * rewritten.
+     */
+    public void deleteIndexSignature() {
+        File signatureFile = new File(getIndexFolder(), INDEX_SIGNATURE_FILE_NAME);
+        if (signatureFile.exists()) {
+            signatureFile.delete();
+        }
+    }
+
     @Override
     public String getType() {
         return "Tide Indexing";
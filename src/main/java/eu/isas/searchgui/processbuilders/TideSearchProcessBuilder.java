@@ -6,8 +6,11 @@ import com.compomics.util.experiment.identification.Advocate;
 import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
 import com.compomics.util.experiment.identification.identification_parameters.tool_specific.TideParameters;
 import com.compomics.util.waiting.WaitingHandler;
+import eu.isas.searchgui.utilities.SpectrumFormat;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * ProcessBuilder for the Tide search command.
@@ -16,14 +19,27 @@ import java.io.IOException;
  */
 public class TideSearchProcessBuilder extends SearchGUIProcessBuilder {
 
+    /**
+     * The spectrum formats read by the search engine, in order of preference.
+     */
+    public static final SpectrumFormat[] INPUT_FORMATS = {SpectrumFormat.mzML, SpectrumFormat.ms2};
+    /**
+     * Indicates whether the search engine reads its spectrum files once and
+     * sequentially, so that they can be streamed through a named pipe.
+     */
+    public static final boolean SEQUENTIAL_INPUT = true;
     /**
      * The name of the Tide executable.
      */
     public static final String EXECUTABLE_FILE_NAME = "crux";
     /**
-     * The spectrum file.
+     * The spectrum files.
      */
-    private File spectrumFile;
+    private ArrayList<File> spectrumFiles;
+    /**
+     * The root of the result file names.
+     */
+    private String fileRoot;
     /**
      * The advanced Tide parameters.
      */
@@ -43,11 +59,37 @@ public class TideSearchProcessBuilder extends SearchGUIProcessBuilder {
      * parameter file
      */
     public TideSearchProcessBuilder(File tideFolder, SearchParameters searchParameters, File spectrumFile, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) throws IOException {
+        this(tideFolder, searchParameters, new ArrayList<File>(Arrays.asList(spectrumFile)), waitingHandler, exceptionHandler, nThreads);
+    }
+
+    /**
+     * Constructor for searching several spectrum files in one process, thus
+     * loading the index only once. Tide writes the results of all spectrum
+     * files in the same result file, named after the first spectrum file, the
+     * spectrum file of every match being given in the file column of the text
+     * output.
+     *
+     * @param tideFolder the Tide folder
+     * @param searchParameters the search parameters
+     * @param spectrumFiles the spectrum files
+     * @param waitingHandler the waiting handler
+     * @param exceptionHandler the handler of exceptions
+     * @param nThreads the number of threads to use
+     *
+     * @throws IOException thrown of there are problems creating the Tide
+     * parameter file
+     */
+    public TideSearchProcessBuilder(File tideFolder, SearchParameters searchParameters, ArrayList<File> spectrumFiles, WaitingHandler waitingHandler, ExceptionHandler exceptionHandler, int nThreads) throws IOException {
 
         this.waitingHandler = waitingHandler;
         this.exceptionHandler = exceptionHandler;
         tideParameters = (TideParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.tide.getIndex());
-        this.spectrumFile = spectrumFile;
+        this.spectrumFiles = spectrumFiles;
+
+        fileRoot = Util.removeExtension(spectrumFiles.get(0).getName());
+        if (spectrumFiles.size() > 1) {
+            fileRoot += "_batch";
+        }
 
         // make sure that the comet file is executable
         File tide = new File(tideFolder.getAbsolutePath() + File.separator + EXECUTABLE_FILE_NAME);
@@ -65,8 +107,10 @@ public class TideSearchProcessBuilder extends SearchGUIProcessBuilder {
             process_name_array.add("F");
         }
 
-        // link to the spectrum file
-        process_name_array.add(spectrumFile.getAbsolutePath());
+        // link to the spectrum files
+        for (File spectrumFile : spectrumFiles) {
+            process_name_array.add(spectrumFile.getAbsolutePath());
+        }
 
         // link to the index
         process_name_array.add(tideParameters.getFastIndexFolderName());
@@ -91,7 +135,13 @@ public class TideSearchProcessBuilder extends SearchGUIProcessBuilder {
 
         // add the mgf file to the result file name
         process_name_array.add("--fileroot");
-        process_name_array.add(Util.removeExtension(spectrumFile.getName()));
+        process_name_array.add(fileRoot);
+
+        // add the spectrum file of every match to the text output
+        if (spectrumFiles.size() > 1) {
+            process_name_array.add("--file-column");
+            process_name_array.add("T");
+        }
 
         // calculate p-values
         process_name_array.add("--exact-p-value");
@@ -283,6 +333,16 @@ public class TideSearchProcessBuilder extends SearchGUIProcessBuilder {
 
     @Override
     public String getCurrentlyProcessedFileName() {
-        return spectrumFile.getName();
+        return getFileNames(spectrumFiles);
+    }
+
+    /**
+     * Returns the root of the result file names, i.e., the name of the spectrum
+     * file without extension when searching a single spectrum file.
+     *
+     * @return the root of the result file names
+     */
+    public String getFileRoot() {
+        return fileRoot;
     }
 }
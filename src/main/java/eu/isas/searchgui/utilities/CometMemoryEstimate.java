@@ -0,0 +1,204 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Estimates the memory used by a Comet search to choose its spectrum batch
+ * size, i.e., the number of spectra searched at a time. Comet keeps the
+ * database in memory and the preprocessed fast xcorr arrays of every spectrum
+ * of the current batch. The batch size is the largest number of spectra for
+ * which the estimate fits in the memory budget, all spectra if possible.
+ *
+ * @author Harald Barsnes
+ */
+public class CometMemoryEstimate {
+
+    /**
+     * The memory used per byte of FASTA file: the sequences and headers as
+     * well as the peptides digested on the fly.
+     */
+    private static final double FASTA_MEMORY_FACTOR = 4;
+    /**
+     * The memory used per byte of peptide index, loaded entirely.
+     */
+    private static final double INDEX_MEMORY_FACTOR = 1.5;
+    /**
+     * The memory used per fragment bin of a spectrum: the fast xcorr arrays
+     * with and without neutral losses as floats. This is an upper bound as
+     * Comet stores sparse arrays for small bins.
+     */
+    private static final int BYTES_PER_BIN = 8;
+    /**
+     * The mass added to the maximal precursor mass to get the number of
+     * fragment bins.
+     */
+    private static final double BIN_MASS_MARGIN = 100;
+    /**
+     * The share of the memory budget used by the estimate, the rest being
+     * left for the process itself and the estimation errors.
+     */
+    private static final double BUDGET_SHARE = 0.8;
+    /**
+     * The minimal batch size, smaller batches making the repeated database
+     * scans dominate the search time.
+     */
+    public static final int MIN_BATCH_SIZE = 500;
+    /**
+     * The number of spectra to search.
+     */
+    private final int nSpectra;
+    /**
+     * The estimated memory used by the database in bytes.
+     */
+    private final long databaseMemory;
+    /**
+     * The estimated memory used per spectrum in bytes.
+     */
+    private final long spectrumMemory;
+    /**
+     * The memory budget in bytes.
+     */
+    private final long memoryBudget;
+    /**
+     * The batch size, 0 for all spectra at once.
+     */
+    private final int batchSize;
+
+    /**
+     * Constructor.
+     *
+     * @param nSpectra the number of spectra to search
+     * @param databaseFile the database given to Comet, the FASTA file or its
+     * peptide index
+     * @param indexed indicates whether the database is a peptide index
+     * @param fragmentBinTolerance the fragment bin tolerance in Dalton
+     * @param maxPrecursorMass the maximal precursor mass in Dalton
+     * @param memoryBudget the memory budget in bytes
+     */
+    public CometMemoryEstimate(int nSpectra, File databaseFile, boolean indexed, double fragmentBinTolerance,
+            double maxPrecursorMass, long memoryBudget) {
+
+        this.nSpectra = nSpectra;
+        this.memoryBudget = memoryBudget;
+
+        double databaseFactor = indexed ? INDEX_MEMORY_FACTOR : FASTA_MEMORY_FACTOR;
+        databaseMemory = (long) (databaseFactor * databaseFile.length());
+
+        long nBins = (long) ((maxPrecursorMass + BIN_MASS_MARGIN) / fragmentBinTolerance);
+        spectrumMemory = Math.max(1, nBins * BYTES_PER_BIN);
+
+        long spectraMemory = (long) (BUDGET_SHARE * memoryBudget) - databaseMemory;
+        long maxSpectra = Math.max(0, spectraMemory / spectrumMemory);
+
+        if (maxSpectra >= nSpectra) {
+            batchSize = 0;
+        } else {
+            batchSize = (int) Math.max(MIN_BATCH_SIZE, maxSpectra);
+        }
+    }
+
+    /**
+     * Returns the spectrum batch size, 0 for all spectra at once.
+     *
+     * @return the spectrum batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Indicates whether the estimated memory exceeds the budget even with
+     * the minimal batch size.
+     *
+     * @return true if the estimated memory exceeds the budget
+     */
+    public boolean isOverBudget() {
+        long nBatchSpectra = batchSize == 0 ? nSpectra : batchSize;
+        return databaseMemory + nBatchSpectra * spectrumMemory > memoryBudget;
+    }
+
+    /**
+     * Returns the estimated memory used by the database in bytes.
+     *
+     * @return the estimated memory used by the database
+     */
+    public long getDatabaseMemory() {
+        return databaseMemory;
+    }
+
+    /**
+     * Returns the estimated memory used per spectrum in bytes.
+     *
+     * @return the estimated memory used per spectrum
+     */
+    public long getSpectrumMemory() {
+        return spectrumMemory;
+    }
+
+    /**
+     * Returns the rationale of the batch size for the report.
+     *
+     * @return the rationale of the batch size
+     */
+    public String getRationale() {
+        return nSpectra + " spectra, database ~" + toMegaBytes(databaseMemory) + " MB, ~"
+                + String.format("%.2f", spectrumMemory / 1048576.0) + " MB per spectrum, memory budget "
+                + toMegaBytes(memoryBudget) + " MB";
+    }
+
+    /**
+     * Returns the given number of bytes in MB.
+     *
+     * @param bytes the number of bytes
+     *
+     * @return the number of MB
+     */
+    private static long toMegaBytes(long bytes) {
+        return bytes / 1048576;
+    }
+
+    /**
+     * Returns the memory available for new processes in bytes, -1 if not
+     * available. On Linux, the MemAvailable of /proc/meminfo is used,
+     * elsewhere the free physical memory.
+     *
+     * @return the memory available in bytes
+     */
+    public static long getAvailableMemory() {
+
+        File memInfo = new File("/proc/meminfo");
+
+        if (memInfo.exists()) {
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(memInfo));
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        if (line.startsWith("MemAvailable:")) {
+                            String[] fields = line.split("\\s+");
+                            return Long.parseLong(fields[1]) * 1024; // kB
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+            } catch (IOException e) {
+                // fall back to the free memory
+            } catch (NumberFormatException e) {
+                // fall back to the free memory
+            }
+        }
+
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getFreePhysicalMemorySize();
+        }
+
+        return -1;
+    }
+}
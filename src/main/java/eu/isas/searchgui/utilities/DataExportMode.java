@@ -0,0 +1,76 @@
+package eu.isas.searchgui.utilities;
+
+/**
+ * The ways the FASTA and spectrum files can be exported with uncompressed
+ * output.
+ *
+ * @author Harald Barsnes
+ */
+public enum DataExportMode {
+
+    /**
+     * Copy the files.
+     */
+    copy(0, "Copy"),
+    /**
+     * Create hard links to the files, copy if not possible.
+     */
+    hard_link(1, "Hard link"),
+    /**
+     * Create copy-on-write clones of the files, copy if not possible.
+     */
+    reflink(2, "Reflink");
+
+    /**
+     * The index of the mode.
+     */
+    public final int index;
+    /**
+     * The name of the mode.
+     */
+    public final String name;
+
+    /**
+     * Constructor.
+     *
+     * @param index the index of the mode
+     * @param name the name of the mode
+     */
+    private DataExportMode(int index, String name) {
+        this.index = index;
+        this.name = name;
+    }
+
+    /**
+     * Returns the mode corresponding to the given index, null if not found.
+     *
+     * @param index the index of the mode
+     *
+     * @return the mode corresponding to the given index
+     */
+    public static DataExportMode getDataExportMode(int index) {
+        for (DataExportMode dataExportMode : values()) {
+            if (dataExportMode.index == index) {
+                return dataExportMode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the modes as a list for the command line help, for example
+     * "0: Copy, 1: Hard link, 2: Reflink".
+     *
+     * @return the modes as a list for the command line help
+     */
+    public static String getCommandLineOptions() {
+        String result = "";
+        for (DataExportMode dataExportMode : values()) {
+            if (!result.equals("")) {
+                result += ", ";
+            }
+            result += dataExportMode.index + ": " + dataExportMode.name;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,181 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Exports data files to the output folder by hard link, copy-on-write clone
+ * or copy. Links and clones are created using the tools of the operating
+ * system and are only possible when the source and destination are on the
+ * same file system, otherwise the file is copied.
+ *
+ * @author Harald Barsnes
+ */
+public class DataExporter {
+
+    /**
+     * The maximal number of bytes transferred at once when copying.
+     */
+    private static final long TRANSFER_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Empty default constructor.
+     */
+    private DataExporter() {
+    }
+
+    /**
+     * Exports the source file to the destination file using the given mode.
+     * An existing destination file is replaced.
+     *
+     * @param source the source file
+     * @param destination the destination file
+     * @param dataExportMode the export mode
+     *
+     * @return the mode effectively used
+     *
+     * @throws IOException thrown if the file could not be copied
+     */
+    public static DataExportMode exportFile(File source, File destination, DataExportMode dataExportMode) throws IOException {
+
+        if (destination.exists() && !destination.delete()) {
+            throw new IOException("Could not replace " + destination.getAbsolutePath() + ".");
+        }
+
+        boolean windows = System.getProperty("os.name").toLowerCase().contains("windows");
+        String sourcePath = source.getAbsolutePath();
+        String destinationPath = destination.getAbsolutePath();
+
+        switch (dataExportMode) {
+
+            case hard_link:
+
+                ArrayList<String> command = new ArrayList<String>();
+                if (windows) {
+                    command.add("cmd");
+                    command.add("/c");
+                    command.add("mklink");
+                    command.add("/H");
+                    command.add(destinationPath);
+                    command.add(sourcePath);
+                } else {
+                    command.add("ln");
+                    command.add(sourcePath);
+                    command.add(destinationPath);
+                }
+
+                if (runCommand(command, destination)) {
+                    return DataExportMode.hard_link;
+                }
+                break;
+
+            case reflink:
+
+                if (!windows) {
+                    command = new ArrayList<String>();
+                    command.add("cp");
+                    if (System.getProperty("os.name").toLowerCase().contains("mac")) {
+                        command.add("-c");
+                    } else {
+                        command.add("--reflink=always");
+                    }
+                    command.add(sourcePath);
+                    command.add(destinationPath);
+
+                    if (runCommand(command, destination)) {
+                        return DataExportMode.reflink;
+                    }
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        copyFile(source, destination);
+
+        return DataExportMode.copy;
+    }
+
+    /**
+     * Copies the source file to the destination file using FileChannel
+     * transfers.
+     *
+     * @param source the source file
+     * @param destination the destination file
+     *
+     * @throws IOException thrown if the file could not be copied
+     */
+    public static void copyFile(File source, File destination) throws IOException {
+
+        FileInputStream in = new FileInputStream(source);
+
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+
+                while (position < size) {
+                    position += inChannel.transferTo(position, Math.min(TRANSFER_SIZE, size - position), outChannel);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Runs the given command creating the destination file. A partially
+     * created destination file is deleted if the command fails.
+     *
+     * @param command the command
+     * @param destination the file created by the command
+     *
+     * @return true if the command succeeded
+     */
+    private static boolean runCommand(ArrayList<String> command, File destination) {
+
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process p = pb.start();
+
+            // consume the output of the command
+            InputStream in = p.getInputStream();
+            try {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // ignore the output
+                }
+            } finally {
+                in.close();
+            }
+
+            if (p.waitFor() == 0 && destination.exists()) {
+                return true;
+            }
+
+        } catch (IOException e) {
+            // tool not available, fall back to copying
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (destination.exists()) {
+            destination.delete();
+        }
+
+        return false;
+    }
+}
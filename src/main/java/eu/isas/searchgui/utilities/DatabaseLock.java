@@ -0,0 +1,307 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Lock on a database artifact (formatted database, peptide index, etc.)
+ * shared between threads and between SearchGUI processes. The lock is taken
+ * on a lock file next to the artifact using FileChannel locks, combined with
+ * a read/write lock within the virtual machine as FileChannel locks are held
+ * on behalf of the entire virtual machine. Exclusive locks are meant for
+ * building the artifact, shared locks for using it.
+ *
+ * Note that the lock files are not deleted after use as this would allow two
+ * processes to lock different files with the same name.
+ *
+ * @author Harald Barsnes
+ */
+public class DatabaseLock {
+
+    /**
+     * The extension used for lock files.
+     */
+    public static final String LOCK_FILE_EXTENSION = ".lock";
+    /**
+     * The lock entries of this virtual machine indexed by lock file path.
+     */
+    private static final HashMap<String, LockEntry> lockEntries = new HashMap<String, LockEntry>();
+    /**
+     * The entry of the locked file.
+     */
+    private final LockEntry lockEntry;
+    /**
+     * Indicates whether the lock is shared.
+     */
+    private final boolean shared;
+    /**
+     * Indicates whether the lock has been released.
+     */
+    private boolean released = false;
+
+    /**
+     * Constructor.
+     *
+     * @param lockEntry the entry of the locked file
+     * @param shared indicates whether the lock is shared
+     */
+    private DatabaseLock(LockEntry lockEntry, boolean shared) {
+        this.lockEntry = lockEntry;
+        this.shared = shared;
+    }
+
+    /**
+     * Returns the lock file to use for the given database artifact, i.e., a
+     * file with the same name and the lock extension in the same folder.
+     *
+     * @param databaseFile the database file or folder to lock
+     *
+     * @return the lock file
+     */
+    public static File getLockFile(File databaseFile) {
+        File absoluteFile = databaseFile.getAbsoluteFile();
+        return new File(absoluteFile.getParentFile(), absoluteFile.getName() + LOCK_FILE_EXTENSION);
+    }
+
+    /**
+     * Locks the given lock file, waiting until the lock is available.
+     *
+     * @param lockFile the lock file
+     * @param shared if true a shared lock is acquired, an exclusive lock
+     * otherwise
+     *
+     * @return the lock
+     *
+     * @throws IOException thrown if an error occurred while locking the file
+     */
+    public static DatabaseLock lock(File lockFile, boolean shared) throws IOException {
+
+        LockEntry lockEntry = getLockEntry(lockFile);
+
+        if (shared) {
+            lockEntry.jvmLock.readLock().lock();
+        } else {
+            lockEntry.jvmLock.writeLock().lock();
+        }
+
+        try {
+            lockEntry.acquireFileLock(shared, true);
+        } catch (IOException e) {
+            unlockJvm(lockEntry, shared);
+            throw e;
+        } catch (RuntimeException e) {
+            unlockJvm(lockEntry, shared);
+            throw e;
+        }
+
+        return new DatabaseLock(lockEntry, shared);
+    }
+
+    /**
+     * Tries to lock the given lock file without waiting.
+     *
+     * @param lockFile the lock file
+     * @param shared if true a shared lock is acquired, an exclusive lock
+     * otherwise
+     *
+     * @return the lock, null if the file is locked by another thread or
+     * process
+     *
+     * @throws IOException thrown if an error occurred while locking the file
+     */
+    public static DatabaseLock tryLock(File lockFile, boolean shared) throws IOException {
+
+        LockEntry lockEntry = getLockEntry(lockFile);
+
+        boolean locked;
+        if (shared) {
+            locked = lockEntry.jvmLock.readLock().tryLock();
+        } else {
+            locked = lockEntry.jvmLock.writeLock().tryLock();
+        }
+
+        if (!locked) {
+            return null;
+        }
+
+        boolean fileLocked = false;
+        try {
+            fileLocked = lockEntry.acquireFileLock(shared, false);
+        } finally {
+            if (!fileLocked) {
+                unlockJvm(lockEntry, shared);
+            }
+        }
+
+        return new DatabaseLock(lockEntry, shared);
+    }
+
+    /**
+     * Releases the lock. Releasing a lock twice has no effect.
+     *
+     * @throws IOException thrown if an error occurred while releasing the lock
+     * on the file
+     */
+    public synchronized void release() throws IOException {
+        if (!released) {
+            released = true;
+            try {
+                lockEntry.releaseFileLock();
+            } finally {
+                unlockJvm(lockEntry, shared);
+            }
+        }
+    }
+
+    /**
+     * Indicates whether the lock is shared.
+     *
+     * @return true if the lock is shared
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Returns the lock entry of the given lock file, creates it if needed.
+     *
+     * @param lockFile the lock file
+     *
+     * @return the lock entry of the given lock file
+     *
+     * @throws IOException thrown if the path of the file cannot be resolved
+     */
+    private static LockEntry getLockEntry(File lockFile) throws IOException {
+        String path = lockFile.getCanonicalPath();
+        synchronized (lockEntries) {
+            LockEntry lockEntry = lockEntries.get(path);
+            if (lockEntry == null) {
+                lockEntry = new LockEntry(new File(path));
+                lockEntries.put(path, lockEntry);
+            }
+            return lockEntry;
+        }
+    }
+
+    /**
+     * Releases the virtual machine lock of the given entry.
+     *
+     * @param lockEntry the lock entry
+     * @param shared indicates whether the lock is shared
+     */
+    private static void unlockJvm(LockEntry lockEntry, boolean shared) {
+        if (shared) {
+            lockEntry.jvmLock.readLock().unlock();
+        } else {
+            lockEntry.jvmLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The locks held on a lock file by this virtual machine.
+     */
+    private static class LockEntry {
+
+        /**
+         * The lock file.
+         */
+        private final File lockFile;
+        /**
+         * The lock within the virtual machine.
+         */
+        private final ReentrantReadWriteLock jvmLock = new ReentrantReadWriteLock(true);
+        /**
+         * The number of holders of the file lock in this virtual machine.
+         */
+        private int nHolders = 0;
+        /**
+         * The random access file used to lock the file.
+         */
+        private RandomAccessFile randomAccessFile = null;
+        /**
+         * The lock on the file.
+         */
+        private FileLock fileLock = null;
+
+        /**
+         * Constructor.
+         *
+         * @param lockFile the lock file
+         */
+        private LockEntry(File lockFile) {
+            this.lockFile = lockFile;
+        }
+
+        /**
+         * Acquires the lock on the file, or registers a new holder if a
+         * shared lock is already held by this virtual machine.
+         *
+         * @param shared indicates whether the lock is shared
+         * @param wait if true waits for the lock, otherwise returns false if
+         * the lock is held by another process
+         *
+         * @return true if the lock was acquired
+         *
+         * @throws IOException thrown if an error occurred while locking the
+         * file
+         */
+        private synchronized boolean acquireFileLock(boolean shared, boolean wait) throws IOException {
+
+            if (fileLock == null) {
+
+                File parentFolder = lockFile.getParentFile();
+                if (parentFolder != null && !parentFolder.exists()) {
+                    parentFolder.mkdirs();
+                }
+
+                randomAccessFile = new RandomAccessFile(lockFile, "rw");
+                FileChannel channel = randomAccessFile.getChannel();
+
+                try {
+                    if (wait) {
+                        fileLock = channel.lock(0L, Long.MAX_VALUE, shared);
+                    } else {
+                        fileLock = channel.tryLock(0L, Long.MAX_VALUE, shared);
+                    }
+                } finally {
+                    if (fileLock == null) {
+                        randomAccessFile.close();
+                        randomAccessFile = null;
+                    }
+                }
+
+                if (fileLock == null) {
+                    return false;
+                }
+            }
+
+            nHolders++;
+            return true;
+        }
+
+        /**
+         * Releases a holder of the file lock, the lock is released on the file
+         * when no holder remains.
+         *
+         * @throws IOException thrown if an error occurred while releasing the
+         * lock
+         */
+        private synchronized void releaseFileLock() throws IOException {
+            nHolders--;
+            if (nHolders == 0) {
+                try {
+                    fileLock.release();
+                } finally {
+                    fileLock = null;
+                    randomAccessFile.close();
+                    randomAccessFile = null;
+                }
+            }
+        }
+    }
+}
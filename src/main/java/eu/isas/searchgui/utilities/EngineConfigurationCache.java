@@ -0,0 +1,138 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Cache of the search engine configuration files of a run, e.g., the
+ * modifications, enzymes and settings files, which only depend on the search
+ * parameters. The files of an engine are written once in a folder of the
+ * cache and used by all the searches of the run. The folder is named after
+ * the engine and a hash of the search parameters, so that the files are
+ * written again in another folder when the parameters change.
+ *
+ * @author Harald Barsnes
+ */
+public class EngineConfigurationCache {
+
+    /**
+     * The folder of the cache.
+     */
+    private final File cacheFolder;
+    /**
+     * The configuration folders where the files were written.
+     */
+    private final HashSet<File> configuredFolders = new HashSet<File>();
+
+    /**
+     * Constructor.
+     *
+     * @param cacheFolder the folder of the cache, typically in the temporary
+     * folder of the run
+     */
+    public EngineConfigurationCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    /**
+     * Returns the folder of the configuration files of the given engine and
+     * search parameters, created if needed. The configuration files of
+     * different parameters go to different folders. Other settings the files
+     * depend on, e.g., the number of threads, can be given as variant.
+     *
+     * @param engine the search engine
+     * @param searchParameters the search parameters
+     * @param variant the other settings the files depend on, null if none
+     *
+     * @return the folder of the configuration files, null if the search
+     * parameters cannot be hashed and the files cannot be cached
+     */
+    public synchronized File getConfigurationFolder(Advocate engine, SearchParameters searchParameters, String variant) {
+
+        String hash = getHash(searchParameters, variant);
+
+        if (hash == null) {
+            return null;
+        }
+
+        File configurationFolder = new File(cacheFolder, engine.getName().replaceAll("[^a-zA-Z0-9+]", "_") + "_" + hash);
+
+        if (!configurationFolder.exists()) {
+            configurationFolder.mkdirs();
+        }
+
+        return configurationFolder;
+    }
+
+    /**
+     * Indicates whether the configuration files were written in the given
+     * folder.
+     *
+     * @param configurationFolder the configuration folder
+     *
+     * @return true if the configuration files were written in the folder
+     */
+    public synchronized boolean isConfigured(File configurationFolder) {
+        return configuredFolders.contains(configurationFolder);
+    }
+
+    /**
+     * Indicates that the configuration files were written in the given
+     * folder.
+     *
+     * @param configurationFolder the configuration folder
+     */
+    public synchronized void setConfigured(File configurationFolder) {
+        configuredFolders.add(configurationFolder);
+    }
+
+    /**
+     * Deletes the cached configuration files.
+     */
+    public synchronized void clear() {
+        configuredFolders.clear();
+        FileUtils.deleteQuietly(cacheFolder);
+    }
+
+    /**
+     * Returns the hash of the given search parameters and variant: the MD5
+     * of the serialized parameters.
+     *
+     * @param searchParameters the search parameters
+     * @param variant the other settings the files depend on, null if none
+     *
+     * @return the hash, null if the parameters cannot be serialized
+     */
+    private static String getHash(SearchParameters searchParameters, String variant) {
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            try {
+                oos.writeObject(searchParameters);
+                if (variant != null) {
+                    oos.writeUTF(variant);
+                }
+            } finally {
+                oos.close();
+            }
+
+            byte[] digest = MessageDigest.getInstance("MD5").digest(bytes.toByteArray());
+            return String.format("%032x", new BigInteger(1, digest));
+
+        } catch (IOException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * The historical throughput of the search engines in spectra per second, used
+ * to estimate how long the search of a spectrum file should take. The
+ * throughput depends on the engine, the number of threads and the size of
+ * the database: it is recorded separately for every engine, number of threads
+ * and FASTA size class, the size in MB rounded down to a power of two. The
+ * throughput of every combination is a moving average over the previous runs
+ * and is saved in a tab separated file after every run.
+ *
+ * @author Harald Barsnes
+ */
+public class EngineThroughput {
+
+    /**
+     * The name of the file where the throughput is saved.
+     */
+    public static final String FILE_NAME = "searchgui_engine_throughput.txt";
+    /**
+     * The weight of the last run in the moving average.
+     */
+    private static final double LAST_RUN_WEIGHT = 0.2;
+    /**
+     * The minimal number of runs before the throughput of an engine is used.
+     */
+    private static final int MIN_RUNS = 3;
+    /**
+     * The file where the throughput is saved.
+     */
+    private final File file;
+    /**
+     * The field separator.
+     */
+    private static final String SEPARATOR = "\t";
+    /**
+     * The throughput in spectra per second indexed by engine, number of
+     * threads and FASTA size class.
+     */
+    private final HashMap<String, Double> throughput = new HashMap<String, Double>();
+    /**
+     * The number of runs indexed by engine, number of threads and FASTA size
+     * class.
+     */
+    private final HashMap<String, Integer> nRuns = new HashMap<String, Integer>();
+
+    /**
+     * Constructor, loads the throughput saved in the given folder if any.
+     *
+     * @param folder the folder where the throughput is saved
+     */
+    public EngineThroughput(File folder) {
+
+        file = new File(folder, FILE_NAME);
+
+        if (file.exists()) {
+            try {
+                BufferedReader br = new BufferedReader(new FileReader(file));
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        String[] fields = line.split(SEPARATOR);
+                        if (fields.length == 5) {
+                            try {
+                                String key = getKey(fields[0], new Integer(fields[1]), new Long(fields[2]) << 20);
+                                nRuns.put(key, new Integer(fields[3]));
+                                throughput.put(key, new Double(fields[4]));
+                            } catch (NumberFormatException e) {
+                                // header or corrupted line, ignore
+                            }
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+            } catch (IOException e) {
+                // the history is only used for estimates, start from scratch
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the throughput of the given engine, number of
+     * threads and FASTA size.
+     *
+     * @param engine the name of the engine
+     * @param nThreads the number of threads
+     * @param fastaSize the size of the FASTA file in bytes
+     *
+     * @return the key of the throughput
+     */
+    private static String getKey(String engine, int nThreads, long fastaSize) {
+        return engine + SEPARATOR + nThreads + SEPARATOR + Long.highestOneBit(fastaSize >> 20);
+    }
+
+    /**
+     * Returns the expected duration of the search of the given number of
+     * spectra with the given engine in milliseconds, -1 if not enough runs of
+     * the engine with this number of threads and a FASTA file of this size
+     * are known.
+     *
+     * @param engine the name of the engine
+     * @param nThreads the number of threads
+     * @param fastaSize the size of the FASTA file in bytes
+     * @param nSpectra the number of spectra
+     *
+     * @return the expected duration in milliseconds
+     */
+    public synchronized long getExpectedDuration(String engine, int nThreads, long fastaSize, int nSpectra) {
+
+        String key = getKey(engine, nThreads, fastaSize);
+        Integer engineRuns = nRuns.get(key);
+
+        if (engineRuns == null || engineRuns < MIN_RUNS || nSpectra <= 0) {
+            return -1;
+        }
+
+        return (long) (1000 * nSpectra / throughput.get(key));
+    }
+
+    /**
+     * Adds a successful run to the history and saves it.
+     *
+     * @param engine the name of the engine
+     * @param nThreads the number of threads
+     * @param fastaSize the size of the FASTA file in bytes
+     * @param nSpectra the number of spectra searched
+     * @param duration the duration of the search in milliseconds
+     */
+    public synchronized void addRun(String engine, int nThreads, long fastaSize, int nSpectra, long duration) {
+
+        if (nSpectra <= 0 || duration <= 0) {
+            return;
+        }
+
+        String key = getKey(engine, nThreads, fastaSize);
+        double runThroughput = 1000.0 * nSpectra / duration;
+        Integer engineRuns = nRuns.get(key);
+
+        if (engineRuns == null) {
+            nRuns.put(key, 1);
+            throughput.put(key, runThroughput);
+        } else {
+            nRuns.put(key, engineRuns + 1);
+            throughput.put(key, (1 - LAST_RUN_WEIGHT) * throughput.get(key) + LAST_RUN_WEIGHT * runThroughput);
+        }
+
+        try {
+            save();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Saves the throughput to the file.
+     *
+     * @throws IOException thrown if an error occurred while writing the file
+     */
+    private void save() throws IOException {
+
+        File folder = file.getParentFile();
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        // write to a temporary file of its own first, so that concurrent readers never see a partial file and concurrent writers do not mix their files
+        File tempFile = File.createTempFile(FILE_NAME, ".tmp", folder);
+
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(tempFile));
+
+            try {
+                bw.write("Engine" + SEPARATOR + "Threads" + SEPARATOR + "FASTA size (MB)" + SEPARATOR + "Runs" + SEPARATOR + "Spectra per second");
+                bw.newLine();
+                for (String key : throughput.keySet()) {
+                    bw.write(key + SEPARATOR + nRuns.get(key) + SEPARATOR + throughput.get(key));
+                    bw.newLine();
+                }
+            } finally {
+                bw.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Could not save the engine throughput to " + file.getAbsolutePath() + ".");
+                }
+            }
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+}
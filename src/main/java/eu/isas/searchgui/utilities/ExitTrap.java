@@ -0,0 +1,101 @@
+package eu.isas.searchgui.utilities;
+
+import java.security.Permission;
+
+/**
+ * Turns the calls to System.exit into exceptions, so that a worker calling
+ * the main method of a search engine several times in the same Java virtual
+ * machine can continue after the engine exits.
+ *
+ * @author Harald Barsnes
+ */
+public class ExitTrap {
+
+    /**
+     * The exit code of a worker which could not install the trap, and which
+     * did thus not process any file.
+     */
+    public static final int UNAVAILABLE_EXIT_CODE = 3;
+
+    /**
+     * Exception thrown instead of exiting the virtual machine.
+     */
+    public static class ExitException extends SecurityException {
+
+        /**
+         * The exit status.
+         */
+        private final int status;
+
+        /**
+         * Constructor.
+         *
+         * @param status the exit status
+         */
+        public ExitException(int status) {
+            super("Exit with status " + status + ".");
+            this.status = status;
+        }
+
+        /**
+         * Returns the exit status.
+         *
+         * @return the exit status
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Empty default constructor.
+     */
+    private ExitTrap() {
+    }
+
+    /**
+     * Installs a security manager turning the calls to System.exit into
+     * ExitExceptions. Returns false if the security manager cannot be
+     * installed, the calls to System.exit then exiting the virtual machine.
+     * From Java 18, the security manager can only be installed in a virtual
+     * machine started with -Djava.security.manager=allow, and from Java 24
+     * it cannot be installed at all.
+     *
+     * @return true if the calls to System.exit are trapped
+     */
+    public static boolean install() {
+        try {
+            System.setSecurityManager(new SecurityManager() {
+                @Override
+                public void checkPermission(Permission permission) {
+                    // all permitted
+                }
+
+                @Override
+                public void checkPermission(Permission permission, Object context) {
+                    // all permitted
+                }
+
+                @Override
+                public void checkExit(int status) {
+                    throw new ExitException(status);
+                }
+            });
+            return true;
+        } catch (UnsupportedOperationException e) {
+            return false;
+        } catch (SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the security manager installed by install(), so that the
+     * worker can exit.
+     */
+    public static void uninstall() {
+        if (System.getSecurityManager() != null) {
+            System.setSecurityManager(null);
+        }
+    }
+}
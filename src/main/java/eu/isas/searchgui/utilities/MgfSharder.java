@@ -0,0 +1,170 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.Util;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Splits an mgf file into shards of consecutive spectra of similar size, so
+ * that the shards can be processed in parallel by single threaded tools. The
+ * spectra keep their order: the index of a spectrum in the mgf file is its
+ * index in its shard plus the offset of the shard. The global parameters of
+ * the mgf file are copied to every shard.
+ *
+ * @author Harald Barsnes
+ */
+public class MgfSharder {
+
+    /**
+     * The line starting a spectrum in an mgf file.
+     */
+    private static final String BEGIN_IONS = "BEGIN IONS";
+    /**
+     * The mgf file.
+     */
+    private final File mgfFile;
+    /**
+     * The shard files.
+     */
+    private final ArrayList<File> shardFiles = new ArrayList<File>();
+    /**
+     * The number of spectra in the previous shards, per shard.
+     */
+    private final ArrayList<Integer> offsets = new ArrayList<Integer>();
+
+    /**
+     * Constructor, splits the given mgf file. The number of shards is reduced
+     * so that every shard has at least the given minimal number of spectra.
+     *
+     * @param mgfFile the mgf file
+     * @param maxShards the maximal number of shards
+     * @param minShardSize the minimal number of spectra per shard
+     * @param shardFolder the folder where to write the shards
+     *
+     * @throws IOException thrown if an error occurred while reading the mgf
+     * file or writing the shards
+     */
+    public MgfSharder(File mgfFile, int maxShards, int minShardSize, File shardFolder) throws IOException {
+
+        this.mgfFile = mgfFile;
+
+        int nSpectra = countSpectra(mgfFile);
+        int nShards = Math.max(1, Math.min(maxShards, nSpectra / Math.max(1, minShardSize)));
+        String shardName = Util.removeExtension(mgfFile.getName());
+
+        BufferedReader br = new BufferedReader(new FileReader(mgfFile));
+
+        try {
+            BufferedWriter bw = null;
+            StringBuilder globalParameters = new StringBuilder();
+            int spectrumIndex = 0;
+            int shardEnd = 0;
+            String line;
+
+            try {
+                while ((line = br.readLine()) != null) {
+
+                    if (line.startsWith(BEGIN_IONS) && spectrumIndex++ == shardEnd) {
+
+                        // start the next shard
+                        if (bw != null) {
+                            bw.close();
+                        }
+                        int shard = shardFiles.size();
+                        File shardFile = new File(shardFolder, shardName + "_shard_" + (shard + 1) + ".mgf");
+                        shardFiles.add(shardFile);
+                        offsets.add(spectrumIndex - 1);
+                        shardEnd = (int) ((long) nSpectra * (shard + 1) / nShards);
+                        bw = new BufferedWriter(new FileWriter(shardFile));
+                        bw.write(globalParameters.toString());
+                    }
+
+                    if (bw != null) {
+                        bw.write(line);
+                        bw.newLine();
+                    } else {
+                        // the lines before the first spectrum are copied to every shard
+                        globalParameters.append(line).append(System.getProperty("line.separator"));
+                    }
+                }
+            } finally {
+                if (bw != null) {
+                    bw.close();
+                }
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Returns the number of spectra of the given mgf file.
+     *
+     * @param mgfFile the mgf file
+     *
+     * @return the number of spectra
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    private static int countSpectra(File mgfFile) throws IOException {
+
+        int nSpectra = 0;
+        BufferedReader br = new BufferedReader(new FileReader(mgfFile));
+
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.startsWith(BEGIN_IONS)) {
+                    nSpectra++;
+                }
+            }
+        } finally {
+            br.close();
+        }
+
+        return nSpectra;
+    }
+
+    /**
+     * Returns the mgf file.
+     *
+     * @return the mgf file
+     */
+    public File getMgfFile() {
+        return mgfFile;
+    }
+
+    /**
+     * Returns the shard files in the order of the spectra.
+     *
+     * @return the shard files
+     */
+    public ArrayList<File> getShardFiles() {
+        return shardFiles;
+    }
+
+    /**
+     * Returns the number of spectra before the given shard in the mgf file.
+     *
+     * @param shard the index of the shard
+     *
+     * @return the number of spectra before the shard
+     */
+    public int getOffset(int shard) {
+        return offsets.get(shard);
+    }
+
+    /**
+     * Deletes the shard files.
+     */
+    public void deleteShards() {
+        for (File shardFile : shardFiles) {
+            shardFile.delete();
+        }
+    }
+}
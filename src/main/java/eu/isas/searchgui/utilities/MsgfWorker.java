@@ -0,0 +1,99 @@
+package eu.isas.searchgui.utilities;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Searches several spectrum files with MS-GF+ in a single Java virtual
+ * machine, started with MSGFPlus.jar and the SearchGUI jar file in the class
+ * path. The spectrum files are searched one after the other by calling
+ * MS-GF+ with the same arguments, so that the classes are loaded and
+ * compiled once, and the database files are read from the file system cache
+ * after the first file. MS-GF+ is called through runMSGFPlus, which returns
+ * an error message instead of exiting the virtual machine.
+ *
+ * The arguments are the number of spectrum files, followed by every spectrum
+ * file and its result file, followed by the other MS-GF+ arguments. A failed
+ * search does not stop the searches of the next files, but the worker then
+ * exits with an error code.
+ *
+ * @author Harald Barsnes
+ */
+public class MsgfWorker {
+
+    /**
+     * The MS-GF+ main class.
+     */
+    public static final String MSGF_CLASS = "edu.ucsd.msjava.ui.MSGFPlus";
+    /**
+     * The MS-GF+ parameter manager class.
+     */
+    public static final String PARAM_MANAGER_CLASS = "edu.ucsd.msjava.params.ParamManager";
+
+    /**
+     * Empty default constructor.
+     */
+    public MsgfWorker() {
+    }
+
+    /**
+     * Runs the searches.
+     *
+     * @param args the number of spectrum files, the spectrum and result files
+     * and the MS-GF+ arguments
+     *
+     * @throws Exception thrown if the arguments are not valid or if MS-GF+
+     * cannot be loaded
+     */
+    public static void main(String[] args) throws Exception {
+
+        int nFiles = Integer.parseInt(args[0]);
+        int firstArgument = 1 + 2 * nFiles;
+
+        // the spectrum and result files followed by the other arguments
+        String[] msgfArguments = new String[4 + args.length - firstArgument];
+        System.arraycopy(args, firstArgument, msgfArguments, 4, args.length - firstArgument);
+
+        Class<?> paramManagerClass = Class.forName(PARAM_MANAGER_CLASS);
+        Constructor<?> paramManagerConstructor = paramManagerClass.getConstructor(String.class, String.class, String.class, String.class);
+        Method addMsgfParams = paramManagerClass.getMethod("addMSGFPlusParams");
+        Method parseParams = paramManagerClass.getMethod("parseParams", String[].class);
+        Method runMsgf = Class.forName(MSGF_CLASS).getMethod("runMSGFPlus", paramManagerClass);
+
+        int nErrors = 0;
+
+        for (int i = 0; i < nFiles; i++) {
+
+            String spectrumFile = args[1 + 2 * i];
+            String resultFile = args[2 + 2 * i];
+            System.out.println("MS-GF+ worker: searching " + spectrumFile + " (" + (i + 1) + "/" + nFiles + ")");
+
+            msgfArguments[0] = "-s";
+            msgfArguments[1] = spectrumFile;
+            msgfArguments[2] = "-o";
+            msgfArguments[3] = resultFile;
+
+            String error;
+            try {
+                Object paramManager = paramManagerConstructor.newInstance("MS-GF+", "", "", "java -jar MSGFPlus.jar");
+                addMsgfParams.invoke(paramManager);
+                error = (String) parseParams.invoke(paramManager, (Object) msgfArguments.clone());
+                if (error == null) {
+                    error = (String) runMsgf.invoke(null, paramManager);
+                }
+            } catch (InvocationTargetException e) {
+                e.getCause().printStackTrace();
+                error = e.getCause().toString();
+            }
+
+            if (error != null) {
+                System.out.println("MS-GF+ worker: search of " + spectrumFile + " failed: " + error);
+                nErrors++;
+            }
+            System.out.flush();
+        }
+
+        System.exit(nErrors == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,92 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.experiment.massspectrometry.proteowizard.MsFormat;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Utilities for the mzML files searched directly by the search engines
+ * reading mzML, without conversion to mgf. The mzML files are not indexed by
+ * the spectrum factory, the number of spectra is read from the spectrum list
+ * element of the file.
+ *
+ * @author Harald Barsnes
+ */
+public class MzmlFiles {
+
+    /**
+     * The maximal number of characters read before the spectrum list element.
+     */
+    private static final long MAX_HEADER_LENGTH = 16 * 1048576;
+    /**
+     * The pattern of the spectrum list element.
+     */
+    private static final Pattern SPECTRUM_LIST_PATTERN = Pattern.compile("<spectrumList[^>]*\\scount=\"(\\d+)\"");
+
+    /**
+     * Empty default constructor.
+     */
+    private MzmlFiles() {
+    }
+
+    /**
+     * Indicates whether the given file is an mzML file.
+     *
+     * @param spectrumFile the spectrum file
+     *
+     * @return true if the file is an mzML file
+     */
+    public static boolean isMzml(File spectrumFile) {
+        return spectrumFile.getName().toLowerCase().endsWith(MsFormat.mzML.fileNameEnding.toLowerCase());
+    }
+
+    /**
+     * Returns the number of spectra of the given mzML file as given by the
+     * count attribute of the spectrum list.
+     *
+     * @param mzmlFile the mzML file
+     *
+     * @return the number of spectra, 0 if not found
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    public static int getNSpectra(File mzmlFile) throws IOException {
+
+        BufferedReader br = new BufferedReader(new FileReader(mzmlFile));
+
+        try {
+            long nRead = 0;
+            String line;
+
+            while ((line = br.readLine()) != null && nRead < MAX_HEADER_LENGTH) {
+
+                int index = line.indexOf("<spectrumList");
+
+                if (index >= 0) {
+
+                    // the attributes can be on the next lines
+                    StringBuilder element = new StringBuilder(line.substring(index));
+                    while (element.indexOf(">") < 0 && (line = br.readLine()) != null) {
+                        element.append(" ").append(line);
+                    }
+
+                    Matcher matcher = SPECTRUM_LIST_PATTERN.matcher(element);
+                    if (matcher.find()) {
+                        return Integer.parseInt(matcher.group(1));
+                    }
+                    return 0;
+                }
+
+                nRead += line.length();
+            }
+        } finally {
+            br.close();
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,100 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+
+/**
+ * Runs Novor on several spectrum files in a single Java virtual machine,
+ * started with novor.jar and the SearchGUI jar file in the class path. Novor
+ * being mostly single threaded, SearchGUI runs several workers in parallel,
+ * every worker sequencing its queue of spectrum files, usually shards of the
+ * spectrum files searched, one after the other. The Novor classes are thus
+ * loaded and compiled once per worker instead of once per file.
+ *
+ * The arguments are the Novor jar file, the number of spectrum files,
+ * followed by every spectrum file and its result file, followed by the other
+ * Novor arguments. A failed run does not stop the runs of the next files, but
+ * the worker then exits with an error code. If the calls to System.exit
+ * cannot be trapped, the worker exits with ExitTrap.UNAVAILABLE_EXIT_CODE
+ * without processing any file.
+ *
+ * @author Harald Barsnes
+ */
+public class NovorWorker {
+
+    /**
+     * Empty default constructor.
+     */
+    public NovorWorker() {
+    }
+
+    /**
+     * Runs Novor on the spectrum files.
+     *
+     * @param args the Novor jar file, the number of spectrum files, the
+     * spectrum and result files and the Novor arguments
+     *
+     * @throws Exception thrown if the arguments are not valid or if Novor
+     * cannot be loaded
+     */
+    public static void main(String[] args) throws Exception {
+
+        File novorJar = new File(args[0]);
+        int nFiles = Integer.parseInt(args[1]);
+        int firstArgument = 2 + 2 * nFiles;
+
+        // the other arguments followed by the result and spectrum files
+        int nArguments = args.length - firstArgument;
+        String[] novorArguments = new String[nArguments + 4];
+        System.arraycopy(args, firstArgument, novorArguments, 0, nArguments);
+
+        // the main class of novor.jar
+        String mainClass;
+        JarFile jarFile = new JarFile(novorJar);
+        try {
+            mainClass = jarFile.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+        } finally {
+            jarFile.close();
+        }
+        Method novorMain = Class.forName(mainClass).getMethod("main", String[].class);
+
+        if (!ExitTrap.install()) {
+            System.out.println("Novor worker: the calls to System.exit cannot be trapped.");
+            System.exit(ExitTrap.UNAVAILABLE_EXIT_CODE);
+        }
+
+        int nErrors = 0;
+
+        for (int i = 0; i < nFiles; i++) {
+
+            String spectrumFile = args[2 + 2 * i];
+            String resultFile = args[3 + 2 * i];
+            System.out.println("Novor worker: processing " + new File(spectrumFile).getName() + " (" + (i + 1) + "/" + nFiles + ")");
+
+            novorArguments[nArguments] = "-o";
+            novorArguments[nArguments + 1] = resultFile;
+            novorArguments[nArguments + 2] = "-f"; // force overwrite of output file
+            novorArguments[nArguments + 3] = spectrumFile;
+
+            try {
+                novorMain.invoke(null, (Object) novorArguments.clone());
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof ExitTrap.ExitException)) {
+                    cause.printStackTrace();
+                }
+                if (!(cause instanceof ExitTrap.ExitException) || ((ExitTrap.ExitException) cause).getStatus() != 0) {
+                    System.out.println("Novor worker: processing of " + spectrumFile + " failed.");
+                    nErrors++;
+                }
+            }
+            System.out.flush();
+        }
+
+        ExitTrap.uninstall();
+        System.exit(nErrors == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,603 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cgroup (version 2) confining a process and its descendants on Linux. The
+ * cgroups are created in the cgroup of the virtual machine, where the cpu,
+ * cpuset and memory controllers are enabled when possible. As the controllers
+ * cannot be enabled in a cgroup containing processes, the virtual machine
+ * moves itself to a leaf cgroup if needed. Controllers which cannot be
+ * enabled are skipped: the cgroup then only accounts for the resources used
+ * and stops the processes left behind. Where cgroups are not available, no
+ * cgroup is created.
+ *
+ * @author Harald Barsnes
+ */
+public class ProcessCgroup {
+
+    /**
+     * The controllers used, in the order they are enabled.
+     */
+    private static final String[] CONTROLLERS = new String[]{"cpu", "cpuset", "memory"};
+    /**
+     * The period of the CPU bandwidth limit in microseconds.
+     */
+    private static final long CPU_PERIOD = 100000;
+    /**
+     * The time to wait for the processes of a cgroup to be gone in
+     * milliseconds.
+     */
+    private static final long RELEASE_TIMEOUT = 5000;
+    /**
+     * The interval between two checks of the cgroup state in milliseconds.
+     */
+    private static final long POLLING_INTERVAL = 100;
+    /**
+     * The index of the next cgroup.
+     */
+    private static final AtomicInteger cgroupIndex = new AtomicInteger();
+    /**
+     * Indicates whether the cgroup support was initialized.
+     */
+    private static boolean initialized = false;
+    /**
+     * The folder where the cgroups are created, null if cgroups are not
+     * available.
+     */
+    private static File parentFolder = null;
+    /**
+     * The controllers enabled in the parent folder.
+     */
+    private static final ArrayList<String> enabledControllers = new ArrayList<String>();
+    /**
+     * The reason why cgroups are not available, null if available.
+     */
+    private static String unavailableReason = null;
+    /**
+     * The folder of the cgroup.
+     */
+    private final File folder;
+
+    /**
+     * Constructor.
+     *
+     * @param folder the folder of the cgroup
+     */
+    private ProcessCgroup(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Indicates whether processes can be placed in cgroups on this system.
+     *
+     * @return true if processes can be placed in cgroups
+     */
+    public static synchronized boolean isAvailable() {
+        initialize();
+        return parentFolder != null;
+    }
+
+    /**
+     * Returns a description of the cgroup support on this system, i.e., where
+     * the cgroups are created and with which controllers, or why they are not
+     * available.
+     *
+     * @return a description of the cgroup support
+     */
+    public static synchronized String getStatus() {
+
+        initialize();
+
+        if (parentFolder == null) {
+            return "cgroups not available (" + unavailableReason + "), processes not confined.";
+        }
+
+        String controllers = "none, accounting only";
+        if (!enabledControllers.isEmpty()) {
+            controllers = enabledControllers.toString();
+            controllers = controllers.substring(1, controllers.length() - 1);
+        }
+
+        return "Processes confined in cgroups under " + parentFolder.getAbsolutePath() + " (controllers: " + controllers + ").";
+    }
+
+    /**
+     * Creates a new cgroup with the given limits. Limits of controllers which
+     * are not enabled are ignored.
+     *
+     * @param name the name of the cgroup, made unique
+     * @param nCpus the number of CPUs the processes may use in total, 0 for
+     * no limit
+     * @param cpus the CPUs the processes may use, e.g., "0-3,8", null for all
+     * @param memoryMax the maximal memory of the processes in bytes, 0 for no
+     * limit
+     *
+     * @return the cgroup, null if cgroups are not available
+     *
+     * @throws IOException thrown if the cgroup could not be created or its
+     * limits could not be set
+     */
+    public static ProcessCgroup create(String name, double nCpus, String cpus, long memoryMax) throws IOException {
+
+        File parent;
+        boolean cpuEnabled, cpusetEnabled, memoryEnabled;
+
+        synchronized (ProcessCgroup.class) {
+            if (!isAvailable()) {
+                return null;
+            }
+            parent = parentFolder;
+            cpuEnabled = enabledControllers.contains("cpu");
+            cpusetEnabled = enabledControllers.contains("cpuset");
+            memoryEnabled = enabledControllers.contains("memory");
+        }
+
+        File folder = new File(parent, "searchgui-" + ProcessTree.getCurrentPid() + "-" + cgroupIndex.incrementAndGet() + "-" + name.replaceAll("[^A-Za-z0-9_.+-]", "_"));
+
+        if (!folder.mkdir()) {
+            throw new IOException("Could not create the cgroup " + folder.getAbsolutePath() + ".");
+        }
+
+        ProcessCgroup cgroup = new ProcessCgroup(folder);
+
+        try {
+            if (cpuEnabled && nCpus > 0) {
+                write(new File(folder, "cpu.max"), Math.round(nCpus * CPU_PERIOD) + " " + CPU_PERIOD);
+            }
+            if (cpusetEnabled && cpus != null) {
+                write(new File(folder, "cpuset.cpus"), cpus);
+            }
+            if (memoryEnabled && memoryMax > 0) {
+                write(new File(folder, "memory.max"), Long.toString(memoryMax));
+            }
+        } catch (IOException e) {
+            cgroup.delete();
+            throw e;
+        }
+
+        return cgroup;
+    }
+
+    /**
+     * Returns the given command wrapped so that the process moves itself to
+     * this cgroup before executing the command. The process therefore starts
+     * the command and all its descendants in the cgroup. If the process cannot
+     * be moved, the command is executed without confinement.
+     *
+     * @param command the command
+     *
+     * @return the wrapped command
+     */
+    public List<String> wrapCommand(List<String> command) {
+
+        String procsPath = new File(folder, "cgroup.procs").getAbsolutePath().replace("'", "'\\''");
+
+        ArrayList<String> wrappedCommand = new ArrayList<String>(command.size() + 4);
+        wrappedCommand.add("sh");
+        wrappedCommand.add("-c");
+        wrappedCommand.add("echo $$ 2>/dev/null > '" + procsPath + "'; exec \"$@\"");
+        wrappedCommand.add("sh");
+        wrappedCommand.addAll(command);
+
+        return wrappedCommand;
+    }
+
+    /**
+     * Returns the CPU time used by the processes of this cgroup, including
+     * the processes which terminated, in milliseconds, -1 if not available.
+     *
+     * @return the CPU time used by the processes of this cgroup
+     */
+    public long getCpuTime() {
+        long usage = readKey(new File(folder, "cpu.stat"), "usage_usec");
+        return usage == -1 ? -1 : usage / 1000;
+    }
+
+    /**
+     * Returns the maximal memory used by the processes of this cgroup in
+     * bytes, -1 if not available.
+     *
+     * @return the maximal memory used by the processes of this cgroup
+     */
+    public long getPeakMemory() {
+        try {
+            return Long.parseLong(read(new File(folder, "memory.peak")).trim());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Indicates whether the memory limit of this cgroup was reached and
+     * processes were killed by the kernel.
+     *
+     * @return true if processes were killed because of the memory limit
+     */
+    public boolean isOutOfMemory() {
+        return readKey(new File(folder, "memory.events"), "oom_kill") > 0;
+    }
+
+    /**
+     * Kills the processes remaining in this cgroup and deletes the cgroup.
+     * Returns when the processes are gone.
+     *
+     * @return true if the cgroup was deleted
+     */
+    public boolean delete() {
+        return kill() && folder.delete();
+    }
+
+    /**
+     * Kills the processes in this cgroup, e.g., descendants which left the
+     * process tree. Returns when the processes are gone.
+     *
+     * @return true if no process is left in the cgroup
+     */
+    public boolean kill() {
+
+        long end = System.currentTimeMillis() + RELEASE_TIMEOUT;
+        boolean killed = false;
+
+        while (isPopulated()) {
+
+            if (!killed) {
+                killed = true;
+                try {
+                    write(new File(folder, "cgroup.kill"), "1");
+                } catch (IOException e) {
+                    // kernel older than 5.14, kill the processes one by one
+                    for (Integer pid : getPids()) {
+                        ProcessTree.signal(pid, "KILL");
+                    }
+                }
+            }
+
+            if (System.currentTimeMillis() >= end) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(POLLING_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Indicates whether processes are running in this cgroup.
+     *
+     * @return true if processes are running in this cgroup
+     */
+    private boolean isPopulated() {
+        long populated = readKey(new File(folder, "cgroup.events"), "populated");
+        if (populated == -1) {
+            return !getPids().isEmpty();
+        }
+        return populated == 1;
+    }
+
+    /**
+     * Returns the processes in this cgroup.
+     *
+     * @return the processes in this cgroup
+     */
+    private ArrayList<Integer> getPids() {
+
+        ArrayList<Integer> pids = new ArrayList<Integer>();
+
+        try {
+            for (String line : read(new File(folder, "cgroup.procs")).split("\n")) {
+                if (line.trim().length() > 0) {
+                    pids.add(new Integer(line.trim()));
+                }
+            }
+        } catch (Exception e) {
+            // cgroup gone
+        }
+
+        return pids;
+    }
+
+    /**
+     * Finds the cgroup of the virtual machine and enables the controllers
+     * for the cgroups created below it.
+     */
+    private static void initialize() {
+
+        if (initialized) {
+            return;
+        }
+
+        initialized = true;
+
+        try {
+            String mountPoint = getMountPoint();
+            if (mountPoint == null) {
+                unavailableReason = "no cgroup2 file system mounted";
+                return;
+            }
+
+            String cgroupPath = getCgroupPath();
+            if (cgroupPath == null) {
+                unavailableReason = "cgroup of the process not found";
+                return;
+            }
+
+            File ownFolder = new File(mountPoint + cgroupPath);
+
+            // a test cgroup checks that cgroups can be created here
+            File testFolder = new File(ownFolder, "searchgui-" + ProcessTree.getCurrentPid() + "-test");
+            if (!testFolder.mkdir() && !testFolder.isDirectory()) {
+                unavailableReason = "no write access to " + ownFolder.getAbsolutePath();
+                return;
+            }
+            testFolder.delete();
+
+            ArrayList<String> availableControllers = new ArrayList<String>();
+            for (String controller : read(new File(ownFolder, "cgroup.controllers")).trim().split(" ")) {
+                availableControllers.add(controller);
+            }
+
+            boolean jvmMoved = false;
+
+            for (String controller : CONTROLLERS) {
+
+                if (!availableControllers.contains(controller)) {
+                    continue;
+                }
+
+                try {
+                    enableController(ownFolder, controller);
+                } catch (IOException e) {
+
+                    if (jvmMoved || cgroupPath.equals("/")) {
+                        continue;
+                    }
+
+                    // controllers cannot be enabled in a cgroup with processes, move the virtual machine to a leaf cgroup
+                    jvmMoved = true;
+                    File leafFolder = new File(ownFolder, "searchgui-" + ProcessTree.getCurrentPid());
+                    try {
+                        leafFolder.mkdir();
+                        write(new File(leafFolder, "cgroup.procs"), Integer.toString(ProcessTree.getCurrentPid()));
+                        enableController(ownFolder, controller);
+                    } catch (IOException e2) {
+                        // other processes in the cgroup or no delegation, skip the controller
+                    }
+                }
+            }
+
+            parentFolder = ownFolder;
+
+        } catch (Exception e) {
+            unavailableReason = e.getMessage();
+        }
+    }
+
+    /**
+     * Enables the given controller for the children of the given cgroup.
+     *
+     * @param folder the folder of the cgroup
+     * @param controller the controller
+     *
+     * @throws IOException thrown if the controller could not be enabled
+     */
+    private static void enableController(File folder, String controller) throws IOException {
+
+        File subtreeControl = new File(folder, "cgroup.subtree_control");
+
+        if (!(" " + read(subtreeControl).trim() + " ").contains(" " + controller + " ")) {
+            write(subtreeControl, "+" + controller);
+        }
+
+        enabledControllers.add(controller);
+    }
+
+    /**
+     * Returns the mount point of the cgroup2 file system, null if not
+     * mounted.
+     *
+     * @return the mount point of the cgroup2 file system
+     *
+     * @throws IOException thrown if an error occurred while reading the
+     * mounts
+     */
+    private static String getMountPoint() throws IOException {
+
+        File mountInfo = new File("/proc/self/mountinfo");
+
+        if (!mountInfo.exists()) {
+            return null;
+        }
+
+        for (String line : read(mountInfo).split("\n")) {
+            int separatorIndex = line.indexOf(" - ");
+            if (separatorIndex != -1 && line.substring(separatorIndex + 3).startsWith("cgroup2 ")) {
+                return line.split(" ")[4];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the path of the cgroup (version 2) of the virtual machine, null
+     * if not found.
+     *
+     * @return the path of the cgroup of the virtual machine
+     *
+     * @throws IOException thrown if an error occurred while reading the
+     * cgroup
+     */
+    private static String getCgroupPath() throws IOException {
+
+        for (String line : read(new File("/proc/self/cgroup")).split("\n")) {
+            if (line.startsWith("0::")) {
+                return line.substring(3).trim();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the value of the given key in a flat keyed cgroup file, -1 if
+     * not found.
+     *
+     * @param file the file
+     * @param key the key
+     *
+     * @return the value of the key
+     */
+    private static long readKey(File file, String key) {
+
+        try {
+            for (String line : read(file).split("\n")) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length == 2 && fields[0].equals(key)) {
+                    return Long.parseLong(fields[1]);
+                }
+            }
+        } catch (Exception e) {
+            // file not available
+        }
+
+        return -1;
+    }
+
+    /**
+     * Reads the given file.
+     *
+     * @param file the file
+     *
+     * @return the content of the file
+     *
+     * @throws IOException thrown if an error occurred while reading the file
+     */
+    private static String read(File file) throws IOException {
+
+        StringBuilder content = new StringBuilder();
+        BufferedReader br = new BufferedReader(new FileReader(file));
+
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                content.append(line).append("\n");
+            }
+        } finally {
+            br.close();
+        }
+
+        return content.toString();
+    }
+
+    /**
+     * Writes the given value to the given cgroup file.
+     *
+     * @param file the file
+     * @param value the value
+     *
+     * @throws IOException thrown if the value was rejected
+     */
+    private static void write(File file, String value) throws IOException {
+
+        FileWriter fw = new FileWriter(file);
+
+        try {
+            fw.write(value);
+        } finally {
+            fw.close();
+        }
+    }
+
+    /**
+     * The resources used by the processes of several cgroups, e.g., the
+     * processes of a search.
+     */
+    public static class Usage {
+
+        /**
+         * The number of processes accounted.
+         */
+        private int nProcesses = 0;
+        /**
+         * The total CPU time in milliseconds.
+         */
+        private long cpuTime = 0;
+        /**
+         * The maximal peak memory in bytes, -1 if not available.
+         */
+        private long peakMemory = -1;
+        /**
+         * The number of processes killed because of the memory limit.
+         */
+        private int nOutOfMemory = 0;
+
+        /**
+         * Adds the resources used by the processes of the given cgroup.
+         *
+         * @param cgroup the cgroup
+         */
+        public synchronized void add(ProcessCgroup cgroup) {
+            nProcesses++;
+            long cgroupCpuTime = cgroup.getCpuTime();
+            if (cgroupCpuTime > 0) {
+                cpuTime += cgroupCpuTime;
+            }
+            peakMemory = Math.max(peakMemory, cgroup.getPeakMemory());
+            if (cgroup.isOutOfMemory()) {
+                nOutOfMemory++;
+            }
+        }
+
+        /**
+         * Returns the number of processes accounted.
+         *
+         * @return the number of processes accounted
+         */
+        public synchronized int getNProcesses() {
+            return nProcesses;
+        }
+
+        /**
+         * Returns the total CPU time in milliseconds.
+         *
+         * @return the total CPU time in milliseconds
+         */
+        public synchronized long getCpuTime() {
+            return cpuTime;
+        }
+
+        /**
+         * Returns the maximal peak memory of a process in bytes, -1 if not
+         * available.
+         *
+         * @return the maximal peak memory in bytes
+         */
+        public synchronized long getPeakMemory() {
+            return peakMemory;
+        }
+
+        /**
+         * Returns the number of processes killed because of the memory
+         * limit.
+         *
+         * @return the number of processes killed because of the memory limit
+         */
+        public synchronized int getNOutOfMemory() {
+            return nOutOfMemory;
+        }
+    }
+}
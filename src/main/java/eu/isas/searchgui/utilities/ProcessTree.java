@@ -0,0 +1,512 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Utilities to inspect and stop a process together with its descendants. On
+ * Linux the process tree and the CPU usage are read from /proc, on other
+ * Unix systems the tree is obtained using ps and on Windows the tree is
+ * stopped using taskkill. Processes are stopped gracefully first and killed
+ * if they do not terminate in time.
+ *
+ * @author Harald Barsnes
+ */
+public class ProcessTree {
+
+    /**
+     * The proc file system.
+     */
+    private static final File PROC = new File("/proc");
+    /**
+     * The time to wait for killed processes to be gone in milliseconds.
+     */
+    private static final long RELEASE_TIMEOUT = 5000;
+    /**
+     * The interval between two checks of the processes state in
+     * milliseconds.
+     */
+    private static final long POLLING_INTERVAL = 100;
+
+    /**
+     * Empty default constructor.
+     */
+    private ProcessTree() {
+    }
+
+    /**
+     * Indicates whether the operating system is Windows.
+     *
+     * @return true if the operating system is Windows
+     */
+    public static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().contains("windows");
+    }
+
+    /**
+     * Returns the id of the given process, -1 if not available.
+     *
+     * @param process the process
+     *
+     * @return the id of the given process
+     */
+    public static int getPid(Process process) {
+
+        // Java 9 and later
+        try {
+            Method pidMethod = Process.class.getMethod("pid");
+            return ((Long) pidMethod.invoke(process)).intValue();
+        } catch (Exception e) {
+            // older Java version
+        }
+
+        // Unix implementation of older Java versions
+        try {
+            Field pidField = process.getClass().getDeclaredField("pid");
+            pidField.setAccessible(true);
+            return pidField.getInt(process);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the ids of the descendants of the given process, children
+     * first. Returns an empty list if the tree cannot be inspected.
+     *
+     * @param pid the id of the process
+     *
+     * @return the ids of the descendants of the given process
+     */
+    public static ArrayList<Integer> getDescendants(int pid) {
+
+        ArrayList<Integer> descendants = new ArrayList<Integer>();
+
+        if (pid <= 0 || isWindows()) {
+            return descendants;
+        }
+
+        HashMap<Integer, ArrayList<Integer>> children = getChildrenMap();
+
+        ArrayList<Integer> parents = new ArrayList<Integer>();
+        parents.add(pid);
+
+        // breadth first so that children come before grandchildren
+        for (int i = 0; i < parents.size(); i++) {
+            ArrayList<Integer> parentChildren = children.get(parents.get(i));
+            if (parentChildren != null) {
+                for (Integer child : parentChildren) {
+                    if (!parents.contains(child)) {
+                        parents.add(child);
+                        descendants.add(child);
+                    }
+                }
+            }
+        }
+
+        return descendants;
+    }
+
+    /**
+     * Returns the CPU time used by the given process and its descendants in
+     * clock ticks, -1 if not available.
+     *
+     * @param pid the id of the process
+     *
+     * @return the CPU time used by the process tree
+     */
+    public static long getCpuTime(int pid) {
+
+        if (pid <= 0 || !PROC.isDirectory()) {
+            return -1;
+        }
+
+        long cpuTime = getProcessCpuTime(pid);
+
+        if (cpuTime == -1) {
+            return -1;
+        }
+
+        for (Integer descendant : getDescendants(pid)) {
+            long descendantCpuTime = getProcessCpuTime(descendant);
+            if (descendantCpuTime > 0) {
+                cpuTime += descendantCpuTime;
+            }
+        }
+
+        return cpuTime;
+    }
+
+    /**
+     * Returns the id of the process of this virtual machine, -1 if not
+     * available.
+     *
+     * @return the id of the process of this virtual machine
+     */
+    public static int getCurrentPid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        try {
+            return new Integer(name.substring(0, name.indexOf('@')));
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Indicates whether the given process is running. Processes terminated
+     * but not yet reaped by their parent are not considered running.
+     *
+     * @param pid the id of the process
+     *
+     * @return true if the process is running
+     */
+    public static boolean isAlive(int pid) {
+
+        if (PROC.isDirectory()) {
+            String[] fields = readStat(pid);
+            return fields != null && !fields[0].equals("Z");
+        }
+
+        return runCommand("kill", "-0", Integer.toString(pid)) == 0;
+    }
+
+    /**
+     * Terminates the given process and all its descendants: the processes
+     * are first asked to terminate, and killed if still running after the
+     * grace period. Returns once the processes are gone or after a few
+     * seconds if they cannot be killed.
+     *
+     * @param process the process
+     * @param gracePeriod the time given to the processes to terminate in
+     * milliseconds
+     *
+     * @return true if all the processes are gone
+     */
+    public static boolean terminateTree(Process process, long gracePeriod) {
+
+        int pid = getPid(process);
+        boolean released;
+
+        if (pid > 0 && isWindows()) {
+
+            runCommand("taskkill", "/T", "/PID", Integer.toString(pid));
+            released = waitFor(process, gracePeriod);
+            if (!released) {
+                runCommand("taskkill", "/T", "/F", "/PID", Integer.toString(pid));
+                released = waitFor(process, RELEASE_TIMEOUT);
+            }
+
+        } else if (pid > 0) {
+
+            // collect the tree before stopping the parent, orphans are adopted by init
+            ArrayList<Integer> pids = getDescendants(pid);
+            pids.add(0, pid);
+            released = terminate(pids, gracePeriod);
+
+        } else {
+
+            process.destroy();
+            released = waitFor(process, gracePeriod);
+        }
+
+        process.destroy();
+
+        return released;
+    }
+
+    /**
+     * Terminates all the processes started by this virtual machine and their
+     * descendants, for instance the processes left behind by a canceled
+     * search.
+     *
+     * @param gracePeriod the time given to the processes to terminate in
+     * milliseconds
+     *
+     * @return the number of processes which had to be terminated, -1 if some
+     * could not be terminated
+     */
+    public static int terminateDescendants(long gracePeriod) {
+
+        ArrayList<Integer> descendants = getDescendants(getCurrentPid());
+
+        // ignore the processes already terminated
+        ArrayList<Integer> running = new ArrayList<Integer>(descendants.size());
+        for (Integer descendant : descendants) {
+            if (isAlive(descendant)) {
+                running.add(descendant);
+            }
+        }
+
+        if (running.isEmpty()) {
+            return 0;
+        }
+
+        return terminate(running, gracePeriod) ? running.size() : -1;
+    }
+
+    /**
+     * Terminates the given processes, first asking them to terminate and
+     * killing them after the grace period.
+     *
+     * @param pids the ids of the processes
+     * @param gracePeriod the time given to the processes to terminate in
+     * milliseconds
+     *
+     * @return true if all the processes are gone
+     */
+    private static boolean terminate(ArrayList<Integer> pids, long gracePeriod) {
+
+        for (Integer pid : pids) {
+            signal(pid, "TERM");
+        }
+
+        if (waitFor(pids, gracePeriod)) {
+            return true;
+        }
+
+        for (Integer pid : pids) {
+            if (isAlive(pid)) {
+                signal(pid, "KILL");
+            }
+        }
+
+        return waitFor(pids, RELEASE_TIMEOUT);
+    }
+
+    /**
+     * Waits until the given processes are gone or the timeout is reached.
+     *
+     * @param pids the ids of the processes
+     * @param timeout the timeout in milliseconds
+     *
+     * @return true if all the processes are gone
+     */
+    private static boolean waitFor(ArrayList<Integer> pids, long timeout) {
+
+        long end = System.currentTimeMillis() + timeout;
+
+        while (true) {
+
+            boolean alive = false;
+            for (Integer pid : pids) {
+                if (isAlive(pid)) {
+                    alive = true;
+                    break;
+                }
+            }
+
+            if (!alive) {
+                return true;
+            }
+            if (System.currentTimeMillis() >= end) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(POLLING_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Waits until the given process is terminated or the timeout is reached.
+     *
+     * @param process the process
+     * @param timeout the timeout in milliseconds
+     *
+     * @return true if the process is terminated
+     */
+    private static boolean waitFor(Process process, long timeout) {
+
+        long end = System.currentTimeMillis() + timeout;
+
+        while (true) {
+
+            try {
+                process.exitValue();
+                return true;
+            } catch (IllegalThreadStateException e) {
+                // still running
+            }
+
+            if (System.currentTimeMillis() >= end) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(POLLING_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Sends the given signal to the given process.
+     *
+     * @param pid the id of the process
+     * @param signal the name of the signal, e.g., TERM or KILL
+     */
+    public static void signal(int pid, String signal) {
+        runCommand("kill", "-" + signal, Integer.toString(pid));
+    }
+
+    /**
+     * Returns the CPU time used by the given process in clock ticks, -1 if
+     * not available.
+     *
+     * @param pid the id of the process
+     *
+     * @return the CPU time used by the given process
+     */
+    private static long getProcessCpuTime(int pid) {
+
+        String[] fields = readStat(pid);
+
+        if (fields == null || fields.length < 13) {
+            return -1;
+        }
+
+        try {
+            // utime and stime, the 14th and 15th fields of the stat file
+            return Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the fields of the stat file of the given process following the
+     * command name, null if not available.
+     *
+     * @param pid the id of the process
+     *
+     * @return the fields of the stat file
+     */
+    private static String[] readStat(int pid) {
+
+        try {
+            BufferedReader br = new BufferedReader(new FileReader(new File(PROC, pid + File.separator + "stat")));
+            try {
+                String line = br.readLine();
+                if (line == null) {
+                    return null;
+                }
+                // the command name is in parentheses and can contain spaces
+                return line.substring(line.lastIndexOf(')') + 2).split(" ");
+            } finally {
+                br.close();
+            }
+        } catch (IOException e) {
+            // process finished
+            return null;
+        }
+    }
+
+    /**
+     * Returns the children of every process indexed by parent process id.
+     *
+     * @return the children of every process
+     */
+    private static HashMap<Integer, ArrayList<Integer>> getChildrenMap() {
+
+        HashMap<Integer, ArrayList<Integer>> children = new HashMap<Integer, ArrayList<Integer>>();
+
+        if (PROC.isDirectory()) {
+
+            String[] processFolders = PROC.list();
+
+            if (processFolders != null) {
+                for (String processFolder : processFolders) {
+                    if (processFolder.matches("\\d+")) {
+                        String[] fields = readStat(new Integer(processFolder));
+                        if (fields != null && fields.length > 1) {
+                            addChild(children, new Integer(fields[1]), new Integer(processFolder));
+                        }
+                    }
+                }
+            }
+
+        } else {
+
+            try {
+                Process ps = new ProcessBuilder("ps", "-A", "-o", "pid=", "-o", "ppid=").start();
+                BufferedReader br = new BufferedReader(new InputStreamReader(ps.getInputStream()));
+                try {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        String[] fields = line.trim().split("\\s+");
+                        if (fields.length == 2) {
+                            addChild(children, new Integer(fields[1]), new Integer(fields[0]));
+                        }
+                    }
+                } finally {
+                    br.close();
+                }
+                ps.waitFor();
+            } catch (Exception e) {
+                // tree not available
+            }
+        }
+
+        return children;
+    }
+
+    /**
+     * Adds a child to the children map.
+     *
+     * @param children the children map
+     * @param parent the id of the parent process
+     * @param child the id of the child process
+     */
+    private static void addChild(HashMap<Integer, ArrayList<Integer>> children, Integer parent, Integer child) {
+        ArrayList<Integer> parentChildren = children.get(parent);
+        if (parentChildren == null) {
+            parentChildren = new ArrayList<Integer>(1);
+            children.put(parent, parentChildren);
+        }
+        parentChildren.add(child);
+    }
+
+    /**
+     * Runs the given command and waits for it to finish, ignoring its output.
+     *
+     * @param command the command
+     *
+     * @return the exit value of the command, -1 if it could not be run
+     */
+    private static int runCommand(String... command) {
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process process = pb.start();
+            process.getOutputStream().close();
+            BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            try {
+                while (br.readLine() != null) {
+                    // ignore the output
+                }
+            } finally {
+                br.close();
+            }
+            return process.waitFor();
+        } catch (IOException e) {
+            // tool not available
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return -1;
+    }
+}
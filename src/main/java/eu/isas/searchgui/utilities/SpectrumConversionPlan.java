@@ -0,0 +1,364 @@
+package eu.isas.searchgui.utilities;
+
+import com.compomics.util.experiment.identification.Advocate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * Plan of the conversions of the spectrum files to the formats read by the
+ * search engines. Every engine declares the formats it reads, in order of
+ * preference, and the plan selects for every format of the input files the
+ * cheapest set of conversions giving every engine a file it reads, e.g., raw
+ * to mzML for MS-GF+ and raw to mgf only when an engine reads only mgf. The
+ * files converted are shared by the engines reading the same format.
+ *
+ * @author Harald Barsnes
+ */
+public class SpectrumConversionPlan {
+
+    /**
+     * The formats read by the search engines, in order of preference.
+     */
+    private final LinkedHashMap<Advocate, SpectrumFormat[]> consumers = new LinkedHashMap<Advocate, SpectrumFormat[]>();
+    /**
+     * The format all the engines have to read the spectra from, null if
+     * none.
+     */
+    private SpectrumFormat referenceFormat = null;
+    /**
+     * The plans computed for the formats of the input files.
+     */
+    private final EnumMap<SpectrumFormat, SourcePlan> sourcePlans = new EnumMap<SpectrumFormat, SourcePlan>(SpectrumFormat.class);
+
+    /**
+     * Constructor.
+     */
+    public SpectrumConversionPlan() {
+    }
+
+    /**
+     * Adds a search engine to the plan.
+     *
+     * @param engine the search engine
+     * @param inputFormats the formats read by the engine, in order of
+     * preference
+     */
+    public synchronized void addConsumer(Advocate engine, SpectrumFormat[] inputFormats) {
+        consumers.put(engine, inputFormats);
+        sourcePlans.clear();
+    }
+
+    /**
+     * Sets the format all the engines have to read the spectra from, e.g.,
+     * mgf when the spectra are identified by their mgf title downstream. The
+     * file is created in this format, and the engines only get files in this
+     * format or converted from it. Null if none.
+     *
+     * @param referenceFormat the reference format
+     */
+    public synchronized void setReferenceFormat(SpectrumFormat referenceFormat) {
+        this.referenceFormat = referenceFormat;
+        sourcePlans.clear();
+    }
+
+    /**
+     * Returns the cost of the direct conversion of a spectrum file from a
+     * format to another: msconvert reading a raw file is the most expensive,
+     * converting an mgf file the least. -1 if no direct conversion is
+     * possible.
+     *
+     * @param from the format of the file to convert
+     * @param to the format to convert to
+     *
+     * @return the cost of the conversion
+     */
+    public static int getConversionCost(SpectrumFormat from, SpectrumFormat to) {
+        switch (from) {
+            case raw:
+                return to == SpectrumFormat.mzML || to == SpectrumFormat.mgf ? 3 : -1;
+            case mzML:
+                return to == SpectrumFormat.mgf ? 2 : -1;
+            case mgf:
+                return to == SpectrumFormat.ms2 || to == SpectrumFormat.apl ? 1 : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Indicates whether the conversion to the given format is done with
+     * msconvert from the input file, or from the mgf file.
+     *
+     * @param to the format to convert to
+     *
+     * @return true if the conversion is done with msconvert
+     */
+    public static boolean isMsConvertConversion(SpectrumFormat to) {
+        return to == SpectrumFormat.mzML || to == SpectrumFormat.mgf;
+    }
+
+    /**
+     * Returns the formats the input files of the given format have to be
+     * converted to, in the order of the conversions.
+     *
+     * @param sourceFormat the format of the input files
+     *
+     * @return the formats to convert to
+     */
+    public synchronized ArrayList<SpectrumFormat> getConversions(SpectrumFormat sourceFormat) {
+        return getSourcePlan(sourceFormat).conversions;
+    }
+
+    /**
+     * Returns the format the given format is converted from for the input
+     * files of the given format.
+     *
+     * @param sourceFormat the format of the input files
+     * @param to the format converted to
+     *
+     * @return the format converted from, null if not converted
+     */
+    public synchronized SpectrumFormat getConversionSource(SpectrumFormat sourceFormat, SpectrumFormat to) {
+        return getSourcePlan(sourceFormat).conversionSources.get(to);
+    }
+
+    /**
+     * Returns the format the given engine reads for the input files of the
+     * given format.
+     *
+     * @param sourceFormat the format of the input files
+     * @param engine the search engine
+     *
+     * @return the format read by the engine
+     */
+    public synchronized SpectrumFormat getInputFormat(SpectrumFormat sourceFormat, Advocate engine) {
+        return getSourcePlan(sourceFormat).inputFormats.get(engine);
+    }
+
+    /**
+     * Returns the format of the file representing the input files of the
+     * given format in the results: the reference format if set, the format
+     * of the input files if read by the engines, the first format converted
+     * to otherwise.
+     *
+     * @param sourceFormat the format of the input files
+     *
+     * @return the format of the file representing the input files
+     */
+    public synchronized SpectrumFormat getRunFormat(SpectrumFormat sourceFormat) {
+        if (referenceFormat != null) {
+            return referenceFormat;
+        }
+        if (sourceFormat != SpectrumFormat.raw) {
+            return sourceFormat;
+        }
+        SourcePlan sourcePlan = getSourcePlan(sourceFormat);
+        if (!sourcePlan.conversions.isEmpty()) {
+            return sourcePlan.conversions.get(0);
+        }
+        return SpectrumFormat.mgf;
+    }
+
+    /**
+     * Returns the plan for the input files of the given format, computed if
+     * needed.
+     *
+     * @param sourceFormat the format of the input files
+     *
+     * @return the plan for the input files of the given format
+     */
+    private SourcePlan getSourcePlan(SpectrumFormat sourceFormat) {
+
+        SourcePlan sourcePlan = sourcePlans.get(sourceFormat);
+
+        if (sourcePlan == null) {
+
+            sourcePlan = new SourcePlan();
+            EnumSet<SpectrumFormat> origins = EnumSet.of(sourceFormat);
+
+            // create the reference file first, the engines then only read files derived from it
+            if (referenceFormat != null && referenceFormat != sourceFormat) {
+                ArrayList<SpectrumFormat> path = getPath(origins, referenceFormat);
+                if (path == null) {
+                    throw new IllegalArgumentException("Cannot convert " + sourceFormat + " files to " + referenceFormat + ".");
+                }
+                sourcePlan.addPath(sourceFormat, path);
+                origins = EnumSet.of(referenceFormat);
+            }
+
+            // plan the engines with the fewest options first, the others can then share their files
+            ArrayList<Advocate> engines = new ArrayList<Advocate>(consumers.keySet());
+            Collections.sort(engines, new Comparator<Advocate>() {
+                @Override
+                public int compare(Advocate o1, Advocate o2) {
+                    return consumers.get(o1).length - consumers.get(o2).length;
+                }
+            });
+
+            for (Advocate engine : engines) {
+
+                SpectrumFormat bestFormat = null;
+                ArrayList<SpectrumFormat> bestPath = null;
+                int bestCost = -1;
+
+                for (SpectrumFormat inputFormat : consumers.get(engine)) {
+                    ArrayList<SpectrumFormat> path = getPath(origins, inputFormat);
+                    if (path != null) {
+                        int cost = getCost(origins, path);
+                        if (bestPath == null || cost < bestCost) {
+                            bestFormat = inputFormat;
+                            bestPath = path;
+                            bestCost = cost;
+                        }
+                    }
+                }
+
+                if (bestPath == null) {
+                    throw new IllegalArgumentException("Cannot convert " + sourceFormat + " files to a format read by " + engine.getName() + ".");
+                }
+
+                sourcePlan.addPath(origins, bestPath);
+                origins.addAll(bestPath);
+                sourcePlan.inputFormats.put(engine, bestFormat);
+            }
+
+            sourcePlans.put(sourceFormat, sourcePlan);
+        }
+
+        return sourcePlan;
+    }
+
+    /**
+     * Returns the cheapest sequence of conversions from one of the given
+     * formats to the given format.
+     *
+     * @param origins the formats available
+     * @param target the format to convert to
+     *
+     * @return the formats converted to in order, empty if the target is
+     * available, null if the target cannot be reached
+     */
+    private static ArrayList<SpectrumFormat> getPath(EnumSet<SpectrumFormat> origins, SpectrumFormat target) {
+
+        EnumMap<SpectrumFormat, Integer> costs = new EnumMap<SpectrumFormat, Integer>(SpectrumFormat.class);
+        EnumMap<SpectrumFormat, SpectrumFormat> previous = new EnumMap<SpectrumFormat, SpectrumFormat>(SpectrumFormat.class);
+        for (SpectrumFormat origin : origins) {
+            costs.put(origin, 0);
+        }
+
+        // the graph is small and acyclic, relax all the conversions until stable
+        for (int i = 0; i < SpectrumFormat.values().length; i++) {
+            for (SpectrumFormat from : SpectrumFormat.values()) {
+                Integer fromCost = costs.get(from);
+                if (fromCost != null) {
+                    for (SpectrumFormat to : SpectrumFormat.values()) {
+                        int cost = getConversionCost(from, to);
+                        if (cost >= 0) {
+                            Integer toCost = costs.get(to);
+                            if (toCost == null || fromCost + cost < toCost) {
+                                costs.put(to, fromCost + cost);
+                                previous.put(to, from);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        if (!costs.containsKey(target)) {
+            return null;
+        }
+
+        ArrayList<SpectrumFormat> path = new ArrayList<SpectrumFormat>();
+        for (SpectrumFormat format = target; !origins.contains(format); format = previous.get(format)) {
+            path.add(0, format);
+        }
+
+        return path;
+    }
+
+    /**
+     * Returns the cost of the given sequence of conversions.
+     *
+     * @param origins the formats available
+     * @param path the formats converted to in order
+     *
+     * @return the cost of the conversions
+     */
+    private static int getCost(EnumSet<SpectrumFormat> origins, ArrayList<SpectrumFormat> path) {
+        if (path.isEmpty()) {
+            return 0;
+        }
+        int cost = Integer.MAX_VALUE;
+        for (SpectrumFormat origin : origins) {
+            int originCost = getConversionCost(origin, path.get(0));
+            if (originCost >= 0 && originCost < cost) {
+                cost = originCost;
+            }
+        }
+        for (int i = 1; i < path.size(); i++) {
+            cost += getConversionCost(path.get(i - 1), path.get(i));
+        }
+        return cost;
+    }
+
+    /**
+     * The plan for the input files of a given format.
+     */
+    private static class SourcePlan {
+
+        /**
+         * The formats to convert to, in the order of the conversions.
+         */
+        private final ArrayList<SpectrumFormat> conversions = new ArrayList<SpectrumFormat>();
+        /**
+         * The format every format is converted from.
+         */
+        private final HashMap<SpectrumFormat, SpectrumFormat> conversionSources = new HashMap<SpectrumFormat, SpectrumFormat>();
+        /**
+         * The format read by every engine.
+         */
+        private final HashMap<Advocate, SpectrumFormat> inputFormats = new HashMap<Advocate, SpectrumFormat>();
+
+        /**
+         * Adds the given sequence of conversions from the given format.
+         *
+         * @param from the format converted from
+         * @param path the formats converted to in order
+         */
+        private void addPath(SpectrumFormat from, ArrayList<SpectrumFormat> path) {
+            addPath(EnumSet.of(from), path);
+        }
+
+        /**
+         * Adds the given sequence of conversions from the cheapest of the
+         * given formats.
+         *
+         * @param origins the formats available
+         * @param path the formats converted to in order
+         */
+        private void addPath(EnumSet<SpectrumFormat> origins, ArrayList<SpectrumFormat> path) {
+            SpectrumFormat from = null;
+            for (SpectrumFormat to : path) {
+                if (from == null) {
+                    int bestCost = -1;
+                    for (SpectrumFormat origin : origins) {
+                        int cost = getConversionCost(origin, to);
+                        if (cost >= 0 && (bestCost == -1 || cost < bestCost)) {
+                            from = origin;
+                            bestCost = cost;
+                        }
+                    }
+                }
+                conversions.add(to);
+                conversionSources.put(to, from);
+                from = to;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses compressed spectrum files. Gzip files are decompressed
+ * in-process while zstd files are decompressed using the zstd command line
+ * tool, which has to be available on the path. In both cases the compressed
+ * file is streamed directly into the decompressed file.
+ *
+ * @author Harald Barsnes
+ */
+public class SpectrumFileDecompressor {
+
+    /**
+     * The extension of gzip compressed mgf files.
+     */
+    public static final String MGF_GZ_EXTENSION = ".mgf.gz";
+    /**
+     * The extension of zstd compressed mgf files.
+     */
+    public static final String MGF_ZST_EXTENSION = ".mgf.zst";
+    /**
+     * The size of the buffer used for decompression.
+     */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Empty default constructor.
+     */
+    private SpectrumFileDecompressor() {
+    }
+
+    /**
+     * Indicates whether the given spectrum file is compressed.
+     *
+     * @param spectrumFile the spectrum file
+     *
+     * @return true if the given spectrum file is compressed
+     */
+    public static boolean isCompressed(File spectrumFile) {
+        String fileName = spectrumFile.getName().toLowerCase();
+        return fileName.endsWith(MGF_GZ_EXTENSION) || fileName.endsWith(MGF_ZST_EXTENSION);
+    }
+
+    /**
+     * Returns the name of the given compressed file without the compression
+     * extension, e.g., "run1.mgf" for "run1.mgf.gz".
+     *
+     * @param compressedFile the compressed file
+     *
+     * @return the name of the decompressed file
+     */
+    public static String getDecompressedFileName(File compressedFile) {
+        String fileName = compressedFile.getName();
+        return fileName.substring(0, fileName.lastIndexOf("."));
+    }
+
+    /**
+     * Decompresses the given spectrum file into the given folder. An existing
+     * file with the same name is overwritten.
+     *
+     * @param compressedFile the compressed spectrum file
+     * @param destinationFolder the folder where to write the decompressed
+     * file
+     *
+     * @return the decompressed file
+     *
+     * @throws IOException thrown if an error occurred while decompressing the
+     * file
+     * @throws InterruptedException thrown if the thread is interrupted while
+     * waiting for the decompression tool
+     */
+    public static File decompress(File compressedFile, File destinationFolder) throws IOException, InterruptedException {
+
+        if (!destinationFolder.exists()) {
+            destinationFolder.mkdirs();
+        }
+
+        File decompressedFile = new File(destinationFolder, getDecompressedFileName(compressedFile));
+        boolean success = false;
+
+        try {
+            if (compressedFile.getName().toLowerCase().endsWith(MGF_GZ_EXTENSION)) {
+
+                InputStream in = new GZIPInputStream(new FileInputStream(compressedFile), BUFFER_SIZE);
+                try {
+                    writeStream(in, decompressedFile);
+                } finally {
+                    in.close();
+                }
+
+            } else if (compressedFile.getName().toLowerCase().endsWith(MGF_ZST_EXTENSION)) {
+
+                ProcessBuilder pb = new ProcessBuilder("zstd", "-d", "-c", "-q", compressedFile.getAbsolutePath());
+                Process p;
+                try {
+                    p = pb.start();
+                } catch (IOException e) {
+                    throw new IOException("The zstd command line tool is needed to decompress " + compressedFile.getName() + ".", e);
+                }
+
+                try {
+                    p.getOutputStream().close();
+                    p.getErrorStream().close();
+                    InputStream in = p.getInputStream();
+                    try {
+                        writeStream(in, decompressedFile);
+                    } finally {
+                        in.close();
+                    }
+
+                    int exitValue = p.waitFor();
+                    if (exitValue != 0) {
+                        throw new IOException("zstd exited with code " + exitValue + " while decompressing " + compressedFile.getName() + ".");
+                    }
+                } finally {
+                    p.destroy();
+                }
+
+            } else {
+                throw new IllegalArgumentException("Compression of " + compressedFile.getName() + " not supported.");
+            }
+
+            success = true;
+
+        } finally {
+            if (!success && decompressedFile.exists()) {
+                decompressedFile.delete();
+            }
+        }
+
+        return decompressedFile;
+    }
+
+    /**
+     * Writes the given stream to the given file.
+     *
+     * @param in the stream
+     * @param file the file
+     *
+     * @throws IOException thrown if an error occurred while reading or writing
+     */
+    private static void writeStream(InputStream in, File file) throws IOException {
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.File;
+
+/**
+ * The spectrum file formats read by the search engines, and the raw formats
+ * which have to be converted with msconvert.
+ *
+ * @author Harald Barsnes
+ */
+public enum SpectrumFormat {
+
+    /**
+     * The raw formats read by msconvert, e.g., the vendor formats or mzXML.
+     */
+    raw(null),
+    /**
+     * The mzML format.
+     */
+    mzML(".mzML"),
+    /**
+     * The mgf format.
+     */
+    mgf(".mgf"),
+    /**
+     * The ms2 format, converted from mgf for Tide.
+     */
+    ms2(".ms2"),
+    /**
+     * The Andromeda peak list format, converted from mgf for Andromeda.
+     */
+    apl(".apl");
+
+    /**
+     * The file name ending, null for the raw formats.
+     */
+    public final String fileNameEnding;
+
+    /**
+     * Constructor.
+     *
+     * @param fileNameEnding the file name ending
+     */
+    private SpectrumFormat(String fileNameEnding) {
+        this.fileNameEnding = fileNameEnding;
+    }
+
+    /**
+     * Returns the format of the given spectrum file, raw if the file is not
+     * in one of the formats read by the search engines.
+     *
+     * @param spectrumFile the spectrum file
+     *
+     * @return the format of the spectrum file
+     */
+    public static SpectrumFormat getSpectrumFormat(File spectrumFile) {
+        String fileName = spectrumFile.getName().toLowerCase();
+        for (SpectrumFormat spectrumFormat : values()) {
+            if (spectrumFormat.fileNameEnding != null && fileName.endsWith(spectrumFormat.fileNameEnding.toLowerCase())) {
+                return spectrumFormat;
+            }
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,196 @@
+package eu.isas.searchgui.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A named pipe (FIFO) through which a converted spectrum file is streamed to
+ * a search engine instead of being written to disk. The conversion writes in
+ * the pipe in a background thread while the engine reads it, the conversion
+ * thus overlaps with the search and the file is neither written nor read
+ * again. Only engines reading their input once and sequentially can read from
+ * a pipe: an engine seeking in its input stops reading, the pipe is then
+ * reported as incomplete and the file has to be converted to disk. Named pipes
+ * are created with mkfifo and are not available on Windows.
+ *
+ * @author Harald Barsnes
+ */
+public class SpectrumPipe {
+
+    /**
+     * The time to wait for the writer to stop when closing the pipe in
+     * milliseconds.
+     */
+    private static final long CLOSE_INTERVAL = 100;
+    /**
+     * Indicates whether named pipes are available, null if not tested yet.
+     */
+    private static Boolean available = null;
+    /**
+     * The pipe file.
+     */
+    private final File pipeFile;
+    /**
+     * The thread writing in the pipe.
+     */
+    private Thread writerThread = null;
+    /**
+     * Indicates whether all the spectra were written in the pipe.
+     */
+    private volatile boolean complete = false;
+
+    /**
+     * Writes converted spectra in a file.
+     */
+    public interface Writer {
+
+        /**
+         * Writes the converted spectra in the given file.
+         *
+         * @param file the file to write to
+         *
+         * @throws IOException thrown if an error occurred while writing
+         */
+        public void write(File file) throws IOException;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param pipeFile the pipe file
+     */
+    private SpectrumPipe(File pipeFile) {
+        this.pipeFile = pipeFile;
+    }
+
+    /**
+     * Indicates whether named pipes can be created on this system.
+     *
+     * @return true if named pipes can be created
+     */
+    public static synchronized boolean isAvailable() {
+
+        if (available == null) {
+
+            available = false;
+
+            if (!System.getProperty("os.name").toLowerCase().contains("windows")) {
+                try {
+                    File testFile = File.createTempFile("searchgui_pipe", ".test");
+                    testFile.delete();
+                    available = makeFifo(testFile);
+                    testFile.delete();
+                } catch (IOException e) {
+                    // no pipes
+                }
+            }
+        }
+
+        return available;
+    }
+
+    /**
+     * Creates a named pipe at the given path, replacing an existing file.
+     *
+     * @param pipeFile the pipe file
+     *
+     * @return the pipe, null if the pipe could not be created
+     */
+    public static SpectrumPipe create(File pipeFile) {
+
+        if (pipeFile.exists()) {
+            pipeFile.delete();
+        }
+
+        if (!makeFifo(pipeFile)) {
+            return null;
+        }
+
+        return new SpectrumPipe(pipeFile);
+    }
+
+    /**
+     * Runs mkfifo on the given file.
+     *
+     * @param pipeFile the pipe file
+     *
+     * @return true if the pipe was created
+     */
+    private static boolean makeFifo(File pipeFile) {
+        try {
+            Process process = new ProcessBuilder("mkfifo", pipeFile.getAbsolutePath()).redirectErrorStream(true).start();
+            process.getInputStream().close();
+            return process.waitFor() == 0 && pipeFile.exists();
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns the pipe file.
+     *
+     * @return the pipe file
+     */
+    public File getFile() {
+        return pipeFile;
+    }
+
+    /**
+     * Starts writing in the pipe in a background thread. The writer blocks
+     * until the engine opens the pipe, and then as long as the engine does not
+     * read.
+     *
+     * @param writer the writer of the spectra
+     */
+    public void start(final Writer writer) {
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writer.write(pipeFile);
+                    complete = true;
+                } catch (IOException e) {
+                    // the engine stopped reading
+                }
+            }
+        }, "SearchGUI spectrum pipe " + pipeFile.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Stops the writer if still running, e.g., if the engine did not open or
+     * stopped reading the pipe, and deletes the pipe.
+     *
+     * @return true if all the spectra were written in the pipe
+     */
+    public boolean close() {
+
+        while (writerThread != null && writerThread.isAlive()) {
+
+            // open the pipe as reader for a moment so that a writer waiting for the engine gets a broken pipe
+            try {
+                RandomAccessFile reader = new RandomAccessFile(pipeFile, "rw");
+                try {
+                    writerThread.join(CLOSE_INTERVAL);
+                } finally {
+                    reader.close();
+                }
+                writerThread.join(CLOSE_INTERVAL);
+            } catch (IOException e) {
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        pipeFile.delete();
+
+        return complete;
+    }
+}